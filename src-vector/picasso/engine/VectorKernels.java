@@ -0,0 +1,575 @@
+package picasso.engine;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import picasso.model.EscapeTime;
+import picasso.model.ImprovedNoise;
+import picasso.model.PlanarNoise;
+import picasso.parser.language.expressions.Modulo;
+
+/**
+ * Plane operations on DoubleVector lanes, using the incubating Vector API. The
+ * planes are processed a vector at a time and the leftover elements at the end
+ * of a row one at a time.
+ *
+ * Every operation gives bit for bit what the scalar code gives. The Vector API
+ * has no floor, so wrap and noise round by adding and subtracting 2^52, which
+ * is exact because every double of 2^52 or more is an integer; plain floor and
+ * ceil are left to loops that HotSpot vectorizes by itself.
+ * There is no exact lanewise remainder either, so modulo stays a scalar loop.
+ * Noise looks up its permutation table one lane at a time and does the rest of
+ * its arithmetic on vectors; noise on the plane z = 0 also looks up the
+ * gradients of its four corners from a table. Escape-time fractals iterate a
+ * vector of orbits until every lane has escaped or cycled, masking off the
+ * lanes that are done.
+ *
+ * This class needs the jdk.incubator.vector module, so it is kept out of src
+ * in a source root of its own, src-vector, which is compiled against the
+ * classes of src with --add-modules jdk.incubator.vector. Nothing refers to it
+ * by name; use SimdEngine.detectKernels(), which loads it if it was built and
+ * the module is present, rather than constructing it directly.
+ *
+ * @author Mark Holden
+ */
+public class VectorKernels implements PlaneKernels {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+	// longs of the same shape, for the hashes of noise
+	private static final VectorSpecies<Long> HASH_SPECIES = SPECIES.withLanes(long.class);
+	private static final double TWO_52 = 0x1p52;
+	// floors of noise coordinates must fit in an int to be hashed on vectors
+	private static final double TWO_31 = 0x1p31;
+	private static final int CORNERS = 8;
+	// the starting point of every Mandelbrot orbit
+	private static final double[] ORIGIN = new double[LANES];
+	// the square of the escape radius of EscapeTime
+	private static final double ESCAPE = 4;
+	// the iterations of an escape-time block, between comparisons with the saved point
+	private static final int STEPS = 4;
+
+	private static final int[] PERMUTATION = ImprovedNoise.getPermutation();
+	// the coefficients of x and y in the gradient of each hash on the plane z = 0
+	private static final double[] GRADIENT_X = new double[16];
+	private static final double[] GRADIENT_Y = new double[16];
+	static {
+		for (int h = 0; h < 16; h++) {
+			GRADIENT_X[h] = PlanarNoise.getGradientX(h);
+			GRADIENT_Y[h] = PlanarNoise.getGradientY(h);
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException if the platform's vectors hold only one
+	 *                               double, so there is nothing to gain
+	 */
+	public VectorKernels() {
+		if (LANES < 2) {
+			throw new IllegalStateException("Vectors of one double are no faster than scalars");
+		}
+	}
+
+	/**
+	 * Returns the number of doubles in a vector
+	 */
+	public static int getLaneCount() {
+		return LANES;
+	}
+
+	@Override
+	public String getName() {
+		return "vector x" + LANES;
+	}
+
+	@Override
+	public void add(double[] a, double[] b, double[] out, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, a, i).add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+		}
+		for (; i < length; i++) {
+			out[i] = a[i] + b[i];
+		}
+	}
+
+	@Override
+	public void subtract(double[] a, double[] b, double[] out, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+		}
+		for (; i < length; i++) {
+			out[i] = a[i] - b[i];
+		}
+	}
+
+	@Override
+	public void multiply(double[] a, double[] b, double[] out, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+		}
+		for (; i < length; i++) {
+			out[i] = a[i] * b[i];
+		}
+	}
+
+	@Override
+	public void divide(double[] a, double[] b, double[] out, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector divisor = DoubleVector.fromArray(SPECIES, b, i);
+			DoubleVector.fromArray(SPECIES, a, i).div(divisor).blend(0.0, divisor.eq(0.0)).intoArray(out, i);
+		}
+		for (; i < length; i++) {
+			out[i] = b[i] == 0 ? 0 : a[i] / b[i];
+		}
+	}
+
+	@Override
+	public void modulo(double[] a, double[] b, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Modulo.modulo(a[i], b[i]);
+		}
+	}
+
+	@Override
+	public void addConstant(double[] a, double c, double[] out, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, a, i).add(c).intoArray(out, i);
+		}
+		for (; i < length; i++) {
+			out[i] = a[i] + c;
+		}
+	}
+
+	@Override
+	public void negate(double[] a, double[] out, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, a, i).neg().intoArray(out, i);
+		}
+		for (; i < length; i++) {
+			out[i] = -a[i];
+		}
+	}
+
+	@Override
+	public void abs(double[] a, double[] out, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector.fromArray(SPECIES, a, i).abs().intoArray(out, i);
+		}
+		for (; i < length; i++) {
+			out[i] = Math.abs(a[i]);
+		}
+	}
+
+	@Override
+	public void floor(double[] a, double[] out, int length) {
+		// HotSpot already compiles this loop to vector rounding instructions,
+		// which beats rounding through the API
+		for (int i = 0; i < length; i++) {
+			out[i] = Math.floor(a[i]);
+		}
+	}
+
+	@Override
+	public void ceil(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Math.ceil(a[i]);
+		}
+	}
+
+	@Override
+	public void clamp(double[] a, double[] out, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector value = DoubleVector.fromArray(SPECIES, a, i);
+			value.blend(1.0, value.compare(VectorOperators.GT, 1.0))
+					.blend(-1.0, value.compare(VectorOperators.LT, -1.0)).intoArray(out, i);
+		}
+		for (; i < length; i++) {
+			double value = a[i];
+			out[i] = value > 1 ? 1 : value < -1 ? -1 : value;
+		}
+	}
+
+	@Override
+	public void wrap(double[] a, double[] out, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			// (a + 3) % 2 - 1, where the remainder t - 2 * trunc(t / 2) is exact
+			DoubleVector t = DoubleVector.fromArray(SPECIES, a, i).add(3.0);
+			t.sub(truncate(t.mul(0.5)).mul(2.0)).sub(1.0).intoArray(out, i);
+		}
+		for (; i < length; i++) {
+			out[i] = (a[i] + 3) % 2 - 1;
+		}
+	}
+
+	@Override
+	public void rgbToYCrCb(double[] red, double[] green, double[] blue, double[] luma, double[] cr, double[] cb,
+			int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector r = DoubleVector.fromArray(SPECIES, red, i);
+			DoubleVector g = DoubleVector.fromArray(SPECIES, green, i);
+			DoubleVector b = DoubleVector.fromArray(SPECIES, blue, i);
+			r.mul(0.2989).add(g.mul(0.5866)).add(b.mul(0.1145)).intoArray(luma, i);
+			r.mul(-0.1687).add(g.mul(-0.3312)).add(b.mul(0.5)).intoArray(cr, i);
+			r.mul(0.5).add(g.mul(-0.4183)).add(b.mul(-0.0816)).intoArray(cb, i);
+		}
+		for (; i < length; i++) {
+			double r = red[i];
+			double g = green[i];
+			double b = blue[i];
+			luma[i] = r * 0.2989 + g * 0.5866 + b * 0.1145;
+			cr[i] = r * -0.1687 + g * -0.3312 + b * 0.5;
+			cb[i] = r * 0.5 + g * -0.4183 + b * -0.0816;
+		}
+	}
+
+	@Override
+	public void yCrCbToRGB(double[] luma, double[] cr, double[] cb, double[] red, double[] green, double[] blue,
+			int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector y = DoubleVector.fromArray(SPECIES, luma, i);
+			DoubleVector r = DoubleVector.fromArray(SPECIES, cr, i);
+			DoubleVector b = DoubleVector.fromArray(SPECIES, cb, i);
+			y.add(b.mul(1.4022)).intoArray(red, i);
+			y.add(r.mul(-0.3456)).add(b.mul(-0.7145)).intoArray(green, i);
+			y.add(r.mul(1.7710)).intoArray(blue, i);
+		}
+		for (; i < length; i++) {
+			double y = luma[i];
+			double r = cr[i];
+			double b = cb[i];
+			red[i] = y + b * 1.4022;
+			green[i] = y + r * -0.3456 + b * -0.7145;
+			blue[i] = y + r * 1.7710;
+		}
+	}
+
+	@Override
+	public void noise(double[] x, double[] y, double[] z, double[] out, int length) {
+		// vectors are kept in registers only within a method, so each step
+		// passes its results to the next through these arrays
+		double[] floors = new double[3 * LANES];
+		double[] fractions = new double[3 * LANES];
+		double[] fades = new double[3 * LANES];
+		long[] hashes = new long[CORNERS * LANES];
+		double[] gradients = new double[CORNERS * LANES];
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			if (splitCoordinates(x, y, z, i, floors, fractions, fades)) {
+				hashCorners(floors, hashes);
+				gradients(fractions, hashes, gradients);
+				blendGradients(fades, gradients, out, i);
+			} else {
+				for (int lane = i; lane < i + LANES; lane++) {
+					out[lane] = ImprovedNoise.noise(x[lane], y[lane], z[lane]);
+				}
+			}
+		}
+		for (; i < length; i++) {
+			out[i] = ImprovedNoise.noise(x[i], y[i], z[i]);
+		}
+	}
+
+	@Override
+	public void planarNoise(double[] x, double[] y, double offset, double[] out, int length) {
+		double[] floors = new double[2 * LANES];
+		double[] gradients = new double[8 * LANES];
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			DoubleVector pointX = DoubleVector.fromArray(SPECIES, x, i).add(offset);
+			DoubleVector pointY = DoubleVector.fromArray(SPECIES, y, i).add(offset);
+			DoubleVector floorX = floor(pointX);
+			DoubleVector floorY = floor(pointY);
+			if (!floorX.abs().compare(VectorOperators.LT, TWO_31)
+					.and(floorY.abs().compare(VectorOperators.LT, TWO_31)).allTrue()) {
+				for (int lane = i; lane < i + LANES; lane++) {
+					out[lane] = PlanarNoise.noise(x[lane] + offset, y[lane] + offset);
+				}
+				continue;
+			}
+			floorX.intoArray(floors, 0);
+			floorY.intoArray(floors, LANES);
+			gradeSquares(floors, gradients);
+			DoubleVector fractionX = pointX.sub(floorX);
+			DoubleVector fractionY = pointY.sub(floorY);
+			DoubleVector fractionX1 = fractionX.sub(1.0);
+			DoubleVector fractionY1 = fractionY.sub(1.0);
+			// the corners in the order ImprovedNoise visits them on the plane
+			DoubleVector aa = planarGrad(gradients, 0, fractionX, fractionY);
+			DoubleVector ba = planarGrad(gradients, 1, fractionX1, fractionY);
+			DoubleVector ab = planarGrad(gradients, 2, fractionX, fractionY1);
+			DoubleVector bb = planarGrad(gradients, 3, fractionX1, fractionY1);
+			DoubleVector u = fractionX.mul(fractionX).mul(fractionX)
+					.mul(fractionX.mul(fractionX.mul(6.0).sub(15.0)).add(10.0));
+			DoubleVector v = fractionY.mul(fractionY).mul(fractionY)
+					.mul(fractionY.mul(fractionY.mul(6.0).sub(15.0)).add(10.0));
+			DoubleVector near = aa.add(u.mul(ba.sub(aa)));
+			DoubleVector far = ab.add(u.mul(bb.sub(ab)));
+			near.add(v.mul(far.sub(near))).intoArray(out, i);
+		}
+		for (; i < length; i++) {
+			out[i] = PlanarNoise.noise(x[i] + offset, y[i] + offset);
+		}
+	}
+
+	@Override
+	public void mandelbrot(double[] cx, double[] cy, int iterations, double[] out, int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			escape(ORIGIN, ORIGIN, 0, cx, cy, i, true, iterations).intoArray(out, i);
+		}
+		for (; i < length; i++) {
+			out[i] = EscapeTime.mandelbrot(cx[i], cy[i], iterations);
+		}
+	}
+
+	@Override
+	public void julia(double[] zx, double[] zy, double[] cx, double[] cy, int iterations, double[] out,
+			int length) {
+		int i = 0;
+		for (int bound = SPECIES.loopBound(length); i < bound; i += LANES) {
+			escape(zx, zy, i, cx, cy, i, false, iterations).intoArray(out, i);
+		}
+		for (; i < length; i++) {
+			out[i] = EscapeTime.julia(zx[i], zy[i], cx[i], cy[i], iterations);
+		}
+	}
+
+	/**
+	 * The lanes of c in the main cardioid or the period-2 bulb, as
+	 * EscapeTime.isInterior finds them
+	 */
+	private static VectorMask<Double> isInterior(DoubleVector cx, DoubleVector cy) {
+		DoubleVector a = cx.sub(0.25);
+		DoubleVector q = a.mul(a).add(cy.mul(cy));
+		VectorMask<Double> cardioid = q.mul(q.add(a)).compare(VectorOperators.LE, cy.mul(0.25).mul(cy));
+		DoubleVector b = cx.add(1.0);
+		return cardioid.or(b.mul(b).add(cy.mul(cy)).compare(VectorOperators.LE, 0.0625));
+	}
+
+	/**
+	 * Iterates the orbits of a vector of points as EscapeTime.escape does,
+	 * until every lane has escaped or come back to its saved point, and returns
+	 * the value of each lane. A lane's count is the number of iterations it
+	 * has stayed inside for, so the lanes still going at iteration n are those
+	 * whose count is n, and it is -1 for lanes that never escape: points of the
+	 * Mandelbrot set's interior, cycles, and lanes with NaN arguments, which
+	 * never escape and, without them, NaN never enters an orbit before it
+	 * escapes. The vectors are loaded here and no mask is kept across
+	 * iterations, which lets HotSpot keep every vector in a register.
+	 *
+	 * The loop takes STEPS iterations at a time, written out, and compares with
+	 * the saved point only after each block, saving it after blocks that end
+	 * at a power of two. A lane that comes back to a point never escapes, so
+	 * finding its cycle later or not at all gives the same value, and a count
+	 * that passes iterations in the last block is a lane that never escaped.
+	 *
+	 * @param mandelbrot true to skip the points of c in the Mandelbrot set's
+	 *                   main cardioid and period-2 bulb
+	 */
+	private static DoubleVector escape(double[] zx, double[] zy, int zi, double[] cx, double[] cy, int ci,
+			boolean mandelbrot, int iterations) {
+		DoubleVector x = DoubleVector.fromArray(SPECIES, zx, zi);
+		DoubleVector y = DoubleVector.fromArray(SPECIES, zy, zi);
+		DoubleVector constantX = DoubleVector.fromArray(SPECIES, cx, ci);
+		DoubleVector constantY = DoubleVector.fromArray(SPECIES, cy, ci);
+		VectorMask<Double> never = x.eq(x).and(y.eq(y)).and(constantX.eq(constantX)).and(constantY.eq(constantY))
+				.not();
+		if (mandelbrot) {
+			never = never.or(isInterior(constantX, constantY));
+		}
+		DoubleVector savedX = x;
+		DoubleVector savedY = y;
+		DoubleVector counts = DoubleVector.zero(SPECIES).blend(-1.0, never);
+		for (int n = 0; n < iterations; n += STEPS) {
+			if (!counts.eq(n).anyTrue()) {
+				break;
+			}
+			DoubleVector x2 = x.mul(x);
+			DoubleVector y2 = y.mul(y);
+			counts = counts.add(1.0, counts.eq(n).and(x2.add(y2).compare(VectorOperators.LE, ESCAPE)));
+			y = x.mul(2.0).mul(y).add(constantY);
+			x = x2.sub(y2).add(constantX);
+			x2 = x.mul(x);
+			y2 = y.mul(y);
+			counts = counts.add(1.0, counts.eq(n + 1).and(x2.add(y2).compare(VectorOperators.LE, ESCAPE)));
+			y = x.mul(2.0).mul(y).add(constantY);
+			x = x2.sub(y2).add(constantX);
+			x2 = x.mul(x);
+			y2 = y.mul(y);
+			counts = counts.add(1.0, counts.eq(n + 2).and(x2.add(y2).compare(VectorOperators.LE, ESCAPE)));
+			y = x.mul(2.0).mul(y).add(constantY);
+			x = x2.sub(y2).add(constantX);
+			x2 = x.mul(x);
+			y2 = y.mul(y);
+			counts = counts.add(1.0, counts.eq(n + 3).and(x2.add(y2).compare(VectorOperators.LE, ESCAPE)));
+			y = x.mul(2.0).mul(y).add(constantY);
+			x = x2.sub(y2).add(constantX);
+			int end = n + STEPS;
+			counts = counts.blend(-1.0, x.eq(savedX).and(y.eq(savedY)).and(counts.eq(end)));
+			VectorMask<Double> checkpoint = SPECIES.maskAll((end & (end - 1)) == 0);
+			savedX = savedX.blend(x, checkpoint);
+			savedY = savedY.blend(y, checkpoint);
+		}
+		return counts.mul(2.0).div(iterations).sub(1.0).blend(-1.0, counts.eq(-1.0))
+				.blend(-1.0, counts.compare(VectorOperators.GE, iterations));
+	}
+
+	/**
+	 * Look up the gradients of the four corners of the unit square of each
+	 * lane, the way ImprovedNoise hashes them on the plane z = 0: for each
+	 * corner a vector of coefficients of x, then one of coefficients of y
+	 */
+	private static void gradeSquares(double[] floors, double[] gradients) {
+		int[] p = PERMUTATION;
+		for (int lane = 0; lane < LANES; lane++) {
+			int squareX = (int) floors[lane] & 255;
+			int squareY = (int) floors[LANES + lane] & 255;
+			int a = p[squareX] + squareY;
+			int b = p[squareX + 1] + squareY;
+			grade(p[p[a]], gradients, lane);
+			grade(p[p[b]], gradients, 2 * LANES + lane);
+			grade(p[p[a + 1]], gradients, 4 * LANES + lane);
+			grade(p[p[b + 1]], gradients, 6 * LANES + lane);
+		}
+	}
+
+	private static void grade(int hash, double[] gradients, int index) {
+		gradients[index] = GRADIENT_X[hash & 15];
+		gradients[index + LANES] = GRADIENT_Y[hash & 15];
+	}
+
+	private static DoubleVector planarGrad(double[] gradients, int corner, DoubleVector x, DoubleVector y) {
+		DoubleVector gradientX = DoubleVector.fromArray(SPECIES, gradients, 2 * corner * LANES);
+		DoubleVector gradientY = DoubleVector.fromArray(SPECIES, gradients, (2 * corner + 1) * LANES);
+		return gradientX.mul(x).add(gradientY.mul(y));
+	}
+
+	/**
+	 * Split the points starting at i into the floors of their coordinates and
+	 * what is left over, and compute the fade curves of the fractions
+	 *
+	 * @return false if a floor is too large or NaN to be hashed with ints
+	 */
+	private static boolean splitCoordinates(double[] x, double[] y, double[] z, int i, double[] floors,
+			double[] fractions, double[] fades) {
+		for (int axis = 0; axis < 3; axis++) {
+			double[] coordinates = axis == 0 ? x : axis == 1 ? y : z;
+			DoubleVector coordinate = DoubleVector.fromArray(SPECIES, coordinates, i);
+			DoubleVector floor = floor(coordinate);
+			if (!floor.abs().compare(VectorOperators.LT, TWO_31).allTrue()) {
+				return false;
+			}
+			floor.intoArray(floors, axis * LANES);
+			// t * t * t * (t * (t * 6 - 15) + 10)
+			DoubleVector t = coordinate.sub(floor);
+			t.intoArray(fractions, axis * LANES);
+			t.mul(t).mul(t).mul(t.mul(t.mul(6.0).sub(15.0)).add(10.0)).intoArray(fades, axis * LANES);
+		}
+		return true;
+	}
+
+	/**
+	 * Look up the permutation hashes of the eight corners of the unit cube of
+	 * each lane, the way ImprovedNoise does, corner by corner
+	 */
+	private static void hashCorners(double[] floors, long[] hashes) {
+		int[] p = PERMUTATION;
+		for (int lane = 0; lane < LANES; lane++) {
+			int cubeX = (int) floors[lane] & 255;
+			int cubeY = (int) floors[LANES + lane] & 255;
+			int cubeZ = (int) floors[2 * LANES + lane] & 255;
+			int a = p[cubeX] + cubeY;
+			int aa = p[a] + cubeZ;
+			int ab = p[a + 1] + cubeZ;
+			int b = p[cubeX + 1] + cubeY;
+			int ba = p[b] + cubeZ;
+			int bb = p[b + 1] + cubeZ;
+			hashes[lane] = p[aa];
+			hashes[LANES + lane] = p[ba];
+			hashes[2 * LANES + lane] = p[ab];
+			hashes[3 * LANES + lane] = p[bb];
+			hashes[4 * LANES + lane] = p[aa + 1];
+			hashes[5 * LANES + lane] = p[ba + 1];
+			hashes[6 * LANES + lane] = p[ab + 1];
+			hashes[7 * LANES + lane] = p[bb + 1];
+		}
+	}
+
+	/**
+	 * Compute the gradient at each corner of the cubes of the lanes
+	 */
+	private static void gradients(double[] fractions, long[] hashes, double[] gradients) {
+		for (int corner = 0; corner < CORNERS; corner++) {
+			// the corners are in the order ImprovedNoise visits them
+			DoubleVector x = DoubleVector.fromArray(SPECIES, fractions, 0);
+			DoubleVector y = DoubleVector.fromArray(SPECIES, fractions, LANES);
+			DoubleVector z = DoubleVector.fromArray(SPECIES, fractions, 2 * LANES);
+			grad(hashes, corner, (corner & 1) == 0 ? x : x.sub(1.0), (corner & 2) == 0 ? y : y.sub(1.0),
+					(corner & 4) == 0 ? z : z.sub(1.0)).intoArray(gradients, corner * LANES);
+		}
+	}
+
+	/**
+	 * Blend the gradients of the corners of the cubes, as ImprovedNoise does:
+	 * first pairs of corners along x, then pairs of those along y, then the
+	 * last pair along z. Each step overwrites the start of gradients with its
+	 * results, and the noise of the points starting at i ends up in out.
+	 */
+	private static void blendGradients(double[] fades, double[] gradients, double[] out, int i) {
+		for (int axis = 0, count = CORNERS / 2; axis < 3; axis++, count /= 2) {
+			DoubleVector t = DoubleVector.fromArray(SPECIES, fades, axis * LANES);
+			for (int pair = 0; pair < count; pair++) {
+				DoubleVector a = DoubleVector.fromArray(SPECIES, gradients, 2 * pair * LANES);
+				DoubleVector b = DoubleVector.fromArray(SPECIES, gradients, (2 * pair + 1) * LANES);
+				a.add(t.mul(b.sub(a))).intoArray(gradients, pair * LANES);
+			}
+		}
+		DoubleVector.fromArray(SPECIES, gradients, 0).intoArray(out, i);
+	}
+
+	private static DoubleVector grad(long[] hashes, int corner, DoubleVector x, DoubleVector y, DoubleVector z) {
+		LongVector h = LongVector.fromArray(HASH_SPECIES, hashes, corner * LANES).and(15);
+		VectorMask<Double> below8 = h.lt(8).cast(SPECIES);
+		VectorMask<Double> below4 = h.lt(4).cast(SPECIES);
+		VectorMask<Double> twelveOr14 = h.eq(12).or(h.eq(14)).cast(SPECIES);
+		VectorMask<Double> negateU = h.and(1).eq(0).not().cast(SPECIES);
+		VectorMask<Double> negateV = h.and(2).eq(0).not().cast(SPECIES);
+		DoubleVector u = y.blend(x, below8);
+		DoubleVector v = z.blend(x, twelveOr14).blend(y, below4);
+		return u.blend(u.neg(), negateU).add(v.blend(v.neg(), negateV));
+	}
+
+	/**
+	 * Rounds toward negative infinity exactly as Math.floor does, including for
+	 * -0.0, NaN and infinities
+	 */
+	private static DoubleVector floor(DoubleVector a) {
+		// adding and subtracting 2^52 rounds anything smaller to an integer
+		DoubleVector magic = DoubleVector.broadcast(SPECIES, TWO_52).blend(-TWO_52, a.lt(0.0));
+		DoubleVector rounded = a.add(magic).sub(magic);
+		DoubleVector floor = rounded.lanewise(VectorOperators.SUB, 1.0, rounded.compare(VectorOperators.GT, a));
+		// larger values are integers already, and rounding loses the sign of -0.0
+		return floor.blend(a, a.abs().compare(VectorOperators.LT, TWO_52).not().or(a.eq(0.0)));
+	}
+
+	/**
+	 * Rounds toward zero, returning values of 2^52 or more, infinities and NaN
+	 * as they are
+	 */
+	private static DoubleVector truncate(DoubleVector a) {
+		DoubleVector magnitude = floor(a.abs());
+		return magnitude.blend(magnitude.neg(), a.lt(0.0));
+	}
+}
@@ -0,0 +1,23 @@
+package picasso.engine;
+
+/**
+ * Evaluates the expression a row at a time like BatchEngine, with chains of
+ * affine color transforms merged into one matrix by AffineColorFusion first.
+ * The matrix rounds differently from the chain, and cancelled conversion pairs
+ * are only the identity to within a fraction of a color step, so a few pixels
+ * can come out a step away from the exact image; run PrecisionCheck affine to
+ * count them.
+ *
+ * @author Mark Holden
+ */
+public class AffineEngine extends BatchEngine {
+
+	public AffineEngine() {
+		super(true);
+	}
+
+	@Override
+	public String getName() {
+		return "affine";
+	}
+}
@@ -0,0 +1,112 @@
+package picasso.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import picasso.parser.AffineColorFusion;
+import picasso.parser.FunctionFusion;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * Evaluates the expression tree a whole row at a time, so each node is visited
+ * once per row instead of once per pixel. Chains of functions are fused into
+ * one node first, so each is a single pass over the row.
+ *
+ * Merging chains of affine color transforms into one matrix changes how they
+ * round, which moves a few pixels by a step, so only AffineEngine does it.
+ *
+ * @author Mark Holden
+ */
+public class BatchEngine implements RenderEngine {
+
+	private boolean myMergingColors;
+
+	public BatchEngine() {
+		this(false);
+	}
+
+	/**
+	 * @param mergingColors true to merge chains of affine color transforms
+	 */
+	protected BatchEngine(boolean mergingColors) {
+		myMergingColors = mergingColors;
+	}
+
+	@Override
+	public String getName() {
+		return "batch";
+	}
+
+	@Override
+	public PreparedExpression prepare(ExpressionTreeNode expr) {
+		AffineColorFusion colors = myMergingColors ? new AffineColorFusion() : null;
+		FunctionFusion functions = new FunctionFusion();
+		ExpressionTreeNode fused = functions.fuse(colors == null ? expr : colors.fuse(expr));
+		return new PreparedExpression() {
+			@Override
+			public RowEvaluator createRowEvaluator(int maxWidth) {
+				return new BatchRowEvaluator(fused, maxWidth);
+			}
+
+			@Override
+			public String describe() {
+				return describeFusion(colors, functions);
+			}
+		};
+	}
+
+	/**
+	 * Returns how many chains of color transforms and of functions were merged,
+	 * for the render log
+	 *
+	 * @param colors the color transform pass, or null if there was none
+	 */
+	static String describeFusion(AffineColorFusion colors, FunctionFusion functions) {
+		List<String> parts = new ArrayList<>();
+		if (colors != null) {
+			count(parts, colors.getChainCount(), "color transform chain", "merged");
+			count(parts, colors.getCancelledCount(), "color transform chain", "cancelled");
+		}
+		count(parts, functions.getChainCount(), "function chain", "fused");
+		return String.join(", ", parts);
+	}
+
+	private static void count(List<String> parts, int count, String noun, String verb) {
+		if (count > 0) {
+			parts.add(count + " " + noun + (count == 1 ? "" : "s") + " " + verb);
+		}
+	}
+
+	/**
+	 * Keeps the planes for one thread's rows
+	 */
+	private static class BatchRowEvaluator implements RowEvaluator {
+		private ExpressionTreeNode expr;
+		private BatchBuffers buffers;
+		private double[] ys;
+		private double[] red;
+		private double[] green;
+		private double[] blue;
+
+		BatchRowEvaluator(ExpressionTreeNode expr, int maxWidth) {
+			this.expr = expr;
+			buffers = new BatchBuffers(maxWidth);
+			ys = new double[maxWidth];
+			red = new double[maxWidth];
+			green = new double[maxWidth];
+			blue = new double[maxWidth];
+		}
+
+		@Override
+		public void evaluateRow(double[] xs, double y, int length, int[] rgb, int offset) {
+			Arrays.fill(ys, 0, length, y);
+			expr.evaluate(xs, ys, length, red, green, blue, buffers);
+			for (int i = 0; i < length; i++) {
+				rgb[offset + i] = RGBColor.toRGB(red[i], green[i], blue[i]);
+			}
+		}
+	}
+}
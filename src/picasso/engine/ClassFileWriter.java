@@ -0,0 +1,342 @@
+package picasso.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the bytes of a class file. It supports only what ExpressionCompiler
+ * needs: a constant pool, no fields, and methods made of straight-line code.
+ * Because the code never branches, the methods need no stack map frames.
+ *
+ * @author Mark Holden
+ */
+class ClassFileWriter {
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_PRIVATE = 0x0002;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	// the most operand stack any of the generated code uses
+	private static final int MAX_STACK = 16;
+	private static final int JAVA_8 = 52;
+
+	private ByteArrayOutputStream myPoolBytes;
+	private DataOutputStream myPool;
+	private Map<String, Integer> myConstants;
+	private int myPoolCount;
+	private List<byte[]> myMethods;
+	private int myThisClass;
+	private int mySuperClass;
+
+	/**
+	 * Start a public final class
+	 *
+	 * @param name      the internal name of the class, such as picasso/engine/Foo
+	 * @param superName the internal name of its superclass
+	 */
+	ClassFileWriter(String name, String superName) {
+		myPoolBytes = new ByteArrayOutputStream();
+		myPool = new DataOutputStream(myPoolBytes);
+		myConstants = new HashMap<>();
+		myPoolCount = 1;
+		myMethods = new ArrayList<>();
+		myThisClass = classRef(name);
+		mySuperClass = classRef(superName);
+	}
+
+	/**
+	 * Returns the constant pool index of the given constant, adding it if this is
+	 * the first time it is used
+	 */
+	private int constant(String key, int tag, byte[] body, int entries) {
+		Integer index = myConstants.get(key);
+		if (index != null) {
+			return index;
+		}
+		if (myPoolCount + entries > 0xFFFF) {
+			throw new IllegalStateException("Too many constants for one class");
+		}
+		try {
+			myPool.writeByte(tag);
+			myPool.write(body);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		index = myPoolCount;
+		myPoolCount += entries;
+		myConstants.put(key, index);
+		return index;
+	}
+
+	private static byte[] u2(int... values) {
+		byte[] bytes = new byte[values.length * 2];
+		for (int i = 0; i < values.length; i++) {
+			bytes[2 * i] = (byte) (values[i] >>> 8);
+			bytes[2 * i + 1] = (byte) values[i];
+		}
+		return bytes;
+	}
+
+	int utf8(String text) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			new DataOutputStream(bytes).writeUTF(text);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return constant("U" + text, 1, bytes.toByteArray(), 1);
+	}
+
+	int classRef(String name) {
+		return constant("C" + name, 7, u2(utf8(name)), 1);
+	}
+
+	int doubleConstant(double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		// a double takes two entries of the constant pool
+		return constant("D" + bits, 6, u8(bits), 2);
+	}
+
+	int longConstant(long value) {
+		// so does a long
+		return constant("J" + value, 5, u8(value), 2);
+	}
+
+	private static byte[] u8(long value) {
+		byte[] body = new byte[8];
+		for (int i = 0; i < 8; i++) {
+			body[i] = (byte) (value >>> (56 - 8 * i));
+		}
+		return body;
+	}
+
+	private int nameAndType(String name, String descriptor) {
+		return constant("N" + name + ":" + descriptor, 12, u2(utf8(name), utf8(descriptor)), 1);
+	}
+
+	int fieldRef(String owner, String name, String descriptor) {
+		return constant("F" + owner + "." + name + ":" + descriptor, 9,
+				u2(classRef(owner), nameAndType(name, descriptor)), 1);
+	}
+
+	int methodRef(String owner, String name, String descriptor) {
+		return constant("M" + owner + "." + name + ":" + descriptor, 10,
+				u2(classRef(owner), nameAndType(name, descriptor)), 1);
+	}
+
+	/**
+	 * Create an empty method body whose first free local variable is the given
+	 * one
+	 */
+	Code newCode(int firstLocal) {
+		return new Code(firstLocal);
+	}
+
+	/**
+	 * Add a method to the class
+	 *
+	 * @param access     the access flags of the method
+	 * @param name       the name of the method
+	 * @param descriptor the descriptor of the method
+	 * @param code       the body of the method, which must end in a return
+	 */
+	void addMethod(int access, String name, String descriptor, Code code) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(1);
+			out.writeShort(utf8("Code"));
+			byte[] instructions = code.myBytes.toByteArray();
+			out.writeInt(12 + instructions.length);
+			out.writeShort(MAX_STACK);
+			out.writeShort(code.myNextLocal);
+			out.writeInt(instructions.length);
+			out.write(instructions);
+			// no exception table and no attributes
+			out.writeShort(0);
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		myMethods.add(bytes.toByteArray());
+	}
+
+	/**
+	 * Returns the bytes of the finished class file
+	 */
+	byte[] toByteArray() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(JAVA_8);
+			out.writeShort(myPoolCount);
+			out.write(myPoolBytes.toByteArray());
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(myThisClass);
+			out.writeShort(mySuperClass);
+			// no interfaces and no fields
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(myMethods.size());
+			for (byte[] method : myMethods) {
+				out.write(method);
+			}
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * The instructions of one method body, along with the local variables it
+	 * has allocated
+	 */
+	class Code {
+		static final int ICONST_0 = 0x03;
+		static final int DCONST_0 = 0x0e;
+		static final int DCONST_1 = 0x0f;
+		static final int ALOAD_0 = 0x2a;
+		static final int ALOAD_1 = 0x2b;
+		static final int AALOAD = 0x32;
+		static final int DALOAD = 0x31;
+		static final int DASTORE = 0x52;
+		static final int IADD = 0x60;
+		static final int DADD = 0x63;
+		static final int DSUB = 0x67;
+		static final int DMUL = 0x6b;
+		static final int DDIV = 0x6f;
+		static final int DNEG = 0x77;
+		static final int RETURN = 0xb1;
+
+		private static final int BIPUSH = 0x10;
+		private static final int SIPUSH = 0x11;
+		private static final int LDC2_W = 0x14;
+		private static final int ILOAD = 0x15;
+		private static final int DLOAD = 0x18;
+		private static final int ALOAD = 0x19;
+		private static final int DSTORE = 0x39;
+		private static final int GETFIELD = 0xb4;
+		private static final int INVOKEVIRTUAL = 0xb6;
+		private static final int INVOKESPECIAL = 0xb7;
+		private static final int INVOKESTATIC = 0xb8;
+		private static final int CHECKCAST = 0xc0;
+		private static final int WIDE = 0xc4;
+
+		private ByteArrayOutputStream myBytes;
+		private int myNextLocal;
+
+		private Code(int firstLocal) {
+			myBytes = new ByteArrayOutputStream();
+			myNextLocal = firstLocal;
+		}
+
+		/**
+		 * Returns the number of bytes of code so far
+		 */
+		int size() {
+			return myBytes.size();
+		}
+
+		/**
+		 * Reserve a local variable for a double
+		 *
+		 * @return the index of the new local
+		 */
+		int newDoubleLocal() {
+			int local = myNextLocal;
+			myNextLocal += 2;
+			if (myNextLocal > 0xFFFF) {
+				throw new IllegalStateException("Too many local variables for one method");
+			}
+			return local;
+		}
+
+		void op(int opcode) {
+			myBytes.write(opcode);
+		}
+
+		private void opWithIndex(int opcode, int index) {
+			myBytes.write(opcode);
+			myBytes.write(index >>> 8);
+			myBytes.write(index);
+		}
+
+		private void local(int opcode, int index) {
+			if (index > 0xFF) {
+				myBytes.write(WIDE);
+				opWithIndex(opcode, index);
+			} else {
+				myBytes.write(opcode);
+				myBytes.write(index);
+			}
+		}
+
+		void loadDouble(int local) {
+			local(DLOAD, local);
+		}
+
+		void storeDouble(int local) {
+			local(DSTORE, local);
+		}
+
+		void loadInt(int local) {
+			local(ILOAD, local);
+		}
+
+		void loadReference(int local) {
+			local(ALOAD, local);
+		}
+
+		void pushDouble(double value) {
+			opWithIndex(LDC2_W, doubleConstant(value));
+		}
+
+		void pushLong(long value) {
+			opWithIndex(LDC2_W, longConstant(value));
+		}
+
+		void pushInt(int value) {
+			if (value >= -1 && value <= 5) {
+				op(ICONST_0 + value);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				op(BIPUSH);
+				myBytes.write(value);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				opWithIndex(SIPUSH, value);
+			} else {
+				throw new IllegalStateException("Integer too large for generated code: " + value);
+			}
+		}
+
+		void getField(String owner, String name, String descriptor) {
+			opWithIndex(GETFIELD, fieldRef(owner, name, descriptor));
+		}
+
+		void checkCast(String type) {
+			opWithIndex(CHECKCAST, classRef(type));
+		}
+
+		void invokeStatic(String owner, String name, String descriptor) {
+			opWithIndex(INVOKESTATIC, methodRef(owner, name, descriptor));
+		}
+
+		void invokeVirtual(String owner, String name, String descriptor) {
+			opWithIndex(INVOKEVIRTUAL, methodRef(owner, name, descriptor));
+		}
+
+		void invokeSpecial(String owner, String name, String descriptor) {
+			opWithIndex(INVOKESPECIAL, methodRef(owner, name, descriptor));
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package picasso.engine;
+
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Compiles the expression to JVM bytecode once per render and evaluates the
+ * generated code one pixel at a time. If the expression cannot be compiled the
+ * tree is evaluated instead, and the render report says why.
+ *
+ * @author Mark Holden
+ */
+public class CompiledEngine implements RenderEngine {
+
+	private ScalarEngine myScalarEngine = new ScalarEngine();
+
+	@Override
+	public String getName() {
+		return "compiled";
+	}
+
+	@Override
+	public PreparedExpression prepare(ExpressionTreeNode expr) {
+		CompiledExpression compiled;
+		try {
+			compiled = ExpressionCompiler.compile(expr);
+		} catch (IllegalStateException e) {
+			return fallBack(expr, e);
+		}
+		PreparedExpression prepared = myScalarEngine.prepare(compiled);
+		return new PreparedExpression() {
+			@Override
+			public RowEvaluator createRowEvaluator(int maxWidth) {
+				return prepared.createRowEvaluator(maxWidth);
+			}
+
+			@Override
+			public String describe() {
+				return compiled.getMethodCount() + " methods, " + compiled.getInterpretedCount()
+						+ " interpreted subtrees";
+			}
+		};
+	}
+
+	/**
+	 * Returns the expression prepared by the scalar engine, described as not
+	 * compiled because of the given failure
+	 */
+	private PreparedExpression fallBack(ExpressionTreeNode expr, IllegalStateException failure) {
+		PreparedExpression fallback = myScalarEngine.prepare(expr);
+		Throwable cause = failure.getCause() == null ? failure : failure.getCause();
+		return new PreparedExpression() {
+			@Override
+			public RowEvaluator createRowEvaluator(int maxWidth) {
+				return fallback.createRowEvaluator(maxWidth);
+			}
+
+			@Override
+			public String describe() {
+				String details = fallback.describe();
+				return "not compiled (" + cause.getClass().getSimpleName() + "), interpreted"
+						+ (details.isEmpty() ? "" : ", " + details);
+			}
+		};
+	}
+}
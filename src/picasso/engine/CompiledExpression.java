@@ -0,0 +1,111 @@
+package picasso.engine;
+
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * An expression that ExpressionCompiler has turned into JVM bytecode. The
+ * generated subclass computes the three channels with straight-line code on
+ * primitive doubles, so it can be used anywhere the original tree can, but
+ * HotSpot sees one flat method instead of a tree of virtual evaluate calls.
+ *
+ * Nodes the compiler does not support are left to the tree interpreter: the
+ * generated code calls their slot evaluate.
+ *
+ * @author Mark Holden
+ */
+public abstract class CompiledExpression extends ExpressionTreeNode {
+
+	// read by the generated code, which is in this package
+	final ExpressionTreeNode[] myNodes;
+
+	private ExpressionTreeNode mySource;
+	private int mySlotCount;
+	private int myInterpretedCount;
+	private int myMethodCount;
+
+	/**
+	 * Called by the generated subclass
+	 *
+	 * @param nodes the nodes the generated code calls back into
+	 */
+	protected CompiledExpression(ExpressionTreeNode[] nodes) {
+		myNodes = nodes;
+	}
+
+	/**
+	 * Record what the compiler produced
+	 */
+	void describe(ExpressionTreeNode source, int slotCount, int interpretedCount, int methodCount) {
+		mySource = source;
+		mySlotCount = slotCount;
+		myInterpretedCount = interpretedCount;
+		myMethodCount = methodCount;
+	}
+
+	/**
+	 * Returns the expression this was compiled from
+	 */
+	public ExpressionTreeNode getSource() {
+		return mySource;
+	}
+
+	/**
+	 * Returns the number of subtrees the generated code leaves to the tree
+	 * interpreter
+	 */
+	public int getInterpretedCount() {
+		return myInterpretedCount;
+	}
+
+	/**
+	 * Returns the number of methods the code was split into. HotSpot will not
+	 * compile a very large method, so large expressions are spread over several.
+	 */
+	public int getMethodCount() {
+		return myMethodCount;
+	}
+
+	/**
+	 * The generated code keeps its intermediate values in local variables and
+	 * only uses slots to receive the results of interpreted subtrees and of the
+	 * methods it was split into.
+	 * 
+	 * @see picasso.parser.language.ExpressionTreeNode#getSlotCount()
+	 */
+	@Override
+	public int getSlotCount() {
+		return mySlotCount;
+	}
+
+	@Override
+	public abstract void evaluate(double x, double y, double[] slots, int slot);
+
+	@Override
+	public RGBColor evaluate(double x, double y) {
+		double[] slots = new double[mySlotCount];
+		evaluate(x, y, slots, 0);
+		return new RGBColor(slots[0], slots[1], slots[2]);
+	}
+
+	/**
+	 * Evaluates the generated code once for each point of the batch.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		double[] slots = new double[mySlotCount];
+		for (int i = 0; i < length; i++) {
+			evaluate(xs[i], ys[i], slots, 0);
+			red[i] = slots[0];
+			green[i] = slots[1];
+			blue[i] = slots[2];
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "compiled " + mySource;
+	}
+}
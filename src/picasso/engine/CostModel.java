@@ -0,0 +1,229 @@
+package picasso.engine;
+
+import java.awt.Dimension;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Predicts how long an expression takes to render from a weight for each kind
+ * of node: the time the node itself takes per pixel, not counting its
+ * children. The weights come from a short calibration run that times each
+ * function and operator on a batch of points, so they fit the machine the
+ * model runs on. Image lookups depend on the image, since a large one misses
+ * the cache at every pixel, so each image is timed when it is first met.
+ *
+ * The prediction is for evaluating every pixel a row at a time, as the batch
+ * engine does, with each node paid for wherever it appears. Tiles filled from
+ * bounds, mirrored pixels, tables and merged subexpressions make renders
+ * faster than that, and other threads and the garbage collector slower, so it
+ * is a rough guide: on the sample expressions, within a factor of about three
+ * of the batch engine's time either way.
+ *
+ * @author Mark Holden
+ */
+public class CostModel {
+	// points per timed batch, batches per trial, trials per node and passes
+	// over all the nodes
+	private static final int BATCH = 512;
+	private static final int REPEATS = 40;
+	private static final int TRIALS = 5;
+	private static final int PASSES = 2;
+	// the iterations of the timed escape-time fractals
+	private static final int ITERATIONS = 100;
+	// the octaves of the timed fractal noises
+	private static final int OCTAVES = 8;
+
+	private static final List<Class<? extends ExpressionTreeNode>> UNARY = List.of(Sine.class, Cos.class,
+			Tan.class, Atan.class, Exp.class, Log.class, Floor.class, Ceil.class, Abs.class, Clamp.class,
+			Wrap.class, Not.class, RgbToYCrCb.class, YCrCbToRGB.class);
+	private static final List<Class<? extends ExpressionTreeNode>> BINARY = List.of(Addition.class,
+			Subtraction.class, Multiplication.class, Division.class, Modulo.class, Exponentiation.class,
+			PerlinBW.class, PerlinColor.class);
+
+	private static CostModel ourCalibrated;
+
+	private Map<Class<?>, Double> myWeights;
+	private double myDefaultWeight;
+	private Map<ExpressionTreeNode, Double> myImageWeights = Collections.synchronizedMap(new WeakHashMap<>());
+
+	/**
+	 * Create a model with the given weights
+	 *
+	 * @param weights       the nanoseconds per pixel each kind of node takes,
+	 *                      not counting its children
+	 * @param defaultWeight the nanoseconds per pixel for any other node
+	 */
+	public CostModel(Map<Class<?>, Double> weights, double defaultWeight) {
+		myWeights = new HashMap<>(weights);
+		myDefaultWeight = defaultWeight;
+	}
+
+	/**
+	 * Returns the model calibrated on this machine, running the calibration the
+	 * first time it is asked for
+	 */
+	public static synchronized CostModel getCalibrated() {
+		if (ourCalibrated == null) {
+			ourCalibrated = calibrate();
+		}
+		return ourCalibrated;
+	}
+
+	/**
+	 * Time each kind of node on a batch of points and return a model with the
+	 * results. This takes a fraction of a second. The nodes are timed in
+	 * several passes, keeping the fastest time of each, since the JIT may
+	 * still be compiling the shared code, such as the leaves, during the first.
+	 */
+	public static CostModel calibrate() {
+		Map<Class<?>, Double> weights = measure();
+		for (int pass = 1; pass < PASSES; pass++) {
+			measure().forEach((type, weight) -> weights.merge(type, weight, Math::min));
+		}
+		// anything else, such as an assignment, costs about as much as a sum
+		return new CostModel(weights, weights.get(Addition.class));
+	}
+
+	private static Map<Class<?>, Double> measure() {
+		double[] xs = new double[BATCH];
+		double[] ys = new double[BATCH];
+		for (int i = 0; i < BATCH; i++) {
+			xs[i] = -1 + 2.0 * i / BATCH;
+			ys[i] = Math.sin(i);
+		}
+		Map<Class<?>, Double> weights = new HashMap<>();
+		double[][] xBatches = { xs };
+		double[][] yBatches = { ys };
+		double leaf = time(new X(), xBatches, yBatches);
+		weights.put(X.class, leaf);
+		weights.put(Y.class, time(new Y(), xBatches, yBatches));
+		weights.put(Constant.class, time(new Constant(0.5), xBatches, yBatches));
+		weights.put(RGBColor.class, time(new RGBColor(0.5, -0.5, 0.25), xBatches, yBatches));
+		weights.put(Random.class, time(new Random(), xBatches, yBatches));
+		for (Class<? extends ExpressionTreeNode> type : UNARY) {
+			weights.put(type, Math.max(0, time(create(type, new X()), xBatches, yBatches) - leaf));
+		}
+		for (Class<? extends ExpressionTreeNode> type : BINARY) {
+			weights.put(type, Math.max(0, time(create(type, new X(), new Y()), xBatches, yBatches) - 2 * leaf));
+		}
+		// escape-time fractals are weighed per iteration, since that is how long
+		// their orbits may run
+		ExpressionTreeNode mandelbrot = new Mandelbrot(new X(), new Y(), ITERATIONS);
+		ExpressionTreeNode julia = new Julia(new X(), new Y(), new Constant(-0.8), new Constant(0.156), ITERATIONS);
+		weights.put(Mandelbrot.class, Math.max(0, time(mandelbrot, xBatches, yBatches) - 2 * leaf) / ITERATIONS);
+		weights.put(Julia.class, Math.max(0, time(julia, xBatches, yBatches) - 2 * leaf) / ITERATIONS);
+		// and fractal noises per octave, each of which samples noise again
+		ExpressionTreeNode fbm = new Fbm(new X(), new Y(), OCTAVES);
+		ExpressionTreeNode turbulence = new Turbulence(new X(), new Y(), OCTAVES);
+		weights.put(Fbm.class, Math.max(0, time(fbm, xBatches, yBatches) - 2 * leaf) / OCTAVES);
+		weights.put(Turbulence.class, Math.max(0, time(turbulence, xBatches, yBatches) - 2 * leaf) / OCTAVES);
+		return weights;
+	}
+
+	private static ExpressionTreeNode create(Class<? extends ExpressionTreeNode> type,
+			ExpressionTreeNode... children) {
+		Class<?>[] parameters = new Class<?>[children.length];
+		Arrays.fill(parameters, ExpressionTreeNode.class);
+		try {
+			Constructor<? extends ExpressionTreeNode> constructor = type.getConstructor(parameters);
+			return constructor.newInstance((Object[]) children);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Cannot calibrate " + type.getSimpleName(), e);
+		}
+	}
+
+	/**
+	 * Returns the fewest nanoseconds per point the node took over several
+	 * trials, which discounts trials slowed by compiling or other threads. Each
+	 * trial evaluates the batches of points in turn.
+	 */
+	private static double time(ExpressionTreeNode node, double[][] xs, double[][] ys) {
+		BatchBuffers buffers = new BatchBuffers(BATCH);
+		double[] red = new double[BATCH];
+		double[] green = new double[BATCH];
+		double[] blue = new double[BATCH];
+		long best = Long.MAX_VALUE;
+		for (int trial = 0; trial < TRIALS; trial++) {
+			long start = System.nanoTime();
+			for (int repeat = 0; repeat < REPEATS; repeat++) {
+				int batch = repeat % xs.length;
+				node.evaluate(xs[batch], ys[batch], BATCH, red, green, blue, buffers);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return (double) best / (REPEATS * BATCH);
+	}
+
+	/**
+	 * Returns the nanoseconds per pixel the given kind of node takes, not
+	 * counting its children, or per pixel and iteration for an escape-time
+	 * fractal and per pixel and octave for a fractal noise
+	 */
+	public double getWeight(Class<?> type) {
+		return myWeights.getOrDefault(type, myDefaultWeight);
+	}
+
+	/**
+	 * Returns the predicted nanoseconds one thread spends on each pixel of the
+	 * expression
+	 */
+	public double getCostPerPixel(ExpressionTreeNode expr) {
+		return cost(expr);
+	}
+
+	/**
+	 * Returns the predicted nanoseconds to render the expression at the given
+	 * size on the given number of threads
+	 */
+	public long predictNanos(ExpressionTreeNode expr, Dimension size, int threads) {
+		double pixels = (double) size.width * size.height;
+		return (long) (getCostPerPixel(expr) * pixels / Math.max(1, threads));
+	}
+
+	private double cost(ExpressionTreeNode node) {
+		double cost = node instanceof Image ? getImageWeight(node) : getWeight(node.getClass());
+		if (node instanceof EscapeTimeFractal) {
+			cost *= ((EscapeTimeFractal) node).getIterations();
+		} else if (node instanceof FractalNoise) {
+			// a quantized sum may stop early, but not at every point
+			cost *= ((FractalNoise) node).getOctaves();
+		}
+		for (ExpressionTreeNode child : node.getChildren()) {
+			cost += cost(child);
+		}
+		return cost;
+	}
+
+	/**
+	 * Returns the nanoseconds per lookup in the image, timing lookups at
+	 * scattered points the first time the image is met. Every batch has
+	 * different points, so a large image misses the cache as it would in a
+	 * render.
+	 */
+	private double getImageWeight(ExpressionTreeNode image) {
+		Double weight = myImageWeights.get(image);
+		if (weight == null) {
+			java.util.Random random = new java.util.Random(BATCH);
+			double[][] xs = new double[REPEATS][BATCH];
+			double[][] ys = new double[REPEATS][BATCH];
+			for (int batch = 0; batch < REPEATS; batch++) {
+				for (int i = 0; i < BATCH; i++) {
+					xs[batch][i] = random.nextDouble() * 2 - 1;
+					ys[batch][i] = random.nextDouble() * 2 - 1;
+				}
+			}
+			weight = time(image, xs, ys);
+			myImageWeights.put(image, weight);
+		}
+		return weight;
+	}
+}
@@ -0,0 +1,427 @@
+package picasso.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import picasso.parser.ChannelAnalysis;
+import picasso.parser.SeparableSubexpressions;
+import picasso.parser.SeparableSubexpressions.Dependency;
+import picasso.parser.language.ExpressionDag;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.SharedExpression;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Evaluates expressions that are the sine or cosine of an argument, passed
+ * through steps that are monotone along a row, such as sin(x * y / 0.1) or
+ * clamp(cos(x + y) * 2 + y), without calling Math.sin or Math.cos at every
+ * pixel. The argument is computed for the whole row by an ExpressionProgram,
+ * and the sine and cosine are advanced from one pixel to the next by rotating
+ * them through the difference of the arguments. The recurrence is restarted
+ * from Math.sin and Math.cos every RESYNC_INTERVAL pixels, or sooner if the
+ * argument jumps, so its drift stays small.
+ *
+ * Alongside each value the evaluator keeps a bound on its error: the error it
+ * started with, the truncation of the series for the step's sine and cosine,
+ * and the rounding of every step. The steps after the sine are monotone, so
+ * pushing the value minus and plus its error through them bounds the color
+ * the tree would compute. If both bounds draw the same pixel, that is the
+ * pixel; otherwise the pixel is computed directly, with Math.sin or Math.cos
+ * of the same argument. Either way the image is the same as the tree's.
+ *
+ * Only a single sine or cosine at the root is differenced, under steps that
+ * are monotone in it. The pixel check needs the color to move one way with
+ * the sine, so that the error bound maps to one range of pixels. A sinusoid
+ * deeper in the tree, such as one of the two in sin(x * 3) * cos(x * 2) or one
+ * under perlinBW, would need its bound pushed through parents that are not
+ * monotone in it. That is not done here, so such expressions, which are most
+ * generated ones, get no benefit. Expressions of any shape but the one above
+ * are rendered by the fallback engine, and the render log says "nothing to
+ * difference".
+ *
+ * @author Mark Holden
+ */
+public class DifferencingEngine implements RenderEngine {
+	// the recurrence is restarted from Math.sin and Math.cos this often
+	public static final int RESYNC_INTERVAL = 32;
+	// a larger change in the argument between pixels restarts the recurrence
+	private static final double MAX_STEP = 0.25;
+	// Math.sin and Math.cos are within an ulp of the exact value, at most 1
+	private static final double LIBRARY_ERROR = Math.ulp(1.0);
+	// the rounding of the series and the rotation in one step, generously
+	private static final double STEP_ROUNDING = 16 * Math.ulp(1.0);
+	// the relative rounding of the difference of two arguments
+	private static final double DIFFERENCE_ROUNDING = Math.ulp(1.0) / 2;
+
+	// the steps between the sine and the color, applied to each channel
+	private static final int CLAMP = 0;
+	private static final int FLOOR = 1;
+	private static final int CEIL = 2;
+	private static final int EXP = 3;
+	private static final int ATAN = 4;
+	private static final int NEGATE = 5;
+	private static final int ADD = 6;
+	private static final int SUBTRACT = 7;
+	private static final int SUBTRACT_FROM = 8;
+	private static final int MULTIPLY = 9;
+	private static final int DIVIDE = 10;
+
+	private static final Map<Class<?>, Integer> UNARY_STEPS = Map.of(Clamp.class, CLAMP, Floor.class, FLOOR,
+			Ceil.class, CEIL, Exp.class, EXP, Atan.class, ATAN, Not.class, NEGATE);
+
+	private RenderEngine myFallback;
+
+	/**
+	 * Create an engine that falls back to the vm engine
+	 */
+	public DifferencingEngine() {
+		this(new ProgramEngine());
+	}
+
+	/**
+	 * Create an engine that renders expressions it cannot difference with the
+	 * given engine
+	 */
+	public DifferencingEngine(RenderEngine fallback) {
+		myFallback = fallback;
+	}
+
+	@Override
+	public String getName() {
+		return "differencing";
+	}
+
+	@Override
+	public PreparedExpression prepare(ExpressionTreeNode expr) {
+		Sinusoid sinusoid = Sinusoid.find(expr);
+		if (sinusoid == null) {
+			PreparedExpression fallback = myFallback.prepare(expr);
+			return new PreparedExpression() {
+				@Override
+				public RowEvaluator createRowEvaluator(int maxWidth) {
+					return fallback.createRowEvaluator(maxWidth);
+				}
+
+				@Override
+				public String describe() {
+					String details = fallback.describe();
+					return "nothing to difference" + (details.isEmpty() ? "" : ", " + details);
+				}
+			};
+		}
+		PlaneKernels kernels = SimdEngine.detectKernels();
+		LongAdder pixels = new LongAdder();
+		LongAdder direct = new LongAdder();
+		return new PreparedExpression() {
+			@Override
+			public RowEvaluator createRowEvaluator(int maxWidth) {
+				return new DifferencingRowEvaluator(sinusoid, maxWidth, kernels, pixels, direct);
+			}
+
+			@Override
+			public String describe() {
+				long total = Math.max(1, pixels.sum());
+				return "differenced " + (sinusoid.cosine ? "cos" : "sin") + ", " + direct.sum() * 100 / total
+						+ "% of pixels computed directly";
+			}
+		};
+	}
+
+	/**
+	 * The argument of the sine or cosine at the heart of an expression, and
+	 * the steps that take its value to the color
+	 */
+	private static class Sinusoid {
+		private boolean cosine;
+		private ExpressionProgram argument;
+		// the steps in the order they are applied, and the subexpressions
+		// that are constant along a row that they combine the value with
+		private int[] steps;
+		private ExpressionTreeNode[] operands;
+		// whether the color, or just the argument, is the same in every channel
+		private boolean monochrome;
+		private boolean monochromeArgument;
+
+		/**
+		 * Returns the sinusoid at the heart of the expression, or null if the
+		 * expression is not the sine or cosine of something passed through
+		 * monotone steps
+		 */
+		static Sinusoid find(ExpressionTreeNode expr) {
+			SeparableSubexpressions separable = new SeparableSubexpressions();
+			List<Integer> steps = new ArrayList<>();
+			List<ExpressionTreeNode> operands = new ArrayList<>();
+			ExpressionTreeNode node = expr;
+			while (node.getClass() != Sine.class && node.getClass() != Cos.class) {
+				Class<?> type = node.getClass();
+				List<ExpressionTreeNode> children = node.getChildren();
+				if (type == Word.class || type == SharedExpression.class || type == ExpressionDag.class) {
+					node = children.get(children.size() - 1);
+					continue;
+				}
+				Integer step = UNARY_STEPS.get(type);
+				if (step != null) {
+					steps.add(step);
+					operands.add(null);
+					node = children.get(0);
+					continue;
+				}
+				if (type != Addition.class && type != Subtraction.class && type != Multiplication.class
+						&& type != Division.class) {
+					return null;
+				}
+				boolean leftConstant = isRowConstant(separable, children.get(0));
+				if (leftConstant == isRowConstant(separable, children.get(1))) {
+					return null;
+				}
+				if (type == Addition.class) {
+					step = ADD;
+				} else if (type == Multiplication.class) {
+					step = MULTIPLY;
+				} else if (type == Subtraction.class) {
+					step = leftConstant ? SUBTRACT_FROM : SUBTRACT;
+				} else if (!leftConstant) {
+					step = DIVIDE;
+				} else {
+					// dividing by the value is not monotone
+					return null;
+				}
+				steps.add(step);
+				operands.add(children.get(leftConstant ? 0 : 1));
+				node = children.get(leftConstant ? 1 : 0);
+			}
+			Sinusoid sinusoid = new Sinusoid();
+			sinusoid.cosine = node.getClass() == Cos.class;
+			ExpressionTreeNode argument = node.getChildren().get(0);
+			sinusoid.argument = ExpressionProgram.lower(argument);
+			// the steps were found from the color inwards
+			Collections.reverse(steps);
+			Collections.reverse(operands);
+			sinusoid.steps = steps.stream().mapToInt(Integer::intValue).toArray();
+			sinusoid.operands = operands.toArray(new ExpressionTreeNode[0]);
+			ChannelAnalysis channels = new ChannelAnalysis(expr);
+			sinusoid.monochrome = channels.isMonochrome(expr);
+			sinusoid.monochromeArgument = channels.isMonochrome(argument);
+			return sinusoid;
+		}
+
+		private static boolean isRowConstant(SeparableSubexpressions separable, ExpressionTreeNode node) {
+			Dependency dependency = separable.classify(node);
+			return dependency == Dependency.CONSTANT || dependency == Dependency.Y;
+		}
+
+		/**
+		 * Returns the channel of the color for a value of the sine or cosine,
+		 * computed exactly as the tree computes it
+		 *
+		 * @param constants the operands of the steps for the row
+		 */
+		double apply(double value, double[][] constants, int channel) {
+			for (int i = 0; i < steps.length; i++) {
+				double constant = constants[i][channel];
+				switch (steps[i]) {
+				case CLAMP:
+					value = Clamp.clamp(value);
+					break;
+				case FLOOR:
+					value = Math.floor(value);
+					break;
+				case CEIL:
+					value = Math.ceil(value);
+					break;
+				case EXP:
+					value = Math.exp(value);
+					break;
+				case ATAN:
+					value = Math.atan(value);
+					break;
+				case NEGATE:
+					value = -value;
+					break;
+				case ADD:
+					value = value + constant;
+					break;
+				case SUBTRACT:
+					value = value - constant;
+					break;
+				case SUBTRACT_FROM:
+					value = constant - value;
+					break;
+				case MULTIPLY:
+					value = value * constant;
+					break;
+				case DIVIDE:
+					value = Division.divide(value, constant);
+					break;
+				default:
+					throw new IllegalStateException("Unknown step " + steps[i]);
+				}
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Owns the planes and buffers for one thread's rows
+	 */
+	private static class DifferencingRowEvaluator implements RowEvaluator {
+		private Sinusoid sinusoid;
+		private ExpressionProgram.Planes planes;
+		private PlaneKernels kernels;
+		private double[][] constants;
+		private double[][] values;
+		private double[][] errors;
+		private LongAdder pixels;
+		private LongAdder direct;
+
+		DifferencingRowEvaluator(Sinusoid sinusoid, int maxWidth, PlaneKernels kernels, LongAdder pixels,
+				LongAdder direct) {
+			this.sinusoid = sinusoid;
+			this.kernels = kernels;
+			this.pixels = pixels;
+			this.direct = direct;
+			planes = sinusoid.argument.createPlanes(maxWidth);
+			constants = new double[sinusoid.steps.length][3];
+			// a grey argument has one sine for all the channels
+			int channels = sinusoid.monochromeArgument ? 1 : 3;
+			values = new double[channels][maxWidth];
+			errors = new double[channels][maxWidth];
+		}
+
+		@Override
+		public void evaluateRow(double[] xs, double y, int length, int[] rgb, int offset) {
+			if (length == 0) {
+				return;
+			}
+			ExpressionProgram argument = sinusoid.argument;
+			argument.runRow(xs, y, length, planes, kernels);
+			int result = argument.getResultRegister();
+			boolean finite = loadConstants(xs[0], y);
+			for (int channel = 0; channel < values.length; channel++) {
+				advance(planes.get(result + channel), length, values[channel], errors[channel]);
+			}
+			long computed = 0;
+			for (int i = 0; i < length; i++) {
+				if (finite) {
+					int low = bound(i, -1);
+					if (low == bound(i, 1)) {
+						rgb[offset + i] = low;
+						continue;
+					}
+				}
+				rgb[offset + i] = exact(planes, result, i);
+				computed++;
+			}
+			pixels.add(length);
+			direct.add(computed);
+		}
+
+		/**
+		 * Evaluate the operands of the steps, which are the same all along the
+		 * row, and return true if they are all finite
+		 */
+		private boolean loadConstants(double x, double y) {
+			boolean finite = true;
+			for (int i = 0; i < constants.length; i++) {
+				ExpressionTreeNode operand = sinusoid.operands[i];
+				if (operand != null) {
+					RGBColor value = operand.evaluate(x, y);
+					constants[i][0] = value.getRed();
+					constants[i][1] = value.getGreen();
+					constants[i][2] = value.getBlue();
+					finite &= Double.isFinite(value.getRed()) && Double.isFinite(value.getGreen())
+							&& Double.isFinite(value.getBlue());
+				}
+			}
+			return finite;
+		}
+
+		/**
+		 * Advance the sine and cosine along the row of arguments, storing the
+		 * value for each pixel and a bound on how far it may be from Math.sin
+		 * or Math.cos of the argument
+		 */
+		private void advance(double[] arguments, int length, double[] value, double[] error) {
+			double sine = 0;
+			double cosine = 0;
+			double drift = 0;
+			double previous = 0;
+			int steps = RESYNC_INTERVAL;
+			for (int i = 0; i < length; i++) {
+				double angle = arguments[i];
+				double step = angle - previous;
+				if (steps < RESYNC_INTERVAL && Math.abs(step) <= MAX_STEP) {
+					// rotate through the step, with its sine and cosine from
+					// their series
+					double square = step * step;
+					double sinStep = step * (1 - square / 6 * (1 - square / 20));
+					double cosStep = 1 - square / 2 * (1 - square / 12);
+					double rotated = sine * cosStep + cosine * sinStep;
+					cosine = cosine * cosStep - sine * sinStep;
+					sine = rotated;
+					// the rotation can grow the error by at most the step, and
+					// both series are truncated by less than step^6 / 720
+					drift = drift * (1 + Math.abs(step)) + Math.abs(step) * DIFFERENCE_ROUNDING
+							+ square * square * square / 720 + STEP_ROUNDING;
+					error[i] = drift + LIBRARY_ERROR;
+					steps++;
+				} else {
+					sine = Math.sin(angle);
+					cosine = Math.cos(angle);
+					drift = LIBRARY_ERROR;
+					// exactly the value the tree computes
+					error[i] = 0;
+					steps = 0;
+				}
+				value[i] = sinusoid.cosine ? cosine : sine;
+				previous = angle;
+			}
+		}
+
+		/**
+		 * Returns the pixel for the value of the sine or cosine at the given
+		 * point, moved below or above it by its error
+		 *
+		 * @param side -1 for the low end of the error, 1 for the high end
+		 */
+		private int bound(int i, int side) {
+			double red = end(0, i, side);
+			if (sinusoid.monochrome) {
+				return RGBColor.toRGB(red, red, red);
+			}
+			return RGBColor.toRGB(red, end(1, i, side), end(2, i, side));
+		}
+
+		private double end(int channel, int i, int side) {
+			int sine = sinusoid.monochromeArgument ? 0 : channel;
+			double value = values[sine][i];
+			double error = errors[sine][i];
+			if (error != 0) {
+				// round away from the value, so the end is past the error
+				value = side < 0 ? Math.nextDown(value - error) : Math.nextUp(value + error);
+			}
+			return sinusoid.apply(value, constants, channel);
+		}
+
+		/**
+		 * Returns the pixel computed with Math.sin or Math.cos, as the tree
+		 * computes it
+		 */
+		private int exact(ExpressionProgram.Planes planes, int result, int i) {
+			double red = exactChannel(planes.get(result)[i], 0);
+			if (sinusoid.monochrome) {
+				return RGBColor.toRGB(red, red, red);
+			}
+			return RGBColor.toRGB(red, exactChannel(planes.get(result + 1)[i], 1),
+					exactChannel(planes.get(result + 2)[i], 2));
+		}
+
+		private double exactChannel(double angle, int channel) {
+			double value = sinusoid.cosine ? Math.cos(angle) : Math.sin(angle);
+			return sinusoid.apply(value, constants, channel);
+		}
+	}
+}
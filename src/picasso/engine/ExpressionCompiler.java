@@ -0,0 +1,665 @@
+package picasso.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import picasso.engine.ClassFileWriter.Code;
+import picasso.parser.language.ExpressionDag;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.SharedExpression;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Compiles an expression tree into a hidden class whose evaluate method
+ * computes the red, green and blue channels with straight-line code on
+ * primitive doubles. Every node is translated into exactly the arithmetic its
+ * own evaluate performs, in the same order, so the compiled expression gives
+ * bit-for-bit the same colors as the tree.
+ *
+ * Branching channel operations, such as division by zero or clamping, call the
+ * static helpers of the node classes, which HotSpot inlines. A monochrome
+ * intermediate result, such as anything computed from x and y alone, is kept
+ * in one local that stands for all three channels, so each function of it is
+ * computed once rather than per channel. Nodes the compiler does not know,
+ * such as images and variables, are left to the tree interpreter. HotSpot
+ * will not compile methods of more than 8000 bytes of bytecode, so subtrees of
+ * large expressions are moved into methods of their own.
+ *
+ * @author Mark Holden
+ */
+public class ExpressionCompiler {
+
+	// stays under HotSpot's limit on the size of a method it will compile
+	static final int METHOD_LIMIT = 7000;
+
+	private static final String CLASS_NAME = "picasso/engine/GeneratedExpression";
+	private static final String SUPER_NAME = "picasso/engine/CompiledExpression";
+	private static final String NODE = "picasso/parser/language/ExpressionTreeNode";
+	private static final String NODES = "[L" + NODE + ";";
+	private static final String EXPRESSIONS = "picasso/parser/language/expressions/";
+	private static final String MATH = "java/lang/Math";
+	private static final String NOISE = "picasso/model/ImprovedNoise";
+	private static final String PLANAR_NOISE = "picasso/model/PlanarNoise";
+	private static final String PIXEL_RANDOM = "picasso/model/PixelRandom";
+	private static final String ESCAPE_TIME = "picasso/model/EscapeTime";
+	private static final String EVALUATE = "(DD[DI)V";
+	private static final String UNARY = "(D)D";
+	private static final String BINARY = "(DD)D";
+
+	// the parameters of a generated evaluate method
+	private static final int X_PARAM = 1;
+	private static final int Y_PARAM = 3;
+	private static final int SLOTS = 5;
+	private static final int SLOT = 6;
+	private static final int FIRST_LOCAL = 7;
+
+	private ClassFileWriter myWriter;
+	private List<ExpressionTreeNode> myNodes;
+	private Map<ExpressionTreeNode, Integer> myNodeIndices;
+	private Map<ExpressionTreeNode, String> myMethods;
+	private Map<ExpressionTreeNode, Boolean> myPlanned;
+	// where the method being generated has computed each shared subexpression
+	private Map<ExpressionTreeNode, Operand[]> myShared;
+	private int mySlotCount;
+	private int myInterpretedCount;
+	private boolean myMeasuring;
+
+	private ExpressionCompiler() {
+		myWriter = new ClassFileWriter(CLASS_NAME, SUPER_NAME);
+		myNodes = new ArrayList<>();
+		myNodeIndices = new IdentityHashMap<>();
+		myMethods = new IdentityHashMap<>();
+		myPlanned = new IdentityHashMap<>();
+		myShared = new IdentityHashMap<>();
+		mySlotCount = 3;
+	}
+
+	/**
+	 * Compile the expression
+	 *
+	 * @param expr the expression to compile
+	 * @return an expression that evaluates to the same colors as expr
+	 * @throws IllegalStateException if the generated class cannot be defined
+	 */
+	public static CompiledExpression compile(ExpressionTreeNode expr) {
+		return new ExpressionCompiler().compileClass(expr);
+	}
+
+	/**
+	 * Returns true if the compiler translates the node itself rather than
+	 * leaving it to the tree interpreter
+	 *
+	 * @param node the node to check
+	 * @return whether the node is compiled
+	 */
+	public static boolean isSupported(ExpressionTreeNode node) {
+		Class<?> type = node.getClass();
+		return type == X.class || type == Y.class || type == Constant.class || type == RGBColor.class
+				|| type == ExpressionDag.class || type == SharedExpression.class || type == Random.class || type == Word.class || type == Assignment.class || type == Abs.class
+				|| type == Atan.class || type == Ceil.class || type == Clamp.class || type == Cos.class
+				|| type == Exp.class || type == Floor.class || type == Log.class || type == Not.class
+				|| type == RgbToYCrCb.class || type == Sine.class || type == Tan.class || type == Wrap.class
+				|| type == YCrCbToRGB.class || type == Addition.class || type == Subtraction.class
+				|| type == Multiplication.class || type == Division.class || type == Modulo.class
+				|| type == Exponentiation.class || type == PerlinBW.class || type == PerlinColor.class
+				|| type == ImageWrap.class || type == ImageClip.class || type == Mandelbrot.class
+				|| type == Julia.class;
+	}
+
+	private CompiledExpression compileClass(ExpressionTreeNode expr) {
+		plan(expr);
+
+		Code init = myWriter.newCode(2);
+		init.op(Code.ALOAD_0);
+		init.op(Code.ALOAD_1);
+		init.invokeSpecial(SUPER_NAME, "<init>", "(" + NODES + ")V");
+		init.op(Code.RETURN);
+		myWriter.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "(" + NODES + ")V", init);
+
+		myWriter.addMethod(ClassFileWriter.ACC_PUBLIC, "evaluate", EVALUATE, methodBody(expr));
+		for (Map.Entry<ExpressionTreeNode, String> method : myMethods.entrySet()) {
+			myWriter.addMethod(ClassFileWriter.ACC_PRIVATE, method.getValue(), EVALUATE,
+					methodBody(method.getKey()));
+		}
+
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(myWriter.toByteArray(), true);
+			ExpressionTreeNode[] nodes = myNodes.toArray(new ExpressionTreeNode[0]);
+			CompiledExpression compiled = (CompiledExpression) lookup.lookupClass()
+					.getConstructor(ExpressionTreeNode[].class).newInstance((Object) nodes);
+			compiled.describe(expr, mySlotCount, myInterpretedCount, 1 + myMethods.size());
+			return compiled;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new IllegalStateException("Could not compile " + expr, e);
+		}
+	}
+
+	/**
+	 * Generate a method that evaluates the node at its x and y parameters and
+	 * stores the result in its slots parameter
+	 */
+	private Code methodBody(ExpressionTreeNode node) {
+		Code code = myWriter.newCode(FIRST_LOCAL);
+		myShared.clear();
+		Operand[] result = emitNode(code, node, X_PARAM, Y_PARAM);
+		for (int channel = 0; channel < 3; channel++) {
+			code.loadReference(SLOTS);
+			slotIndex(code, channel);
+			result[channel].load(code);
+			code.op(Code.DASTORE);
+		}
+		code.op(Code.RETURN);
+		return code;
+	}
+
+	/**
+	 * Decide which subtrees get methods of their own, so that no method is too
+	 * large for HotSpot to compile. Works from the leaves up, moving the largest
+	 * children of a node out until the node's code is small enough.
+	 */
+	private void plan(ExpressionTreeNode node) {
+		if (myPlanned.put(node, Boolean.TRUE) != null || !isSupported(node)) {
+			return;
+		}
+		for (ExpressionTreeNode child : node.getChildren()) {
+			plan(child);
+		}
+		while (measure(node) > METHOD_LIMIT) {
+			ExpressionTreeNode largest = null;
+			int largestSize = 0;
+			for (ExpressionTreeNode child : node.getChildren()) {
+				if (isSupported(child) && !myMethods.containsKey(child)) {
+					int size = measure(child);
+					if (size > largestSize) {
+						largest = child;
+						largestSize = size;
+					}
+				}
+			}
+			if (largest == null) {
+				return;
+			}
+			myMethods.put(largest, "node" + myMethods.size());
+		}
+	}
+
+	/**
+	 * Returns an upper bound on the size of the code for the node, given the
+	 * subtrees that have their own methods so far
+	 */
+	private int measure(ExpressionTreeNode node) {
+		// locals past 255 take the longest instructions
+		Code scratch = myWriter.newCode(256);
+		myMeasuring = true;
+		myShared.clear();
+		emitNode(scratch, node, X_PARAM, Y_PARAM);
+		myMeasuring = false;
+		return scratch.size();
+	}
+
+	/**
+	 * Generate the code for a node, or a call if it has a method of its own. A
+	 * shared subexpression is only computed the first time the method uses it;
+	 * later uses read the locals it was computed into.
+	 *
+	 * @return where the three channels of the result are
+	 */
+	private Operand[] emit(Code code, ExpressionTreeNode node, int x, int y) {
+		Operand[] shared = myShared.get(node);
+		if (shared != null) {
+			return shared;
+		}
+		Operand[] result;
+		String method = myMethods.get(node);
+		if (method == null) {
+			result = emitNode(code, node, x, y);
+		} else {
+			code.op(Code.ALOAD_0);
+			code.loadDouble(x);
+			code.loadDouble(y);
+			code.loadReference(SLOTS);
+			code.loadInt(SLOT);
+			code.invokeSpecial(CLASS_NAME, method, EVALUATE);
+			result = readSlots(code);
+		}
+		if (node instanceof SharedExpression) {
+			myShared.put(node, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Generate the code for the node itself
+	 */
+	private Operand[] emitNode(Code code, ExpressionTreeNode node, int x, int y) {
+		Class<?> type = node.getClass();
+		List<ExpressionTreeNode> children = node.getChildren();
+		if (type == X.class) {
+			return same(Operand.local(x));
+		} else if (type == Y.class) {
+			return same(Operand.local(y));
+		} else if (type == Constant.class) {
+			return same(Operand.constant(((Constant) node).getValue()));
+		} else if (type == RGBColor.class) {
+			RGBColor color = (RGBColor) node;
+			long red = Double.doubleToRawLongBits(color.getRed());
+			if (red == Double.doubleToRawLongBits(color.getGreen())
+					&& red == Double.doubleToRawLongBits(color.getBlue())) {
+				return same(Operand.constant(color.getRed()));
+			}
+			return new Operand[] { Operand.constant(color.getRed()), Operand.constant(color.getGreen()),
+					Operand.constant(color.getBlue()) };
+		} else if (type == Random.class) {
+			return emitRandom(code, (Random) node, x, y);
+		} else if (type == Word.class || type == SharedExpression.class || type == ExpressionDag.class) {
+			return emit(code, children.get(0), x, y);
+		} else if (type == Assignment.class) {
+			loadNode(code, node);
+			code.checkCast(EXPRESSIONS + "Assignment");
+			code.invokeVirtual(EXPRESSIONS + "Assignment", "store", "()V");
+			return emit(code, children.get(1), x, y);
+		} else if (type == Log.class) {
+			int logX = store(code, x, EXPRESSIONS + "Log", "avoidZero");
+			int logY = store(code, y, EXPRESSIONS + "Log", "avoidZero");
+			return unary(code, emit(code, children.get(0), logX, logY), EXPRESSIONS + "Log", "log");
+		} else if (type == Not.class) {
+			Operand[] param = emit(code, children.get(0), x, y);
+			Operand[] result = new Operand[3];
+			int channels = channelCount(param, param);
+			for (int channel = 0; channel < channels; channel++) {
+				param[channel].load(code);
+				code.op(Code.DNEG);
+				result[channel] = newLocal(code);
+			}
+			return channels == 1 ? same(result[0]) : result;
+		} else if (type == RgbToYCrCb.class) {
+			Operand[] p = emit(code, children.get(0), x, y);
+			return new Operand[] { combination(code, p, 0.2989, 0.5866, 0.1145),
+					combination(code, p, -0.1687, -0.3312, 0.5), combination(code, p, 0.5, -0.4183, -0.0816) };
+		} else if (type == YCrCbToRGB.class) {
+			return emitYCrCbToRGB(code, emit(code, children.get(0), x, y));
+		} else if (node instanceof UnaryFunction && isSupported(node)) {
+			String[] function = unaryFunction(type);
+			return unary(code, emit(code, children.get(0), x, y), function[0], function[1]);
+		} else if (type == Addition.class) {
+			return binary(code, children, x, y, Code.DADD);
+		} else if (type == Subtraction.class) {
+			return binary(code, children, x, y, Code.DSUB);
+		} else if (type == Multiplication.class) {
+			return binary(code, children, x, y, Code.DMUL);
+		} else if (type == Division.class) {
+			return binary(code, children, x, y, EXPRESSIONS + "Division", "divide");
+		} else if (type == Modulo.class) {
+			return binary(code, children, x, y, EXPRESSIONS + "Modulo", "modulo");
+		} else if (type == Exponentiation.class) {
+			return binary(code, children, x, y, EXPRESSIONS + "Exponentiation", "power");
+		} else if (type == PerlinBW.class) {
+			return emitPerlinBW(code, children, x, y);
+		} else if (type == PerlinColor.class) {
+			return emitPerlinColor(code, children, x, y);
+		} else if (type == Mandelbrot.class || type == Julia.class) {
+			return emitEscapeTime(code, (EscapeTimeFractal) node, x, y);
+		} else if (type == ImageWrap.class) {
+			return emitImageLookup(code, children, x, y, EXPRESSIONS + "ImageWrap", "wrapAround");
+		} else if (type == ImageClip.class) {
+			return emitImageLookup(code, children, x, y, EXPRESSIONS + "ImageClip", "clip");
+		}
+		return interpret(code, node, x, y);
+	}
+
+	/**
+	 * Returns the owner and name of the static method that applies a unary
+	 * function to one channel
+	 */
+	private static String[] unaryFunction(Class<?> type) {
+		if (type == Abs.class) {
+			return new String[] { MATH, "abs" };
+		} else if (type == Atan.class) {
+			return new String[] { MATH, "atan" };
+		} else if (type == Ceil.class) {
+			return new String[] { MATH, "ceil" };
+		} else if (type == Cos.class) {
+			return new String[] { MATH, "cos" };
+		} else if (type == Exp.class) {
+			return new String[] { MATH, "exp" };
+		} else if (type == Floor.class) {
+			return new String[] { MATH, "floor" };
+		} else if (type == Sine.class) {
+			return new String[] { MATH, "sin" };
+		} else if (type == Tan.class) {
+			return new String[] { MATH, "tan" };
+		} else if (type == Clamp.class) {
+			return new String[] { EXPRESSIONS + "Clamp", "clamp" };
+		} else {
+			return new String[] { EXPRESSIONS + "Wrap", "wrap" };
+		}
+	}
+
+	/**
+	 * Leave the node to the tree interpreter, calling its slot evaluate
+	 */
+	private Operand[] interpret(Code code, ExpressionTreeNode node, int x, int y) {
+		if (!myMeasuring) {
+			myInterpretedCount++;
+		}
+		mySlotCount = Math.max(mySlotCount, node.getSlotCount());
+		loadNode(code, node);
+		code.loadDouble(x);
+		code.loadDouble(y);
+		code.loadReference(SLOTS);
+		code.loadInt(SLOT);
+		code.invokeVirtual(NODE, "evaluate", EVALUATE);
+		return readSlots(code);
+	}
+
+	/**
+	 * Push the node from the array the generated code is constructed with
+	 */
+	private void loadNode(Code code, ExpressionTreeNode node) {
+		Integer index = myNodeIndices.get(node);
+		if (index == null) {
+			index = myNodes.size();
+			myNodes.add(node);
+			myNodeIndices.put(node, index);
+		}
+		code.op(Code.ALOAD_0);
+		code.getField(SUPER_NAME, "myNodes", NODES);
+		code.pushInt(index);
+		code.op(Code.AALOAD);
+	}
+
+	/**
+	 * Copy the three channels a call left in the slots into locals
+	 */
+	private Operand[] readSlots(Code code) {
+		Operand[] result = new Operand[3];
+		for (int channel = 0; channel < 3; channel++) {
+			code.loadReference(SLOTS);
+			slotIndex(code, channel);
+			code.op(Code.DALOAD);
+			result[channel] = newLocal(code);
+		}
+		return result;
+	}
+
+	/**
+	 * Push the index of the given channel of the slot parameter
+	 */
+	private static void slotIndex(Code code, int channel) {
+		code.loadInt(SLOT);
+		if (channel > 0) {
+			code.pushInt(channel);
+			code.op(Code.IADD);
+		}
+	}
+
+	/**
+	 * Store the double on top of the stack in a new local
+	 */
+	private static Operand newLocal(Code code) {
+		int local = code.newDoubleLocal();
+		code.storeDouble(local);
+		return Operand.local(local);
+	}
+
+	/**
+	 * Apply a static method to a local and store the result in a new local
+	 *
+	 * @return the new local
+	 */
+	private static int store(Code code, int local, String owner, String name) {
+		code.loadDouble(local);
+		code.invokeStatic(owner, name, UNARY);
+		return newLocal(code).myLocal;
+	}
+
+	private static Operand[] same(Operand operand) {
+		return new Operand[] { operand, operand, operand };
+	}
+
+	/**
+	 * Returns 1 if both arguments are monochrome, with one operand for all
+	 * three channels, so a channel operation on them need only be computed
+	 * once, and 3 otherwise
+	 */
+	private static int channelCount(Operand[] left, Operand[] right) {
+		boolean monochrome = left[0] == left[1] && left[0] == left[2] && right[0] == right[1]
+				&& right[0] == right[2];
+		return monochrome ? 1 : 3;
+	}
+
+	private static Operand[] unary(Code code, Operand[] param, String owner, String name) {
+		Operand[] result = new Operand[3];
+		int channels = channelCount(param, param);
+		for (int channel = 0; channel < channels; channel++) {
+			param[channel].load(code);
+			code.invokeStatic(owner, name, UNARY);
+			result[channel] = newLocal(code);
+		}
+		return channels == 1 ? same(result[0]) : result;
+	}
+
+	private Operand[] binary(Code code, List<ExpressionTreeNode> children, int x, int y, int opcode) {
+		Operand[] left = emit(code, children.get(0), x, y);
+		Operand[] right = emit(code, children.get(1), x, y);
+		Operand[] result = new Operand[3];
+		int channels = channelCount(left, right);
+		for (int channel = 0; channel < channels; channel++) {
+			left[channel].load(code);
+			right[channel].load(code);
+			code.op(opcode);
+			result[channel] = newLocal(code);
+		}
+		return channels == 1 ? same(result[0]) : result;
+	}
+
+	private Operand[] binary(Code code, List<ExpressionTreeNode> children, int x, int y, String owner,
+			String name) {
+		Operand[] left = emit(code, children.get(0), x, y);
+		Operand[] right = emit(code, children.get(1), x, y);
+		Operand[] result = new Operand[3];
+		int channels = channelCount(left, right);
+		for (int channel = 0; channel < channels; channel++) {
+			left[channel].load(code);
+			right[channel].load(code);
+			code.invokeStatic(owner, name, BINARY);
+			result[channel] = newLocal(code);
+		}
+		return channels == 1 ? same(result[0]) : result;
+	}
+
+	/**
+	 * Computes the random number of each channel at x and y, as Random does
+	 */
+	private static Operand[] emitRandom(Code code, Random node, int x, int y) {
+		Operand[] result = new Operand[3];
+		for (int channel = 0; channel < 3; channel++) {
+			code.pushLong(node.getKey());
+			code.pushInt(channel);
+			code.loadDouble(x);
+			code.loadDouble(y);
+			code.invokeStatic(PIXEL_RANDOM, "random", "(JIDD)D");
+			result[channel] = newLocal(code);
+		}
+		return result;
+	}
+
+	/**
+	 * Computes p[0] * a + p[1] * b + p[2] * c
+	 */
+	private static Operand combination(Code code, Operand[] p, double a, double b, double c) {
+		p[0].load(code);
+		code.pushDouble(a);
+		code.op(Code.DMUL);
+		p[1].load(code);
+		code.pushDouble(b);
+		code.op(Code.DMUL);
+		code.op(Code.DADD);
+		p[2].load(code);
+		code.pushDouble(c);
+		code.op(Code.DMUL);
+		code.op(Code.DADD);
+		return newLocal(code);
+	}
+
+	private static Operand[] emitYCrCbToRGB(Code code, Operand[] p) {
+		Operand[] result = new Operand[3];
+		// luma + cb * 1.4022
+		p[0].load(code);
+		p[2].load(code);
+		code.pushDouble(1.4022);
+		code.op(Code.DMUL);
+		code.op(Code.DADD);
+		result[0] = newLocal(code);
+		// luma + cr * -0.3456 + cb * -0.7145
+		p[0].load(code);
+		p[1].load(code);
+		code.pushDouble(-0.3456);
+		code.op(Code.DMUL);
+		code.op(Code.DADD);
+		p[2].load(code);
+		code.pushDouble(-0.7145);
+		code.op(Code.DMUL);
+		code.op(Code.DADD);
+		result[1] = newLocal(code);
+		// luma + cr * 1.7710
+		p[0].load(code);
+		p[1].load(code);
+		code.pushDouble(1.7710);
+		code.op(Code.DMUL);
+		code.op(Code.DADD);
+		result[2] = newLocal(code);
+		return result;
+	}
+
+	/**
+	 * Perlin noise evaluates its right parameter before its left one
+	 */
+	private Operand[] emitPerlinBW(Code code, List<ExpressionTreeNode> children, int x, int y) {
+		Operand[] right = emit(code, children.get(1), x, y);
+		Operand[] left = emit(code, children.get(0), x, y);
+		if (channelCount(left, right) == 1) {
+			// the noise of a grey point needs only one sum
+			left[0].load(code);
+			right[0].load(code);
+			code.op(Code.DADD);
+			Operand sum = newLocal(code);
+			for (int channel = 0; channel < 3; channel++) {
+				sum.load(code);
+			}
+		} else {
+			for (int channel = 0; channel < 3; channel++) {
+				left[channel].load(code);
+				right[channel].load(code);
+				code.op(Code.DADD);
+			}
+		}
+		code.invokeStatic(NOISE, "noise", "(DDD)D");
+		return same(newLocal(code));
+	}
+
+	private Operand[] emitPerlinColor(Code code, List<ExpressionTreeNode> children, int x, int y) {
+		Operand[] right = emit(code, children.get(1), x, y);
+		Operand[] left = emit(code, children.get(0), x, y);
+		// the offsets PerlinColor adds to each channel, with the opcode that adds them
+		double[] offsets = { 0.3, 0.8, 0.1 };
+		int[] opcodes = { Code.DADD, Code.DSUB, Code.DADD };
+		Operand[] result = new Operand[3];
+		for (int channel = 0; channel < 3; channel++) {
+			left[channel].load(code);
+			code.pushDouble(offsets[channel]);
+			code.op(opcodes[channel]);
+			right[channel].load(code);
+			code.pushDouble(offsets[channel]);
+			code.op(opcodes[channel]);
+			code.invokeStatic(PLANAR_NOISE, "noise", "(DD)D");
+			result[channel] = newLocal(code);
+		}
+		return result;
+	}
+
+	/**
+	 * Computes each channel of a fractal with EscapeTime, evaluating the
+	 * arguments last to first as the node does, and only once if they are all
+	 * monochrome
+	 */
+	private Operand[] emitEscapeTime(Code code, EscapeTimeFractal node, int x, int y) {
+		List<ExpressionTreeNode> children = node.getChildren();
+		Operand[][] arguments = new Operand[children.size()][];
+		int channels = 1;
+		for (int i = children.size() - 1; i >= 0; i--) {
+			arguments[i] = emit(code, children.get(i), x, y);
+			channels = Math.max(channels, channelCount(arguments[i], arguments[i]));
+		}
+		boolean julia = node instanceof Julia;
+		Operand[] result = new Operand[3];
+		for (int channel = 0; channel < channels; channel++) {
+			for (Operand[] argument : arguments) {
+				argument[channel].load(code);
+			}
+			code.pushInt(node.getIterations());
+			code.invokeStatic(ESCAPE_TIME, julia ? "julia" : "mandelbrot", julia ? "(DDDDI)D" : "(DDI)D");
+			result[channel] = newLocal(code);
+		}
+		return channels == 1 ? same(result[0]) : result;
+	}
+
+	/**
+	 * Averages the channels of the x and y expressions, maps the averages into
+	 * the image and looks the color up with the interpreter
+	 */
+	private Operand[] emitImageLookup(Code code, List<ExpressionTreeNode> children, int x, int y, String owner,
+			String name) {
+		Operand[] xExpr = emit(code, children.get(1), x, y);
+		Operand[] yExpr = emit(code, children.get(2), x, y);
+		int imageX = average(code, xExpr, owner, name);
+		int imageY = average(code, yExpr, owner, name);
+		return interpret(code, children.get(0), imageX, imageY);
+	}
+
+	private static int average(Code code, Operand[] p, String owner, String name) {
+		p[0].load(code);
+		p[1].load(code);
+		code.op(Code.DADD);
+		p[2].load(code);
+		code.op(Code.DADD);
+		code.pushDouble(3);
+		code.op(Code.DDIV);
+		code.invokeStatic(owner, name, UNARY);
+		return newLocal(code).myLocal;
+	}
+
+	/**
+	 * One channel of an intermediate result: either a local variable or a
+	 * constant that is pushed where it is used
+	 */
+	private static class Operand {
+		private int myLocal;
+		private double myConstant;
+		private boolean myIsConstant;
+
+		static Operand local(int local) {
+			Operand operand = new Operand();
+			operand.myLocal = local;
+			return operand;
+		}
+
+		static Operand constant(double value) {
+			Operand operand = new Operand();
+			operand.myConstant = value;
+			operand.myIsConstant = true;
+			return operand;
+		}
+
+		void load(Code code) {
+			if (myIsConstant) {
+				code.pushDouble(myConstant);
+			} else {
+				code.loadDouble(myLocal);
+			}
+		}
+	}
+}
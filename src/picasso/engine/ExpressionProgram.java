@@ -0,0 +1,1477 @@
+package picasso.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import picasso.model.EscapeTime;
+import picasso.model.ImprovedNoise;
+import picasso.model.PixelRandom;
+import picasso.model.PlanarNoise;
+import picasso.parser.ChannelAnalysis;
+import picasso.parser.language.ExpressionDag;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.SharedExpression;
+import picasso.parser.language.expressions.*;
+
+/**
+ * An expression lowered to a flat program for a register machine. The program
+ * is an array of int instructions, each an opcode followed by register
+ * operands, run by one loop over an array of double registers. A color takes
+ * three consecutive registers. The first registers hold the constant pool,
+ * followed by the x and y coordinates and the values of the shared
+ * subexpressions of an ExpressionDag; the rest are working registers. A shared
+ * subexpression is computed by its first use and copied to its own registers,
+ * where the later uses read it.
+ *
+ * A monochrome subexpression, with the same value in every channel, is kept
+ * in a single register. Its instructions carry the MONO flag and compute one
+ * channel instead of three, and it is splatted to three registers only where a
+ * consumer reads every channel.
+ *
+ * Running a program visits no tree nodes and does not recurse, and every
+ * instruction performs exactly the arithmetic of the node it came from, so
+ * the results are the same as the tree's. Nodes without an instruction of
+ * their own are evaluated by the tree interpreter into the registers.
+ *
+ * @author Mark Holden
+ */
+public class ExpressionProgram {
+
+	// d = destination register, a and b = source registers, n = node index
+	static final int SPLAT = 0; // d a: all channels of d = a
+	static final int RANDOM = 1; // d n x y: random() node n at registers x and y
+	static final int STORE = 2; // n: store the assignment
+	static final int AVOID_ZERO = 3; // d a: one register, as Log does to coordinates
+	static final int WRAP_AVERAGE = 4; // d a: one register = wrapped average of the channels of a
+	static final int CLIP_AVERAGE = 5; // d a
+	static final int INTERPRET = 6; // d n x y: tree-evaluate node n at registers x and y
+	static final int SIN = 7; // d a
+	static final int COS = 8;
+	static final int TAN = 9;
+	static final int ATAN = 10;
+	static final int EXP = 11;
+	static final int LOG = 12;
+	static final int FLOOR = 13;
+	static final int CEIL = 14;
+	static final int ABS = 15;
+	static final int CLAMP = 16;
+	static final int WRAP = 17;
+	static final int NEGATE = 18;
+	static final int RGB_TO_YCRCB = 19;
+	static final int YCRCB_TO_RGB = 20;
+	static final int ADD = 21; // d a b
+	static final int SUBTRACT = 22;
+	static final int MULTIPLY = 23;
+	static final int DIVIDE = 24;
+	static final int MODULO = 25;
+	static final int POWER = 26;
+	static final int PERLIN_BW = 27;
+	static final int PERLIN_COLOR = 28;
+	static final int COPY = 29; // d a: the three registers at d = those at a
+	static final int MANDELBROT = 30; // d i a b: mandelbrot of a and b with at most i iterations
+	static final int JULIA = 31; // d i a b c e: julia of a, b, c and e with at most i iterations
+	// added to an opcode: the instruction computes one register from the first
+	// register of each operand
+	static final int MONO = 64;
+
+	private static final String[] NAMES = { "splat", "random", "store", "avoidZero", "wrapAverage",
+			"clipAverage", "interpret", "sin", "cos", "tan", "atan", "exp", "log", "floor", "ceil", "abs", "clamp",
+			"wrap", "negate", "rgbToYCrCb", "yCrCbToRGB", "add", "subtract", "multiply", "divide", "modulo", "power",
+			"perlinBW", "perlinColor", "copy", "mandelbrot", "julia" };
+
+	private int[] myCode;
+	private double[] myConstants;
+	private ExpressionTreeNode[] myNodes;
+	private int myRegisterCount;
+	private int myInstructionCount;
+	private int myResult;
+
+	private ExpressionProgram(int[] code, double[] constants, ExpressionTreeNode[] nodes, int registerCount,
+			int instructionCount, int result) {
+		myCode = code;
+		myConstants = constants;
+		myNodes = nodes;
+		myRegisterCount = registerCount;
+		myInstructionCount = instructionCount;
+		myResult = result;
+	}
+
+	/**
+	 * Lower the expression to a program
+	 *
+	 * @param expr the expression to lower
+	 * @return a program that computes the same colors as expr
+	 */
+	public static ExpressionProgram lower(ExpressionTreeNode expr) {
+		return new Lowering().lower(expr);
+	}
+
+	/**
+	 * Returns the number of instructions in the program
+	 */
+	public int getInstructionCount() {
+		return myInstructionCount;
+	}
+
+	/**
+	 * Returns the number of double registers the program uses, including the
+	 * constant pool
+	 */
+	public int getRegisterCount() {
+		return myRegisterCount;
+	}
+
+	/**
+	 * Returns the register holding the red channel of the result; green and
+	 * blue follow it
+	 */
+	public int getResultRegister() {
+		return myResult;
+	}
+
+	/**
+	 * Create registers for running the program, with the constant pool loaded.
+	 * Registers may be reused for any number of runs, but only by one thread at
+	 * a time.
+	 */
+	public double[] createRegisters() {
+		double[] registers = new double[myRegisterCount];
+		System.arraycopy(myConstants, 0, registers, 0, myConstants.length);
+		return registers;
+	}
+
+	/**
+	 * Run the program at the given point. The result is left in the three
+	 * registers starting at getResultRegister().
+	 *
+	 * @param x         the value of x
+	 * @param y         the value of y
+	 * @param registers registers from createRegisters()
+	 */
+	public void run(double x, double y, double[] registers) {
+		int[] code = myCode;
+		double[] r = registers;
+		r[myConstants.length] = x;
+		r[myConstants.length + 1] = y;
+		int pc = 0;
+		while (pc < code.length) {
+			int op = code[pc];
+			int d = code[pc + 1];
+			switch (op) {
+			case SPLAT: {
+				double value = r[code[pc + 2]];
+				r[d] = value;
+				r[d + 1] = value;
+				r[d + 2] = value;
+				pc += 3;
+				break;
+			}
+			case RANDOM: {
+				long key = ((Random) myNodes[code[pc + 2]]).getKey();
+				double pointX = r[code[pc + 3]], pointY = r[code[pc + 4]];
+				r[d] = PixelRandom.random(key, 0, pointX, pointY);
+				r[d + 1] = PixelRandom.random(key, 1, pointX, pointY);
+				r[d + 2] = PixelRandom.random(key, 2, pointX, pointY);
+				pc += 5;
+				break;
+			}
+			case STORE:
+				((Assignment) myNodes[d]).store();
+				pc += 2;
+				break;
+			case AVOID_ZERO:
+				r[d] = Log.avoidZero(r[code[pc + 2]]);
+				pc += 3;
+				break;
+			case WRAP_AVERAGE: {
+				int a = code[pc + 2];
+				r[d] = ImageWrap.wrapAround((r[a] + r[a + 1] + r[a + 2]) / 3);
+				pc += 3;
+				break;
+			}
+			case CLIP_AVERAGE: {
+				int a = code[pc + 2];
+				r[d] = ImageClip.clip((r[a] + r[a + 1] + r[a + 2]) / 3);
+				pc += 3;
+				break;
+			}
+			case INTERPRET:
+				myNodes[code[pc + 2]].evaluate(r[code[pc + 3]], r[code[pc + 4]], r, d);
+				pc += 5;
+				break;
+			case MANDELBROT:
+			case JULIA: {
+				// every channel reads its arguments before d overwrites them
+				double red = escapeTime(op, code, pc, r, 0);
+				double green = escapeTime(op, code, pc, r, 1);
+				double blue = escapeTime(op, code, pc, r, 2);
+				r[d] = red;
+				r[d + 1] = green;
+				r[d + 2] = blue;
+				pc += operandCount(op) + 1;
+				break;
+			}
+			case COPY: {
+				int a = code[pc + 2];
+				r[d] = r[a];
+				r[d + 1] = r[a + 1];
+				r[d + 2] = r[a + 2];
+				pc += 3;
+				break;
+			}
+			case RGB_TO_YCRCB: {
+				int a = code[pc + 2];
+				double red = r[a];
+				double green = r[a + 1];
+				double blue = r[a + 2];
+				r[d] = red * 0.2989 + green * 0.5866 + blue * 0.1145;
+				r[d + 1] = red * -0.1687 + green * -0.3312 + blue * 0.5;
+				r[d + 2] = red * 0.5 + green * -0.4183 + blue * -0.0816;
+				pc += 3;
+				break;
+			}
+			case YCRCB_TO_RGB: {
+				int a = code[pc + 2];
+				double luma = r[a];
+				double cr = r[a + 1];
+				double cb = r[a + 2];
+				r[d] = luma + cb * 1.4022;
+				r[d + 1] = luma + cr * -0.3456 + cb * -0.7145;
+				r[d + 2] = luma + cr * 1.7710;
+				pc += 3;
+				break;
+			}
+			case PERLIN_BW: {
+				int a = code[pc + 2];
+				int b = code[pc + 3];
+				double grey = ImprovedNoise.noise(r[a] + r[b], r[a + 1] + r[b + 1], r[a + 2] + r[b + 2]);
+				r[d] = grey;
+				r[d + 1] = grey;
+				r[d + 2] = grey;
+				pc += 4;
+				break;
+			}
+			case PERLIN_COLOR: {
+				int a = code[pc + 2];
+				int b = code[pc + 3];
+				double red = PlanarNoise.noise(r[a] + 0.3, r[b] + 0.3);
+				double green = PlanarNoise.noise(r[a + 1] - 0.8, r[b + 1] - 0.8);
+				double blue = PlanarNoise.noise(r[a + 2] + 0.1, r[b + 2] + 0.1);
+				r[d] = red;
+				r[d + 1] = green;
+				r[d + 2] = blue;
+				pc += 4;
+				break;
+			}
+			case SIN: {
+				int a = code[pc + 2];
+				r[d] = Math.sin(r[a]);
+				r[d + 1] = Math.sin(r[a + 1]);
+				r[d + 2] = Math.sin(r[a + 2]);
+				pc += 3;
+				break;
+			}
+			case COS: {
+				int a = code[pc + 2];
+				r[d] = Math.cos(r[a]);
+				r[d + 1] = Math.cos(r[a + 1]);
+				r[d + 2] = Math.cos(r[a + 2]);
+				pc += 3;
+				break;
+			}
+			case TAN: {
+				int a = code[pc + 2];
+				r[d] = Math.tan(r[a]);
+				r[d + 1] = Math.tan(r[a + 1]);
+				r[d + 2] = Math.tan(r[a + 2]);
+				pc += 3;
+				break;
+			}
+			case ATAN: {
+				int a = code[pc + 2];
+				r[d] = Math.atan(r[a]);
+				r[d + 1] = Math.atan(r[a + 1]);
+				r[d + 2] = Math.atan(r[a + 2]);
+				pc += 3;
+				break;
+			}
+			case EXP: {
+				int a = code[pc + 2];
+				r[d] = Math.exp(r[a]);
+				r[d + 1] = Math.exp(r[a + 1]);
+				r[d + 2] = Math.exp(r[a + 2]);
+				pc += 3;
+				break;
+			}
+			case LOG: {
+				int a = code[pc + 2];
+				r[d] = Log.log(r[a]);
+				r[d + 1] = Log.log(r[a + 1]);
+				r[d + 2] = Log.log(r[a + 2]);
+				pc += 3;
+				break;
+			}
+			case FLOOR: {
+				int a = code[pc + 2];
+				r[d] = Math.floor(r[a]);
+				r[d + 1] = Math.floor(r[a + 1]);
+				r[d + 2] = Math.floor(r[a + 2]);
+				pc += 3;
+				break;
+			}
+			case CEIL: {
+				int a = code[pc + 2];
+				r[d] = Math.ceil(r[a]);
+				r[d + 1] = Math.ceil(r[a + 1]);
+				r[d + 2] = Math.ceil(r[a + 2]);
+				pc += 3;
+				break;
+			}
+			case ABS: {
+				int a = code[pc + 2];
+				r[d] = Math.abs(r[a]);
+				r[d + 1] = Math.abs(r[a + 1]);
+				r[d + 2] = Math.abs(r[a + 2]);
+				pc += 3;
+				break;
+			}
+			case CLAMP: {
+				int a = code[pc + 2];
+				r[d] = Clamp.clamp(r[a]);
+				r[d + 1] = Clamp.clamp(r[a + 1]);
+				r[d + 2] = Clamp.clamp(r[a + 2]);
+				pc += 3;
+				break;
+			}
+			case WRAP: {
+				int a = code[pc + 2];
+				r[d] = Wrap.wrap(r[a]);
+				r[d + 1] = Wrap.wrap(r[a + 1]);
+				r[d + 2] = Wrap.wrap(r[a + 2]);
+				pc += 3;
+				break;
+			}
+			case NEGATE: {
+				int a = code[pc + 2];
+				r[d] = -r[a];
+				r[d + 1] = -r[a + 1];
+				r[d + 2] = -r[a + 2];
+				pc += 3;
+				break;
+			}
+			case ADD: {
+				int a = code[pc + 2];
+				int b = code[pc + 3];
+				r[d] = r[a] + r[b];
+				r[d + 1] = r[a + 1] + r[b + 1];
+				r[d + 2] = r[a + 2] + r[b + 2];
+				pc += 4;
+				break;
+			}
+			case SUBTRACT: {
+				int a = code[pc + 2];
+				int b = code[pc + 3];
+				r[d] = r[a] - r[b];
+				r[d + 1] = r[a + 1] - r[b + 1];
+				r[d + 2] = r[a + 2] - r[b + 2];
+				pc += 4;
+				break;
+			}
+			case MULTIPLY: {
+				int a = code[pc + 2];
+				int b = code[pc + 3];
+				r[d] = r[a] * r[b];
+				r[d + 1] = r[a + 1] * r[b + 1];
+				r[d + 2] = r[a + 2] * r[b + 2];
+				pc += 4;
+				break;
+			}
+			case DIVIDE: {
+				int a = code[pc + 2];
+				int b = code[pc + 3];
+				r[d] = Division.divide(r[a], r[b]);
+				r[d + 1] = Division.divide(r[a + 1], r[b + 1]);
+				r[d + 2] = Division.divide(r[a + 2], r[b + 2]);
+				pc += 4;
+				break;
+			}
+			case MODULO: {
+				int a = code[pc + 2];
+				int b = code[pc + 3];
+				r[d] = Modulo.modulo(r[a], r[b]);
+				r[d + 1] = Modulo.modulo(r[a + 1], r[b + 1]);
+				r[d + 2] = Modulo.modulo(r[a + 2], r[b + 2]);
+				pc += 4;
+				break;
+			}
+			case POWER: {
+				int a = code[pc + 2];
+				int b = code[pc + 3];
+				r[d] = Exponentiation.power(r[a], r[b]);
+				r[d + 1] = Exponentiation.power(r[a + 1], r[b + 1]);
+				r[d + 2] = Exponentiation.power(r[a + 2], r[b + 2]);
+				pc += 4;
+				break;
+			}
+			default:
+				if ((op & MONO) == 0) {
+					throw new IllegalStateException("Unknown opcode " + op);
+				}
+				pc = runMonochrome(op & ~MONO, code, pc, r);
+			}
+		}
+	}
+
+	/**
+	 * Run one instruction that computes a single register
+	 *
+	 * @return the address of the next instruction
+	 */
+	private static int runMonochrome(int op, int[] code, int pc, double[] r) {
+		int d = code[pc + 1];
+		if (op == MANDELBROT || op == JULIA) {
+			r[d] = escapeTime(op, code, pc, r, 0);
+			return pc + operandCount(op) + 1;
+		}
+		double value = r[code[pc + 2]];
+		switch (op) {
+		case COPY:
+			r[d] = value;
+			return pc + 3;
+		case WRAP_AVERAGE:
+			r[d] = ImageWrap.wrapAround((value + value + value) / 3);
+			return pc + 3;
+		case CLIP_AVERAGE:
+			r[d] = ImageClip.clip((value + value + value) / 3);
+			return pc + 3;
+		case PERLIN_BW: {
+			double sum = value + r[code[pc + 3]];
+			r[d] = ImprovedNoise.noise(sum, sum, sum);
+			return pc + 4;
+		}
+		case ADD:
+			r[d] = value + r[code[pc + 3]];
+			return pc + 4;
+		case SUBTRACT:
+			r[d] = value - r[code[pc + 3]];
+			return pc + 4;
+		case MULTIPLY:
+			r[d] = value * r[code[pc + 3]];
+			return pc + 4;
+		case DIVIDE:
+			r[d] = Division.divide(value, r[code[pc + 3]]);
+			return pc + 4;
+		case MODULO:
+			r[d] = Modulo.modulo(value, r[code[pc + 3]]);
+			return pc + 4;
+		case POWER:
+			r[d] = Exponentiation.power(value, r[code[pc + 3]]);
+			return pc + 4;
+		case SIN:
+			r[d] = Math.sin(value);
+			break;
+		case COS:
+			r[d] = Math.cos(value);
+			break;
+		case TAN:
+			r[d] = Math.tan(value);
+			break;
+		case ATAN:
+			r[d] = Math.atan(value);
+			break;
+		case EXP:
+			r[d] = Math.exp(value);
+			break;
+		case LOG:
+			r[d] = Log.log(value);
+			break;
+		case FLOOR:
+			r[d] = Math.floor(value);
+			break;
+		case CEIL:
+			r[d] = Math.ceil(value);
+			break;
+		case ABS:
+			r[d] = Math.abs(value);
+			break;
+		case CLAMP:
+			r[d] = Clamp.clamp(value);
+			break;
+		case WRAP:
+			r[d] = Wrap.wrap(value);
+			break;
+		case NEGATE:
+			r[d] = -value;
+			break;
+		default:
+			throw new IllegalStateException("Unknown opcode " + (op | MONO));
+		}
+		return pc + 3;
+	}
+
+	/**
+	 * Returns one channel of the fractal of an escape-time instruction
+	 */
+	private static double escapeTime(int op, int[] code, int pc, double[] r, int channel) {
+		int iterations = code[pc + 2];
+		if (op == MANDELBROT) {
+			return EscapeTime.mandelbrot(r[code[pc + 3] + channel], r[code[pc + 4] + channel], iterations);
+		}
+		return EscapeTime.julia(r[code[pc + 3] + channel], r[code[pc + 4] + channel], r[code[pc + 5] + channel],
+				r[code[pc + 6] + channel], iterations);
+	}
+
+	/**
+	 * Create planes for running the program a row at a time, one plane per
+	 * register, with the constant pool loaded. Like registers, planes may be
+	 * reused for any number of rows, but only by one thread at a time.
+	 *
+	 * @param width the longest row the planes will be used for
+	 */
+	public Planes createPlanes(int width) {
+		int slotCount = 3;
+		for (ExpressionTreeNode node : myNodes) {
+			slotCount = Math.max(slotCount, node.getSlotCount());
+		}
+		return new Planes(myConstants, myRegisterCount, width, slotCount);
+	}
+
+	/**
+	 * Run the program for every point (xs[i], y) with i less than length, an
+	 * instruction at a time across the whole row. The result is left in the
+	 * three planes starting at getResultRegister().
+	 *
+	 * @param xs      the x value of each point
+	 * @param y       the y value shared by all the points
+	 * @param length  the number of points
+	 * @param planes  planes from createPlanes()
+	 * @param kernels the loops to run the arithmetic with
+	 */
+	public void runRow(double[] xs, double y, int length, Planes planes, PlaneKernels kernels) {
+		int[] code = myCode;
+		double[][] r = planes.myPlanes;
+		System.arraycopy(xs, 0, r[myConstants.length], 0, length);
+		Arrays.fill(r[myConstants.length + 1], 0, length, y);
+		double[] first = r[myRegisterCount];
+		double[] second = r[myRegisterCount + 1];
+		double[] third = r[myRegisterCount + 2];
+		int pc = 0;
+		while (pc < code.length) {
+			int op = code[pc];
+			// a monochrome instruction computes only the first channel
+			int channels = (op & MONO) != 0 ? 1 : 3;
+			op &= ~MONO;
+			int d = code[pc + 1];
+			int a = op == STORE ? 0 : code[pc + 2];
+			int b = operandCount(op) == 3 ? code[pc + 3] : 0;
+			switch (op) {
+			case SPLAT:
+				System.arraycopy(r[a], 0, r[d], 0, length);
+				System.arraycopy(r[a], 0, r[d + 1], 0, length);
+				System.arraycopy(r[a], 0, r[d + 2], 0, length);
+				break;
+			case COPY:
+				for (int channel = 0; channel < channels; channel++) {
+					System.arraycopy(r[a + channel], 0, r[d + channel], 0, length);
+				}
+				break;
+			case RANDOM:
+				kernels.random(((Random) myNodes[a]).getKey(), r[code[pc + 3]], r[code[pc + 4]], r[d], r[d + 1],
+						r[d + 2], length);
+				break;
+			case STORE:
+				// storing is the same every time, so once per row will do
+				((Assignment) myNodes[d]).store();
+				break;
+			case AVOID_ZERO:
+				for (int i = 0; i < length; i++) {
+					r[d][i] = Log.avoidZero(r[a][i]);
+				}
+				break;
+			case WRAP_AVERAGE: {
+				// a monochrome coordinate is averaged with itself
+				int step = channels == 3 ? 1 : 0;
+				for (int i = 0; i < length; i++) {
+					r[d][i] = ImageWrap.wrapAround((r[a][i] + r[a + step][i] + r[a + 2 * step][i]) / 3);
+				}
+				break;
+			}
+			case CLIP_AVERAGE: {
+				int step = channels == 3 ? 1 : 0;
+				for (int i = 0; i < length; i++) {
+					r[d][i] = ImageClip.clip((r[a][i] + r[a + step][i] + r[a + 2 * step][i]) / 3);
+				}
+				break;
+			}
+			case INTERPRET: {
+				ExpressionTreeNode node = myNodes[a];
+				double[] slots = planes.mySlots;
+				double[] xPlane = r[code[pc + 3]];
+				double[] yPlane = r[code[pc + 4]];
+				for (int i = 0; i < length; i++) {
+					node.evaluate(xPlane[i], yPlane[i], slots, 0);
+					r[d][i] = slots[0];
+					r[d + 1][i] = slots[1];
+					r[d + 2][i] = slots[2];
+				}
+				break;
+			}
+			case MANDELBROT:
+				// channel c of d is only written after channel c of the
+				// arguments is read
+				for (int channel = 0; channel < channels; channel++) {
+					kernels.mandelbrot(r[code[pc + 3] + channel], r[code[pc + 4] + channel], a, r[d + channel],
+							length);
+				}
+				break;
+			case JULIA:
+				for (int channel = 0; channel < channels; channel++) {
+					kernels.julia(r[code[pc + 3] + channel], r[code[pc + 4] + channel], r[code[pc + 5] + channel],
+							r[code[pc + 6] + channel], a, r[d + channel], length);
+				}
+				break;
+			case RGB_TO_YCRCB:
+				kernels.rgbToYCrCb(r[a], r[a + 1], r[a + 2], r[d], r[d + 1], r[d + 2], length);
+				break;
+			case YCRCB_TO_RGB:
+				kernels.yCrCbToRGB(r[a], r[a + 1], r[a + 2], r[d], r[d + 1], r[d + 2], length);
+				break;
+			case PERLIN_BW:
+				if (channels == 1) {
+					kernels.add(r[a], r[b], first, length);
+					kernels.noise(first, first, first, r[d], length);
+					break;
+				}
+				kernels.add(r[a], r[b], first, length);
+				kernels.add(r[a + 1], r[b + 1], second, length);
+				kernels.add(r[a + 2], r[b + 2], third, length);
+				kernels.noise(first, second, third, r[d], length);
+				System.arraycopy(r[d], 0, r[d + 1], 0, length);
+				System.arraycopy(r[d], 0, r[d + 2], 0, length);
+				break;
+			case PERLIN_COLOR:
+				// each channel reads its arguments before d overwrites them, and
+				// d may be a or b
+				kernels.planarNoise(r[a], r[b], 0.3, first, length);
+				kernels.planarNoise(r[a + 1], r[b + 1], -0.8, second, length);
+				kernels.planarNoise(r[a + 2], r[b + 2], 0.1, third, length);
+				System.arraycopy(first, 0, r[d], 0, length);
+				System.arraycopy(second, 0, r[d + 1], 0, length);
+				System.arraycopy(third, 0, r[d + 2], 0, length);
+				break;
+			case FLOOR:
+			case CEIL:
+			case ABS:
+			case CLAMP:
+			case WRAP:
+			case NEGATE:
+				for (int channel = 0; channel < channels; channel++) {
+					runUnary(op, r[a + channel], r[d + channel], length, kernels);
+				}
+				break;
+			case ADD:
+			case SUBTRACT:
+			case MULTIPLY:
+			case DIVIDE:
+			case MODULO:
+				for (int channel = 0; channel < channels; channel++) {
+					runBinary(op, r[a + channel], r[b + channel], r[d + channel], length, kernels);
+				}
+				break;
+			case POWER:
+				for (int channel = 0; channel < channels; channel++) {
+					double[] base = r[a + channel];
+					double[] exponent = r[b + channel];
+					double[] out = r[d + channel];
+					for (int i = 0; i < length; i++) {
+						out[i] = Exponentiation.power(base[i], exponent[i]);
+					}
+				}
+				break;
+			default:
+				for (int channel = 0; channel < channels; channel++) {
+					runFunction(op, r[a + channel], r[d + channel], length, kernels);
+				}
+			}
+			pc += operandCount(op) + 1;
+		}
+	}
+
+	private static void runUnary(int op, double[] a, double[] out, int length, PlaneKernels kernels) {
+		switch (op) {
+		case FLOOR:
+			kernels.floor(a, out, length);
+			break;
+		case CEIL:
+			kernels.ceil(a, out, length);
+			break;
+		case ABS:
+			kernels.abs(a, out, length);
+			break;
+		case CLAMP:
+			kernels.clamp(a, out, length);
+			break;
+		case WRAP:
+			kernels.wrap(a, out, length);
+			break;
+		default:
+			kernels.negate(a, out, length);
+		}
+	}
+
+	private static void runBinary(int op, double[] a, double[] b, double[] out, int length, PlaneKernels kernels) {
+		switch (op) {
+		case ADD:
+			kernels.add(a, b, out, length);
+			break;
+		case SUBTRACT:
+			kernels.subtract(a, b, out, length);
+			break;
+		case MULTIPLY:
+			kernels.multiply(a, b, out, length);
+			break;
+		case DIVIDE:
+			kernels.divide(a, b, out, length);
+			break;
+		default:
+			kernels.modulo(a, b, out, length);
+		}
+	}
+
+	private static void runFunction(int op, double[] a, double[] out, int length, PlaneKernels kernels) {
+		switch (op) {
+		case SIN:
+			kernels.sin(a, out, length);
+			break;
+		case COS:
+			kernels.cos(a, out, length);
+			break;
+		case TAN:
+			kernels.tan(a, out, length);
+			break;
+		case ATAN:
+			kernels.atan(a, out, length);
+			break;
+		case EXP:
+			kernels.exp(a, out, length);
+			break;
+		case LOG:
+			kernels.log(a, out, length);
+			break;
+		default:
+			throw new IllegalStateException("Unknown opcode " + op);
+		}
+	}
+
+	/**
+	 * Returns a listing of the program, one instruction per line
+	 */
+	/**
+	 * Create float planes for running the program a row at a time in single
+	 * precision, with the constant pool loaded
+	 *
+	 * @param width the longest row the planes will be used for
+	 */
+	public FloatPlanes createFloatPlanes(int width) {
+		int slotCount = 3;
+		for (ExpressionTreeNode node : myNodes) {
+			slotCount = Math.max(slotCount, node.getSlotCount());
+		}
+		return new FloatPlanes(myConstants, myRegisterCount, width, slotCount);
+	}
+
+	/**
+	 * Run the program for every point (xs[i], y) like runRow on double planes,
+	 * but with every value rounded to a float. The arithmetic, clamping,
+	 * wrapping, color conversion and noise are done in single precision; the
+	 * transcendental functions and powers are computed in double and rounded,
+	 * and nodes without an instruction are evaluated by the tree at the double
+	 * coordinates when they read x and y directly.
+	 *
+	 * @param xs     the x value of each point
+	 * @param y      the y value shared by all the points
+	 * @param length the number of points
+	 * @param planes planes from createFloatPlanes()
+	 */
+	public void runRow(double[] xs, double y, int length, FloatPlanes planes) {
+		int[] code = myCode;
+		float[][] r = planes.myPlanes;
+		int xRegister = myConstants.length;
+		int yRegister = xRegister + 1;
+		float[] xPlane = r[xRegister];
+		for (int i = 0; i < length; i++) {
+			xPlane[i] = (float) xs[i];
+		}
+		Arrays.fill(r[yRegister], 0, length, (float) y);
+		float[] first = r[myRegisterCount];
+		float[] second = r[myRegisterCount + 1];
+		float[] third = r[myRegisterCount + 2];
+		int pc = 0;
+		while (pc < code.length) {
+			int op = code[pc];
+			int channels = (op & MONO) != 0 ? 1 : 3;
+			op &= ~MONO;
+			int d = code[pc + 1];
+			int a = op == STORE ? 0 : code[pc + 2];
+			int b = operandCount(op) == 3 ? code[pc + 3] : 0;
+			switch (op) {
+			case SPLAT:
+				System.arraycopy(r[a], 0, r[d], 0, length);
+				System.arraycopy(r[a], 0, r[d + 1], 0, length);
+				System.arraycopy(r[a], 0, r[d + 2], 0, length);
+				break;
+			case COPY:
+				for (int channel = 0; channel < channels; channel++) {
+					System.arraycopy(r[a + channel], 0, r[d + channel], 0, length);
+				}
+				break;
+			case RANDOM: {
+				// the numbers are hashed from the double coordinates when they
+				// are x and y themselves
+				long key = ((Random) myNodes[a]).getKey();
+				int xSource = code[pc + 3];
+				int ySource = code[pc + 4];
+				for (int i = 0; i < length; i++) {
+					double pointX = xSource == xRegister ? xs[i] : r[xSource][i];
+					double pointY = ySource == yRegister ? y : r[ySource][i];
+					r[d][i] = (float) PixelRandom.random(key, 0, pointX, pointY);
+					r[d + 1][i] = (float) PixelRandom.random(key, 1, pointX, pointY);
+					r[d + 2][i] = (float) PixelRandom.random(key, 2, pointX, pointY);
+				}
+				break;
+			}
+			case STORE:
+				((Assignment) myNodes[d]).store();
+				break;
+			case AVOID_ZERO:
+				for (int i = 0; i < length; i++) {
+					r[d][i] = (float) Log.avoidZero(r[a][i]);
+				}
+				break;
+			case WRAP_AVERAGE: {
+				int step = channels == 3 ? 1 : 0;
+				for (int i = 0; i < length; i++) {
+					r[d][i] = (float) ImageWrap.wrapAround((r[a][i] + r[a + step][i] + r[a + 2 * step][i]) / 3);
+				}
+				break;
+			}
+			case CLIP_AVERAGE: {
+				int step = channels == 3 ? 1 : 0;
+				for (int i = 0; i < length; i++) {
+					r[d][i] = (float) ImageClip.clip((r[a][i] + r[a + step][i] + r[a + 2 * step][i]) / 3);
+				}
+				break;
+			}
+			case INTERPRET: {
+				// tables of x or y only find the exact coordinates
+				ExpressionTreeNode node = myNodes[a];
+				double[] slots = planes.mySlots;
+				int xSource = code[pc + 3];
+				int ySource = code[pc + 4];
+				for (int i = 0; i < length; i++) {
+					double pointX = xSource == xRegister ? xs[i] : r[xSource][i];
+					double pointY = ySource == yRegister ? y : r[ySource][i];
+					node.evaluate(pointX, pointY, slots, 0);
+					r[d][i] = (float) slots[0];
+					r[d + 1][i] = (float) slots[1];
+					r[d + 2][i] = (float) slots[2];
+				}
+				break;
+			}
+			case MANDELBROT:
+			case JULIA: {
+				// the orbits are iterated in double, from the rounded arguments
+				double[] arguments = new double[operandCount(op) - 2];
+				for (int channel = 0; channel < channels; channel++) {
+					for (int i = 0; i < length; i++) {
+						for (int k = 0; k < arguments.length; k++) {
+							arguments[k] = r[code[pc + 3 + k] + channel][i];
+						}
+						r[d + channel][i] = (float) (op == MANDELBROT
+								? EscapeTime.mandelbrot(arguments[0], arguments[1], a)
+								: EscapeTime.julia(arguments[0], arguments[1], arguments[2], arguments[3], a));
+					}
+				}
+				break;
+			}
+			case RGB_TO_YCRCB: {
+				float[] red = r[a];
+				float[] green = r[a + 1];
+				float[] blue = r[a + 2];
+				for (int i = 0; i < length; i++) {
+					float cr = red[i] * -0.1687f + green[i] * -0.3312f + blue[i] * 0.5f;
+					float cb = red[i] * 0.5f + green[i] * -0.4183f + blue[i] * -0.0816f;
+					r[d][i] = red[i] * 0.2989f + green[i] * 0.5866f + blue[i] * 0.1145f;
+					r[d + 1][i] = cr;
+					r[d + 2][i] = cb;
+				}
+				break;
+			}
+			case YCRCB_TO_RGB: {
+				float[] luma = r[a];
+				float[] cr = r[a + 1];
+				float[] cb = r[a + 2];
+				for (int i = 0; i < length; i++) {
+					float green = luma[i] + cr[i] * -0.3456f + cb[i] * -0.7145f;
+					float blue = luma[i] + cr[i] * 1.7710f;
+					r[d][i] = luma[i] + cb[i] * 1.4022f;
+					r[d + 1][i] = green;
+					r[d + 2][i] = blue;
+				}
+				break;
+			}
+			case PERLIN_BW:
+				if (channels == 1) {
+					for (int i = 0; i < length; i++) {
+						float sum = r[a][i] + r[b][i];
+						r[d][i] = ImprovedNoise.noise(sum, sum, sum);
+					}
+					break;
+				}
+				for (int i = 0; i < length; i++) {
+					first[i] = r[a][i] + r[b][i];
+					second[i] = r[a + 1][i] + r[b + 1][i];
+					third[i] = r[a + 2][i] + r[b + 2][i];
+				}
+				for (int i = 0; i < length; i++) {
+					r[d][i] = ImprovedNoise.noise(first[i], second[i], third[i]);
+				}
+				System.arraycopy(r[d], 0, r[d + 1], 0, length);
+				System.arraycopy(r[d], 0, r[d + 2], 0, length);
+				break;
+			case PERLIN_COLOR:
+				PlanarNoise.noise(r[a], r[b], 0.3f, first, length);
+				PlanarNoise.noise(r[a + 1], r[b + 1], -0.8f, second, length);
+				PlanarNoise.noise(r[a + 2], r[b + 2], 0.1f, third, length);
+				System.arraycopy(first, 0, r[d], 0, length);
+				System.arraycopy(second, 0, r[d + 1], 0, length);
+				System.arraycopy(third, 0, r[d + 2], 0, length);
+				break;
+			case ADD:
+			case SUBTRACT:
+			case MULTIPLY:
+			case DIVIDE:
+			case MODULO:
+				for (int channel = 0; channel < channels; channel++) {
+					runBinary(op, r[a + channel], r[b + channel], r[d + channel], length);
+				}
+				break;
+			case POWER:
+				for (int channel = 0; channel < channels; channel++) {
+					float[] base = r[a + channel];
+					float[] exponent = r[b + channel];
+					float[] out = r[d + channel];
+					for (int i = 0; i < length; i++) {
+						out[i] = (float) Exponentiation.power(base[i], exponent[i]);
+					}
+				}
+				break;
+			default:
+				for (int channel = 0; channel < channels; channel++) {
+					runUnary(op, r[a + channel], r[d + channel], length);
+				}
+			}
+			pc += operandCount(op) + 1;
+		}
+	}
+
+	private static void runBinary(int op, float[] a, float[] b, float[] out, int length) {
+		switch (op) {
+		case ADD:
+			for (int i = 0; i < length; i++) {
+				out[i] = a[i] + b[i];
+			}
+			break;
+		case SUBTRACT:
+			for (int i = 0; i < length; i++) {
+				out[i] = a[i] - b[i];
+			}
+			break;
+		case MULTIPLY:
+			for (int i = 0; i < length; i++) {
+				out[i] = a[i] * b[i];
+			}
+			break;
+		case DIVIDE:
+			for (int i = 0; i < length; i++) {
+				out[i] = b[i] == 0 ? 0 : a[i] / b[i];
+			}
+			break;
+		default:
+			for (int i = 0; i < length; i++) {
+				out[i] = b[i] == 0 ? a[i] : a[i] % b[i];
+			}
+		}
+	}
+
+	private static void runUnary(int op, float[] a, float[] out, int length) {
+		switch (op) {
+		case FLOOR:
+			for (int i = 0; i < length; i++) {
+				out[i] = (float) Math.floor(a[i]);
+			}
+			break;
+		case CEIL:
+			for (int i = 0; i < length; i++) {
+				out[i] = (float) Math.ceil(a[i]);
+			}
+			break;
+		case ABS:
+			for (int i = 0; i < length; i++) {
+				out[i] = Math.abs(a[i]);
+			}
+			break;
+		case CLAMP:
+			for (int i = 0; i < length; i++) {
+				out[i] = a[i] > 1 ? 1 : a[i] < -1 ? -1 : a[i];
+			}
+			break;
+		case WRAP:
+			for (int i = 0; i < length; i++) {
+				out[i] = (a[i] + 3) % 2 - 1;
+			}
+			break;
+		case NEGATE:
+			for (int i = 0; i < length; i++) {
+				out[i] = -a[i];
+			}
+			break;
+		case SIN:
+			for (int i = 0; i < length; i++) {
+				out[i] = (float) Math.sin(a[i]);
+			}
+			break;
+		case COS:
+			for (int i = 0; i < length; i++) {
+				out[i] = (float) Math.cos(a[i]);
+			}
+			break;
+		case TAN:
+			for (int i = 0; i < length; i++) {
+				out[i] = (float) Math.tan(a[i]);
+			}
+			break;
+		case ATAN:
+			for (int i = 0; i < length; i++) {
+				out[i] = (float) Math.atan(a[i]);
+			}
+			break;
+		case EXP:
+			for (int i = 0; i < length; i++) {
+				out[i] = (float) Math.exp(a[i]);
+			}
+			break;
+		case LOG:
+			for (int i = 0; i < length; i++) {
+				out[i] = (float) Log.log(a[i]);
+			}
+			break;
+		default:
+			throw new IllegalStateException("Unknown opcode " + op);
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder listing = new StringBuilder();
+		listing.append("; ").append(myConstants.length).append(" constants, ").append(myRegisterCount)
+				.append(" registers, result in r").append(myResult).append("\n");
+		int pc = 0;
+		while (pc < myCode.length) {
+			int op = myCode[pc];
+			int length = operandCount(op) + 1;
+			listing.append(NAMES[op & ~MONO]).append((op & MONO) != 0 ? ".mono" : "");
+			for (int i = 1; i < length; i++) {
+				listing.append(i == 1 ? " " : ", ").append(myCode[pc + i]);
+			}
+			listing.append("\n");
+			pc += length;
+		}
+		return listing.toString();
+	}
+
+	private static int operandCount(int op) {
+		op &= ~MONO;
+		if (op == STORE) {
+			return 1;
+		} else if (op == INTERPRET || op == RANDOM || op == MANDELBROT) {
+			return 4;
+		} else if (op == JULIA) {
+			return 6;
+		} else if (op >= ADD && op < COPY) {
+			return 3;
+		}
+		return 2;
+	}
+
+	/**
+	 * The planes a program runs on a row at a time: one row-long plane per
+	 * register, then scratch planes for noise arguments
+	 */
+	public static class Planes {
+		private static final int SCRATCH = 3;
+
+		private double[][] myPlanes;
+		private double[] mySlots;
+
+		private Planes(double[] constants, int registerCount, int width, int slotCount) {
+			myPlanes = new double[registerCount + SCRATCH][width];
+			for (int i = 0; i < constants.length; i++) {
+				Arrays.fill(myPlanes[i], constants[i]);
+			}
+			mySlots = new double[slotCount];
+		}
+
+		/**
+		 * Returns the plane of the given register
+		 */
+		public double[] get(int register) {
+			return myPlanes[register];
+		}
+	}
+
+	/**
+	 * The float planes a program runs on a row at a time in single precision,
+	 * laid out like Planes
+	 */
+	public static class FloatPlanes {
+		private float[][] myPlanes;
+		private double[] mySlots;
+
+		private FloatPlanes(double[] constants, int registerCount, int width, int slotCount) {
+			myPlanes = new float[registerCount + Planes.SCRATCH][width];
+			for (int i = 0; i < constants.length; i++) {
+				Arrays.fill(myPlanes[i], (float) constants[i]);
+			}
+			mySlots = new double[slotCount];
+		}
+
+		/**
+		 * Returns the plane of the given register
+		 */
+		public float[] get(int register) {
+			return myPlanes[register];
+		}
+	}
+
+	/**
+	 * Turns a tree into a program. Registers are handed out like a stack: a node
+	 * computes its value into the registers starting at the one it is given and
+	 * may use any register above them while it does. A narrow node computes
+	 * only the first of its registers.
+	 */
+	private static class Lowering {
+		private ChannelAnalysis myChannels;
+		private List<Integer> myCode = new ArrayList<>();
+		private List<Double> myConstants = new ArrayList<>();
+		private List<ExpressionTreeNode> myNodes = new ArrayList<>();
+		private Map<ExpressionTreeNode, Integer> myNodeIndices = new IdentityHashMap<>();
+		// the order of the shared subexpressions, then the registers of those
+		// computed so far
+		private Map<ExpressionTreeNode, Integer> mySharedIndices = new IdentityHashMap<>();
+		private Map<ExpressionTreeNode, Integer> mySharedRegisters = new IdentityHashMap<>();
+		private int myInstructionCount;
+		private int myHighWater;
+		// lowering happens in two passes: the first sizes the constant pool,
+		// which decides where the working registers start
+		private int myWorkStart;
+
+		ExpressionProgram lower(ExpressionTreeNode expr) {
+			myChannels = new ChannelAnalysis(expr);
+			collectConstants(expr);
+			int x = myConstants.size();
+			myWorkStart = x + 2 + 3 * mySharedIndices.size();
+			myHighWater = myWorkStart;
+			int result = emitWide(expr, myWorkStart, x, x + 1);
+
+			int[] code = new int[myCode.size()];
+			for (int i = 0; i < code.length; i++) {
+				code[i] = myCode.get(i);
+			}
+			double[] constants = new double[myConstants.size()];
+			for (int i = 0; i < constants.length; i++) {
+				constants[i] = myConstants.get(i);
+			}
+			return new ExpressionProgram(code, constants, myNodes.toArray(new ExpressionTreeNode[0]), myHighWater,
+					myInstructionCount, result);
+		}
+
+		/**
+		 * Put the colors of the constants in the tree into the pool and number
+		 * the shared subexpressions. Nodes left to the interpreter are not
+		 * looked into.
+		 */
+		private void collectConstants(ExpressionTreeNode node) {
+			if (node instanceof Constant || node instanceof RGBColor) {
+				constantRegister(node);
+			} else if (node instanceof SharedExpression && mySharedIndices.containsKey(node)) {
+				return;
+			} else if (ExpressionCompiler.isSupported(node)) {
+				if (node instanceof SharedExpression) {
+					mySharedIndices.put(node, mySharedIndices.size());
+				}
+				for (ExpressionTreeNode child : node.getChildren()) {
+					collectConstants(child);
+				}
+			}
+		}
+
+		/**
+		 * Returns the first of the three pool registers holding the constant's
+		 * color, adding it to the pool if it is new
+		 */
+		private int constantRegister(ExpressionTreeNode node) {
+			double red;
+			double green;
+			double blue;
+			if (node instanceof Constant) {
+				red = green = blue = ((Constant) node).getValue();
+			} else {
+				RGBColor color = (RGBColor) node;
+				red = color.getRed();
+				green = color.getGreen();
+				blue = color.getBlue();
+			}
+			for (int i = 0; i + 2 < myConstants.size(); i += 3) {
+				if (same(myConstants.get(i), red) && same(myConstants.get(i + 1), green)
+						&& same(myConstants.get(i + 2), blue)) {
+					return i;
+				}
+			}
+			myConstants.add(red);
+			myConstants.add(green);
+			myConstants.add(blue);
+			return myConstants.size() - 3;
+		}
+
+		private static boolean same(double a, double b) {
+			return Double.doubleToRawLongBits(a) == Double.doubleToRawLongBits(b);
+		}
+
+		private void instruction(int... words) {
+			for (int word : words) {
+				myCode.add(word);
+			}
+			myInstructionCount++;
+		}
+
+		private void reserve(int end) {
+			myHighWater = Math.max(myHighWater, end);
+		}
+
+		private int nodeIndex(ExpressionTreeNode node) {
+			Integer index = myNodeIndices.get(node);
+			if (index == null) {
+				index = myNodes.size();
+				myNodes.add(node);
+				myNodeIndices.put(node, index);
+			}
+			return index;
+		}
+
+		/**
+		 * Returns true if the node's instructions compute only the first of its
+		 * registers, because it is monochrome
+		 */
+		private boolean isNarrow(ExpressionTreeNode node) {
+			Class<?> type = node.getClass();
+			List<ExpressionTreeNode> children = node.getChildren();
+			if (type == X.class || type == Y.class) {
+				return true;
+			} else if (type == Word.class || type == ExpressionDag.class || type == SharedExpression.class) {
+				return isNarrow(children.get(0));
+			} else if (type == Assignment.class) {
+				return isNarrow(children.get(1));
+			} else if (type == PerlinBW.class) {
+				return myChannels.isMonochrome(children.get(0)) && myChannels.isMonochrome(children.get(1));
+			} else if (type == Constant.class || type == RGBColor.class || !ExpressionCompiler.isSupported(node)) {
+				// constants live in the pool and the interpreter fills every
+				// channel
+				return false;
+			}
+			return myChannels.isMonochrome(node);
+		}
+
+		/**
+		 * Emit the instructions for the node, then splat its value to three
+		 * registers if it is narrow
+		 *
+		 * @return the first of the three registers holding the node's value
+		 */
+		private int emitWide(ExpressionTreeNode node, int d, int x, int y) {
+			int value = emit(node, d, x, y);
+			if (!isNarrow(node)) {
+				return value;
+			}
+			reserve(d + 3);
+			instruction(SPLAT, d, value);
+			return d;
+		}
+
+		/**
+		 * Emit the instructions for the node
+		 *
+		 * @param node the node to lower
+		 * @param d    the first register the node may use
+		 * @param x    the register holding x
+		 * @param y    the register holding y
+		 * @return the first of the registers holding the node's value, either d,
+		 *         a constant, x, y or a shared value; only the first is written
+		 *         if the node is narrow
+		 */
+		private int emit(ExpressionTreeNode node, int d, int x, int y) {
+			Class<?> type = node.getClass();
+			List<ExpressionTreeNode> children = node.getChildren();
+			if (type == Constant.class || type == RGBColor.class) {
+				return constantRegister(node);
+			} else if (type == X.class) {
+				return x;
+			} else if (type == Y.class) {
+				return y;
+			}
+			reserve(d + 3);
+			// a narrow node reads only the first channel of its monochrome
+			// arguments, so it need not widen them
+			boolean narrow = isNarrow(node);
+			int mono = narrow ? MONO : 0;
+			if (type == Random.class) {
+				instruction(RANDOM, d, nodeIndex(node), x, y);
+			} else if (type == Word.class || type == ExpressionDag.class) {
+				return emit(children.get(0), d, x, y);
+			} else if (type == SharedExpression.class) {
+				return emitShared(node, d, x, y);
+			} else if (type == Assignment.class) {
+				instruction(STORE, nodeIndex(node));
+				return emit(children.get(1), d, x, y);
+			} else if (type == Log.class) {
+				// the parameter sees the adjusted coordinates in d and d + 1
+				instruction(AVOID_ZERO, d, x);
+				instruction(AVOID_ZERO, d + 1, y);
+				instruction(LOG | mono, d, emitOperand(children.get(0), narrow, d + 2, d, d + 1));
+			} else if (ExpressionCompiler.isSupported(node) && node instanceof UnaryFunction) {
+				instruction(unaryOpcode(type) | mono, d, emitOperand(children.get(0), narrow, d, x, y));
+			} else if (type == PerlinBW.class || type == PerlinColor.class) {
+				ExpressionTreeNode first = children.get(1);
+				int right = emitOperand(first, narrow, d, x, y);
+				int left = emitOperand(children.get(0), narrow, narrow && isNarrow(first) ? d + 1 : d + 3, x, y);
+				instruction((type == PerlinBW.class ? PERLIN_BW : PERLIN_COLOR) | mono, d, left, right);
+			} else if (type == Mandelbrot.class || type == Julia.class) {
+				emitEscapeTime((EscapeTimeFractal) node, narrow, d, x, y);
+			} else if (type == ImageWrap.class || type == ImageClip.class) {
+				int opcode = type == ImageWrap.class ? WRAP_AVERAGE : CLIP_AVERAGE;
+				// the image coordinates go in d and d + 1, above which the
+				// coordinate expressions are computed
+				for (int i = 1; i <= 2; i++) {
+					ExpressionTreeNode coordinate = children.get(i);
+					boolean grey = myChannels.isMonochrome(coordinate);
+					instruction(opcode | (grey ? MONO : 0), d + i - 1, emitOperand(coordinate, grey, d + 2, x, y));
+				}
+				ExpressionTreeNode image = children.get(0);
+				reserve(d + image.getSlotCount());
+				instruction(INTERPRET, d, nodeIndex(image), d, d + 1);
+			} else if (ExpressionCompiler.isSupported(node)) {
+				ExpressionTreeNode first = children.get(0);
+				int left = emitOperand(first, narrow, d, x, y);
+				int right = emitOperand(children.get(1), narrow, narrow && isNarrow(first) ? d + 1 : d + 3, x, y);
+				instruction(binaryOpcode(type) | mono, d, left, right);
+			} else {
+				reserve(d + node.getSlotCount());
+				instruction(INTERPRET, d, nodeIndex(node), x, y);
+			}
+			return d;
+		}
+
+		/**
+		 * Emit the arguments of an escape-time fractal last to first, as the
+		 * node evaluates them, each above the registers of the one after it
+		 */
+		private void emitEscapeTime(EscapeTimeFractal node, boolean narrow, int d, int x, int y) {
+			List<ExpressionTreeNode> children = node.getChildren();
+			int[] words = new int[children.size() + 3];
+			words[0] = (node instanceof Julia ? JULIA : MANDELBROT) | (narrow ? MONO : 0);
+			words[1] = d;
+			words[2] = node.getIterations();
+			int next = d;
+			for (int i = children.size() - 1; i >= 0; i--) {
+				ExpressionTreeNode child = children.get(i);
+				words[i + 3] = emitOperand(child, narrow, next, x, y);
+				next += narrow && isNarrow(child) ? 1 : 3;
+			}
+			reserve(next);
+			instruction(words);
+		}
+
+		/**
+		 * Emit an argument of a node, which is read a channel at a time if the
+		 * node is narrow and as three registers otherwise
+		 */
+		private int emitOperand(ExpressionTreeNode node, boolean narrow, int d, int x, int y) {
+			return narrow ? emit(node, d, x, y) : emitWide(node, d, x, y);
+		}
+
+		/**
+		 * Emit the instructions for a shared subexpression the first time it is
+		 * used, copying its value to its own registers
+		 *
+		 * @return the first of the registers holding the shared value
+		 */
+		private int emitShared(ExpressionTreeNode node, int d, int x, int y) {
+			Integer register = mySharedRegisters.get(node);
+			if (register == null) {
+				// the shared registers lie between y and the working registers
+				register = myWorkStart - 3 * mySharedIndices.size() + 3 * mySharedIndices.get(node);
+				ExpressionTreeNode value = node.getChildren().get(0);
+				instruction(COPY | (isNarrow(value) ? MONO : 0), register, emit(value, d, x, y));
+				mySharedRegisters.put(node, register);
+			}
+			return register;
+		}
+
+		private static int unaryOpcode(Class<?> type) {
+			if (type == Sine.class) {
+				return SIN;
+			} else if (type == Cos.class) {
+				return COS;
+			} else if (type == Tan.class) {
+				return TAN;
+			} else if (type == Atan.class) {
+				return ATAN;
+			} else if (type == Exp.class) {
+				return EXP;
+			} else if (type == Floor.class) {
+				return FLOOR;
+			} else if (type == Ceil.class) {
+				return CEIL;
+			} else if (type == Abs.class) {
+				return ABS;
+			} else if (type == Clamp.class) {
+				return CLAMP;
+			} else if (type == Wrap.class) {
+				return WRAP;
+			} else if (type == Not.class) {
+				return NEGATE;
+			} else if (type == RgbToYCrCb.class) {
+				return RGB_TO_YCRCB;
+			}
+			return YCRCB_TO_RGB;
+		}
+
+		private static int binaryOpcode(Class<?> type) {
+			if (type == Addition.class) {
+				return ADD;
+			} else if (type == Subtraction.class) {
+				return SUBTRACT;
+			} else if (type == Multiplication.class) {
+				return MULTIPLY;
+			} else if (type == Division.class) {
+				return DIVIDE;
+			} else if (type == Modulo.class) {
+				return MODULO;
+			}
+			return POWER;
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package picasso.engine;
+
+/**
+ * Approximations of the transcendental functions of the language that are
+ * quicker than the java.lang.Math routines and accurate to far better than
+ * the 2 / 255 between neighboring 8-bit colors. Each function reduces its
+ * argument to a small range and evaluates a short polynomial there; arguments
+ * outside the range the reduction handles are passed on to Math.
+ *
+ * The error bounds are for the functions themselves. An expression that
+ * magnifies a value, such as sin(x) / 0.001, magnifies its error too, so an
+ * image drawn with these functions may differ from the exact one in a few
+ * pixels; PrecisionCheck counts them.
+ *
+ * @author Mark Holden
+ */
+public final class FastMath {
+	/**
+	 * The largest absolute error of sin and cos
+	 */
+	public static final double SIN_ERROR = 1e-14;
+	/**
+	 * The largest error of tan, relative to the magnitude of the result
+	 */
+	public static final double TAN_RELATIVE_ERROR = 1e-14;
+	/**
+	 * The largest absolute error of atan
+	 */
+	public static final double ATAN_ERROR = 1e-14;
+	/**
+	 * The largest error of exp, relative to the result
+	 */
+	public static final double EXP_RELATIVE_ERROR = 1e-14;
+	/**
+	 * The largest error of log, relative to the larger of 1 and the magnitude
+	 * of the result
+	 */
+	public static final double LOG_ERROR = 1e-14;
+
+	// arguments of sine, cosine and tangent are reduced by multiples of pi / 2
+	// up to this size; the product of the multiple and the high part of pi / 2
+	// is then exact
+	private static final double REDUCTION_LIMIT = 1e6;
+	private static final double TWO_OVER_PI = 2 / Math.PI;
+	private static final double PI_OVER_2_HIGH = 1.57079632673412561417e+00;
+	private static final double PI_OVER_2_LOW = 6.07710050650619224932e-11;
+	private static final double PI_OVER_2 = Math.PI / 2;
+
+	// exp is reduced by multiples of log(2) / 32, which leave a power of two
+	// that can be built directly while it is a normal number, times one of 32
+	// powers of 2^(1/32)
+	private static final double EXP_LIMIT = 700;
+	private static final int EXP_STEPS = 32;
+	private static final double STEPS_OVER_LN2 = EXP_STEPS / Math.log(2);
+	private static final double LN2_HIGH = 6.93147180369123816490e-01;
+	private static final double LN2_LOW = 1.90821492927058770002e-10;
+	private static final double[] EXP_POWERS = new double[EXP_STEPS];
+
+	// log divides the mantissa by the nearest of 128 points between 1 and 2,
+	// multiplying by a rounded reciprocal whose log is in a table
+	private static final int LOG_STEPS = 128;
+	private static final double[] LOG_RECIPROCALS = new double[LOG_STEPS];
+	private static final double[] LOG_OF_RECIPROCALS = new double[LOG_STEPS];
+
+	// atan of the centers k / 8 of the intervals atan is reduced to
+	private static final double[] ATAN_CENTERS = new double[9];
+
+	static {
+		for (int j = 0; j < EXP_STEPS; j++) {
+			EXP_POWERS[j] = Math.pow(2, j / (double) EXP_STEPS);
+		}
+		for (int j = 0; j < LOG_STEPS; j++) {
+			// rounded to a float, the product with the mantissa is nearer exact
+			LOG_RECIPROCALS[j] = (float) (LOG_STEPS / (LOG_STEPS + j + 0.5));
+			LOG_OF_RECIPROCALS[j] = Math.log(LOG_RECIPROCALS[j]);
+		}
+		for (int k = 0; k < ATAN_CENTERS.length; k++) {
+			ATAN_CENTERS[k] = Math.atan(k / 8.0);
+		}
+	}
+
+	private FastMath() {
+	}
+
+	public static double sin(double x) {
+		if (!(Math.abs(x) <= REDUCTION_LIMIT)) {
+			return Math.sin(x);
+		}
+		double k = Math.rint(x * TWO_OVER_PI);
+		double r = (x - k * PI_OVER_2_HIGH) - k * PI_OVER_2_LOW;
+		switch ((int) k & 3) {
+		case 0:
+			return sinPolynomial(r);
+		case 1:
+			return cosPolynomial(r);
+		case 2:
+			return -sinPolynomial(r);
+		default:
+			return -cosPolynomial(r);
+		}
+	}
+
+	public static double cos(double x) {
+		if (!(Math.abs(x) <= REDUCTION_LIMIT)) {
+			return Math.cos(x);
+		}
+		double k = Math.rint(x * TWO_OVER_PI);
+		double r = (x - k * PI_OVER_2_HIGH) - k * PI_OVER_2_LOW;
+		switch ((int) k & 3) {
+		case 0:
+			return cosPolynomial(r);
+		case 1:
+			return -sinPolynomial(r);
+		case 2:
+			return -cosPolynomial(r);
+		default:
+			return sinPolynomial(r);
+		}
+	}
+
+	public static double tan(double x) {
+		if (!(Math.abs(x) <= REDUCTION_LIMIT)) {
+			return Math.tan(x);
+		}
+		double k = Math.rint(x * TWO_OVER_PI);
+		double r = (x - k * PI_OVER_2_HIGH) - k * PI_OVER_2_LOW;
+		if (((int) k & 1) == 0) {
+			return sinPolynomial(r) / cosPolynomial(r);
+		}
+		return -cosPolynomial(r) / sinPolynomial(r);
+	}
+
+	public static double atan(double x) {
+		if (Double.isNaN(x)) {
+			return x;
+		}
+		// atan(a) = pi / 2 - atan(1 / a), so only [0, 1] needs a polynomial
+		double a = Math.abs(x);
+		boolean inverted = a > 1;
+		if (inverted) {
+			a = 1 / a;
+		}
+		// atan(a) = atan(c) + atan((a - c) / (1 + a c)) for the nearest center
+		int k = (int) (a * 8 + 0.5);
+		double c = k * 0.125;
+		double t = (a - c) / (1 + a * c);
+		double t2 = t * t;
+		double result = ATAN_CENTERS[k]
+				+ t * (1 - t2 * (1 / 3.0 - t2 * (1 / 5.0 - t2 * (1 / 7.0 - t2 * (1 / 9.0)))));
+		if (inverted) {
+			result = PI_OVER_2 - result;
+		}
+		return Math.copySign(result, x);
+	}
+
+	public static double exp(double x) {
+		if (!(Math.abs(x) <= EXP_LIMIT)) {
+			return Math.exp(x);
+		}
+		// e^x = 2^(k / 32) e^r with |r| at most log(2) / 64
+		double k = Math.rint(x * STEPS_OVER_LN2);
+		double r = (x - k * (LN2_HIGH / EXP_STEPS)) - k * (LN2_LOW / EXP_STEPS);
+		int steps = (int) k;
+		double series = 1 + r * (1 + r * (1 / 2.0 + r * (1 / 6.0 + r * (1 / 24.0 + r * (1 / 120.0)))));
+		double power = Double.longBitsToDouble((long) ((steps >> 5) + 1023) << 52);
+		return power * EXP_POWERS[steps & (EXP_STEPS - 1)] * series;
+	}
+
+	/**
+	 * Returns the log of the magnitude of the value, or 0 for 0, as Log does
+	 */
+	public static double log(double value) {
+		if (value == 0) {
+			return 0;
+		}
+		double a = Math.abs(value);
+		if (!(a >= Double.MIN_NORMAL && a < Double.POSITIVE_INFINITY)) {
+			return Math.log(a);
+		}
+		// a = m 2^e with m in [1, 2)
+		long bits = Double.doubleToRawLongBits(a);
+		int exponent = (int) (bits >>> 52) - 1023;
+		double m = Double.longBitsToDouble(bits & 0x000FFFFFFFFFFFFFL | 0x3FF0000000000000L);
+		// log(m) = log(m c) - log(c), where m c is within 1 / 128 of 1
+		int j = (int) (bits >>> (52 - 7)) & (LOG_STEPS - 1);
+		double r = m * LOG_RECIPROCALS[j] - 1;
+		double series = r * (1 - r * (1 / 2.0 - r * (1 / 3.0 - r * (1 / 4.0 - r * (1 / 5.0 - r * (1 / 6.0))))));
+		return exponent * LN2_HIGH + (series - LOG_OF_RECIPROCALS[j] + exponent * LN2_LOW);
+	}
+
+	/**
+	 * The Taylor series of sine to the 15th power, for |r| up to pi / 4
+	 */
+	private static double sinPolynomial(double r) {
+		double r2 = r * r;
+		return r + r * r2 * (-1 / 6.0 + r2 * (1 / 120.0 + r2 * (-1 / 5040.0 + r2 * (1 / 362880.0 + r2
+				* (-1 / 39916800.0 + r2 * (1 / 6227020800.0 + r2 * (-1 / 1307674368000.0)))))));
+	}
+
+	/**
+	 * The Taylor series of cosine to the 14th power, for |r| up to pi / 4
+	 */
+	private static double cosPolynomial(double r) {
+		double r2 = r * r;
+		return 1 - r2 * (1 / 2.0 - r2 * (1 / 24.0 - r2 * (1 / 720.0 - r2 * (1 / 40320.0 - r2
+				* (1 / 3628800.0 - r2 * (1 / 479001600.0 - r2 * (1 / 87178291200.0)))))));
+	}
+}
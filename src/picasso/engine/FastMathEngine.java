@@ -0,0 +1,20 @@
+package picasso.engine;
+
+/**
+ * Runs the expression a row at a time like SimdEngine, but with sin, cos, tan,
+ * atan, exp and log approximated by FastMath. Run PrecisionCheck to count the
+ * pixels where its images differ from the exact ones.
+ *
+ * @author Mark Holden
+ */
+public class FastMathEngine extends SimdEngine {
+
+	public FastMathEngine() {
+		super(new FastMathKernels(detectKernels()));
+	}
+
+	@Override
+	public String getName() {
+		return "fast";
+	}
+}
@@ -0,0 +1,162 @@
+package picasso.engine;
+
+/**
+ * Plane operations that compute sin, cos, tan, atan, exp and log with the
+ * approximations of FastMath, and pass everything else to exact kernels. The
+ * images differ from the exact ones only where an expression magnifies the
+ * tiny errors of the approximations across a step in the 8-bit color.
+ *
+ * @author Mark Holden
+ */
+public class FastMathKernels implements PlaneKernels {
+	private PlaneKernels myExact;
+
+	/**
+	 * Create kernels that approximate the transcendental functions
+	 *
+	 * @param exact the kernels for the other operations
+	 */
+	public FastMathKernels(PlaneKernels exact) {
+		myExact = exact;
+	}
+
+	@Override
+	public String getName() {
+		return "fast math " + myExact.getName();
+	}
+
+	@Override
+	public void add(double[] a, double[] b, double[] out, int length) {
+		myExact.add(a, b, out, length);
+	}
+
+	@Override
+	public void subtract(double[] a, double[] b, double[] out, int length) {
+		myExact.subtract(a, b, out, length);
+	}
+
+	@Override
+	public void multiply(double[] a, double[] b, double[] out, int length) {
+		myExact.multiply(a, b, out, length);
+	}
+
+	@Override
+	public void divide(double[] a, double[] b, double[] out, int length) {
+		myExact.divide(a, b, out, length);
+	}
+
+	@Override
+	public void modulo(double[] a, double[] b, double[] out, int length) {
+		myExact.modulo(a, b, out, length);
+	}
+
+	@Override
+	public void addConstant(double[] a, double c, double[] out, int length) {
+		myExact.addConstant(a, c, out, length);
+	}
+
+	@Override
+	public void negate(double[] a, double[] out, int length) {
+		myExact.negate(a, out, length);
+	}
+
+	@Override
+	public void abs(double[] a, double[] out, int length) {
+		myExact.abs(a, out, length);
+	}
+
+	@Override
+	public void floor(double[] a, double[] out, int length) {
+		myExact.floor(a, out, length);
+	}
+
+	@Override
+	public void ceil(double[] a, double[] out, int length) {
+		myExact.ceil(a, out, length);
+	}
+
+	@Override
+	public void clamp(double[] a, double[] out, int length) {
+		myExact.clamp(a, out, length);
+	}
+
+	@Override
+	public void wrap(double[] a, double[] out, int length) {
+		myExact.wrap(a, out, length);
+	}
+
+	@Override
+	public void rgbToYCrCb(double[] red, double[] green, double[] blue, double[] luma, double[] cr, double[] cb,
+			int length) {
+		myExact.rgbToYCrCb(red, green, blue, luma, cr, cb, length);
+	}
+
+	@Override
+	public void yCrCbToRGB(double[] luma, double[] cr, double[] cb, double[] red, double[] green, double[] blue,
+			int length) {
+		myExact.yCrCbToRGB(luma, cr, cb, red, green, blue, length);
+	}
+
+	@Override
+	public void noise(double[] x, double[] y, double[] z, double[] out, int length) {
+		myExact.noise(x, y, z, out, length);
+	}
+
+	@Override
+	public void planarNoise(double[] x, double[] y, double offset, double[] out, int length) {
+		myExact.planarNoise(x, y, offset, out, length);
+	}
+
+	@Override
+	public void mandelbrot(double[] cx, double[] cy, int iterations, double[] out, int length) {
+		myExact.mandelbrot(cx, cy, iterations, out, length);
+	}
+
+	@Override
+	public void julia(double[] zx, double[] zy, double[] cx, double[] cy, int iterations, double[] out,
+			int length) {
+		myExact.julia(zx, zy, cx, cy, iterations, out, length);
+	}
+
+	@Override
+	public void sin(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = FastMath.sin(a[i]);
+		}
+	}
+
+	@Override
+	public void cos(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = FastMath.cos(a[i]);
+		}
+	}
+
+	@Override
+	public void tan(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = FastMath.tan(a[i]);
+		}
+	}
+
+	@Override
+	public void atan(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = FastMath.atan(a[i]);
+		}
+	}
+
+	@Override
+	public void exp(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = FastMath.exp(a[i]);
+		}
+	}
+
+	@Override
+	public void log(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = FastMath.log(a[i]);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package picasso.engine;
+
+import picasso.model.EscapeTime;
+import picasso.model.PixelRandom;
+import picasso.model.PlanarNoise;
+import picasso.parser.language.expressions.Log;
+
+/**
+ * Channel operations on planes of values, the inner loops of evaluating an
+ * expression a row at a time. Every operation gives exactly the result of the
+ * corresponding node applied to each element in turn, except that
+ * FastMathKernels approximate the transcendental functions. The output plane
+ * may be one of the input planes.
+ *
+ * @author Mark Holden
+ */
+public interface PlaneKernels {
+
+	/**
+	 * Returns a short description of the implementation, for the render log
+	 */
+	public String getName();
+
+	public void add(double[] a, double[] b, double[] out, int length);
+
+	public void subtract(double[] a, double[] b, double[] out, int length);
+
+	public void multiply(double[] a, double[] b, double[] out, int length);
+
+	/**
+	 * Divides, giving 0 where the divisor is 0, as Division does
+	 */
+	public void divide(double[] a, double[] b, double[] out, int length);
+
+	/**
+	 * Takes remainders, keeping a where the divisor is 0, as Modulo does
+	 */
+	public void modulo(double[] a, double[] b, double[] out, int length);
+
+	/**
+	 * Adds the constant c to each element of a
+	 */
+	public void addConstant(double[] a, double c, double[] out, int length);
+
+	public void negate(double[] a, double[] out, int length);
+
+	public void abs(double[] a, double[] out, int length);
+
+	public void floor(double[] a, double[] out, int length);
+
+	public void ceil(double[] a, double[] out, int length);
+
+	public void clamp(double[] a, double[] out, int length);
+
+	public void wrap(double[] a, double[] out, int length);
+
+	/**
+	 * Converts red, green and blue planes to luma and chroma planes, as
+	 * RgbToYCrCb does
+	 */
+	public void rgbToYCrCb(double[] red, double[] green, double[] blue, double[] luma, double[] cr, double[] cb,
+			int length);
+
+	/**
+	 * Converts luma and chroma planes to red, green and blue planes, as
+	 * YCrCbToRGB does
+	 */
+	public void yCrCbToRGB(double[] luma, double[] cr, double[] cb, double[] red, double[] green, double[] blue,
+			int length);
+
+	/**
+	 * Computes ImprovedNoise.noise of each point
+	 */
+	public void noise(double[] x, double[] y, double[] z, double[] out, int length);
+
+	/**
+	 * Computes ImprovedNoise.noise(x + offset, y + offset, 0) of each point, as
+	 * perlinColor does for each channel
+	 */
+	public default void planarNoise(double[] x, double[] y, double offset, double[] out, int length) {
+		PlanarNoise.noise(x, y, offset, out, length);
+	}
+
+	/**
+	 * Computes the random numbers of the random() call with the given key at
+	 * each point, as Random does
+	 */
+	public default void random(long key, double[] x, double[] y, double[] red, double[] green, double[] blue,
+			int length) {
+		PixelRandom.random(key, x, y, red, green, blue, length);
+	}
+
+	/**
+	 * Computes the Mandelbrot set at each point, as Mandelbrot does
+	 */
+	public default void mandelbrot(double[] cx, double[] cy, int iterations, double[] out, int length) {
+		EscapeTime.mandelbrot(cx, cy, iterations, out, length);
+	}
+
+	/**
+	 * Computes the Julia set of each c at each z, as Julia does
+	 */
+	public default void julia(double[] zx, double[] zy, double[] cx, double[] cy, int iterations, double[] out,
+			int length) {
+		EscapeTime.julia(zx, zy, cx, cy, iterations, out, length);
+	}
+
+	public default void sin(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Math.sin(a[i]);
+		}
+	}
+
+	public default void cos(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Math.cos(a[i]);
+		}
+	}
+
+	public default void tan(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Math.tan(a[i]);
+		}
+	}
+
+	public default void atan(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Math.atan(a[i]);
+		}
+	}
+
+	public default void exp(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Math.exp(a[i]);
+		}
+	}
+
+	/**
+	 * Takes the log of the magnitude of each element, or 0 for 0, as Log does
+	 */
+	public default void log(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Log.log(a[i]);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package picasso.engine;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import picasso.model.Pixmap;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.ParseException;
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Renders every expression in a directory of .exp files with the exact simd
+ * engine and with an engine that trades precision for speed, such as fast,
+ * float or affine, and reports how many pixels differ and by how much. Run it
+ * from the project directory:
+ *
+ * java picasso.engine.PrecisionCheck [engine] [directory] [size]
+ *
+ * which checks the fast engine on expressions/ at 300 by 300 when no
+ * arguments are given. Expressions that draw a different image each time are
+ * reported and left out of the totals.
+ *
+ * @author Mark Holden
+ */
+public class PrecisionCheck {
+	public static final String REFERENCE_ENGINE = "simd";
+	public static final String DEFAULT_ENGINE = "fast";
+	public static final String DEFAULT_DIRECTORY = "expressions";
+	public static final int DEFAULT_SIZE = 300;
+
+	/**
+	 * The pixels of an image that differ between two renders
+	 */
+	public static class Difference {
+		private int myPixels;
+		private int myDifferentPixels;
+		private int myLargestChannelDifference;
+
+		private Difference(int pixels, int differentPixels, int largestChannelDifference) {
+			myPixels = pixels;
+			myDifferentPixels = differentPixels;
+			myLargestChannelDifference = largestChannelDifference;
+		}
+
+		public int getPixels() {
+			return myPixels;
+		}
+
+		public int getDifferentPixels() {
+			return myDifferentPixels;
+		}
+
+		/**
+		 * Returns the largest difference of a red, green or blue value, out of
+		 * 255
+		 */
+		public int getLargestChannelDifference() {
+			return myLargestChannelDifference;
+		}
+	}
+
+	private PrecisionCheck() {
+	}
+
+	/**
+	 * Renders the expression with the exact engine and the named one and
+	 * compares the images
+	 *
+	 * @param expr   the expression to draw
+	 * @param size   the size of the images
+	 * @param engine the name of the engine to check
+	 * @return the difference, or null if two exact renders already differ
+	 */
+	public static Difference compare(ExpressionTreeNode expr, Dimension size, String engine) {
+		int[] exact = render(expr, size, RenderEngines.create(REFERENCE_ENGINE));
+		if (!Arrays.equals(exact, render(expr, size, RenderEngines.create(REFERENCE_ENGINE)))) {
+			return null;
+		}
+		int[] fast = render(expr, size, RenderEngines.create(engine));
+		int different = 0;
+		int largest = 0;
+		for (int i = 0; i < exact.length; i++) {
+			if (exact[i] != fast[i]) {
+				different++;
+				for (int shift = 0; shift < 24; shift += 8) {
+					int channel = Math.abs((exact[i] >> shift & 0xFF) - (fast[i] >> shift & 0xFF));
+					largest = Math.max(largest, channel);
+				}
+			}
+		}
+		return new Difference(exact.length, different, largest);
+	}
+
+	private static int[] render(ExpressionTreeNode expr, Dimension size, RenderEngine engine) {
+		Pixmap image = new Pixmap(size);
+		TiledRenderer renderer = new TiledRenderer();
+		renderer.setEngine(engine);
+		renderer.render(expr, image);
+		int[] rgb = new int[size.width * size.height];
+		image.getRGB(0, 0, size.width, size.height, rgb);
+		return rgb;
+	}
+
+	public static void main(String[] args) throws IOException {
+		String engine = args.length > 0 ? args[0] : DEFAULT_ENGINE;
+		Path directory = Paths.get(args.length > 1 ? args[1] : DEFAULT_DIRECTORY);
+		int side = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SIZE;
+		Dimension size = new Dimension(side, side);
+
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.exp")) {
+			stream.forEach(files::add);
+		}
+		Collections.sort(files);
+
+		ExpressionTreeGenerator parser = new ExpressionTreeGenerator();
+		int expressions = 0;
+		long pixels = 0;
+		long differentPixels = 0;
+		int largest = 0;
+		for (Path file : files) {
+			List<String> lines = Files.readAllLines(file);
+			for (int line = 0; line < lines.size(); line++) {
+				String text = lines.get(line);
+				if (text.isBlank() || text.startsWith("//")) {
+					continue;
+				}
+				String where = file.getFileName() + ":" + (line + 1);
+				ExpressionTreeNode expr;
+				try {
+					expr = parser.makeExpression(text);
+				} catch (ParseException e) {
+					System.out.println(where + ": does not parse, " + e.getMessage());
+					continue;
+				}
+				Difference difference = compare(expr, size, engine);
+				if (difference == null) {
+					System.out.println(where + ": not deterministic, skipped");
+					continue;
+				}
+				System.out.println(where + ": " + difference.getDifferentPixels() + " of " + difference.getPixels()
+						+ " pixels differ, by at most " + difference.getLargestChannelDifference());
+				expressions++;
+				pixels += difference.getPixels();
+				differentPixels += difference.getDifferentPixels();
+				largest = Math.max(largest, difference.getLargestChannelDifference());
+			}
+		}
+		System.out.println(engine + " against " + REFERENCE_ENGINE + ", " + expressions + " expressions at " + side
+				+ "x" + side + ": " + differentPixels + " of " + pixels + " pixels differ, by at most " + largest);
+	}
+}
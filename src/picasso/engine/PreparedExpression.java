@@ -0,0 +1,34 @@
+package picasso.engine;
+
+/**
+ * An expression that an engine has prepared for rendering.
+ *
+ * @author Mark Holden
+ */
+public interface PreparedExpression {
+
+	/**
+	 * Create an evaluator for one thread of a render
+	 *
+	 * @param maxWidth the longest row the evaluator will be asked to evaluate
+	 * @return a new row evaluator
+	 */
+	public RowEvaluator createRowEvaluator(int maxWidth);
+
+	/**
+	 * Returns engine-specific facts about the prepared expression for the render
+	 * log, such as the size of a compiled program
+	 *
+	 * @return a short description, or an empty string
+	 */
+	public default String describe() {
+		return "";
+	}
+
+	/**
+	 * Called once the render no longer needs the expression, to stop any work
+	 * that is still preparing it in the background
+	 */
+	public default void finish() {
+	}
+}
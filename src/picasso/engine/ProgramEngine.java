@@ -0,0 +1,58 @@
+package picasso.engine;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * Lowers the expression to an ExpressionProgram once per render and runs the
+ * program for each pixel on a register machine.
+ *
+ * @author Mark Holden
+ */
+public class ProgramEngine implements RenderEngine {
+
+	@Override
+	public String getName() {
+		return "vm";
+	}
+
+	@Override
+	public PreparedExpression prepare(ExpressionTreeNode expr) {
+		ExpressionProgram program = ExpressionProgram.lower(expr);
+		return new PreparedExpression() {
+			@Override
+			public RowEvaluator createRowEvaluator(int maxWidth) {
+				return new ProgramRowEvaluator(program);
+			}
+
+			@Override
+			public String describe() {
+				return program.getInstructionCount() + " instructions, " + program.getRegisterCount()
+						+ " registers";
+			}
+		};
+	}
+
+	/**
+	 * Owns the registers for one thread's pixels
+	 */
+	private static class ProgramRowEvaluator implements RowEvaluator {
+		private ExpressionProgram program;
+		private double[] registers;
+		private int result;
+
+		ProgramRowEvaluator(ExpressionProgram program) {
+			this.program = program;
+			registers = program.createRegisters();
+			result = program.getResultRegister();
+		}
+
+		@Override
+		public void evaluateRow(double[] xs, double y, int length, int[] rgb, int offset) {
+			for (int i = 0; i < length; i++) {
+				program.run(xs[i], y, registers);
+				rgb[offset + i] = RGBColor.toRGB(registers[result], registers[result + 1], registers[result + 2]);
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package picasso.engine;
+
+import java.util.function.UnaryOperator;
+
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * A way of turning an expression into pixel colors. An engine prepares an
+ * expression once per render and the prepared expression hands out row
+ * evaluators to the threads that render the tiles.
+ *
+ * @author Mark Holden
+ */
+public interface RenderEngine {
+
+	/**
+	 * Returns a short name for the engine, used in diagnostics and for choosing
+	 * an engine
+	 */
+	public String getName();
+
+	/**
+	 * Prepare the expression for rendering. The result is shared by all the
+	 * threads of a render.
+	 *
+	 * @param expr the expression to render
+	 * @return the prepared expression
+	 */
+	public PreparedExpression prepare(ExpressionTreeNode expr);
+
+	/**
+	 * Prepare an expression that has not been optimized yet. By default the
+	 * optimizations are run first and their result is prepared; an engine that
+	 * can start sooner may render expr as it is while it optimizes.
+	 *
+	 * @param expr          the expression to render
+	 * @param optimizations turns expr into an expression that computes the same
+	 *                      colors faster, and may be run on another thread
+	 * @return the prepared expression
+	 */
+	public default PreparedExpression prepare(ExpressionTreeNode expr,
+			UnaryOperator<ExpressionTreeNode> optimizations) {
+		return prepare(optimizations.apply(expr));
+	}
+}
@@ -0,0 +1,66 @@
+package picasso.engine;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Looks up render engines by name, so that an engine can be chosen with the
+ * picasso.engine system property, for example -Dpicasso.engine=vm
+ *
+ * @author Mark Holden
+ */
+public class RenderEngines {
+	public static final String PROPERTY = "picasso.engine";
+	public static final String DEFAULT_ENGINE = "batch";
+
+	private static final Map<String, Supplier<RenderEngine>> ENGINES = new LinkedHashMap<>();
+
+	static {
+		ENGINES.put("tree", TreeEngine::new);
+		ENGINES.put("batch", BatchEngine::new);
+		ENGINES.put("scalar", ScalarEngine::new);
+		ENGINES.put("compiled", CompiledEngine::new);
+		ENGINES.put("vm", ProgramEngine::new);
+		ENGINES.put("simd", SimdEngine::new);
+		ENGINES.put("differencing", DifferencingEngine::new);
+		ENGINES.put("fast", FastMathEngine::new);
+		ENGINES.put("float", FloatEngine::new);
+		ENGINES.put("affine", AffineEngine::new);
+		ENGINES.put("tiered", TieredEngine::new);
+	}
+
+	private RenderEngines() {
+	}
+
+	/**
+	 * Returns the names of the known engines
+	 */
+	public static Set<String> getNames() {
+		return ENGINES.keySet();
+	}
+
+	/**
+	 * Create the engine with the given name
+	 *
+	 * @param name the name of the engine
+	 * @return a new engine
+	 * @throws IllegalArgumentException if there is no engine with that name
+	 */
+	public static RenderEngine create(String name) {
+		Supplier<RenderEngine> engine = ENGINES.get(name);
+		if (engine == null) {
+			throw new IllegalArgumentException("Unknown engine " + name + ", expected one of " + getNames());
+		}
+		return engine.get();
+	}
+
+	/**
+	 * Create the engine named by the picasso.engine system property, or the
+	 * batch engine if the property is not set
+	 */
+	public static RenderEngine createDefault() {
+		return create(System.getProperty(PROPERTY, DEFAULT_ENGINE));
+	}
+}
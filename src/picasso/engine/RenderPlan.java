@@ -0,0 +1,63 @@
+package picasso.engine;
+
+/**
+ * How a RenderPlanner decided to render an expression, and the cost it
+ * predicted
+ *
+ * @author Mark Holden
+ */
+public class RenderPlan {
+	private double myCostPerPixel;
+	private long myPredictedNanos;
+	private int myTileSize;
+	private String myEngine;
+	private boolean myPreview;
+
+	/**
+	 * Create a plan
+	 *
+	 * @param costPerPixel   the predicted nanoseconds one thread spends on a
+	 *                       pixel
+	 * @param predictedNanos the predicted time of the whole render
+	 * @param tileSize       the width and height of a tile
+	 * @param engine         the name of the engine, or null to keep the
+	 *                       renderer's
+	 * @param preview        true to draw a low-resolution preview first
+	 */
+	public RenderPlan(double costPerPixel, long predictedNanos, int tileSize, String engine, boolean preview) {
+		myCostPerPixel = costPerPixel;
+		myPredictedNanos = predictedNanos;
+		myTileSize = tileSize;
+		myEngine = engine;
+		myPreview = preview;
+	}
+
+	public double getCostPerPixel() {
+		return myCostPerPixel;
+	}
+
+	public long getPredictedNanos() {
+		return myPredictedNanos;
+	}
+
+	public int getTileSize() {
+		return myTileSize;
+	}
+
+	/**
+	 * Returns the name of the engine to use, or null to keep the renderer's
+	 */
+	public String getEngine() {
+		return myEngine;
+	}
+
+	public boolean isPreview() {
+		return myPreview;
+	}
+
+	@Override
+	public String toString() {
+		return "predicted " + myPredictedNanos / 1000000 + " ms, " + myTileSize + "px tiles"
+				+ (myEngine == null ? "" : ", " + myEngine + " engine") + (myPreview ? ", previewed" : "");
+	}
+}
@@ -0,0 +1,101 @@
+package picasso.engine;
+
+import java.awt.Dimension;
+
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Decides how to render an expression from its predicted cost: the tile size,
+ * which engine to use and whether to draw a quick low-resolution preview
+ * first. Cheap renders use large tiles and the batch engine, which needs no
+ * preparation; expensive ones use tiles small enough to keep every thread
+ * busy, the tiered engine, which compiles while it renders, and a preview, so
+ * that something appears before the render is done.
+ *
+ * @author Mark Holden
+ */
+public class RenderPlanner {
+	// renders predicted to take less are not worth compiling for
+	public static final long CHEAP_NANOS = 50_000_000L;
+	// renders predicted to take longer draw a preview first; the view repaints
+	// every 400 ms while it renders
+	public static final long PREVIEW_NANOS = 400_000_000L;
+	// the preview has a quarter of the width and height of the image
+	public static final int PREVIEW_SCALE = 4;
+	public static final int MAX_TILE_SIZE = 256;
+	// enough tiles for idle threads to steal from busy ones
+	public static final int TILES_PER_THREAD = 8;
+	// tiles that take less than this are mostly overhead
+	public static final long MIN_TILE_NANOS = 200_000L;
+
+	private CostModel myModel;
+	private boolean myChoosingEngine;
+
+	/**
+	 * Create a planner that uses the cost model calibrated on this machine and
+	 * chooses the engine
+	 */
+	public RenderPlanner() {
+		this(null);
+	}
+
+	/**
+	 * Create a planner that uses the given cost model and chooses the engine
+	 *
+	 * @param model the cost model, or null for the calibrated one, which is
+	 *              calibrated when the first plan is made
+	 */
+	public RenderPlanner(CostModel model) {
+		myModel = model;
+		myChoosingEngine = true;
+	}
+
+	public CostModel getModel() {
+		if (myModel == null) {
+			myModel = CostModel.getCalibrated();
+		}
+		return myModel;
+	}
+
+	public boolean isChoosingEngine() {
+		return myChoosingEngine;
+	}
+
+	/**
+	 * Choose whether plans pick the engine, or leave the renderer's own
+	 *
+	 * @param choosingEngine true to pick the engine from the predicted cost
+	 */
+	public void setChoosingEngine(boolean choosingEngine) {
+		myChoosingEngine = choosingEngine;
+	}
+
+	/**
+	 * Plan a render of the expression
+	 *
+	 * @param expr    the expression to render
+	 * @param size    the size of the image
+	 * @param threads the number of threads that will render it
+	 */
+	public RenderPlan plan(ExpressionTreeNode expr, Dimension size, int threads) {
+		CostModel model = getModel();
+		double perPixel = model.getCostPerPixel(expr);
+		long predicted = model.predictNanos(expr, size, threads);
+		// the largest power of two that still gives every thread enough tiles
+		long pixels = (long) size.width * size.height;
+		int tileSize = MAX_TILE_SIZE;
+		while (tileSize > TiledRenderer.MIN_BOUNDED_SIZE
+				&& pixels / ((long) tileSize * tileSize) < (long) threads * TILES_PER_THREAD) {
+			tileSize /= 2;
+		}
+		// but not so small that each tile is mostly overhead
+		while (tileSize < MAX_TILE_SIZE && perPixel * tileSize * tileSize < MIN_TILE_NANOS) {
+			tileSize *= 2;
+		}
+		String engine = null;
+		if (myChoosingEngine) {
+			engine = predicted < CHEAP_NANOS ? "batch" : "tiered";
+		}
+		return new RenderPlan(perPixel, predicted, tileSize, engine, predicted > PREVIEW_NANOS);
+	}
+}
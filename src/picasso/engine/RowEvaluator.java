@@ -0,0 +1,22 @@
+package picasso.engine;
+
+/**
+ * Evaluates a prepared expression along a row of pixels. A row evaluator keeps
+ * its own scratch space and must only be used by one thread at a time.
+ *
+ * @author Mark Holden
+ */
+public interface RowEvaluator {
+
+	/**
+	 * Compute the packed RGB color of each point (xs[i], y) for i less than
+	 * length and store it in rgb[offset + i].
+	 *
+	 * @param xs     the x value of each point
+	 * @param y      the y value shared by all the points
+	 * @param length the number of points
+	 * @param rgb    receives the packed RGB colors
+	 * @param offset where in rgb the first color goes
+	 */
+	public void evaluateRow(double[] xs, double y, int length, int[] rgb, int offset);
+}
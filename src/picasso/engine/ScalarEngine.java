@@ -0,0 +1,59 @@
+package picasso.engine;
+
+import picasso.parser.FunctionFusion;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * Evaluates the expression tree one pixel at a time into caller-owned slots,
+ * so unlike TreeEngine it creates no RGBColor or Color objects per pixel.
+ * Chains of functions are fused into single nodes first.
+ *
+ * @author Mark Holden
+ */
+public class ScalarEngine implements RenderEngine {
+
+	@Override
+	public String getName() {
+		return "scalar";
+	}
+
+	@Override
+	public PreparedExpression prepare(ExpressionTreeNode expr) {
+		FunctionFusion functions = new FunctionFusion();
+		ExpressionTreeNode fused = functions.fuse(expr);
+		int slotCount = fused.getSlotCount();
+		return new PreparedExpression() {
+			@Override
+			public RowEvaluator createRowEvaluator(int maxWidth) {
+				return new ScalarRowEvaluator(fused, slotCount);
+			}
+
+			@Override
+			public String describe() {
+				return BatchEngine.describeFusion(null, functions);
+			}
+		};
+	}
+
+	/**
+	 * Owns the slots for one thread's pixels
+	 */
+	private static class ScalarRowEvaluator implements RowEvaluator {
+		private ExpressionTreeNode expr;
+		private double[] slots;
+
+		ScalarRowEvaluator(ExpressionTreeNode expr, int slotCount) {
+			this.expr = expr;
+			slots = new double[slotCount];
+		}
+
+		@Override
+		public void evaluateRow(double[] xs, double y, int length, int[] rgb, int offset) {
+			for (int i = 0; i < length; i++) {
+				expr.evaluate(xs[i], y, slots, 0);
+				rgb[offset + i] = RGBColor.toRGB(slots[0], slots[1], slots[2]);
+			}
+		}
+	}
+}
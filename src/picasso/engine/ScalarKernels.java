@@ -0,0 +1,137 @@
+package picasso.engine;
+
+import picasso.model.ImprovedNoise;
+import picasso.parser.language.expressions.Clamp;
+import picasso.parser.language.expressions.Division;
+import picasso.parser.language.expressions.Modulo;
+import picasso.parser.language.expressions.Wrap;
+
+/**
+ * Plane operations as plain loops, used when the Vector API is not available
+ *
+ * @author Mark Holden
+ */
+public class ScalarKernels implements PlaneKernels {
+
+	@Override
+	public String getName() {
+		return "scalar";
+	}
+
+	@Override
+	public void add(double[] a, double[] b, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = a[i] + b[i];
+		}
+	}
+
+	@Override
+	public void subtract(double[] a, double[] b, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = a[i] - b[i];
+		}
+	}
+
+	@Override
+	public void multiply(double[] a, double[] b, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = a[i] * b[i];
+		}
+	}
+
+	@Override
+	public void divide(double[] a, double[] b, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Division.divide(a[i], b[i]);
+		}
+	}
+
+	@Override
+	public void modulo(double[] a, double[] b, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Modulo.modulo(a[i], b[i]);
+		}
+	}
+
+	@Override
+	public void addConstant(double[] a, double c, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = a[i] + c;
+		}
+	}
+
+	@Override
+	public void negate(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = -a[i];
+		}
+	}
+
+	@Override
+	public void abs(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Math.abs(a[i]);
+		}
+	}
+
+	@Override
+	public void floor(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Math.floor(a[i]);
+		}
+	}
+
+	@Override
+	public void ceil(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Math.ceil(a[i]);
+		}
+	}
+
+	@Override
+	public void clamp(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Clamp.clamp(a[i]);
+		}
+	}
+
+	@Override
+	public void wrap(double[] a, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = Wrap.wrap(a[i]);
+		}
+	}
+
+	@Override
+	public void rgbToYCrCb(double[] red, double[] green, double[] blue, double[] luma, double[] cr, double[] cb,
+			int length) {
+		for (int i = 0; i < length; i++) {
+			double r = red[i];
+			double g = green[i];
+			double b = blue[i];
+			luma[i] = r * 0.2989 + g * 0.5866 + b * 0.1145;
+			cr[i] = r * -0.1687 + g * -0.3312 + b * 0.5;
+			cb[i] = r * 0.5 + g * -0.4183 + b * -0.0816;
+		}
+	}
+
+	@Override
+	public void yCrCbToRGB(double[] luma, double[] cr, double[] cb, double[] red, double[] green, double[] blue,
+			int length) {
+		for (int i = 0; i < length; i++) {
+			double y = luma[i];
+			double r = cr[i];
+			double b = cb[i];
+			red[i] = y + b * 1.4022;
+			green[i] = y + r * -0.3456 + b * -0.7145;
+			blue[i] = y + r * 1.7710;
+		}
+	}
+
+	@Override
+	public void noise(double[] x, double[] y, double[] z, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = ImprovedNoise.noise(x[i], y[i], z[i]);
+		}
+	}
+}
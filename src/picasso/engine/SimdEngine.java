@@ -0,0 +1,107 @@
+package picasso.engine;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * Lowers the expression to an ExpressionProgram and runs it a row at a time,
+ * with the arithmetic of each instruction done by PlaneKernels. When
+ * VectorKernels, from the optional src-vector source root, has been built and
+ * the jdk.incubator.vector module is present (run with --add-modules
+ * jdk.incubator.vector) the kernels use DoubleVector lanes; otherwise they are
+ * plain loops. Either way the image is the same as the tree's.
+ *
+ * @author Mark Holden
+ */
+public class SimdEngine implements RenderEngine {
+	private static final PlaneKernels KERNELS = detectKernels();
+
+	private PlaneKernels myKernels;
+
+	/**
+	 * Create an engine with the best kernels available
+	 */
+	public SimdEngine() {
+		this(KERNELS);
+	}
+
+	/**
+	 * Create an engine that uses the given kernels
+	 */
+	public SimdEngine(PlaneKernels kernels) {
+		myKernels = kernels;
+	}
+
+	/**
+	 * Returns VectorKernels if it was built and the Vector API is available on
+	 * this platform, and ScalarKernels otherwise
+	 */
+	public static PlaneKernels detectKernels() {
+		if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			try {
+				return (PlaneKernels) Class.forName("picasso.engine.VectorKernels").getConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// not built, or the module cannot be used: fall through to the scalar loops
+			}
+		}
+		return new ScalarKernels();
+	}
+
+	/**
+	 * Returns the kernels this engine runs with
+	 */
+	public PlaneKernels getKernels() {
+		return myKernels;
+	}
+
+	@Override
+	public String getName() {
+		return "simd";
+	}
+
+	@Override
+	public PreparedExpression prepare(ExpressionTreeNode expr) {
+		ExpressionProgram program = ExpressionProgram.lower(expr);
+		return new PreparedExpression() {
+			@Override
+			public RowEvaluator createRowEvaluator(int maxWidth) {
+				return new PlaneRowEvaluator(program, maxWidth, myKernels);
+			}
+
+			@Override
+			public String describe() {
+				return program.getInstructionCount() + " instructions, " + myKernels.getName() + " kernels";
+			}
+		};
+	}
+
+	/**
+	 * Owns the planes for one thread's rows
+	 */
+	private static class PlaneRowEvaluator implements RowEvaluator {
+		private ExpressionProgram program;
+		private ExpressionProgram.Planes planes;
+		private PlaneKernels kernels;
+		private double[] red;
+		private double[] green;
+		private double[] blue;
+
+		PlaneRowEvaluator(ExpressionProgram program, int maxWidth, PlaneKernels kernels) {
+			this.program = program;
+			this.kernels = kernels;
+			planes = program.createPlanes(maxWidth);
+			int result = program.getResultRegister();
+			red = planes.get(result);
+			green = planes.get(result + 1);
+			blue = planes.get(result + 2);
+		}
+
+		@Override
+		public void evaluateRow(double[] xs, double y, int length, int[] rgb, int offset) {
+			program.runRow(xs, y, length, planes, kernels);
+			for (int i = 0; i < length; i++) {
+				rgb[offset + i] = RGBColor.toRGB(red[i], green[i], blue[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package picasso.engine;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Starts rendering at once with an engine that needs no preparation, on the
+ * expression as it was parsed, while a background thread optimizes the
+ * expression and a slower-to-prepare but faster engine prepares the result.
+ * Each worker switches over to the second engine at the first row it starts
+ * after the second engine is ready, so small previews are held up neither by
+ * optimizing nor by compiling and large renders still get the compiled code.
+ * The optimizations keep the colors and every engine computes the same
+ * pixels, so the image does not depend on when the switch happens. Once the
+ * render is finished, preparation that is still running stops after the step
+ * it is on.
+ *
+ * The pixels and time spent in each tier and the time the second engine took
+ * to prepare are recorded for the render log, to tune the threshold below
+ * which expressions are not worth compiling.
+ *
+ * @author Mark Holden
+ */
+public class TieredEngine implements RenderEngine {
+	// expressions with fewer nodes render on the first tier alone
+	public static final int DEFAULT_MINIMUM_NODES = 4;
+
+	private static final ExecutorService PREPARING = Executors.newCachedThreadPool(task -> {
+		Thread thread = new Thread(task, "picasso-tiered-prepare");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private RenderEngine myFirst;
+	private RenderEngine mySecond;
+	private int myMinimumNodes;
+	private TieredExpression myLastPrepared;
+
+	/**
+	 * Create an engine that interprets the tree while compiling to bytecode
+	 */
+	public TieredEngine() {
+		this(new TreeEngine(), new CompiledEngine(), DEFAULT_MINIMUM_NODES);
+	}
+
+	/**
+	 * Create an engine that renders with first until second is ready
+	 *
+	 * @param first        the engine that starts the render, which should
+	 *                     prepare quickly
+	 * @param second       the engine that finishes it, prepared in the
+	 *                     background
+	 * @param minimumNodes the fewest nodes an expression needs before second is
+	 *                     prepared at all
+	 */
+	public TieredEngine(RenderEngine first, RenderEngine second, int minimumNodes) {
+		myFirst = first;
+		mySecond = second;
+		myMinimumNodes = minimumNodes;
+	}
+
+	@Override
+	public String getName() {
+		return "tiered";
+	}
+
+	public int getMinimumNodes() {
+		return myMinimumNodes;
+	}
+
+	/**
+	 * Choose how large an expression must be for the second engine to be
+	 * prepared
+	 *
+	 * @param minimumNodes the fewest nodes, counting shared ones once
+	 */
+	public void setMinimumNodes(int minimumNodes) {
+		myMinimumNodes = minimumNodes;
+	}
+
+	/**
+	 * Returns the expression most recently prepared, with the statistics of
+	 * its tiers, or null if there is none
+	 */
+	public TieredExpression getLastPrepared() {
+		return myLastPrepared;
+	}
+
+	@Override
+	public PreparedExpression prepare(ExpressionTreeNode expr) {
+		return prepare(expr, UnaryOperator.identity());
+	}
+
+	/**
+	 * Prepare the expression as it is for the first engine, and start
+	 * optimizing it and preparing the result for the second
+	 */
+	@Override
+	public PreparedExpression prepare(ExpressionTreeNode expr, UnaryOperator<ExpressionTreeNode> optimizations) {
+		PreparedExpression first = myFirst.prepare(expr);
+		boolean large = countNodes(expr, Collections.newSetFromMap(new IdentityHashMap<>())) >= myMinimumNodes;
+		myLastPrepared = new TieredExpression(myFirst.getName(), first, mySecond.getName(),
+				large ? () -> optimizations.apply(expr) : null, mySecond::prepare);
+		return myLastPrepared;
+	}
+
+	private static int countNodes(ExpressionTreeNode node, Set<ExpressionTreeNode> seen) {
+		if (!seen.add(node)) {
+			return 0;
+		}
+		int count = 1;
+		for (ExpressionTreeNode child : node.getChildren()) {
+			count += countNodes(child, seen);
+		}
+		return count;
+	}
+
+	/**
+	 * An expression prepared by the first engine and perhaps being prepared by
+	 * the second, with the pixels and time spent in each
+	 */
+	public static class TieredExpression implements PreparedExpression {
+		private String myFirstName;
+		private String mySecondName;
+		private PreparedExpression myFirst;
+		private CompletableFuture<PreparedExpression> mySecond;
+		private volatile boolean myFinished;
+		private volatile long myPrepareNanos;
+		private LongAdder[] myPixels = { new LongAdder(), new LongAdder() };
+		private LongAdder[] myNanos = { new LongAdder(), new LongAdder() };
+
+		/**
+		 * @param optimized optimizes the expression on a background thread, or
+		 *                  null to render with the first engine alone
+		 * @param second    prepares the optimized expression for the second
+		 *                  engine
+		 */
+		TieredExpression(String firstName, PreparedExpression first, String secondName,
+				Supplier<ExpressionTreeNode> optimized, Function<ExpressionTreeNode, PreparedExpression> second) {
+			myFirstName = firstName;
+			myFirst = first;
+			mySecondName = secondName;
+			long start = System.nanoTime();
+			if (optimized != null) {
+				mySecond = CompletableFuture.supplyAsync(() -> {
+					checkFinished();
+					ExpressionTreeNode expr = optimized.get();
+					checkFinished();
+					PreparedExpression prepared = second.apply(expr);
+					myPrepareNanos = System.nanoTime() - start;
+					return prepared;
+				}, PREPARING);
+			}
+		}
+
+		/**
+		 * Stop preparing the second engine's expression if the render is over
+		 */
+		private void checkFinished() {
+			if (myFinished) {
+				throw new CancellationException();
+			}
+		}
+
+		@Override
+		public RowEvaluator createRowEvaluator(int maxWidth) {
+			return new TieredRowEvaluator(this, myFirst.createRowEvaluator(maxWidth), maxWidth);
+		}
+
+		/**
+		 * Cancel the second engine's preparation if it is still running, so that
+		 * it stops after the step it is on
+		 */
+		@Override
+		public void finish() {
+			myFinished = true;
+			if (mySecond != null) {
+				mySecond.cancel(false);
+			}
+		}
+
+		/**
+		 * Returns the second engine's expression if it is ready to render
+		 */
+		private PreparedExpression getReadySecond() {
+			if (mySecond == null || !mySecond.isDone() || mySecond.isCompletedExceptionally()) {
+				return null;
+			}
+			return mySecond.join();
+		}
+
+		/**
+		 * Wait until the second engine has finished preparing, if it was asked
+		 * to
+		 *
+		 * @return true if the second engine is ready to render
+		 */
+		public boolean awaitSecond() {
+			if (mySecond == null) {
+				return false;
+			}
+			try {
+				mySecond.get();
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} catch (ExecutionException | CancellationException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Returns how many pixels a tier has evaluated
+		 *
+		 * @param tier 0 for the first engine, 1 for the second
+		 */
+		public long getPixels(int tier) {
+			return myPixels[tier].sum();
+		}
+
+		/**
+		 * Returns the time the workers of a tier have spent evaluating, summed
+		 * over the workers
+		 *
+		 * @param tier 0 for the first engine, 1 for the second
+		 */
+		public long getNanos(int tier) {
+			return myNanos[tier].sum();
+		}
+
+		/**
+		 * Returns how long the second engine took to prepare, or 0 if it has
+		 * not finished or was not asked to
+		 */
+		public long getPrepareNanos() {
+			return myPrepareNanos;
+		}
+
+		@Override
+		public String describe() {
+			StringBuilder description = new StringBuilder();
+			describeTier(description, myFirstName, 0);
+			PreparedExpression second = getReadySecond();
+			if (mySecond == null) {
+				description.append(", ").append(mySecondName).append(" skipped");
+			} else if (second == null) {
+				description.append(", ").append(mySecondName).append(mySecond.isCancelled() ? " cancelled"
+						: mySecond.isCompletedExceptionally() ? " failed" : " still preparing");
+			} else {
+				description.append(", ");
+				describeTier(description, mySecondName, 1);
+				description.append(", ").append(mySecondName).append(" prepared in ")
+						.append(myPrepareNanos / 1000000).append(" ms");
+				String details = second.describe();
+				if (!details.isEmpty()) {
+					description.append(" (").append(details).append(")");
+				}
+			}
+			return description.toString();
+		}
+
+		private void describeTier(StringBuilder description, String name, int tier) {
+			description.append(name).append(" tier ").append(getPixels(tier)).append(" pixels in ")
+					.append(getNanos(tier) / 1000000).append(" ms");
+		}
+	}
+
+	/**
+	 * Evaluates rows with the first engine until the second is ready, then
+	 * with the second
+	 */
+	private static class TieredRowEvaluator implements RowEvaluator {
+		private TieredExpression tiers;
+		private RowEvaluator rows;
+		private int maxWidth;
+		private int tier;
+
+		TieredRowEvaluator(TieredExpression tiers, RowEvaluator first, int maxWidth) {
+			this.tiers = tiers;
+			this.maxWidth = maxWidth;
+			rows = first;
+		}
+
+		@Override
+		public void evaluateRow(double[] xs, double y, int length, int[] rgb, int offset) {
+			if (tier == 0) {
+				PreparedExpression second = tiers.getReadySecond();
+				if (second != null) {
+					rows = second.createRowEvaluator(maxWidth);
+					tier = 1;
+				}
+			}
+			long start = System.nanoTime();
+			rows.evaluateRow(xs, y, length, rgb, offset);
+			tiers.myNanos[tier].add(System.nanoTime() - start);
+			tiers.myPixels[tier].add(length);
+		}
+	}
+}
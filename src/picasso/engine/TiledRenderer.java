@@ -0,0 +1,648 @@
+package picasso.engine;
+
+import java.awt.Dimension;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+import picasso.model.Pixmap;
+import picasso.parser.CommonSubexpressions;
+import picasso.parser.ExpressionOptimizer;
+import picasso.parser.RandomSeeding;
+import picasso.parser.SeparableSubexpressions;
+import picasso.parser.SymmetryAnalysis;
+import picasso.parser.SymmetryAnalysis.Parity;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.Interval;
+import picasso.parser.language.expressions.Random;
+import picasso.view.commands.Evaluator;
+
+/**
+ * Renders an expression into a Pixmap by splitting the image into square tiles
+ * and evaluating the tiles in parallel on a ForkJoinPool. Idle workers steal
+ * tiles from busy ones, so expensive regions of the image do not hold up the
+ * rest of the render.
+ *
+ * The pixels of a tile are computed a row at a time by a RenderEngine. Every
+ * engine computes each pixel exactly as the original serial loop in Evaluator
+ * computed it, so the result is pixel-identical regardless of the engine, the
+ * number of threads or the tile size.
+ *
+ * The engine is handed the expression together with its optimizations: it is
+ * simplified by ExpressionOptimizer, its repeated subexpressions are merged by
+ * CommonSubexpressions so that each is computed once per pixel, and
+ * subexpressions of x alone or y alone are replaced by tables of their values
+ * at each column or row by SeparableSubexpressions. Most engines run these
+ * before they prepare; TieredEngine runs them in the background and starts on
+ * the expression as it is. When the render is done the prepared expression
+ * is finished, which stops any preparation still running.
+ *
+ * Before a tile is evaluated, the expression's bounds over the tile are
+ * computed with interval arithmetic. If every color within the bounds is
+ * drawn as the same pixel, as in regions that clamping or floor saturate, the
+ * tile is filled with that pixel. Otherwise it is split into quarters that are
+ * tried in turn, down to regions of MIN_BOUNDED_SIZE pixels, which are
+ * evaluated. The bounds are conservative, so the image is the same as if
+ * every pixel were evaluated.
+ *
+ * If SymmetryAnalysis proves the expression even in x or y, only the columns
+ * or rows on one side of the axis are evaluated and the others are copied
+ * from their mirror images. Column i and column width - i are only mirror
+ * images if imageToDomainScale gives exactly opposite coordinates for them,
+ * which rounding often prevents, so the rest are evaluated as usual.
+ *
+ * Every random() call of the expression draws from the renderer's seed, so
+ * rendering an expression twice with the same seed draws the same image.
+ *
+ * If a RenderPlanner is set, it predicts the cost of each render and picks
+ * the tile size and engine for it, and expensive renders draw a preview at a
+ * quarter of the resolution before the full image.
+ *
+ * A renderer created with a number of threads owns its pool and shuts it down
+ * when it is closed; one given a pool leaves it to its owner.
+ *
+ * @author Mark Holden
+ */
+public class TiledRenderer implements AutoCloseable {
+	public static final int DEFAULT_TILE_SIZE = 64;
+	// regions this size or smaller are evaluated rather than split further
+	public static final int MIN_BOUNDED_SIZE = 16;
+
+	private ForkJoinPool myPool;
+	private boolean myOwningPool;
+	private int myTileSize;
+	private RenderEngine myEngine;
+	private String myLastReport;
+	private PrintStream myLog;
+	private boolean myBounding;
+	private boolean myMirroring;
+	private RenderPlanner myPlanner;
+	private RenderPlan myLastPlan;
+	private long mySeed;
+
+	/**
+	 * Create a renderer that uses the common pool and the default tile size
+	 */
+	public TiledRenderer() {
+		this(ForkJoinPool.commonPool(), DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * Create a renderer with its own pool of the given number of threads,
+	 * which close shuts down
+	 *
+	 * @param threads  the number of worker threads, must be positive
+	 * @param tileSize the width and height of a tile in pixels, must be positive
+	 */
+	public TiledRenderer(int threads, int tileSize) {
+		this(pool(threads, tileSize), tileSize);
+		myOwningPool = true;
+	}
+
+	/**
+	 * Returns a new pool of the given number of threads, checking the tile
+	 * size first so that a renderer that cannot be created starts no threads
+	 */
+	private static ForkJoinPool pool(int threads, int tileSize) {
+		if (tileSize <= 0) {
+			throw new IllegalArgumentException("Tile size must be positive");
+		}
+		return new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Create a renderer that runs its tiles on the given pool, which the
+	 * caller shuts down when it is done with it
+	 *
+	 * @param pool     the pool that evaluates the tiles
+	 * @param tileSize the width and height of a tile in pixels, must be positive
+	 */
+	public TiledRenderer(ForkJoinPool pool, int tileSize) {
+		if (tileSize <= 0) {
+			throw new IllegalArgumentException("Tile size must be positive");
+		}
+		myPool = pool;
+		myTileSize = tileSize;
+		myEngine = RenderEngines.createDefault();
+		myLastReport = "";
+		myBounding = true;
+		myMirroring = true;
+		mySeed = Random.DEFAULT_SEED;
+	}
+
+	/**
+	 * Shut down the renderer's pool if it created it. Renders that have
+	 * started finish, and the renderer cannot render afterwards.
+	 */
+	@Override
+	public void close() {
+		if (myOwningPool) {
+			myPool.shutdown();
+		}
+	}
+
+	public int getTileSize() {
+		return myTileSize;
+	}
+
+	public int getParallelism() {
+		return myPool.getParallelism();
+	}
+
+	public RenderEngine getEngine() {
+		return myEngine;
+	}
+
+	/**
+	 * Choose how the pixels of each tile are computed
+	 *
+	 * @param engine the engine for the following renders
+	 */
+	public void setEngine(RenderEngine engine) {
+		myEngine = engine;
+	}
+
+	public boolean isBounding() {
+		return myBounding;
+	}
+
+	/**
+	 * Choose whether tiles whose bounds prove them a single color are filled
+	 * without being evaluated
+	 *
+	 * @param bounding true to fill such tiles, false to evaluate every pixel
+	 */
+	public void setBounding(boolean bounding) {
+		myBounding = bounding;
+	}
+
+	public boolean isMirroring() {
+		return myMirroring;
+	}
+
+	/**
+	 * Choose whether the pixels of symmetric expressions are copied from
+	 * their mirror images rather than evaluated
+	 *
+	 * @param mirroring true to copy mirrored pixels, false to evaluate them
+	 */
+	public void setMirroring(boolean mirroring) {
+		myMirroring = mirroring;
+	}
+
+	public long getSeed() {
+		return mySeed;
+	}
+
+	/**
+	 * Choose the seed that random() draws from
+	 *
+	 * @param seed the seed for the following renders
+	 */
+	public void setSeed(long seed) {
+		mySeed = seed;
+	}
+
+	public RenderPlanner getPlanner() {
+		return myPlanner;
+	}
+
+	/**
+	 * Choose whether each render is planned from its predicted cost
+	 *
+	 * @param planner picks the tile size, engine and preview of each render, or
+	 *                null to use the renderer's tile size and engine
+	 */
+	public void setPlanner(RenderPlanner planner) {
+		myPlanner = planner;
+	}
+
+	/**
+	 * Returns the plan of the last render, or null if it was not planned
+	 */
+	public RenderPlan getLastPlan() {
+		return myLastPlan;
+	}
+
+	/**
+	 * Predict how the expression would be rendered at the given size, with the
+	 * renderer's planner or, if it has none, a planner that keeps the
+	 * renderer's engine
+	 *
+	 * @param expr the expression
+	 * @param size the size of the image
+	 * @return the plan, with the predicted time of the render
+	 */
+	public RenderPlan predict(ExpressionTreeNode expr, Dimension size) {
+		RenderPlanner planner = myPlanner;
+		if (planner == null) {
+			planner = new RenderPlanner();
+			planner.setChoosingEngine(false);
+		}
+		return planner.plan(expr, size, getParallelism());
+	}
+
+	/**
+	 * Returns a one-line summary of the last render: the engine, the image size,
+	 * the time taken, how many nodes were deduplicated, how many subexpressions
+	 * were tabulated, how many pixels were filled from bounds or copied from
+	 * their mirror images, anything the engine reported about the expression
+	 * and, if the render was planned, the plan
+	 */
+	public String getLastReport() {
+		return myLastReport;
+	}
+
+	/**
+	 * Print the summary of each render to the given stream
+	 *
+	 * @param log where to print, or null to print nothing
+	 */
+	public void setLog(PrintStream log) {
+		myLog = log;
+	}
+
+	/**
+	 * Evaluate the expression for each pixel of the target and store the results
+	 * in the target.
+	 *
+	 * @param expr   the expression to evaluate
+	 * @param target the image to draw into
+	 */
+	public void render(ExpressionTreeNode expr, Pixmap target) {
+		Dimension size = target.getSize();
+		if (size.width <= 0 || size.height <= 0) {
+			return;
+		}
+		long start = System.nanoTime();
+		expr = new RandomSeeding().seed(expr, mySeed);
+		RenderEngine engine = myEngine;
+		int tileSize = myTileSize;
+		myLastPlan = null;
+		if (myPlanner != null) {
+			myLastPlan = myPlanner.plan(expr, size, getParallelism());
+			tileSize = myLastPlan.getTileSize();
+			if (myLastPlan.getEngine() != null) {
+				engine = RenderEngines.create(myLastPlan.getEngine());
+			}
+			if (myLastPlan.isPreview()) {
+				renderPreview(expr, target, engine, tileSize);
+			}
+		}
+		String report = renderPass(expr, target, engine, tileSize);
+		myLastReport = engine.getName() + ": " + size.width + "x" + size.height + " in "
+				+ (System.nanoTime() - start) / 1000000 + " ms" + report
+				+ (myLastPlan == null ? "" : ", " + myLastPlan);
+		if (myLog != null) {
+			myLog.println(myLastReport);
+		}
+	}
+
+	/**
+	 * Render the expression at a fraction of the target's size and scale it up
+	 * into the target, to show while the full image is rendered
+	 */
+	private void renderPreview(ExpressionTreeNode expr, Pixmap target, RenderEngine engine, int tileSize) {
+		Dimension size = target.getSize();
+		Pixmap preview = new Pixmap(Math.max(1, size.width / RenderPlanner.PREVIEW_SCALE),
+				Math.max(1, size.height / RenderPlanner.PREVIEW_SCALE));
+		renderPass(expr, preview, engine, tileSize);
+		Dimension small = preview.getSize();
+		int[] source = new int[small.width];
+		int[] row = new int[size.width];
+		for (int y = 0; y < size.height; y++) {
+			preview.getRGB(0, (int) ((long) y * small.height / size.height), small.width, 1, source);
+			for (int x = 0; x < size.width; x++) {
+				row[x] = source[(int) ((long) x * small.width / size.width)];
+			}
+			target.setRGB(0, y, size.width, 1, row);
+		}
+	}
+
+	/**
+	 * Render the expression into the target with the given engine and tile size
+	 *
+	 * @return the parts of the report that describe what the render saved and
+	 *         what the engine reported
+	 */
+	private String renderPass(ExpressionTreeNode expr, Pixmap target, RenderEngine engine, int tileSize) {
+		Dimension size = target.getSize();
+		double[] allXs = domainCoordinates(size.width);
+		double[] allYs = domainCoordinates(size.height);
+		// tables find their entries from evenly spaced coordinates
+		Optimizations optimizations = new Optimizations(allXs, allYs);
+		PreparedExpression prepared = engine.prepare(expr, optimizations);
+		// an engine that optimizes in the background starts on expr as it is
+		ExpressionTreeNode shared = optimizations.getShared();
+		ExpressionTreeNode optimized = optimizations.getResult();
+		if (shared == null || optimized == null) {
+			shared = expr;
+			optimized = expr;
+		}
+		SymmetryAnalysis symmetry = new SymmetryAnalysis();
+		int[] columns = mirrorSources(allXs, myMirroring && symmetry.getParityInX(shared) == Parity.EVEN);
+		int[] rows = mirrorSources(allYs, myMirroring && symmetry.getParityInY(shared) == Parity.EVEN);
+		// only the columns and rows that are not mirror images are evaluated
+		double[] xs = evaluatedCoordinates(allXs, columns);
+		double[] ys = evaluatedCoordinates(allYs, rows);
+		Pixmap evaluated = xs.length == size.width && ys.length == size.height ? target
+				: new Pixmap(xs.length, ys.length);
+		int tilesAcross = (xs.length + tileSize - 1) / tileSize;
+		int tilesDown = (ys.length + tileSize - 1) / tileSize;
+		// each worker keeps one workspace for all the tiles it renders
+		ThreadLocal<TileWorkspace> workspaces = ThreadLocal
+				.withInitial(() -> new TileWorkspace(prepared.createRowEvaluator(tileSize), tileSize));
+		LongAdder filled = new LongAdder();
+		try {
+			myPool.invoke(new TileTask(workspaces, evaluated, xs, ys, myBounding ? optimized : null, filled,
+					tileSize, tilesAcross, 0, tilesAcross * tilesDown));
+		} finally {
+			// stop anything still preparing once the pixels are done
+			prepared.finish();
+		}
+		if (evaluated != target) {
+			copyMirrored(evaluated, target, columns, rows);
+		}
+		return report(prepared, optimizations.getDeduplicatedCount(), optimizations.getTableCount(), filled.sum(),
+				(long) size.width * size.height - (long) xs.length * ys.length);
+	}
+
+	private static String report(PreparedExpression prepared, int deduplicated, int tables, long filled,
+			long mirrored) {
+		String details = prepared.describe();
+		return (deduplicated == 0 ? "" : ", " + deduplicated + " nodes deduplicated")
+				+ (tables == 0 ? "" : ", " + tables + " x or y subexpressions tabulated")
+				+ (filled == 0 ? "" : ", " + filled + " pixels filled from bounds")
+				+ (mirrored == 0 ? "" : ", " + mirrored + " pixels mirrored")
+				+ (details.isEmpty() ? "" : ", " + details);
+	}
+
+	/**
+	 * Evaluate the pixels of one tile, or of a region of one, into the
+	 * workspace's buffer and copy the buffer into the target.
+	 *
+	 * @param work   the calling thread's workspace
+	 * @param target the image to draw into
+	 * @param xs     the domain coordinate of every column of the image
+	 * @param ys     the domain coordinate of every row of the image
+	 * @param x0     the first column of the tile
+	 * @param y0     the first row of the tile
+	 * @param width  the number of columns in the tile
+	 * @param height the number of rows in the tile
+	 */
+	protected void renderTile(TileWorkspace work, Pixmap target, double[] xs, double[] ys, int x0, int y0,
+			int width, int height) {
+		System.arraycopy(xs, x0, work.tileXs, 0, width);
+		for (int row = 0; row < height; row++) {
+			work.rows.evaluateRow(work.tileXs, ys[y0 + row], width, work.rgb, row * width);
+		}
+		target.setRGB(x0, y0, width, height, work.rgb);
+	}
+
+	/**
+	 * Fill a region with one pixel if the expression's bounds over it prove
+	 * that is what every pixel would be, otherwise split it into quarters and
+	 * try again, evaluating regions that are too small to split.
+	 *
+	 * @param bounded the expression to bound, or null to evaluate every pixel
+	 * @param filled  counts the pixels filled from bounds
+	 * @see #renderTile
+	 */
+	private void renderRegion(TileWorkspace work, Pixmap target, double[] xs, double[] ys,
+			ExpressionTreeNode bounded, LongAdder filled, int x0, int y0, int width, int height) {
+		if (bounded == null) {
+			renderTile(work, target, xs, ys, x0, y0, width, height);
+			return;
+		}
+		// the coordinates increase along the rows and columns
+		ColorInterval bounds = bounded.bounds(Interval.of(xs[x0], xs[x0 + width - 1]),
+				Interval.of(ys[y0], ys[y0 + height - 1]));
+		if (bounds.isSingleColor()) {
+			Arrays.fill(work.rgb, 0, width * height, bounds.toRGB());
+			target.setRGB(x0, y0, width, height, work.rgb);
+			filled.add(width * height);
+		} else if (width > MIN_BOUNDED_SIZE || height > MIN_BOUNDED_SIZE) {
+			int left = width > MIN_BOUNDED_SIZE ? width / 2 : width;
+			int top = height > MIN_BOUNDED_SIZE ? height / 2 : height;
+			renderRegion(work, target, xs, ys, bounded, filled, x0, y0, left, top);
+			if (left < width) {
+				renderRegion(work, target, xs, ys, bounded, filled, x0 + left, y0, width - left, top);
+			}
+			if (top < height) {
+				renderRegion(work, target, xs, ys, bounded, filled, x0, y0 + top, left, height - top);
+				if (left < width) {
+					renderRegion(work, target, xs, ys, bounded, filled, x0 + left, y0 + top, width - left,
+							height - top);
+				}
+			}
+		} else {
+			renderTile(work, target, xs, ys, x0, y0, width, height);
+		}
+	}
+
+	/**
+	 * Convert from image space to domain space.
+	 *
+	 * @param value  the pixel row or column
+	 * @param bounds the height or width of the image
+	 * @return the domain coordinate of the pixel
+	 */
+	public static double imageToDomainScale(int value, int bounds) {
+		double range = Evaluator.DOMAIN_MAX - Evaluator.DOMAIN_MIN;
+		return ((double) value / bounds) * range + Evaluator.DOMAIN_MIN;
+	}
+
+	/**
+	 * Returns the domain coordinate of every pixel along a dimension of the given
+	 * length
+	 */
+	public static double[] domainCoordinates(int bounds) {
+		double[] coords = new double[bounds];
+		for (int i = 0; i < bounds; i++) {
+			coords[i] = imageToDomainScale(i, bounds);
+		}
+		return coords;
+	}
+
+	/**
+	 * Returns, for each of the given coordinates along a dimension, which of
+	 * the evaluated coordinates its pixels are copied from. Coordinate i is a
+	 * copy of coordinate length - i, on the other side of the axis, if
+	 * mirroring is allowed and the two are exactly opposite; otherwise it is
+	 * evaluated itself. The evaluated coordinates are numbered in order.
+	 *
+	 * @param coords the domain coordinate of every pixel along the dimension
+	 * @param mirror true if the expression is even along the dimension
+	 */
+	public static int[] mirrorSources(double[] coords, boolean mirror) {
+		int length = coords.length;
+		int[] sources = new int[length];
+		int evaluated = 0;
+		for (int i = 0; i < length; i++) {
+			if (mirror && length - i < i && coords[length - i] == -coords[i]) {
+				sources[i] = sources[length - i];
+			} else {
+				sources[i] = evaluated++;
+			}
+		}
+		return sources;
+	}
+
+	/**
+	 * Returns the domain coordinates of the pixels that are evaluated, given
+	 * the sources from mirrorSources
+	 */
+	private static double[] evaluatedCoordinates(double[] all, int[] sources) {
+		double[] coords = new double[sources.length];
+		int evaluated = 0;
+		for (int i = 0; i < sources.length; i++) {
+			// a coordinate that is evaluated is the next one to be numbered
+			if (sources[i] == evaluated) {
+				coords[evaluated++] = all[i];
+			}
+		}
+		return Arrays.copyOf(coords, evaluated);
+	}
+
+	/**
+	 * Copy each pixel of the target from the evaluated pixel of its column and
+	 * row sources
+	 */
+	private static void copyMirrored(Pixmap evaluated, Pixmap target, int[] columns, int[] rows) {
+		int[] source = new int[evaluated.getSize().width];
+		int[] row = new int[columns.length];
+		for (int y = 0; y < rows.length; y++) {
+			evaluated.getRGB(0, rows[y], source.length, 1, source);
+			for (int x = 0; x < columns.length; x++) {
+				row[x] = source[columns[x]];
+			}
+			target.setRGB(0, y, row.length, 1, row);
+		}
+	}
+
+	/**
+	 * The optimizations of an expression before it is rendered: simplifying it
+	 * with ExpressionOptimizer, merging its repeated subexpressions with
+	 * CommonSubexpressions and tabulating its subexpressions of x alone or y
+	 * alone with SeparableSubexpressions. The engine may run them on another
+	 * thread, so their results are null until they are done.
+	 */
+	private static class Optimizations implements UnaryOperator<ExpressionTreeNode> {
+		private double[] xs;
+		private double[] ys;
+		private volatile ExpressionTreeNode myShared;
+		private volatile ExpressionTreeNode myResult;
+		private volatile int myDeduplicatedCount;
+		private volatile int myTableCount;
+
+		Optimizations(double[] xs, double[] ys) {
+			this.xs = xs;
+			this.ys = ys;
+		}
+
+		@Override
+		public ExpressionTreeNode apply(ExpressionTreeNode expr) {
+			CommonSubexpressions sharing = new CommonSubexpressions();
+			ExpressionTreeNode shared = sharing.share(new ExpressionOptimizer().optimize(expr));
+			SeparableSubexpressions separable = new SeparableSubexpressions();
+			ExpressionTreeNode result = separable.tabulate(shared, xs, ys);
+			myDeduplicatedCount = sharing.getDeduplicatedCount();
+			myTableCount = separable.getTableCount();
+			myShared = shared;
+			myResult = result;
+			return result;
+		}
+
+		/**
+		 * Returns the expression with its repeated subexpressions merged, but
+		 * not tabulated, or null if that is not done yet
+		 */
+		ExpressionTreeNode getShared() {
+			return myShared;
+		}
+
+		/**
+		 * Returns the fully optimized expression, or null if it is not done yet
+		 */
+		ExpressionTreeNode getResult() {
+			return myResult;
+		}
+
+		int getDeduplicatedCount() {
+			return myDeduplicatedCount;
+		}
+
+		int getTableCount() {
+			return myTableCount;
+		}
+	}
+
+	/**
+	 * The row evaluator and buffers one worker thread reuses for every tile it
+	 * renders, so that a render allocates per thread rather than per tile or per
+	 * pixel.
+	 */
+	protected static class TileWorkspace {
+		private RowEvaluator rows;
+		private double[] tileXs;
+		private int[] rgb;
+
+		TileWorkspace(RowEvaluator rows, int tileSize) {
+			this.rows = rows;
+			tileXs = new double[tileSize];
+			rgb = new int[tileSize * tileSize];
+		}
+	}
+
+	/**
+	 * Renders a range of tiles, splitting the range in half until only one tile
+	 * is left so that idle workers can steal the other half.
+	 */
+	@SuppressWarnings("serial")
+	private class TileTask extends RecursiveAction {
+		private ThreadLocal<TileWorkspace> workspaces;
+		private Pixmap target;
+		private double[] xs;
+		private double[] ys;
+		private ExpressionTreeNode bounded;
+		private LongAdder filled;
+		private int tileSize;
+		private int tilesAcross;
+		private int first;
+		private int last;
+
+		TileTask(ThreadLocal<TileWorkspace> workspaces, Pixmap target, double[] xs, double[] ys,
+				ExpressionTreeNode bounded, LongAdder filled, int tileSize, int tilesAcross, int first, int last) {
+			this.workspaces = workspaces;
+			this.target = target;
+			this.xs = xs;
+			this.ys = ys;
+			this.bounded = bounded;
+			this.filled = filled;
+			this.tileSize = tileSize;
+			this.tilesAcross = tilesAcross;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if (last - first > 1) {
+				int middle = (first + last) >>> 1;
+				invokeAll(
+						new TileTask(workspaces, target, xs, ys, bounded, filled, tileSize, tilesAcross, first, middle),
+						new TileTask(workspaces, target, xs, ys, bounded, filled, tileSize, tilesAcross, middle, last));
+				return;
+			}
+			int x0 = (first % tilesAcross) * tileSize;
+			int y0 = (first / tilesAcross) * tileSize;
+			int width = Math.min(tileSize, xs.length - x0);
+			int height = Math.min(tileSize, ys.length - y0);
+			renderRegion(workspaces.get(), target, xs, ys, bounded, filled, x0, y0, width, height);
+		}
+	}
+}
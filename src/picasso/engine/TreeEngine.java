@@ -0,0 +1,40 @@
+package picasso.engine;
+
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Evaluates the expression tree one pixel at a time, the way Picasso always
+ * has. Useful as a reference for the faster engines.
+ *
+ * @author Mark Holden
+ */
+public class TreeEngine implements RenderEngine {
+
+	@Override
+	public String getName() {
+		return "tree";
+	}
+
+	@Override
+	public PreparedExpression prepare(ExpressionTreeNode expr) {
+		return maxWidth -> new TreeRowEvaluator(expr);
+	}
+
+	/**
+	 * Evaluates each pixel of a row on its own
+	 */
+	private static class TreeRowEvaluator implements RowEvaluator {
+		private ExpressionTreeNode expr;
+
+		TreeRowEvaluator(ExpressionTreeNode expr) {
+			this.expr = expr;
+		}
+
+		@Override
+		public void evaluateRow(double[] xs, double y, int length, int[] rgb, int offset) {
+			for (int i = 0; i < length; i++) {
+				rgb[offset + i] = expr.evaluate(xs[i], y).toJavaColor().getRGB();
+			}
+		}
+	}
+}
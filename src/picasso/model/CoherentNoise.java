@@ -0,0 +1,170 @@
+package picasso.model;
+
+/**
+ * Perlin's improved noise for points that arrive in order along a row of an
+ * image. Neighboring pixels usually fall in the same unit cell of the noise
+ * lattice, and the hashes of a cell's corners depend on nothing but the cell,
+ * so the sampler keeps the hashes of the last cell it visited and only looks
+ * up the permutation table again when a point lands in a different one. The
+ * fade curves, gradients and blends are computed for every point.
+ *
+ * The three-dimensional noise is exactly ImprovedNoise.noise and the noise on
+ * the plane z = 0 exactly PlanarNoise.noise. A sampler keeps state between
+ * points, so it must only be used by one thread at a time.
+ *
+ * @author Mark Holden
+ */
+public final class CoherentNoise {
+	// floors of coordinates must fit in an int to be taken by casting
+	private static final double TWO_31 = 0x1p31;
+
+	private static final int[] p = ImprovedNoise.p;
+
+	// the cell of the last point in space and the hashes of its eight corners,
+	// in the order ImprovedNoise visits them
+	private int myCellX = -1, myCellY, myCellZ;
+	private int myAA, myBA, myAB, myBB, myAA1, myBA1, myAB1, myBB1;
+
+	// the cell of the last point on the plane and the gradients of its four
+	// corners, as coefficients of x and y
+	private int mySquareX = -1, mySquareY;
+	private double myAAX, myAAY, myBAX, myBAY, myABX, myABY, myBBX, myBBY;
+
+	private long mySamples;
+	private long myMisses;
+
+	/**
+	 * Returns ImprovedNoise.noise(x, y, z)
+	 */
+	public double noise(double x, double y, double z) {
+		mySamples++;
+		double floorX = Math.floor(x), floorY = Math.floor(y), floorZ = Math.floor(z);
+		int X = (int) floorX & 255, Y = (int) floorY & 255, Z = (int) floorZ & 255;
+		if (X != myCellX || Y != myCellY || Z != myCellZ) {
+			hashCell(X, Y, Z);
+		}
+		x -= floorX;
+		y -= floorY;
+		z -= floorZ;
+		double u = ImprovedNoise.fade(x), v = ImprovedNoise.fade(y), w = ImprovedNoise.fade(z);
+		return ImprovedNoise.lerp(w,
+				ImprovedNoise.lerp(v,
+						ImprovedNoise.lerp(u, ImprovedNoise.grad(myAA, x, y, z),
+								ImprovedNoise.grad(myBA, x - 1, y, z)),
+						ImprovedNoise.lerp(u, ImprovedNoise.grad(myAB, x, y - 1, z),
+								ImprovedNoise.grad(myBB, x - 1, y - 1, z))),
+				ImprovedNoise.lerp(v,
+						ImprovedNoise.lerp(u, ImprovedNoise.grad(myAA1, x, y, z - 1),
+								ImprovedNoise.grad(myBA1, x - 1, y, z - 1)),
+						ImprovedNoise.lerp(u, ImprovedNoise.grad(myAB1, x, y - 1, z - 1),
+								ImprovedNoise.grad(myBB1, x - 1, y - 1, z - 1))));
+	}
+
+	private void hashCell(int X, int Y, int Z) {
+		myMisses++;
+		myCellX = X;
+		myCellY = Y;
+		myCellZ = Z;
+		int A = p[X] + Y, AA = p[A] + Z, AB = p[A + 1] + Z, B = p[X + 1] + Y, BA = p[B] + Z, BB = p[B + 1] + Z;
+		myAA = p[AA];
+		myBA = p[BA];
+		myAB = p[AB];
+		myBB = p[BB];
+		myAA1 = p[AA + 1];
+		myBA1 = p[BA + 1];
+		myAB1 = p[AB + 1];
+		myBB1 = p[BB + 1];
+	}
+
+	/**
+	 * Returns PlanarNoise.noise(x, y), the noise at (x, y, 0)
+	 */
+	public double noise(double x, double y) {
+		mySamples++;
+		if (!(Math.abs(x) < TWO_31 && Math.abs(y) < TWO_31)) {
+			myMisses++;
+			return PlanarNoise.noise(x, y);
+		}
+		int floorX = (int) x;
+		int floorY = (int) y;
+		// casting rounds toward zero
+		if (x < floorX) {
+			floorX--;
+		}
+		if (y < floorY) {
+			floorY--;
+		}
+		int X = floorX & 255, Y = floorY & 255;
+		if (X != mySquareX || Y != mySquareY) {
+			hashSquare(X, Y);
+		}
+		x -= floorX;
+		y -= floorY;
+		double u = ImprovedNoise.fade(x), v = ImprovedNoise.fade(y);
+		double x1 = x - 1, y1 = y - 1;
+		return ImprovedNoise.lerp(v, ImprovedNoise.lerp(u, myAAX * x + myAAY * y, myBAX * x1 + myBAY * y),
+				ImprovedNoise.lerp(u, myABX * x + myABY * y1, myBBX * x1 + myBBY * y1));
+	}
+
+	private void hashSquare(int X, int Y) {
+		myMisses++;
+		mySquareX = X;
+		mySquareY = Y;
+		int A = p[X] + Y, B = p[X + 1] + Y;
+		int AA = p[p[A]], AB = p[p[A + 1]], BA = p[p[B]], BB = p[p[B + 1]];
+		myAAX = PlanarNoise.getGradientX(AA);
+		myAAY = PlanarNoise.getGradientY(AA);
+		myBAX = PlanarNoise.getGradientX(BA);
+		myBAY = PlanarNoise.getGradientY(BA);
+		myABX = PlanarNoise.getGradientX(AB);
+		myABY = PlanarNoise.getGradientY(AB);
+		myBBX = PlanarNoise.getGradientX(BB);
+		myBBY = PlanarNoise.getGradientY(BB);
+	}
+
+	/**
+	 * Fills out with the noise of each point (x[i], y[i], z[i]), in order. The
+	 * output may be one of the inputs.
+	 */
+	public void noise(double[] x, double[] y, double[] z, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = noise(x[i], y[i], z[i]);
+		}
+	}
+
+	/**
+	 * Fills out with the noise of each point (x[i], y[i], 0), in order. The
+	 * output may be one of the inputs.
+	 */
+	public void noise(double[] x, double[] y, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = noise(x[i], y[i]);
+		}
+	}
+
+	/**
+	 * Fills out with the noise of each point (x[i] + offset, y[i] + offset,
+	 * 0), in order, the way perlinColor shifts each channel. The output may be
+	 * one of the inputs.
+	 */
+	public void noise(double[] x, double[] y, double offset, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = noise(x[i] + offset, y[i] + offset);
+		}
+	}
+
+	/**
+	 * Returns the number of points sampled
+	 */
+	public long getSamples() {
+		return mySamples;
+	}
+
+	/**
+	 * Returns the number of points that fell outside the cell of the point
+	 * before them, so that the corners of their cell had to be hashed
+	 */
+	public long getMisses() {
+		return myMisses;
+	}
+}
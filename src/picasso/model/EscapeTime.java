@@ -0,0 +1,119 @@
+package picasso.model;
+
+/**
+ * Escape-time iteration of z = z * z + c, for the Mandelbrot set, where z
+ * starts at 0 and c is the point, and for Julia sets, where z starts at the
+ * point and c is fixed. A point's value is -1 if its orbit stays within the
+ * escape radius of 2 for every iteration, and otherwise 2 n / iterations - 1
+ * for the n iterations it took to leave, so the set is black and the points
+ * near its edge, which take longest to escape, are brightest.
+ *
+ * An orbit stops as soon as it leaves, and also as soon as it comes back
+ * exactly to a point it has been at before, since it will then cycle forever.
+ * The point it compares with is saved at iterations 0, 1, 3, 7, 15 and so on,
+ * so that cycles of any length are found once the window grows past them.
+ * Points of the Mandelbrot set's main cardioid and period-2 bulb, where most
+ * of the iterations of an image would go, are recognized without iterating.
+ *
+ * @author Mark Holden
+ */
+public final class EscapeTime {
+	// the square of the escape radius
+	private static final double ESCAPE = 4;
+
+	private EscapeTime() {
+	}
+
+	/**
+	 * Returns true if c is in the main cardioid or the period-2 bulb of the
+	 * Mandelbrot set, whose orbits never escape
+	 */
+	public static boolean isInterior(double cx, double cy) {
+		double a = cx - 0.25;
+		double q = a * a + cy * cy;
+		if (q * (q + a) <= 0.25 * cy * cy) {
+			return true;
+		}
+		double b = cx + 1;
+		return b * b + cy * cy <= 0.0625;
+	}
+
+	/**
+	 * Returns true if the orbit saves its position after the given iteration
+	 * to compare with later ones
+	 */
+	public static boolean isCheckpoint(int iteration) {
+		return (iteration & (iteration + 1)) == 0;
+	}
+
+	/**
+	 * Returns the number of iterations the orbit of z under z * z + c takes to
+	 * leave the escape radius, or iterations if it never does
+	 */
+	public static int escape(double zx, double zy, double cx, double cy, int iterations) {
+		double x = zx, y = zy;
+		double savedX = x, savedY = y;
+		for (int n = 0; n < iterations; n++) {
+			double x2 = x * x, y2 = y * y;
+			if (x2 + y2 > ESCAPE) {
+				return n;
+			}
+			y = 2 * x * y + cy;
+			x = x2 - y2 + cx;
+			if (x == savedX && y == savedY) {
+				return iterations;
+			}
+			if (isCheckpoint(n)) {
+				savedX = x;
+				savedY = y;
+			}
+		}
+		return iterations;
+	}
+
+	/**
+	 * Returns the value of a point that escaped after count iterations, or -1
+	 * if count is iterations
+	 */
+	public static double value(int count, int iterations) {
+		return count == iterations ? -1 : 2.0 * count / iterations - 1;
+	}
+
+	/**
+	 * Returns the value of c for the Mandelbrot set
+	 */
+	public static double mandelbrot(double cx, double cy, int iterations) {
+		if (isInterior(cx, cy)) {
+			return -1;
+		}
+		return value(escape(0, 0, cx, cy, iterations), iterations);
+	}
+
+	/**
+	 * Returns the value of z for the Julia set of c
+	 */
+	public static double julia(double zx, double zy, double cx, double cy, int iterations) {
+		return value(escape(zx, zy, cx, cy, iterations), iterations);
+	}
+
+	/**
+	 * Fills out with the value of each point (cx[i], cy[i]) for the Mandelbrot
+	 * set. The output may be one of the inputs.
+	 */
+	public static void mandelbrot(double[] cx, double[] cy, int iterations, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = mandelbrot(cx[i], cy[i], iterations);
+		}
+	}
+
+	/**
+	 * Fills out with the value of each point (zx[i], zy[i]) for the Julia set
+	 * of (cx[i], cy[i]). The output may be one of the inputs.
+	 */
+	public static void julia(double[] zx, double[] zy, double[] cx, double[] cy, int iterations, double[] out,
+			int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = julia(zx[i], zy[i], cx[i], cy[i], iterations);
+		}
+	}
+}
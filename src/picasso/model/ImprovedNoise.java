@@ -32,6 +32,33 @@ public final class ImprovedNoise {
 								p[BB + 1], x - 1, y - 1, z - 1))));
 	}
 
+	/**
+	 * The same noise computed in single precision, for evaluating a row of
+	 * floats
+	 */
+	static public float noise(float x, float y, float z) {
+		float floorX = (float) Math.floor(x), floorY = (float) Math.floor(y), floorZ = (float) Math.floor(z);
+		int X = (int) floorX & 255, Y = (int) floorY & 255, Z = (int) floorZ & 255;
+		x -= floorX;
+		y -= floorY;
+		z -= floorZ;
+		float u = fade(x), v = fade(y), w = fade(z);
+		int A = p[X] + Y, AA = p[A] + Z, AB = p[A + 1] + Z, B = p[X + 1] + Y, BA = p[B] + Z, BB = p[B + 1] + Z;
+
+		return lerp(w, lerp(v, lerp(u, grad(p[AA], x, y, z), grad(p[BA], x - 1, y, z)),
+				lerp(u, grad(p[AB], x, y - 1, z), grad(p[BB], x - 1, y - 1, z))),
+				lerp(v, lerp(u, grad(p[AA + 1], x, y, z - 1), grad(p[BA + 1], x - 1, y, z - 1)),
+						lerp(u, grad(p[AB + 1], x, y - 1, z - 1), grad(p[BB + 1], x - 1, y - 1, z - 1))));
+	}
+
+	/**
+	 * Returns a copy of the permutation table, repeated to 512 entries, for
+	 * implementations of noise that work on many points at once
+	 */
+	public static int[] getPermutation() {
+		return p.clone();
+	}
+
 	static double fade(double t) {
 		return t * t * t * (t * (t * 6 - 15) + 10);
 	}
@@ -47,6 +74,20 @@ public final class ImprovedNoise {
 		return ((h & 1) == 0 ? u : -u) + ((h & 2) == 0 ? v : -v);
 	}
 
+	static float fade(float t) {
+		return t * t * t * (t * (t * 6 - 15) + 10);
+	}
+
+	static float lerp(float t, float a, float b) {
+		return a + t * (b - a);
+	}
+
+	static float grad(int hash, float x, float y, float z) {
+		int h = hash & 15;
+		float u = h < 8 ? x : y, v = h < 4 ? y : h == 12 || h == 14 ? x : z;
+		return ((h & 1) == 0 ? u : -u) + ((h & 2) == 0 ? v : -v);
+	}
+
 	static final int p[] = new int[512], permutation[] = { 151, 160, 137, 91,
 			90, 15, 131, 13, 201, 95, 96, 53, 194, 233, 7, 225, 140, 36, 103,
 			30, 69, 142, 8, 99, 37, 240, 21, 10, 23, 190, 6, 148, 247, 120,
@@ -0,0 +1,97 @@
+package picasso.model;
+
+/**
+ * Random numbers that are a hash of a key, a channel and the coordinates of a
+ * point rather than the next output of a generator. The key comes from the
+ * seed of a render and the number of the random() call in the expression, and
+ * each channel steps the key by the increment of SplitMix64. The y and then
+ * the x coordinate are mixed in with SplitMix64's finalizer, so the value at a
+ * point is the same whichever thread computes it, in whatever order, and a
+ * render with the same seed draws the same image.
+ *
+ * Coordinates are hashed by their bits, with -0.0 taken as 0.0, so every
+ * engine that gives a point the same coordinates gives it the same numbers.
+ *
+ * @author Mark Holden
+ */
+public final class PixelRandom {
+	// the increment of SplitMix64, 2^64 divided by the golden ratio
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private PixelRandom() {
+	}
+
+	/**
+	 * Returns SplitMix64's finalizer of z, which changes about half the bits of
+	 * the result for every bit of z that changes
+	 */
+	public static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns the key of the given random() call of an expression rendered
+	 * with the given seed
+	 *
+	 * @param seed   the seed of the render
+	 * @param stream which random() call, counting from 0
+	 */
+	public static long key(long seed, int stream) {
+		return mix(mix(seed) + stream * GOLDEN_GAMMA);
+	}
+
+	private static long channelKey(long key, int channel) {
+		return key + (channel + 1) * GOLDEN_GAMMA;
+	}
+
+	private static long bits(double coordinate) {
+		return Double.doubleToLongBits(coordinate + 0.0);
+	}
+
+	/**
+	 * Returns the 53 high bits of a hash as a number at least -1 and less than
+	 * 1
+	 */
+	private static double value(long hash) {
+		return (hash >>> 11) * 0x1p-52 - 1;
+	}
+
+	/**
+	 * Returns the random number of a channel at a point, at least -1 and less
+	 * than 1
+	 *
+	 * @param key     the key of the random() call
+	 * @param channel 0, 1 or 2 for red, green or blue
+	 * @param x       the x coordinate of the point
+	 * @param y       the y coordinate of the point
+	 */
+	public static double random(long key, int channel, double x, double y) {
+		return value(mix(mix(channelKey(key, channel) ^ bits(y)) ^ bits(x)));
+	}
+
+	/**
+	 * Fills red, green and blue with the random numbers of each point (x[i],
+	 * y[i]). Points of a row share their y, so the hashes of y are only
+	 * computed again when it changes.
+	 */
+	public static void random(long key, double[] x, double[] y, double[] red, double[] green, double[] blue,
+			int length) {
+		long redKey = channelKey(key, 0), greenKey = channelKey(key, 1), blueKey = channelKey(key, 2);
+		long rowY = 0, rowRed = 0, rowGreen = 0, rowBlue = 0;
+		for (int i = 0; i < length; i++) {
+			long bitsY = bits(y[i]);
+			if (i == 0 || bitsY != rowY) {
+				rowY = bitsY;
+				rowRed = mix(redKey ^ bitsY);
+				rowGreen = mix(greenKey ^ bitsY);
+				rowBlue = mix(blueKey ^ bitsY);
+			}
+			long bitsX = bits(x[i]);
+			red[i] = value(mix(rowRed ^ bitsX));
+			green[i] = value(mix(rowGreen ^ bitsX));
+			blue[i] = value(mix(rowBlue ^ bitsX));
+		}
+	}
+}
@@ -145,6 +145,34 @@ public class Pixmap {
 		}
 	}
 
+	/**
+	 * Copies a block of packed RGB values into the image, one row after the
+	 * other. The block must lie within the bounds of the image.
+	 *
+	 * @param x      the left column of the block
+	 * @param y      the top row of the block
+	 * @param width  the number of columns in the block
+	 * @param height the number of rows in the block
+	 * @param rgb    the packed RGB value of each pixel in the block
+	 */
+	public void setRGB(int x, int y, int width, int height, int[] rgb) {
+		myImage.setRGB(x, y, width, height, rgb, 0, width);
+	}
+
+	/**
+	 * Copies a block of the image into packed RGB values, one row after the
+	 * other. The block must lie within the bounds of the image.
+	 *
+	 * @param x      the left column of the block
+	 * @param y      the top row of the block
+	 * @param width  the number of columns in the block
+	 * @param height the number of rows in the block
+	 * @param rgb    where to store the packed RGB value of each pixel
+	 */
+	public void getRGB(int x, int y, int width, int height, int[] rgb) {
+		myImage.getRGB(x, y, width, height, rgb, 0, width);
+	}
+
 	public void setSize(Dimension size) {
 		setSize(size.width, size.height);
 	}
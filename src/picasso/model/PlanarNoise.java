@@ -0,0 +1,155 @@
+package picasso.model;
+
+/**
+ * Perlin's improved noise on the plane z = 0, where perlinColor samples it.
+ * With z fixed at 0 the far face of the unit cube is blended in with a fade
+ * of 0, so it never contributes: only the four corners of the square under
+ * the point are hashed and graded, and the last blend along z drops out.
+ * Each gradient is then a sum of x and y with coefficients of -1, 0 or 1,
+ * which come from small tables rather than branches.
+ *
+ * Every value is exactly ImprovedNoise.noise(x, y, 0), or its float overload,
+ * except that a zero may come out with the other sign. Coordinates whose
+ * floors do not fit in an int, infinities and NaN go to ImprovedNoise itself.
+ *
+ * @author Mark Holden
+ */
+public final class PlanarNoise {
+	// floors of coordinates must fit in an int to be taken by casting
+	private static final double TWO_31 = 0x1p31;
+
+	private static final int[] p = ImprovedNoise.p;
+
+	// the coefficients of x and y in ImprovedNoise.grad(h, x, y, 0)
+	private static final double[] GRADIENT_X = new double[16];
+	private static final double[] GRADIENT_Y = new double[16];
+	private static final float[] FLOAT_GRADIENT_X = new float[16];
+	private static final float[] FLOAT_GRADIENT_Y = new float[16];
+	static {
+		for (int h = 0; h < 16; h++) {
+			GRADIENT_X[h] = ImprovedNoise.grad(h, 1, 0, 0);
+			GRADIENT_Y[h] = ImprovedNoise.grad(h, 0, 1, 0);
+			FLOAT_GRADIENT_X[h] = (float) GRADIENT_X[h];
+			FLOAT_GRADIENT_Y[h] = (float) GRADIENT_Y[h];
+		}
+	}
+
+	private PlanarNoise() {
+	}
+
+	/**
+	 * Returns the coefficient of x in the gradient for a hash: -1, 0 or 1
+	 */
+	public static double getGradientX(int hash) {
+		return GRADIENT_X[hash & 15];
+	}
+
+	/**
+	 * Returns the coefficient of y in the gradient for a hash: -1, 0 or 1
+	 */
+	public static double getGradientY(int hash) {
+		return GRADIENT_Y[hash & 15];
+	}
+
+	/**
+	 * Returns ImprovedNoise.noise(x, y, 0)
+	 */
+	public static double noise(double x, double y) {
+		if (!(Math.abs(x) < TWO_31 && Math.abs(y) < TWO_31)) {
+			return ImprovedNoise.noise(x, y, 0);
+		}
+		int floorX = (int) x;
+		int floorY = (int) y;
+		// casting rounds toward zero
+		if (x < floorX) {
+			floorX--;
+		}
+		if (y < floorY) {
+			floorY--;
+		}
+		x -= floorX;
+		y -= floorY;
+		int X = floorX & 255, Y = floorY & 255;
+		// with z = 0, the corner hashes AA, AB, BA and BB are p[A], p[A + 1],
+		// p[B] and p[B + 1]
+		int A = p[X] + Y, B = p[X + 1] + Y;
+		int AA = p[p[A]] & 15, AB = p[p[A + 1]] & 15, BA = p[p[B]] & 15, BB = p[p[B + 1]] & 15;
+		double u = ImprovedNoise.fade(x), v = ImprovedNoise.fade(y);
+		double x1 = x - 1, y1 = y - 1;
+		return ImprovedNoise.lerp(v,
+				ImprovedNoise.lerp(u, GRADIENT_X[AA] * x + GRADIENT_Y[AA] * y,
+						GRADIENT_X[BA] * x1 + GRADIENT_Y[BA] * y),
+				ImprovedNoise.lerp(u, GRADIENT_X[AB] * x + GRADIENT_Y[AB] * y1,
+						GRADIENT_X[BB] * x1 + GRADIENT_Y[BB] * y1));
+	}
+
+	/**
+	 * Returns the float overload of ImprovedNoise.noise(x, y, 0)
+	 */
+	public static float noise(float x, float y) {
+		if (!(Math.abs(x) < TWO_31 && Math.abs(y) < TWO_31)) {
+			return ImprovedNoise.noise(x, y, 0f);
+		}
+		int floorX = (int) x;
+		int floorY = (int) y;
+		if (x < floorX) {
+			floorX--;
+		}
+		if (y < floorY) {
+			floorY--;
+		}
+		x -= floorX;
+		y -= floorY;
+		int X = floorX & 255, Y = floorY & 255;
+		int A = p[X] + Y, B = p[X + 1] + Y;
+		int AA = p[p[A]] & 15, AB = p[p[A + 1]] & 15, BA = p[p[B]] & 15, BB = p[p[B + 1]] & 15;
+		float u = ImprovedNoise.fade(x), v = ImprovedNoise.fade(y);
+		float x1 = x - 1, y1 = y - 1;
+		return ImprovedNoise.lerp(v,
+				ImprovedNoise.lerp(u, FLOAT_GRADIENT_X[AA] * x + FLOAT_GRADIENT_Y[AA] * y,
+						FLOAT_GRADIENT_X[BA] * x1 + FLOAT_GRADIENT_Y[BA] * y),
+				ImprovedNoise.lerp(u, FLOAT_GRADIENT_X[AB] * x + FLOAT_GRADIENT_Y[AB] * y1,
+						FLOAT_GRADIENT_X[BB] * x1 + FLOAT_GRADIENT_Y[BB] * y1));
+	}
+
+	/**
+	 * Fills out with the noise of each point (x[i], y[i], 0). The output may be
+	 * one of the inputs.
+	 */
+	public static void noise(double[] x, double[] y, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = noise(x[i], y[i]);
+		}
+	}
+
+	/**
+	 * Fills out with the noise of each point (x[i] + offset, y[i] + offset,
+	 * 0), the way perlinColor shifts each channel. The output may be one of
+	 * the inputs.
+	 */
+	public static void noise(double[] x, double[] y, double offset, double[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = noise(x[i] + offset, y[i] + offset);
+		}
+	}
+
+	/**
+	 * Fills out with the float noise of each point (x[i], y[i], 0). The output
+	 * may be one of the inputs.
+	 */
+	public static void noise(float[] x, float[] y, float[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = noise(x[i], y[i]);
+		}
+	}
+
+	/**
+	 * Fills out with the float noise of each point (x[i] + offset, y[i] +
+	 * offset, 0). The output may be one of the inputs.
+	 */
+	public static void noise(float[] x, float[] y, float offset, float[] out, int length) {
+		for (int i = 0; i < length; i++) {
+			out[i] = noise(x[i] + offset, y[i] + offset);
+		}
+	}
+}
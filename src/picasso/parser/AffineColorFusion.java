@@ -0,0 +1,228 @@
+package picasso.parser;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import picasso.parser.language.AffineColorTransform;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.Interval;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Merges chains of two or more affine color transforms into a single
+ * AffineColorTransform. The color conversions are linear maps, and negation,
+ * adding or subtracting a color literal and multiplying or dividing by one are
+ * affine maps of each channel, so any chain of them is one 3x4 matrix.
+ *
+ * The merged matrix rounds differently from the chain, so a chain is only
+ * merged when its argument is finite everywhere in the image. The conversions
+ * only invert each other to four digits, so a chain that comes out within
+ * TOLERANCE of the identity everywhere, such as rgbToYCrCb(yCrCbToRGB(a)) for
+ * a small enough a, is cancelled and replaced by its argument.
+ *
+ * @author Mark Holden
+ */
+public class AffineColorFusion {
+
+	/**
+	 * The furthest a cancelled chain may move a channel: an eighth of the
+	 * smallest step between colors
+	 */
+	public static final double TOLERANCE = (RGBColor.COLOR_MAX - RGBColor.COLOR_MIN) / RGBColor.JAVA_COLOR_MAX / 8;
+
+	// the coefficients of RgbToYCrCb and YCrCbToRGB
+	private static final double[][] TO_YCRCB = { { 0.2989, 0.5866, 0.1145, 0 }, { -0.1687, -0.3312, 0.5, 0 },
+			{ 0.5, -0.4183, -0.0816, 0 } };
+	private static final double[][] TO_RGB = { { 1, 0, 1.4022, 0 }, { 1, -0.3456, -0.7145, 0 },
+			{ 1, 1.7710, 0, 0 } };
+
+	private RangeInference myRanges = new RangeInference();
+	private Map<ExpressionTreeNode, ExpressionTreeNode> myFused = new IdentityHashMap<>();
+	private int myChainCount;
+	private int myCancelledCount;
+
+	/**
+	 * Returns an expression that computes the colors of expr, up to rounding,
+	 * with its chains of affine color transforms merged
+	 *
+	 * @param expr the expression, which is not changed
+	 * @return the merged expression, which may be expr itself
+	 */
+	public ExpressionTreeNode fuse(ExpressionTreeNode expr) {
+		if (expr == null) {
+			return null;
+		}
+		ExpressionTreeNode done = myFused.get(expr);
+		if (done != null) {
+			return done;
+		}
+		// compose the chain from the outside in
+		double[][] matrix = identity();
+		int links = 0;
+		ExpressionTreeNode argument = expr;
+		double[][] link;
+		while ((link = transform(argument)) != null) {
+			matrix = multiply(matrix, link);
+			argument = operand(argument);
+			links++;
+		}
+		ExpressionTreeNode result;
+		ColorInterval range = links >= 2 ? myRanges.getRange(argument) : null;
+		if (range != null && range.getRed().isFinite() && range.getGreen().isFinite()
+				&& range.getBlue().isFinite()) {
+			ExpressionTreeNode fused = fuse(argument);
+			if (isNearIdentity(matrix, range)) {
+				myCancelledCount++;
+				result = fused;
+			} else {
+				myChainCount++;
+				result = new AffineColorTransform(fused, matrix);
+			}
+		} else {
+			List<ExpressionTreeNode> children = expr.getChildren();
+			List<ExpressionTreeNode> fused = new ArrayList<>(children.size());
+			boolean changed = false;
+			for (ExpressionTreeNode child : children) {
+				ExpressionTreeNode node = fuse(child);
+				fused.add(node);
+				changed |= node != child;
+			}
+			result = changed ? ExpressionOptimizer.rebuild(expr, fused) : expr;
+		}
+		myFused.put(expr, result);
+		return result;
+	}
+
+	/**
+	 * Returns how many chains have been merged into matrices
+	 */
+	public int getChainCount() {
+		return myChainCount;
+	}
+
+	/**
+	 * Returns how many chains have been cancelled altogether
+	 */
+	public int getCancelledCount() {
+		return myCancelledCount;
+	}
+
+	/**
+	 * Returns the matrix of the node if it is an affine color transform of a
+	 * single operand, or null
+	 */
+	private static double[][] transform(ExpressionTreeNode node) {
+		Class<?> type = node.getClass();
+		if (type == RgbToYCrCb.class) {
+			return TO_YCRCB;
+		} else if (type == YCrCbToRGB.class) {
+			return TO_RGB;
+		} else if (type == Not.class) {
+			return diagonal(-1, -1, -1, 0, 0, 0);
+		}
+		List<ExpressionTreeNode> children = node.getChildren();
+		if (children.size() != 2) {
+			return null;
+		}
+		RGBColor left = literal(children.get(0));
+		RGBColor right = literal(children.get(1));
+		if (right != null) {
+			if (type == Addition.class) {
+				return diagonal(1, 1, 1, right.getRed(), right.getGreen(), right.getBlue());
+			} else if (type == Subtraction.class) {
+				return diagonal(1, 1, 1, -right.getRed(), -right.getGreen(), -right.getBlue());
+			} else if (type == Multiplication.class) {
+				return diagonal(right.getRed(), right.getGreen(), right.getBlue(), 0, 0, 0);
+			} else if (type == Division.class) {
+				// a / 0 is 0
+				return diagonal(reciprocal(right.getRed()), reciprocal(right.getGreen()),
+						reciprocal(right.getBlue()), 0, 0, 0);
+			}
+		} else if (left != null) {
+			if (type == Addition.class) {
+				return diagonal(1, 1, 1, left.getRed(), left.getGreen(), left.getBlue());
+			} else if (type == Subtraction.class) {
+				return diagonal(-1, -1, -1, left.getRed(), left.getGreen(), left.getBlue());
+			} else if (type == Multiplication.class) {
+				return diagonal(left.getRed(), left.getGreen(), left.getBlue(), 0, 0, 0);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the operand of a node that transform() accepted
+	 */
+	private static ExpressionTreeNode operand(ExpressionTreeNode node) {
+		List<ExpressionTreeNode> children = node.getChildren();
+		if (children.size() == 2 && literal(children.get(1)) != null) {
+			return children.get(0);
+		}
+		return children.get(children.size() - 1);
+	}
+
+	private static RGBColor literal(ExpressionTreeNode node) {
+		if (node instanceof Constant || node instanceof RGBColor) {
+			RGBColor color = node.evaluate(0, 0);
+			if (Double.isFinite(color.getRed()) && Double.isFinite(color.getGreen())
+					&& Double.isFinite(color.getBlue())) {
+				return color;
+			}
+		}
+		return null;
+	}
+
+	private static double reciprocal(double value) {
+		return value == 0 ? 0 : 1 / value;
+	}
+
+	/**
+	 * Returns true if the matrix moves no channel of a color in the range by
+	 * more than TOLERANCE
+	 */
+	private static boolean isNearIdentity(double[][] matrix, ColorInterval range) {
+		Interval[] channels = { range.getRed(), range.getGreen(), range.getBlue() };
+		for (int row = 0; row < 3; row++) {
+			double error = Math.abs(matrix[row][3]);
+			for (int column = 0; column < 3; column++) {
+				Interval channel = channels[column];
+				double largest = Math.max(-channel.getMin(), channel.getMax());
+				error += Math.abs(matrix[row][column] - (row == column ? 1 : 0)) * largest;
+			}
+			if (!(error <= TOLERANCE)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static double[][] identity() {
+		return diagonal(1, 1, 1, 0, 0, 0);
+	}
+
+	private static double[][] diagonal(double red, double green, double blue, double redOffset,
+			double greenOffset, double blueOffset) {
+		return new double[][] { { red, 0, 0, redOffset }, { 0, green, 0, greenOffset },
+				{ 0, 0, blue, blueOffset } };
+	}
+
+	/**
+	 * Returns the transform that applies inner and then outer
+	 */
+	private static double[][] multiply(double[][] outer, double[][] inner) {
+		double[][] product = new double[3][4];
+		for (int row = 0; row < 3; row++) {
+			for (int column = 0; column < 4; column++) {
+				double sum = column == 3 ? outer[row][3] : 0;
+				for (int k = 0; k < 3; k++) {
+					sum += outer[row][k] * inner[k][column];
+				}
+				product[row][column] = sum;
+			}
+		}
+		return product;
+	}
+}
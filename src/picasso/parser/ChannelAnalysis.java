@@ -0,0 +1,136 @@
+package picasso.parser;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import picasso.parser.language.ExpressionDag;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.SharedExpression;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Works out which subexpressions are monochrome, with the same red, green and
+ * blue at every point, and which channels of each subexpression its consumers
+ * read. x, y, constants and perlinBW are grey, and a function applied to each
+ * channel of grey arguments is grey too, so an evaluator only needs to compute
+ * one channel of such a subexpression. A monochrome consumer only reads the
+ * red channel of its arguments.
+ *
+ * Channels are compared bit for bit, so computing one channel of a
+ * monochrome subexpression and copying it gives exactly the same colors.
+ *
+ * @author Mark Holden
+ */
+public class ChannelAnalysis {
+
+	public static final int RED = 1;
+	public static final int GREEN = 2;
+	public static final int BLUE = 4;
+	public static final int ALL = RED | GREEN | BLUE;
+
+	/**
+	 * Nodes that apply the same function to each channel of their arguments
+	 */
+	private static final Set<Class<?>> PER_CHANNEL = Set.of(Abs.class, Atan.class, Ceil.class, Clamp.class,
+			Cos.class, Exp.class, Floor.class, Log.class, Not.class, Sine.class, Tan.class, Wrap.class,
+			Addition.class, Subtraction.class, Multiplication.class, Division.class, Modulo.class,
+			Exponentiation.class, Mandelbrot.class, Julia.class);
+
+	/**
+	 * Nodes whose value is the value of their last child
+	 */
+	private static final Set<Class<?>> PASS_THROUGH = Set.of(Word.class, Assignment.class,
+			SharedExpression.class, ExpressionDag.class);
+
+	private Map<ExpressionTreeNode, Boolean> myMonochrome;
+	private Map<ExpressionTreeNode, Integer> myDemand;
+
+	/**
+	 * Analyze the expression
+	 *
+	 * @param expr the root of the expression, all of whose channels are read
+	 */
+	public ChannelAnalysis(ExpressionTreeNode expr) {
+		myMonochrome = new IdentityHashMap<>();
+		myDemand = new IdentityHashMap<>();
+		demand(expr, ALL);
+	}
+
+	/**
+	 * Returns true if the subexpression has the same value in every channel at
+	 * every point
+	 */
+	public boolean isMonochrome(ExpressionTreeNode node) {
+		Boolean known = myMonochrome.get(node);
+		if (known != null) {
+			return known;
+		}
+		Class<?> type = node.getClass();
+		List<ExpressionTreeNode> children = node.getChildren();
+		boolean monochrome;
+		if (type == X.class || type == Y.class || type == Constant.class || type == PerlinBW.class) {
+			monochrome = true;
+		} else if (type == RGBColor.class) {
+			RGBColor color = (RGBColor) node;
+			monochrome = same(color.getRed(), color.getGreen()) && same(color.getRed(), color.getBlue());
+		} else if (PER_CHANNEL.contains(type)) {
+			monochrome = true;
+			for (ExpressionTreeNode child : children) {
+				monochrome &= isMonochrome(child);
+			}
+		} else if (PASS_THROUGH.contains(type)) {
+			monochrome = isMonochrome(children.get(children.size() - 1));
+		} else {
+			monochrome = false;
+		}
+		myMonochrome.put(node, monochrome);
+		return monochrome;
+	}
+
+	/**
+	 * Returns the channels of the subexpression that are read, as a
+	 * combination of RED, GREEN and BLUE, or 0 if it is not part of the
+	 * analyzed expression
+	 */
+	public int getDemand(ExpressionTreeNode node) {
+		return myDemand.getOrDefault(node, 0);
+	}
+
+	/**
+	 * Record that the given channels of the node are read, and pass on what
+	 * that means for its children
+	 */
+	private void demand(ExpressionTreeNode node, int channels) {
+		int known = getDemand(node);
+		int demand = known | channels;
+		if (demand == known) {
+			return;
+		}
+		myDemand.put(node, demand);
+		Class<?> type = node.getClass();
+		List<ExpressionTreeNode> children = node.getChildren();
+		for (int i = 0; i < children.size(); i++) {
+			int childDemand;
+			if (isMonochrome(node) && (PER_CHANNEL.contains(type) || PASS_THROUGH.contains(type))
+					|| type == PerlinBW.class && isMonochrome(children.get(0)) && isMonochrome(children.get(1))) {
+				// only one channel is computed, from the red of each argument
+				childDemand = RED;
+			} else if (PER_CHANNEL.contains(type) || PASS_THROUGH.contains(type) || type == PerlinColor.class) {
+				// each channel of the result comes from the same channel of
+				// the arguments
+				childDemand = demand;
+			} else {
+				// noise of the channels, color space conversions, averages of
+				// image coordinates and anything unknown read every channel
+				childDemand = ALL;
+			}
+			demand(children.get(i), childDemand);
+		}
+	}
+
+	private static boolean same(double a, double b) {
+		return Double.doubleToRawLongBits(a) == Double.doubleToRawLongBits(b);
+	}
+}
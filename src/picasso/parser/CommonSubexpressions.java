@@ -0,0 +1,209 @@
+package picasso.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import picasso.parser.language.ExpressionDag;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.SharedExpression;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Finds the subexpressions that appear more than once in an expression, such
+ * as the repeated atan(..) / y - perlinBW(..) of the Beholder sample, and
+ * turns the tree into an ExpressionDag in which each of them is a
+ * SharedExpression computed once per point.
+ *
+ * Equal subtrees are found by hash-consing: the tree is rebuilt from the
+ * leaves up, and each node is looked up in a table of the nodes built so far
+ * by its structural equals and hashCode, so equal subtrees become one node.
+ * Only subtrees free of randomness and side effects are merged. Log evaluates
+ * its parameter at adjusted coordinates, so subtrees inside a log are never
+ * merged with subtrees outside one; every use of a SharedExpression sees the
+ * same coordinates.
+ *
+ * @author Mark Holden
+ */
+public class CommonSubexpressions {
+
+	/**
+	 * Nodes that may be shared when their children may
+	 */
+	private static final Set<Class<?>> SHAREABLE = shareable();
+
+	/**
+	 * Nodes without children that always have the same value at a point
+	 */
+	private static final Set<Class<?>> LEAVES = Set.of(X.class, Y.class, Constant.class, RGBColor.class,
+			Image.class);
+
+	// the coordinates a subtree is evaluated at: as given, or as log adjusts them
+	private static final int OUTSIDE_LOG = 0;
+	private static final int INSIDE_LOG = 1;
+
+	private List<Map<ExpressionTreeNode, ExpressionTreeNode>> myCanonical;
+	private List<Map<ExpressionTreeNode, ExpressionTreeNode>> myInterned;
+	private List<Map<ExpressionTreeNode, Integer>> myUses;
+	private List<Map<ExpressionTreeNode, ExpressionTreeNode>> myShared;
+	private Map<ExpressionTreeNode, Boolean> myPure;
+	private int mySharedCount;
+	private int myDeduplicatedCount;
+
+	public CommonSubexpressions() {
+		myCanonical = List.of(new HashMap<>(), new HashMap<>());
+		myInterned = List.of(new IdentityHashMap<>(), new IdentityHashMap<>());
+		myUses = List.of(new IdentityHashMap<>(), new IdentityHashMap<>());
+		myShared = List.of(new IdentityHashMap<>(), new IdentityHashMap<>());
+		myPure = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Returns an expression that computes the same colors as expr, with each
+	 * repeated subexpression computed once
+	 *
+	 * @param expr the expression, which is not changed
+	 * @return an ExpressionDag, or expr itself if nothing is repeated
+	 */
+	public ExpressionTreeNode share(ExpressionTreeNode expr) {
+		if (expr == null || expr instanceof ExpressionDag) {
+			return expr;
+		}
+		ExpressionTreeNode interned = intern(expr, OUTSIDE_LOG);
+		countUses(interned, OUTSIDE_LOG);
+		ExpressionTreeNode shared = wrap(interned, OUTSIDE_LOG);
+		if (mySharedCount == 0) {
+			return expr;
+		}
+		myDeduplicatedCount += (int) (countEvaluations(expr, new IdentityHashMap<>())
+				- countEvaluations(shared, new IdentityHashMap<>()));
+		return new ExpressionDag(shared, mySharedCount);
+	}
+
+	/**
+	 * Returns how many nodes no longer need evaluating at each point because
+	 * they are computed once by a shared subexpression
+	 */
+	public int getDeduplicatedCount() {
+		return myDeduplicatedCount;
+	}
+
+	/**
+	 * Returns how many shared subexpressions were made
+	 */
+	public int getSharedCount() {
+		return mySharedCount;
+	}
+
+	/**
+	 * Rebuild the node from interned children, and return the node already
+	 * built for an equal subtree if there is one
+	 */
+	private ExpressionTreeNode intern(ExpressionTreeNode node, int context) {
+		ExpressionTreeNode done = myInterned.get(context).get(node);
+		if (done != null) {
+			return done;
+		}
+		List<ExpressionTreeNode> children = node.getChildren();
+		List<ExpressionTreeNode> interned = new ArrayList<>(children.size());
+		boolean changed = false;
+		boolean pure = SHAREABLE.contains(node.getClass()) || LEAVES.contains(node.getClass());
+		for (ExpressionTreeNode child : children) {
+			ExpressionTreeNode result = intern(child, childContext(node, context));
+			interned.add(result);
+			changed |= result != child;
+			pure &= isPure(result);
+		}
+		ExpressionTreeNode result = changed ? ExpressionOptimizer.rebuild(node, interned) : node;
+		if (pure && !children.isEmpty()) {
+			ExpressionTreeNode existing = myCanonical.get(context).putIfAbsent(result, result);
+			if (existing != null) {
+				result = existing;
+			}
+			myPure.put(result, Boolean.TRUE);
+		}
+		myInterned.get(context).put(node, result);
+		return result;
+	}
+
+	private boolean isPure(ExpressionTreeNode node) {
+		return LEAVES.contains(node.getClass()) || myPure.containsKey(node);
+	}
+
+	private static int childContext(ExpressionTreeNode node, int context) {
+		return node instanceof Log ? INSIDE_LOG : context;
+	}
+
+	/**
+	 * Count how many times each interned node is used by the nodes that are
+	 * evaluated. The children of a pure node are only counted once however
+	 * often the node is used, since it will only be computed once.
+	 */
+	private void countUses(ExpressionTreeNode node, int context) {
+		Integer uses = myUses.get(context).merge(node, 1, Integer::sum);
+		if (uses > 1 && isPure(node)) {
+			return;
+		}
+		for (ExpressionTreeNode child : node.getChildren()) {
+			countUses(child, childContext(node, context));
+		}
+	}
+
+	/**
+	 * Rebuild the interned node with its repeated subexpressions replaced by
+	 * SharedExpressions
+	 */
+	private ExpressionTreeNode wrap(ExpressionTreeNode node, int context) {
+		boolean pure = isPure(node);
+		ExpressionTreeNode done = myShared.get(context).get(node);
+		if (pure && done != null) {
+			return done;
+		}
+		List<ExpressionTreeNode> children = node.getChildren();
+		List<ExpressionTreeNode> wrapped = new ArrayList<>(children.size());
+		boolean changed = false;
+		for (ExpressionTreeNode child : children) {
+			ExpressionTreeNode result = wrap(child, childContext(node, context));
+			wrapped.add(result);
+			changed |= result != child;
+		}
+		ExpressionTreeNode result = changed ? ExpressionOptimizer.rebuild(node, wrapped) : node;
+		if (pure && !children.isEmpty() && myUses.get(context).get(node) > 1) {
+			result = new SharedExpression(result, mySharedCount++);
+		}
+		if (pure) {
+			myShared.get(context).put(node, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns how many nodes with children are evaluated for each point, where
+	 * the subtree of a SharedExpression is only evaluated the first time
+	 */
+	private static long countEvaluations(ExpressionTreeNode node, Map<ExpressionTreeNode, Boolean> shared) {
+		List<ExpressionTreeNode> children = node.getChildren();
+		if (node instanceof SharedExpression) {
+			if (shared.put(node, Boolean.TRUE) != null) {
+				return 0;
+			}
+			return countEvaluations(children.get(0), shared);
+		}
+		long count = children.isEmpty() ? 0 : 1;
+		for (ExpressionTreeNode child : children) {
+			count += countEvaluations(child, shared);
+		}
+		return count;
+	}
+
+	private static Set<Class<?>> shareable() {
+		Set<Class<?>> types = new HashSet<>(ExpressionOptimizer.PURE);
+		types.add(ImageWrap.class);
+		types.add(ImageClip.class);
+		return Set.copyOf(types);
+	}
+}
@@ -0,0 +1,53 @@
+package picasso.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Stack;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.EscapeTimeFractal;
+import picasso.parser.tokens.NumberToken;
+import picasso.parser.tokens.Token;
+
+/**
+ * Parses an escape-time fractal, such as mandelbrot(x, y, 100): expressions
+ * for the parts of its complex arguments, then the most iterations of an
+ * orbit. The iterations are a whole number written out, which, unlike other
+ * numbers, may be larger than 1.
+ *
+ * @author Mark Holden
+ */
+public abstract class EscapeTimeAnalyzer implements SemanticAnalyzerInterface {
+
+	@Override
+	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+		tokens.pop(); // Remove the function token
+		if (tokens.isEmpty() || !(tokens.peek() instanceof NumberToken)) {
+			throw new ParseException("Expected the number of iterations");
+		}
+		double iterations = ((NumberToken) tokens.pop()).value();
+		if (iterations != Math.rint(iterations) || iterations < 1 || iterations > EscapeTimeFractal.MAX_ITERATIONS) {
+			throw new ParseException(
+					"Iterations must be a whole number from 1 to " + EscapeTimeFractal.MAX_ITERATIONS);
+		}
+		List<ExpressionTreeNode> arguments = new ArrayList<>();
+		for (int i = 0; i < getArgumentCount(); i++) {
+			arguments.add(SemanticAnalyzer.getInstance().generateExpressionTree(tokens));
+		}
+		Collections.reverse(arguments);
+		return create(arguments, (int) iterations);
+	}
+
+	/**
+	 * Returns how many expressions come before the iterations
+	 */
+	protected abstract int getArgumentCount();
+
+	/**
+	 * Returns the function of the given arguments, in the order they are
+	 * written
+	 */
+	protected abstract ExpressionTreeNode create(List<ExpressionTreeNode> arguments, int iterations);
+
+}
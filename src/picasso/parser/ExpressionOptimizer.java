@@ -0,0 +1,302 @@
+package picasso.parser;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import picasso.parser.language.AffineColorTransform;
+import picasso.parser.language.ExpressionDag;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.SharedExpression;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Simplifies a parsed expression before it is rendered. Subexpressions that do
+ * not depend on x or y are evaluated once and replaced by their color, and a
+ * few algebraic identities are applied, such as x - x = 0, a * 1 = a, a * 0 = 0
+ * and !!a = a. Range checks that the bounds of their arguments make
+ * unnecessary are dropped by RangeInference, which assumes that x and y lie in
+ * [-1, 1], as they do in every image.
+ *
+ * The optimized expression computes the same colors as the original. The only
+ * difference allowed is the sign of a zero, which no function in the language
+ * can turn into a different color. Rewrites that drop a subexpression are only
+ * made when that subexpression is free of side effects and randomness and is
+ * certain to be finite, since 0 * infinity is not 0. A fractal noise function
+ * at the root is marked quantized, so that it may stop summing octaves once
+ * they can no longer change the color of a pixel.
+ *
+ * @author Mark Holden
+ */
+public class ExpressionOptimizer {
+
+	/**
+	 * Nodes whose value depends only on their children (and, through their
+	 * children, on x and y)
+	 */
+	static final Set<Class<?>> PURE = Set.of(Abs.class, Atan.class, Ceil.class, Clamp.class, Cos.class,
+			Exp.class, Floor.class, Log.class, Not.class, RgbToYCrCb.class, Sine.class, Tan.class, Wrap.class,
+			YCrCbToRGB.class, Addition.class, Subtraction.class, Multiplication.class, Division.class, Modulo.class,
+			Exponentiation.class, PerlinBW.class, PerlinColor.class, Fbm.class, Turbulence.class, Word.class,
+			Mandelbrot.class, Julia.class);
+
+	/**
+	 * Nodes that have side effects or other reasons not to be folded, but whose
+	 * children may still be optimized
+	 */
+	private static final Set<Class<?>> REBUILDABLE = Set.of(Assignment.class, ImageWrap.class, ImageClip.class);
+
+	// the largest value noise returns is a little over 1
+	private static final double NOISE_BOUND = 2;
+
+	private int myFoldCount;
+	private int myRewriteCount;
+	private int mySpecializationCount;
+	private RangeInference myRanges = new RangeInference();
+
+	/**
+	 * Returns an expression that computes the same colors as expr, but with less
+	 * work per pixel
+	 *
+	 * @param expr the expression to optimize, which is not changed
+	 * @return the optimized expression, which may share nodes with expr, or
+	 *         null if expr is null
+	 */
+	public ExpressionTreeNode optimize(ExpressionTreeNode expr) {
+		ExpressionTreeNode optimized = optimizeNode(expr);
+		if (optimized instanceof FractalNoise) {
+			// its value goes straight to the pixels
+			return ((FractalNoise) optimized).quantized();
+		}
+		return optimized;
+	}
+
+	private ExpressionTreeNode optimizeNode(ExpressionTreeNode expr) {
+		if (expr == null) {
+			return null;
+		}
+		Class<?> type = expr.getClass();
+		if (!PURE.contains(type) && !REBUILDABLE.contains(type)) {
+			return expr;
+		}
+		List<ExpressionTreeNode> children = expr.getChildren();
+		List<ExpressionTreeNode> optimized = new ArrayList<>(children.size());
+		boolean changed = false;
+		boolean constant = true;
+		for (ExpressionTreeNode child : children) {
+			ExpressionTreeNode result = optimizeNode(child);
+			optimized.add(result);
+			changed |= result != child;
+			constant &= isLiteral(result);
+		}
+		ExpressionTreeNode node = changed ? rebuild(expr, optimized) : expr;
+		if (constant && PURE.contains(type)) {
+			myFoldCount++;
+			return node.evaluate(0, 0);
+		}
+		ExpressionTreeNode simplified = simplify(node, optimized);
+		if (simplified != node) {
+			myRewriteCount++;
+			return simplified;
+		}
+		ExpressionTreeNode specialized = myRanges.specialize(node);
+		if (specialized != node) {
+			mySpecializationCount++;
+		}
+		return specialized;
+	}
+
+	/**
+	 * Returns how many subexpressions have been replaced by colors
+	 */
+	public int getFoldCount() {
+		return myFoldCount;
+	}
+
+	/**
+	 * Returns how many algebraic rewrites have been made
+	 */
+	public int getRewriteCount() {
+		return myRewriteCount;
+	}
+
+	/**
+	 * Returns how many range checks have been dropped
+	 */
+	public int getSpecializationCount() {
+		return mySpecializationCount;
+	}
+
+	/**
+	 * Apply the algebraic identities to a node whose children are already
+	 * optimized
+	 */
+	private ExpressionTreeNode simplify(ExpressionTreeNode node, List<ExpressionTreeNode> children) {
+		Class<?> type = node.getClass();
+		if (type == Word.class) {
+			return children.get(0);
+		}
+		if (type == Not.class && children.get(0).getClass() == Not.class) {
+			return children.get(0).getChildren().get(0);
+		}
+		if (children.size() != 2 || !PURE.contains(type)) {
+			return node;
+		}
+		ExpressionTreeNode left = children.get(0);
+		ExpressionTreeNode right = children.get(1);
+		if (type == Addition.class) {
+			if (isLiteral(left, 0)) {
+				return right;
+			} else if (isLiteral(right, 0)) {
+				return left;
+			}
+		} else if (type == Subtraction.class) {
+			if (isLiteral(right, 0)) {
+				return left;
+			} else if (left.equals(right) && isDisposable(left)) {
+				return new RGBColor(0, 0, 0);
+			}
+		} else if (type == Multiplication.class) {
+			if (isLiteral(left, 1)) {
+				return right;
+			} else if (isLiteral(right, 1)) {
+				return left;
+			} else if (isLiteral(left, 0) && isDisposable(right) || isLiteral(right, 0) && isDisposable(left)) {
+				return new RGBColor(0, 0, 0);
+			}
+		} else if (type == Division.class || type == Exponentiation.class) {
+			// a / 1 = a, and Math.pow(a, 1) = a
+			if (isLiteral(right, 1)) {
+				return left;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Create a node of the same type as the given one with new children, using
+	 * the constructor that takes the children in order. Shared subexpressions
+	 * keep their index, DAGs their count of shared subexpressions, affine
+	 * color transforms their matrix, fractal noise its octaves and escape-time
+	 * fractals their iterations.
+	 */
+	static ExpressionTreeNode rebuild(ExpressionTreeNode node, List<ExpressionTreeNode> children) {
+		if (node instanceof SharedExpression) {
+			return new SharedExpression(children.get(0), ((SharedExpression) node).getIndex());
+		} else if (node instanceof ExpressionDag) {
+			return new ExpressionDag(children.get(0), ((ExpressionDag) node).getSharedCount());
+		} else if (node instanceof AffineColorTransform) {
+			return new AffineColorTransform(children.get(0), ((AffineColorTransform) node).getMatrix());
+		} else if (node instanceof FractalNoise) {
+			return ((FractalNoise) node).rebuild(children.get(0), children.get(1));
+		} else if (node instanceof EscapeTimeFractal) {
+			return ((EscapeTimeFractal) node).rebuild(children);
+		}
+		Object[] arguments = children.toArray();
+		for (Constructor<?> constructor : node.getClass().getConstructors()) {
+			if (constructor.getParameterCount() == arguments.length) {
+				try {
+					return (ExpressionTreeNode) constructor.newInstance(arguments);
+				} catch (IllegalArgumentException | InstantiationException | IllegalAccessException
+						| InvocationTargetException e) {
+					// try the next constructor
+				}
+			}
+		}
+		// leave the node as it was; the children are only an optimization
+		return node;
+	}
+
+	private static boolean isLiteral(ExpressionTreeNode node) {
+		return node instanceof Constant || node instanceof RGBColor;
+	}
+
+	/**
+	 * Returns true if every channel of the node is a literal with the given
+	 * value
+	 */
+	private static boolean isLiteral(ExpressionTreeNode node, double value) {
+		if (node instanceof Constant) {
+			return ((Constant) node).getValue() == value;
+		} else if (node instanceof RGBColor) {
+			RGBColor color = (RGBColor) node;
+			return color.getRed() == value && color.getGreen() == value && color.getBlue() == value;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if the expression can be left out without changing the
+	 * image: it has no side effects, is not random and is always finite
+	 */
+	private static boolean isDisposable(ExpressionTreeNode node) {
+		return bound(node) < Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Returns a bound on the absolute value of every channel of the expression
+	 * at every point, or infinity if the expression might be infinite, NaN,
+	 * random or have side effects
+	 */
+	private static double bound(ExpressionTreeNode node) {
+		Class<?> type = node.getClass();
+		if (type == X.class || type == Y.class) {
+			return 1;
+		} else if (isLiteral(node)) {
+			RGBColor color = node.evaluate(0, 0);
+			return finite(Math.max(Math.abs(color.getRed()), Math.max(Math.abs(color.getGreen()),
+					Math.abs(color.getBlue()))));
+		} else if (!PURE.contains(type)) {
+			return Double.POSITIVE_INFINITY;
+		}
+		List<ExpressionTreeNode> children = node.getChildren();
+		if (type == Mandelbrot.class || type == Julia.class) {
+			// every orbit either escapes or does not, whatever its arguments
+			for (ExpressionTreeNode child : children) {
+				if (bound(child) == Double.POSITIVE_INFINITY) {
+					return Double.POSITIVE_INFINITY;
+				}
+			}
+			return 1;
+		}
+		double first = bound(children.get(0));
+		double second = children.size() > 1 ? bound(children.get(1)) : 0;
+		if (first == Double.POSITIVE_INFINITY || second == Double.POSITIVE_INFINITY) {
+			return Double.POSITIVE_INFINITY;
+		}
+		if (type == Sine.class || type == Cos.class || type == Clamp.class || type == Wrap.class) {
+			return 1;
+		} else if (type == Atan.class) {
+			return Math.PI / 2;
+		} else if (type == Abs.class || type == Not.class || type == Word.class || type == Modulo.class) {
+			// |a % b| is at most |a|, and a % 0 is a
+			return first;
+		} else if (type == Floor.class || type == Ceil.class) {
+			return first + 1;
+		} else if (type == RgbToYCrCb.class) {
+			return finite(2 * first);
+		} else if (type == YCrCbToRGB.class) {
+			return finite(3 * first);
+		} else if (type == Addition.class || type == Subtraction.class) {
+			return finite(first + second);
+		} else if (type == Multiplication.class) {
+			return finite(first * second);
+		} else if (type == PerlinBW.class || type == PerlinColor.class) {
+			// the arguments are added together before the noise is taken
+			return finite(first + second + 1) == Double.POSITIVE_INFINITY ? Double.POSITIVE_INFINITY : NOISE_BOUND;
+		} else if (type == Fbm.class || type == Turbulence.class) {
+			// the highest octave multiplies the arguments the most
+			double scale = Math.scalb(1.0, FractalNoise.MAX_OCTAVES);
+			return finite((first + second) * scale + 1) == Double.POSITIVE_INFINITY ? Double.POSITIVE_INFINITY
+					: NOISE_BOUND;
+		}
+		// division, tan, exp, log and powers can overflow
+		return Double.POSITIVE_INFINITY;
+	}
+
+	private static double finite(double bound) {
+		return bound < Double.POSITIVE_INFINITY ? bound : Double.POSITIVE_INFINITY;
+	}
+}
@@ -0,0 +1,18 @@
+package picasso.parser;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.Fbm;
+
+/**
+ * Handles parsing of the fbm function
+ *
+ * @author Mark Holden
+ */
+public class FbmAnalyzer extends FractalNoiseAnalyzer {
+
+	@Override
+	protected ExpressionTreeNode create(ExpressionTreeNode x, ExpressionTreeNode y, int octaves) {
+		return new Fbm(x, y, octaves);
+	}
+
+}
@@ -0,0 +1,39 @@
+package picasso.parser;
+
+import java.util.Stack;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.FractalNoise;
+import picasso.parser.tokens.NumberToken;
+import picasso.parser.tokens.Token;
+
+/**
+ * Parses a fractal noise function, such as fbm(x, y, 6): two expressions for
+ * the coordinates, then the number of octaves. The octaves are a whole number
+ * written out, which, unlike other numbers, may be larger than 1.
+ *
+ * @author Mark Holden
+ */
+public abstract class FractalNoiseAnalyzer implements SemanticAnalyzerInterface {
+
+	@Override
+	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
+		tokens.pop(); // Remove the function token
+		if (tokens.isEmpty() || !(tokens.peek() instanceof NumberToken)) {
+			throw new ParseException("Expected the number of octaves");
+		}
+		double octaves = ((NumberToken) tokens.pop()).value();
+		if (octaves != Math.rint(octaves) || octaves < 1 || octaves > FractalNoise.MAX_OCTAVES) {
+			throw new ParseException("Octaves must be a whole number from 1 to " + FractalNoise.MAX_OCTAVES);
+		}
+		ExpressionTreeNode y = SemanticAnalyzer.getInstance().generateExpressionTree(tokens);
+		ExpressionTreeNode x = SemanticAnalyzer.getInstance().generateExpressionTree(tokens);
+		return create(x, y, (int) octaves);
+	}
+
+	/**
+	 * Returns the function of the given arguments
+	 */
+	protected abstract ExpressionTreeNode create(ExpressionTreeNode x, ExpressionTreeNode y, int octaves);
+
+}
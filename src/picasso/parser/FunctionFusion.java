@@ -0,0 +1,80 @@
+package picasso.parser;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.FusedFunction;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Collapses chains of two or more per-channel functions, such as
+ * wrap(ceil(a)) or cos(abs(a)), into FusedFunction nodes for the engines that
+ * walk the tree. The color conversions mix the channels, so they end a chain.
+ * Shared subexpressions stay shared.
+ *
+ * @author Mark Holden
+ */
+public class FunctionFusion {
+
+	private static final Map<Class<?>, Integer> STAGES = Map.ofEntries(Map.entry(Sine.class, FusedFunction.SIN),
+			Map.entry(Cos.class, FusedFunction.COS), Map.entry(Tan.class, FusedFunction.TAN),
+			Map.entry(Atan.class, FusedFunction.ATAN), Map.entry(Exp.class, FusedFunction.EXP),
+			Map.entry(Log.class, FusedFunction.LOG), Map.entry(Floor.class, FusedFunction.FLOOR),
+			Map.entry(Ceil.class, FusedFunction.CEIL), Map.entry(Abs.class, FusedFunction.ABS),
+			Map.entry(Clamp.class, FusedFunction.CLAMP), Map.entry(Wrap.class, FusedFunction.WRAP),
+			Map.entry(Not.class, FusedFunction.NEGATE));
+
+	private Map<ExpressionTreeNode, ExpressionTreeNode> myFused = new IdentityHashMap<>();
+	private int myChainCount;
+
+	/**
+	 * Returns an expression that computes the same colors as expr, with its
+	 * chains of functions fused
+	 *
+	 * @param expr the expression, which is not changed
+	 * @return the fused expression, which may be expr itself
+	 */
+	public ExpressionTreeNode fuse(ExpressionTreeNode expr) {
+		if (expr == null) {
+			return null;
+		}
+		ExpressionTreeNode done = myFused.get(expr);
+		if (done != null) {
+			return done;
+		}
+		ExpressionTreeNode result;
+		List<Integer> stages = new ArrayList<>();
+		ExpressionTreeNode argument = expr;
+		while (STAGES.containsKey(argument.getClass())) {
+			stages.add(0, STAGES.get(argument.getClass()));
+			argument = argument.getChildren().get(0);
+		}
+		if (stages.size() >= 2) {
+			result = new FusedFunction(expr, fuse(argument),
+					stages.stream().mapToInt(Integer::intValue).toArray());
+			myChainCount++;
+		} else {
+			List<ExpressionTreeNode> children = expr.getChildren();
+			List<ExpressionTreeNode> fused = new ArrayList<>(children.size());
+			boolean changed = false;
+			for (ExpressionTreeNode child : children) {
+				ExpressionTreeNode node = fuse(child);
+				fused.add(node);
+				changed |= node != child;
+			}
+			result = changed ? ExpressionOptimizer.rebuild(expr, fused) : expr;
+		}
+		myFused.put(expr, result);
+		return result;
+	}
+
+	/**
+	 * Returns how many chains have been fused
+	 */
+	public int getChainCount() {
+		return myChainCount;
+	}
+}
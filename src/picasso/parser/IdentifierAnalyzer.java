@@ -1,8 +1,8 @@
 package picasso.parser;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 import picasso.parser.language.ExpressionTreeNode;
 import picasso.parser.language.expressions.X;
@@ -21,7 +21,9 @@ import javax.swing.*;
  */
 public class IdentifierAnalyzer implements SemanticAnalyzerInterface {
 
-	static Map<String, ExpressionTreeNode> idToExpression = new HashMap<String, ExpressionTreeNode>();
+	// Assignments store their result while the image is being rendered, which
+	// happens on several threads at once.
+	static Map<String, ExpressionTreeNode> idToExpression = new ConcurrentHashMap<String, ExpressionTreeNode>();
 	
 	final JFrame parent = new JFrame();
 	static {
@@ -0,0 +1,25 @@
+package picasso.parser;
+
+import java.util.List;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.Julia;
+
+/**
+ * Handles parsing of the julia function
+ *
+ * @author Mark Holden
+ */
+public class JuliaAnalyzer extends EscapeTimeAnalyzer {
+
+	@Override
+	protected int getArgumentCount() {
+		return 4;
+	}
+
+	@Override
+	protected ExpressionTreeNode create(List<ExpressionTreeNode> arguments, int iterations) {
+		return new Julia(arguments.get(0), arguments.get(1), arguments.get(2), arguments.get(3), iterations);
+	}
+
+}
@@ -0,0 +1,25 @@
+package picasso.parser;
+
+import java.util.List;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.Mandelbrot;
+
+/**
+ * Handles parsing of the mandelbrot function
+ *
+ * @author Mark Holden
+ */
+public class MandelbrotAnalyzer extends EscapeTimeAnalyzer {
+
+	@Override
+	protected int getArgumentCount() {
+		return 2;
+	}
+
+	@Override
+	protected ExpressionTreeNode create(List<ExpressionTreeNode> arguments, int iterations) {
+		return new Mandelbrot(arguments.get(0), arguments.get(1), iterations);
+	}
+
+}
@@ -4,6 +4,7 @@ import java.util.Stack;
 
 import picasso.parser.language.ExpressionTreeNode;
 import picasso.parser.tokens.Token;
+import picasso.parser.tokens.functions.RandomToken;
 import picasso.parser.language.expressions.*;
 
 /**
@@ -13,14 +14,25 @@ import picasso.parser.language.expressions.*;
 public class RandomAnalyzer implements SemanticAnalyzerInterface {
 
 	/**
+	 * Numbers the call by the random() calls before it, which are the ones
+	 * still on the stack, so that each call draws its own numbers. Calls
+	 * reached through variables are not on the stack; RandomSeeding numbers
+	 * the calls again before a render.
+	 * 
 	 * @param tokens
-	 * @return new Random()
+	 * @return a Random numbered by its place in the expression
 	 */
 	public ExpressionTreeNode generateExpressionTree(Stack<Token> tokens) {
 		
 		tokens.pop(); // Need to remove the random token
 
-		return new Random();
+		int stream = 0;
+		for (Token token : tokens) {
+			if (token instanceof RandomToken) {
+				stream++;
+			}
+		}
+		return new Random(Random.DEFAULT_SEED, stream);
 	}
 
 }
\ No newline at end of file
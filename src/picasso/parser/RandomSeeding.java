@@ -0,0 +1,82 @@
+package picasso.parser;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.Random;
+
+/**
+ * Gives every random() call of an expression the seed of a render. A call's
+ * numbers are a hash of the seed, its place in the expression and the point,
+ * so rendering with the same seed draws the same image and another seed draws
+ * another one.
+ *
+ * The parser numbers the calls of one expression, but a call reached through
+ * a variable was numbered when its assignment was parsed and may have the
+ * number of a call of this one. So the calls are numbered again here, in the
+ * order they are first reached from the root. A call reached more than once,
+ * through a variable used twice, is one call and keeps one number.
+ *
+ * @author Mark Holden
+ */
+public class RandomSeeding {
+
+	private int mySeededCount;
+	private Map<ExpressionTreeNode, Integer> myStreams;
+	private Map<ExpressionTreeNode, ExpressionTreeNode> mySeeded;
+
+	/**
+	 * Returns the expression with every random() call drawing from the seed
+	 * and a stream of its own
+	 *
+	 * @param expr the expression, which is not changed
+	 * @param seed the seed of the render
+	 * @return the seeded expression, or expr itself if its calls already have
+	 *         the seed and their streams or it has none
+	 */
+	public ExpressionTreeNode seed(ExpressionTreeNode expr, long seed) {
+		myStreams = new IdentityHashMap<>();
+		mySeeded = new IdentityHashMap<>();
+		return seedNode(expr, seed);
+	}
+
+	private ExpressionTreeNode seedNode(ExpressionTreeNode expr, long seed) {
+		if (expr == null) {
+			return null;
+		}
+		ExpressionTreeNode done = mySeeded.get(expr);
+		if (done != null) {
+			return done;
+		}
+		ExpressionTreeNode result;
+		if (expr instanceof Random) {
+			int stream = myStreams.computeIfAbsent(expr, call -> myStreams.size());
+			result = ((Random) expr).withSeed(seed, stream);
+			if (result != expr) {
+				mySeededCount++;
+			}
+		} else {
+			List<ExpressionTreeNode> children = expr.getChildren();
+			List<ExpressionTreeNode> seeded = new ArrayList<>(children.size());
+			boolean changed = false;
+			for (ExpressionTreeNode child : children) {
+				ExpressionTreeNode node = seedNode(child, seed);
+				seeded.add(node);
+				changed |= node != child;
+			}
+			result = changed ? ExpressionOptimizer.rebuild(expr, seeded) : expr;
+		}
+		mySeeded.put(expr, result);
+		return result;
+	}
+
+	/**
+	 * Returns how many random() calls were given a new seed or stream
+	 */
+	public int getSeededCount() {
+		return mySeededCount;
+	}
+}
@@ -0,0 +1,150 @@
+package picasso.parser;
+
+import java.util.function.Predicate;
+
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.Interval;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Uses the bounds of subexpressions over the whole image, where x and y lie
+ * in [-1, 1], to drop range checks that cannot change a value. clamp(sin(x))
+ * is sin(x), since a sine is already in [-1, 1], and so is clamp(clamp(a)).
+ * abs of a value that is never negative is the value itself, a remainder whose
+ * dividend is always smaller than its divisor is the dividend, and wrap of a
+ * value that stays within one period is a subtraction instead of a remainder.
+ *
+ * Each rewrite computes exactly the value of the node it replaces, except
+ * perhaps the sign of a zero. The other checks, for zero divisors and
+ * logarithms of zero, are left alone: their branches go the same way at
+ * nearly every pixel, so they cost little.
+ *
+ * @author Mark Holden
+ */
+public class RangeInference {
+
+	/**
+	 * The range of x and of y over every image
+	 */
+	public static final Interval DOMAIN = Interval.of(-1, 1);
+
+	/**
+	 * Returns bounds on each channel of the expression over the whole image
+	 */
+	public ColorInterval getRange(ExpressionTreeNode node) {
+		return node.bounds(DOMAIN, DOMAIN);
+	}
+
+	/**
+	 * Returns an expression without the range checks of the node that its
+	 * arguments' ranges make unnecessary, or the node itself if there is none
+	 *
+	 * @param node a node whose children have already been specialized
+	 */
+	public ExpressionTreeNode specialize(ExpressionTreeNode node) {
+		Class<?> type = node.getClass();
+		if (type == Clamp.class) {
+			return specializeClamp(node, node.getChildren().get(0));
+		} else if (type == Abs.class) {
+			return specializeAbs(node, node.getChildren().get(0));
+		} else if (type == Wrap.class) {
+			return specializeWrap(node, node.getChildren().get(0));
+		} else if (type == Modulo.class) {
+			return specializeModulo(node, node.getChildren().get(0), node.getChildren().get(1));
+		}
+		return node;
+	}
+
+	private ExpressionTreeNode specializeClamp(ExpressionTreeNode node, ExpressionTreeNode argument) {
+		// clamp leaves NaN alone, so only the ends matter
+		if (all(getRange(argument), range -> range.getMin() >= -1 && range.getMax() <= 1)) {
+			return argument;
+		}
+		return node;
+	}
+
+	private ExpressionTreeNode specializeAbs(ExpressionTreeNode node, ExpressionTreeNode argument) {
+		if (all(getRange(argument), channel -> channel.getMin() >= 0)) {
+			return argument;
+		}
+		return node;
+	}
+
+	/**
+	 * wrap(a) is ((a + 3) % 2) - 1. While a + 3 is not negative, the remainder
+	 * is exactly a + 3 - 2k, so if every value of a + 3 in a channel has the
+	 * same k, wrap(a) is (a + 3) - (2k + 1) with the same single rounding.
+	 */
+	private ExpressionTreeNode specializeWrap(ExpressionTreeNode node, ExpressionTreeNode argument) {
+		ColorInterval range = getRange(argument);
+		double[] offsets = new double[3];
+		Interval[] channels = { range.getRed(), range.getGreen(), range.getBlue() };
+		for (int i = 0; i < channels.length; i++) {
+			Interval channel = channels[i];
+			if (!channel.isFinite()) {
+				return node;
+			}
+			double low = channel.getMin() + 3;
+			double high = channel.getMax() + 3;
+			double period = Math.floor(low / 2);
+			if (low < 0 || period != Math.floor(high / 2)) {
+				return node;
+			}
+			offsets[i] = 2 * period + 1;
+		}
+		return new Subtraction(new Addition(argument, new RGBColor(3, 3, 3)),
+				new RGBColor(offsets[0], offsets[1], offsets[2]));
+	}
+
+	/**
+	 * a % b is a when every |a| is smaller than every |b|, and b can be left
+	 * out if it has no side effects
+	 */
+	private ExpressionTreeNode specializeModulo(ExpressionTreeNode node, ExpressionTreeNode dividend,
+			ExpressionTreeNode divisor) {
+		if (!isPure(divisor)) {
+			return node;
+		}
+		ColorInterval dividends = getRange(dividend);
+		ColorInterval divisors = getRange(divisor);
+		if (smaller(dividends.getRed(), divisors.getRed()) && smaller(dividends.getGreen(), divisors.getGreen())
+				&& smaller(dividends.getBlue(), divisors.getBlue())) {
+			return dividend;
+		}
+		return node;
+	}
+
+	private static boolean smaller(Interval dividend, Interval divisor) {
+		if (!dividend.isFinite() || !divisor.isFinite()) {
+			return false;
+		}
+		double largestDividend = Math.max(-dividend.getMin(), dividend.getMax());
+		double smallestDivisor = divisor.getMin() > 0 ? divisor.getMin()
+				: divisor.getMax() < 0 ? -divisor.getMax() : 0;
+		return largestDividend < smallestDivisor;
+	}
+
+	private static boolean all(ColorInterval range, Predicate<Interval> test) {
+		return test.test(range.getRed()) && test.test(range.getGreen()) && test.test(range.getBlue());
+	}
+
+	/**
+	 * Returns true if the expression depends only on x and y, with no
+	 * randomness, assignments or variables, so leaving it out changes nothing
+	 */
+	private static boolean isPure(ExpressionTreeNode node) {
+		Class<?> type = node.getClass();
+		if (type == X.class || type == Y.class || type == Constant.class || type == RGBColor.class) {
+			return true;
+		} else if (!ExpressionOptimizer.PURE.contains(type)) {
+			return false;
+		}
+		for (ExpressionTreeNode child : node.getChildren()) {
+			if (!isPure(child)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,136 @@
+package picasso.parser;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import picasso.parser.language.CoordinateTable;
+import picasso.parser.language.ExpressionDag;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.SharedExpression;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Finds the subexpressions that depend on only one coordinate, such as cos(x),
+ * abs(y) or the arguments of perlinBW(clamp(y), wrap(x)), and replaces them by
+ * CoordinateTables of their values at each column or row of the image. They
+ * then cost O(N) evaluations for an N by N image rather than O(N * N).
+ *
+ * @author Mark Holden
+ */
+public class SeparableSubexpressions {
+
+	/**
+	 * Which coordinates the value of a subexpression depends on. Random
+	 * subexpressions and those with side effects count as depending on both,
+	 * since they must be evaluated at every point.
+	 */
+	public enum Dependency {
+		// in this order, the ordinal has a bit for x and a bit for y
+		CONSTANT, X, Y, XY;
+
+		/**
+		 * Returns the dependency of an expression computed from expressions
+		 * with this dependency and the other one
+		 */
+		public Dependency and(Dependency other) {
+			return values()[ordinal() | other.ordinal()];
+		}
+	}
+
+	private Map<ExpressionTreeNode, Dependency> myDependencies;
+	private Map<ExpressionTreeNode, ExpressionTreeNode> myTabulated;
+	private int myTableCount;
+
+	public SeparableSubexpressions() {
+		myDependencies = new IdentityHashMap<>();
+		myTabulated = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Returns which coordinates the expression depends on
+	 *
+	 * @param node the expression to classify
+	 * @return the dependency of the expression
+	 */
+	public Dependency classify(ExpressionTreeNode node) {
+		Dependency known = myDependencies.get(node);
+		if (known != null) {
+			return known;
+		}
+		Class<?> type = node.getClass();
+		List<ExpressionTreeNode> children = node.getChildren();
+		Dependency dependency;
+		if (type == Constant.class || type == RGBColor.class) {
+			dependency = Dependency.CONSTANT;
+		} else if (type == X.class) {
+			dependency = Dependency.X;
+		} else if (type == Y.class) {
+			dependency = Dependency.Y;
+		} else if (type == CoordinateTable.class) {
+			dependency = ((CoordinateTable) node).isAlongX() ? Dependency.X : Dependency.Y;
+		} else if (type == ImageWrap.class || type == ImageClip.class) {
+			// the image is looked up where the coordinate expressions say
+			dependency = classify(children.get(1)).and(classify(children.get(2)));
+		} else if (ExpressionOptimizer.PURE.contains(type) || type == SharedExpression.class
+				|| type == ExpressionDag.class) {
+			dependency = Dependency.CONSTANT;
+			for (ExpressionTreeNode child : children) {
+				dependency = dependency.and(classify(child));
+			}
+		} else {
+			// images at x and y, random numbers, assignments and anything unknown
+			dependency = Dependency.XY;
+		}
+		myDependencies.put(node, dependency);
+		return dependency;
+	}
+
+	/**
+	 * Returns an expression that computes the same colors as expr, with the
+	 * largest subexpressions that depend on only x or only y looked up in
+	 * tables of their values at the given coordinates
+	 *
+	 * @param expr the expression, which is not changed
+	 * @param xs   the x coordinate of each column of the image
+	 * @param ys   the y coordinate of each row of the image
+	 * @return the expression with tables, which may be expr itself
+	 */
+	public ExpressionTreeNode tabulate(ExpressionTreeNode expr, double[] xs, double[] ys) {
+		if (expr == null) {
+			return null;
+		}
+		ExpressionTreeNode done = myTabulated.get(expr);
+		if (done != null) {
+			return done;
+		}
+		Dependency dependency = classify(expr);
+		List<ExpressionTreeNode> children = expr.getChildren();
+		ExpressionTreeNode result = expr;
+		if ((dependency == Dependency.X || dependency == Dependency.Y) && !children.isEmpty()) {
+			result = new CoordinateTable(expr, dependency == Dependency.X, dependency == Dependency.X ? xs : ys);
+			myTableCount++;
+		} else if (dependency == Dependency.XY) {
+			List<ExpressionTreeNode> tabulated = new ArrayList<>(children.size());
+			boolean changed = false;
+			for (ExpressionTreeNode child : children) {
+				ExpressionTreeNode table = tabulate(child, xs, ys);
+				tabulated.add(table);
+				changed |= table != child;
+			}
+			if (changed) {
+				result = ExpressionOptimizer.rebuild(expr, tabulated);
+			}
+		}
+		myTabulated.put(expr, result);
+		return result;
+	}
+
+	/**
+	 * Returns how many tables have been made
+	 */
+	public int getTableCount() {
+		return myTableCount;
+	}
+}
@@ -0,0 +1,167 @@
+package picasso.parser;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import picasso.parser.language.ExpressionDag;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.SharedExpression;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Proves that subexpressions are even or odd in x or in y, so that an image
+ * of them is the mirror image of itself. cos(abs(y) - x) is even in y, since
+ * abs(y) has the same value at y and -y, and x * x and cos(x) are even in x.
+ *
+ * The proofs hold for the floating-point values, not just the real numbers
+ * they stand for: negating the operands of an addition, multiplication,
+ * division or remainder negates or keeps the rounded result exactly, and the
+ * trigonometric functions give exactly the mirrored value for mirrored
+ * arguments. Values are compared with ==, so 0 and -0 count as the same.
+ *
+ * @author Mark Holden
+ */
+public class SymmetryAnalysis {
+
+	/**
+	 * How a subexpression changes when a coordinate is negated
+	 */
+	public enum Parity {
+		// f(-c) == f(c)
+		EVEN,
+		// f(-c) == -f(c) in every channel
+		ODD,
+		// nothing is known
+		NONE;
+
+		/**
+		 * Returns the parity of the product or quotient of subexpressions with
+		 * this parity and the other one
+		 */
+		Parity times(Parity other) {
+			if (this == NONE || other == NONE) {
+				return NONE;
+			}
+			return this == other ? EVEN : ODD;
+		}
+
+		/**
+		 * Returns the parity of the sum or difference of subexpressions with
+		 * this parity and the other one
+		 */
+		Parity plus(Parity other) {
+			return this == other ? this : NONE;
+		}
+	}
+
+	/**
+	 * Functions that are odd, so they keep the parity of their argument
+	 */
+	private static final Set<Class<?>> ODD_FUNCTIONS = Set.of(Atan.class, Clamp.class, Not.class, Sine.class,
+			Tan.class);
+
+	/**
+	 * Functions that are even, so any symmetric argument makes them even
+	 */
+	private static final Set<Class<?>> EVEN_FUNCTIONS = Set.of(Abs.class, Cos.class, Log.class);
+
+	/**
+	 * Nodes whose value is the value of their last child
+	 */
+	private static final Set<Class<?>> PASS_THROUGH = Set.of(Word.class, SharedExpression.class,
+			ExpressionDag.class);
+
+	private Map<ExpressionTreeNode, Parity> myParityInX;
+	private Map<ExpressionTreeNode, Parity> myParityInY;
+
+	public SymmetryAnalysis() {
+		myParityInX = new IdentityHashMap<>();
+		myParityInY = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Returns how the subexpression changes when x is negated
+	 */
+	public Parity getParityInX(ExpressionTreeNode node) {
+		return parity(node, true);
+	}
+
+	/**
+	 * Returns how the subexpression changes when y is negated
+	 */
+	public Parity getParityInY(ExpressionTreeNode node) {
+		return parity(node, false);
+	}
+
+	private Parity parity(ExpressionTreeNode node, boolean inX) {
+		Map<ExpressionTreeNode, Parity> known = inX ? myParityInX : myParityInY;
+		Parity parity = known.get(node);
+		if (parity != null) {
+			return parity;
+		}
+		Class<?> type = node.getClass();
+		List<ExpressionTreeNode> children = node.getChildren();
+		if (type == X.class) {
+			parity = inX ? Parity.ODD : Parity.EVEN;
+		} else if (type == Y.class) {
+			parity = inX ? Parity.EVEN : Parity.ODD;
+		} else if (type == Constant.class || type == RGBColor.class) {
+			parity = Parity.EVEN;
+		} else if (type == Addition.class || type == Subtraction.class) {
+			parity = parity(children.get(0), inX).plus(parity(children.get(1), inX));
+		} else if (type == Multiplication.class || type == Division.class) {
+			parity = parity(children.get(0), inX).times(parity(children.get(1), inX));
+		} else if (type == Modulo.class) {
+			// the remainder has the sign of the dividend, whatever the divisor's
+			parity = parity(children.get(1), inX) == Parity.NONE ? Parity.NONE : parity(children.get(0), inX);
+		} else if (ODD_FUNCTIONS.contains(type)) {
+			parity = parity(children.get(0), inX);
+		} else if (EVEN_FUNCTIONS.contains(type)) {
+			// log also moves a zero coordinate, which is its own mirror image
+			parity = parity(children.get(0), inX) == Parity.NONE ? Parity.NONE : Parity.EVEN;
+		} else if (PASS_THROUGH.contains(type)) {
+			parity = parity(children.get(children.size() - 1), inX);
+		} else if (type == Mandelbrot.class || type == Julia.class) {
+			parity = conjugateParity(children, inX);
+		} else if (type == ImageWrap.class || type == ImageClip.class) {
+			// the image is looked up where the coordinate expressions say
+			parity = allEven(children.subList(1, 3), inX);
+		} else if (ExpressionOptimizer.PURE.contains(type)) {
+			// any function of arguments that do not change does not change
+			parity = allEven(children, inX);
+		} else {
+			// images at x and y, random numbers, assignments and anything unknown
+			parity = Parity.NONE;
+		}
+		known.put(node, parity);
+		return parity;
+	}
+
+	/**
+	 * The orbit of the conjugates of an escape-time fractal's arguments is the
+	 * conjugate of their orbit, which escapes or cycles at the same iteration,
+	 * so the fractal is even if its real parts are even and its imaginary parts
+	 * are all even or all odd
+	 */
+	private Parity conjugateParity(List<ExpressionTreeNode> children, boolean inX) {
+		Parity imaginary = parity(children.get(1), inX);
+		for (int i = 0; i < children.size(); i++) {
+			Parity parity = parity(children.get(i), inX);
+			if (i % 2 == 0 ? parity != Parity.EVEN : parity != imaginary) {
+				return Parity.NONE;
+			}
+		}
+		return imaginary == Parity.NONE ? Parity.NONE : Parity.EVEN;
+	}
+
+	private Parity allEven(List<ExpressionTreeNode> children, boolean inX) {
+		for (ExpressionTreeNode child : children) {
+			if (parity(child, inX) != Parity.EVEN) {
+				return Parity.NONE;
+			}
+		}
+		return Parity.EVEN;
+	}
+}
@@ -0,0 +1,18 @@
+package picasso.parser;
+
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.Turbulence;
+
+/**
+ * Handles parsing of the turbulence function
+ *
+ * @author Mark Holden
+ */
+public class TurbulenceAnalyzer extends FractalNoiseAnalyzer {
+
+	@Override
+	protected ExpressionTreeNode create(ExpressionTreeNode x, ExpressionTreeNode y, int octaves) {
+		return new Turbulence(x, y, octaves);
+	}
+
+}
@@ -0,0 +1,125 @@
+package picasso.parser.language;
+
+import java.util.Arrays;
+import java.util.List;
+
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * A chain of affine color transforms, such as rgbToYCrCb(!(a * [0.5, 1, 1])
+ * + 0.25), as a single node. Each output channel is a weighted sum of the
+ * argument's channels plus an offset, given by a row of a 3x4 matrix, so
+ * evaluating it is one small matrix multiply per pixel. The results match the
+ * chain up to rounding.
+ *
+ * @author Mark Holden
+ */
+public class AffineColorTransform extends ExpressionTreeNode {
+
+	private ExpressionTreeNode myArgument;
+	private double[][] myMatrix;
+
+	/**
+	 * Create a transform of the argument
+	 *
+	 * @param argument the color to transform
+	 * @param matrix   three rows of red, green and blue weights and an offset
+	 */
+	public AffineColorTransform(ExpressionTreeNode argument, double[][] matrix) {
+		myArgument = argument;
+		myMatrix = new double[3][];
+		for (int row = 0; row < 3; row++) {
+			myMatrix[row] = Arrays.copyOf(matrix[row], 4);
+		}
+	}
+
+	/**
+	 * Returns a copy of the 3x4 matrix
+	 */
+	public double[][] getMatrix() {
+		double[][] matrix = new double[3][];
+		for (int row = 0; row < 3; row++) {
+			matrix[row] = myMatrix[row].clone();
+		}
+		return matrix;
+	}
+
+	/**
+	 * Returns the color that is transformed
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(myArgument);
+	}
+
+	@Override
+	public int getSlotCount() {
+		return myArgument.getSlotCount();
+	}
+
+	@Override
+	public RGBColor evaluate(double x, double y) {
+		RGBColor color = myArgument.evaluate(x, y);
+		double r = color.getRed();
+		double g = color.getGreen();
+		double b = color.getBlue();
+		double[] red = myMatrix[0];
+		double[] green = myMatrix[1];
+		double[] blue = myMatrix[2];
+		return new RGBColor(r * red[0] + g * red[1] + b * red[2] + red[3],
+				r * green[0] + g * green[1] + b * green[2] + green[3],
+				r * blue[0] + g * blue[1] + b * blue[2] + blue[3]);
+	}
+
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		myArgument.evaluate(x, y, slots, slot);
+		double r = slots[slot];
+		double g = slots[slot + 1];
+		double b = slots[slot + 2];
+		double[] red = myMatrix[0];
+		double[] green = myMatrix[1];
+		double[] blue = myMatrix[2];
+		slots[slot] = r * red[0] + g * red[1] + b * red[2] + red[3];
+		slots[slot + 1] = r * green[0] + g * green[1] + b * green[2] + green[3];
+		slots[slot + 2] = r * blue[0] + g * blue[1] + b * blue[2] + blue[3];
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		myArgument.evaluate(xs, ys, length, red, green, blue, buffers);
+		double rr = myMatrix[0][0], rg = myMatrix[0][1], rb = myMatrix[0][2], ro = myMatrix[0][3];
+		double gr = myMatrix[1][0], gg = myMatrix[1][1], gb = myMatrix[1][2], go = myMatrix[1][3];
+		double br = myMatrix[2][0], bg = myMatrix[2][1], bb = myMatrix[2][2], bo = myMatrix[2][3];
+		for (int i = 0; i < length; i++) {
+			double r = red[i];
+			double g = green[i];
+			double b = blue[i];
+			red[i] = r * rr + g * rg + b * rb + ro;
+			green[i] = r * gr + g * gg + b * gb + go;
+			blue[i] = r * br + g * bg + b * bb + bo;
+		}
+	}
+
+	/**
+	 * Bounds each channel with the same arithmetic in the same order as
+	 * evaluating.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		ColorInterval color = myArgument.bounds(x, y);
+		return new ColorInterval(row(color, myMatrix[0]), row(color, myMatrix[1]), row(color, myMatrix[2]));
+	}
+
+	private static Interval row(ColorInterval color, double[] weights) {
+		return color.getRed().multiply(Interval.point(weights[0]))
+				.add(color.getGreen().multiply(Interval.point(weights[1])))
+				.add(color.getBlue().multiply(Interval.point(weights[2]))).add(Interval.point(weights[3]));
+	}
+
+	@Override
+	public String toString() {
+		return "Affine " + Arrays.deepToString(myMatrix) + " (" + myArgument + ")";
+	}
+}
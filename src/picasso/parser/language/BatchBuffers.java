@@ -0,0 +1,142 @@
+package picasso.parser.language;
+
+import picasso.model.CoherentNoise;
+
+/**
+ * A stack of scratch planes used while evaluating a batch of points. A node
+ * that needs room for the results of its children acquires planes, evaluates
+ * into them and releases them again before it returns, so a tree of any shape
+ * only ever needs as many planes as its deepest path. Planes are kept between
+ * batches, so once the stack has grown a render allocates nothing.
+ *
+ * The buffers also keep the values of the shared subexpressions of an
+ * ExpressionDag for the batch being evaluated, so that each is computed once
+ * per batch however many nodes use it, and a noise sampler that remembers the
+ * lattice cell of the last point, which noise nodes share since the points of
+ * a row mostly stay in one cell for many pixels.
+ *
+ * A BatchBuffers must only be used by one thread at a time.
+ *
+ * @author Mark Holden
+ */
+public class BatchBuffers {
+
+	private double[][] myPlanes;
+	private int myTop;
+	private int myCapacity;
+	private double[][][] myShared;
+	private int[] mySharedBatches;
+	private int myBatch;
+	private CoherentNoise myNoise;
+
+	/**
+	 * Create buffers for batches of up to the given number of points
+	 *
+	 * @param capacity the largest batch that will be evaluated
+	 */
+	public BatchBuffers(int capacity) {
+		myCapacity = capacity;
+		myPlanes = new double[16][];
+		myTop = 0;
+		myShared = new double[0][][];
+		mySharedBatches = new int[0];
+	}
+
+	/**
+	 * Returns the largest batch these buffers can hold
+	 */
+	public int getCapacity() {
+		return myCapacity;
+	}
+
+	/**
+	 * Returns the noise sampler of these buffers
+	 */
+	public CoherentNoise getNoise() {
+		if (myNoise == null) {
+			myNoise = new CoherentNoise();
+		}
+		return myNoise;
+	}
+
+	/**
+	 * Returns an unused plane of at least getCapacity() values. Its contents
+	 * are whatever the last user left in it.
+	 *
+	 * @return a scratch plane
+	 */
+	public double[] acquire() {
+		if (myTop == myPlanes.length) {
+			double[][] grown = new double[myPlanes.length * 2][];
+			System.arraycopy(myPlanes, 0, grown, 0, myPlanes.length);
+			myPlanes = grown;
+		}
+		if (myPlanes[myTop] == null) {
+			myPlanes[myTop] = new double[myCapacity];
+		}
+		return myPlanes[myTop++];
+	}
+
+	/**
+	 * Give back the most recently acquired planes
+	 *
+	 * @param count the number of planes to give back
+	 */
+	public void release(int count) {
+		if (count > myTop) {
+			throw new IllegalStateException("Released more planes than were acquired");
+		}
+		myTop -= count;
+	}
+
+	/**
+	 * Start a new batch of an expression with the given number of shared
+	 * subexpressions, forgetting the values kept for the previous batch
+	 *
+	 * @param count the number of shared subexpressions
+	 */
+	public void startShared(int count) {
+		if (count > myShared.length) {
+			double[][][] grown = new double[count][][];
+			System.arraycopy(myShared, 0, grown, 0, myShared.length);
+			myShared = grown;
+			int[] batches = new int[count];
+			System.arraycopy(mySharedBatches, 0, batches, 0, mySharedBatches.length);
+			mySharedBatches = batches;
+		}
+		myBatch++;
+	}
+
+	/**
+	 * Returns true if the value of the shared subexpression with the given index
+	 * has been kept for the current batch
+	 */
+	public boolean hasShared(int index) {
+		return index < mySharedBatches.length && mySharedBatches[index] == myBatch;
+	}
+
+	/**
+	 * Returns the red, green and blue planes that keep the value of the shared
+	 * subexpression with the given index, and records that they hold its value
+	 * for the current batch. The index must be less than the count last given
+	 * to startShared().
+	 *
+	 * @param index the index of the shared subexpression
+	 * @return three planes of getCapacity() values
+	 */
+	public double[][] keepShared(int index) {
+		if (myShared[index] == null) {
+			myShared[index] = new double[3][myCapacity];
+		}
+		mySharedBatches[index] = myBatch;
+		return myShared[index];
+	}
+
+	/**
+	 * Returns the planes holding the value of the shared subexpression with the
+	 * given index, as kept by keepShared()
+	 */
+	public double[][] getShared(int index) {
+		return myShared[index];
+	}
+}
@@ -0,0 +1,99 @@
+package picasso.parser.language;
+
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * Bounds on the red, green and blue channels of a subexpression over a
+ * rectangle of x and y values.
+ *
+ * @author Mark Holden
+ */
+public final class ColorInterval {
+
+	/**
+	 * Bounds that could hold any color
+	 */
+	public static final ColorInterval UNKNOWN = new ColorInterval(Interval.UNKNOWN, Interval.UNKNOWN,
+			Interval.UNKNOWN);
+
+	private final Interval myRed;
+	private final Interval myGreen;
+	private final Interval myBlue;
+
+	public ColorInterval(Interval red, Interval green, Interval blue) {
+		myRed = red;
+		myGreen = green;
+		myBlue = blue;
+	}
+
+	/**
+	 * Returns bounds with the same range for every channel
+	 */
+	public static ColorInterval grey(Interval value) {
+		return new ColorInterval(value, value, value);
+	}
+
+	/**
+	 * Returns the bounds of exactly one color
+	 */
+	public static ColorInterval point(double red, double green, double blue) {
+		return new ColorInterval(Interval.point(red), Interval.point(green), Interval.point(blue));
+	}
+
+	public Interval getRed() {
+		return myRed;
+	}
+
+	public Interval getGreen() {
+		return myGreen;
+	}
+
+	public Interval getBlue() {
+		return myBlue;
+	}
+
+	/**
+	 * Returns the bounds of applying a function to each channel
+	 */
+	public ColorInterval map(UnaryOperator<Interval> function) {
+		return new ColorInterval(function.apply(myRed), function.apply(myGreen), function.apply(myBlue));
+	}
+
+	/**
+	 * Returns the bounds of applying a function to the matching channels of
+	 * these bounds and the other ones
+	 */
+	public ColorInterval combine(ColorInterval other, BinaryOperator<Interval> function) {
+		return new ColorInterval(function.apply(myRed, other.myRed), function.apply(myGreen, other.myGreen),
+				function.apply(myBlue, other.myBlue));
+	}
+
+	/**
+	 * Returns true if every color within the bounds is drawn as the same pixel,
+	 * once its channels are clamped and scaled to 8 bits
+	 */
+	public boolean isSingleColor() {
+		if (myRed.mayBeNaN() || myGreen.mayBeNaN() || myBlue.mayBeNaN()) {
+			return false;
+		}
+		// clamping and scaling never reverse the order of two channels
+		return RGBColor.toRGB(myRed.getMin(), myGreen.getMin(), myBlue.getMin()) == RGBColor
+				.toRGB(myRed.getMax(), myGreen.getMax(), myBlue.getMax());
+	}
+
+	/**
+	 * Returns the packed RGB value of the smallest color within the bounds,
+	 * which is the pixel of every color within them if isSingleColor()
+	 */
+	public int toRGB() {
+		return RGBColor.toRGB(myRed.getMin(), myGreen.getMin(), myBlue.getMin());
+	}
+
+	@Override
+	public String toString() {
+		return "Color bounds: " + myRed + " " + myGreen + " " + myBlue;
+	}
+}
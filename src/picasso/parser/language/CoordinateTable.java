@@ -0,0 +1,155 @@
+package picasso.parser.language;
+
+import java.util.List;
+
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * The values of a subexpression that depends only on x, or only on y, at
+ * every column or row of the image being rendered. The table is filled once,
+ * so an image of N by N pixels evaluates the subexpression N times instead of
+ * N * N times.
+ *
+ * Looking up a coordinate that is not one of the table's, such as the x that
+ * log moves off zero, evaluates the subexpression instead, so the table never
+ * changes a color.
+ *
+ * @author Mark Holden
+ */
+public class CoordinateTable extends ExpressionTreeNode {
+
+	private ExpressionTreeNode myExpression;
+	private boolean myAlongX;
+	private double[] myCoordinates;
+	private double myFirst;
+	private double myInverseStep;
+	private double[] myRed;
+	private double[] myGreen;
+	private double[] myBlue;
+
+	/**
+	 * Create a table of the expression's values
+	 *
+	 * @param expression  an expression that depends on only one coordinate
+	 * @param alongX      true if the expression depends on x, false if on y
+	 * @param coordinates the evenly spaced, increasing values of that
+	 *                    coordinate to tabulate, such as the domain coordinates
+	 *                    of the columns of the image
+	 */
+	public CoordinateTable(ExpressionTreeNode expression, boolean alongX, double[] coordinates) {
+		myExpression = expression;
+		myAlongX = alongX;
+		myCoordinates = coordinates.clone();
+		int count = myCoordinates.length;
+		myFirst = count == 0 ? 0 : myCoordinates[0];
+		myInverseStep = count < 2 ? 0 : (count - 1) / (myCoordinates[count - 1] - myFirst);
+		myRed = new double[count];
+		myGreen = new double[count];
+		myBlue = new double[count];
+		for (int i = 0; i < count; i++) {
+			// the other coordinate does not matter
+			RGBColor value = alongX ? expression.evaluate(myCoordinates[i], 0)
+					: expression.evaluate(0, myCoordinates[i]);
+			myRed[i] = value.getRed();
+			myGreen[i] = value.getGreen();
+			myBlue[i] = value.getBlue();
+		}
+	}
+
+	/**
+	 * Returns true if the table is indexed by x, false if by y
+	 */
+	public boolean isAlongX() {
+		return myAlongX;
+	}
+
+	/**
+	 * Returns the number of entries in the table
+	 */
+	public int size() {
+		return myCoordinates.length;
+	}
+
+	/**
+	 * Returns the tabulated expression
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(myExpression);
+	}
+
+	/**
+	 * Returns the entry for the given coordinate, or -1 if the coordinate is not
+	 * in the table
+	 */
+	private int indexOf(double coordinate) {
+		double position = (coordinate - myFirst) * myInverseStep;
+		if (!(position > -0.5 && position < myCoordinates.length - 0.5)) {
+			return -1;
+		}
+		int index = (int) (position + 0.5);
+		return myCoordinates[index] == coordinate ? index : -1;
+	}
+
+	@Override
+	public RGBColor evaluate(double x, double y) {
+		int index = indexOf(myAlongX ? x : y);
+		if (index < 0) {
+			return myExpression.evaluate(x, y);
+		}
+		return new RGBColor(myRed[index], myGreen[index], myBlue[index]);
+	}
+
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		int index = indexOf(myAlongX ? x : y);
+		if (index < 0) {
+			myExpression.evaluate(x, y, slots, slot);
+			return;
+		}
+		slots[slot] = myRed[index];
+		slots[slot + 1] = myGreen[index];
+		slots[slot + 2] = myBlue[index];
+	}
+
+	/**
+	 * Bounds the tabulated expression, which also covers the coordinates
+	 * that are not in the table.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return myExpression.bounds(x, y);
+	}
+
+	@Override
+	public int getSlotCount() {
+		return myExpression.getSlotCount();
+	}
+
+	/**
+	 * Looks up each point of the batch
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		double[] coordinates = myAlongX ? xs : ys;
+		for (int i = 0; i < length; i++) {
+			int index = indexOf(coordinates[i]);
+			if (index < 0) {
+				RGBColor value = myExpression.evaluate(xs[i], ys[i]);
+				red[i] = value.getRed();
+				green[i] = value.getGreen();
+				blue[i] = value.getBlue();
+			} else {
+				red[i] = myRed[index];
+				green[i] = myGreen[index];
+				blue[i] = myBlue[index];
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Table of " + (myAlongX ? "x" : "y") + " [" + myExpression + "]";
+	}
+}
@@ -0,0 +1,84 @@
+package picasso.parser.language;
+
+import java.util.List;
+
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * The root of an expression in which subexpressions that appear more than
+ * once are SharedExpressions, so the expression is a directed acyclic graph
+ * rather than a tree. Built by picasso.parser.CommonSubexpressions.
+ *
+ * @author Mark Holden
+ */
+public class ExpressionDag extends ExpressionTreeNode {
+
+	private ExpressionTreeNode myRoot;
+	private int mySharedCount;
+
+	/**
+	 * Create the root of a DAG
+	 *
+	 * @param root        the expression
+	 * @param sharedCount the number of SharedExpressions in the expression,
+	 *                    whose indices run from 0 to sharedCount - 1
+	 */
+	public ExpressionDag(ExpressionTreeNode root, int sharedCount) {
+		myRoot = root;
+		mySharedCount = sharedCount;
+	}
+
+	/**
+	 * Returns the number of shared subexpressions
+	 */
+	public int getSharedCount() {
+		return mySharedCount;
+	}
+
+	/**
+	 * Returns the expression
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(myRoot);
+	}
+
+	@Override
+	public RGBColor evaluate(double x, double y) {
+		return myRoot.evaluate(x, y);
+	}
+
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		myRoot.evaluate(x, y, slots, slot);
+	}
+
+	/**
+	 * Bounds the root of the DAG.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return myRoot.bounds(x, y);
+	}
+
+	@Override
+	public int getSlotCount() {
+		return myRoot.getSlotCount();
+	}
+
+	/**
+	 * Evaluates the expression for a batch of points, computing each shared
+	 * subexpression once
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		buffers.startShared(mySharedCount);
+		myRoot.evaluate(xs, ys, length, red, green, blue, buffers);
+	}
+
+	@Override
+	public String toString() {
+		return "DAG [" + myRoot + "]";
+	}
+}
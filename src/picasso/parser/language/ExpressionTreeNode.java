@@ -1,7 +1,6 @@
 package picasso.parser.language;
 
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.List;
 
 import picasso.parser.language.expressions.RGBColor;
 
@@ -24,8 +23,90 @@ public abstract class ExpressionTreeNode implements EvaluatableExpression {
 	 *         y
 	 */
 	public abstract RGBColor evaluate(double x, double y);
-	
-	// TODO: Not being utilized yet. Why would it be useful?
-	// keep a mapping of the element to its value.
-	static protected Map<ExpressionTreeNode, Object> gelementsToValue = new TreeMap<ExpressionTreeNode, Object>();	
+
+	/**
+	 * Returns the expressions this expression is built from, in the order they
+	 * appear in the source text. Leaves have no children.
+	 * 
+	 * @return an unmodifiable list of the children
+	 */
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of();
+	}
+
+	/**
+	 * Evaluate this expression at the given x and y without creating any
+	 * objects. The red, green and blue results are stored in slots[slot],
+	 * slots[slot + 1] and slots[slot + 2]. The node may use the slots after
+	 * those for the results of its children, up to slot + getSlotCount(), so the
+	 * caller owns all the storage and a steady-state render allocates nothing.
+	 * 
+	 * This default evaluates with the allocating evaluate; nodes override it.
+	 * 
+	 * @param x     the value of x
+	 * @param y     the value of y
+	 * @param slots caller-owned storage for results
+	 * @param slot  where the result of this node goes
+	 */
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		RGBColor result = evaluate(x, y);
+		slots[slot] = result.getRed();
+		slots[slot + 1] = result.getGreen();
+		slots[slot + 2] = result.getBlue();
+	}
+
+	/**
+	 * Returns how many slots evaluating this expression into slots uses,
+	 * counting the three that receive the result.
+	 * 
+	 * @return the number of slots needed
+	 */
+	public int getSlotCount() {
+		return 3;
+	}
+
+	/**
+	 * Evaluate this expression for a run of points at once, such as a scanline
+	 * or a row of a tile, storing the three channels of point i in red[i],
+	 * green[i] and blue[i]. The results are exactly those of calling
+	 * evaluate(xs[i], ys[i]) for each point.
+	 * 
+	 * The output planes must not be the same arrays as xs or ys. This default
+	 * evaluates the points one at a time; nodes override it to work on whole
+	 * planes.
+	 * 
+	 * @param xs      the x value of each point
+	 * @param ys      the y value of each point
+	 * @param length  the number of points
+	 * @param red     receives the red channel of each point
+	 * @param green   receives the green channel of each point
+	 * @param blue    receives the blue channel of each point
+	 * @param buffers scratch planes for the results of children
+	 */
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		for (int i = 0; i < length; i++) {
+			RGBColor result = evaluate(xs[i], ys[i]);
+			red[i] = result.getRed();
+			green[i] = result.getGreen();
+			blue[i] = result.getBlue();
+		}
+	}
+
+	/**
+	 * Returns bounds on each channel of this expression for every x in the x
+	 * range and every y in the y range. The bounds may be wider than the colors
+	 * the expression actually takes, but never narrower, so when they all
+	 * become the same pixel the whole region may be drawn without evaluating
+	 * it. Computing the bounds has the same side effects as evaluating.
+	 * 
+	 * This default knows nothing about the expression; nodes override it.
+	 * 
+	 * @param x the range of x values
+	 * @param y the range of y values
+	 * @return bounds on the expression's color over the rectangle
+	 */
+	public ColorInterval bounds(Interval x, Interval y) {
+		return ColorInterval.UNKNOWN;
+	}
 }
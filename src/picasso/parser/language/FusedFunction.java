@@ -0,0 +1,205 @@
+package picasso.parser.language;
+
+import java.util.List;
+
+import picasso.parser.language.expressions.Clamp;
+import picasso.parser.language.expressions.Log;
+import picasso.parser.language.expressions.RGBColor;
+import picasso.parser.language.expressions.Wrap;
+
+/**
+ * A chain of functions applied to each channel in turn, such as
+ * sin(log(atan(a))), as a single node. Evaluating it evaluates a once and then
+ * runs each channel through the whole chain, instead of passing the color
+ * from node to node with a virtual call and a new RGBColor for every link.
+ * The results are exactly those of the chain.
+ *
+ * @author Mark Holden
+ */
+public class FusedFunction extends ExpressionTreeNode {
+	public static final int SIN = 0;
+	public static final int COS = 1;
+	public static final int TAN = 2;
+	public static final int ATAN = 3;
+	public static final int EXP = 4;
+	public static final int LOG = 5;
+	public static final int FLOOR = 6;
+	public static final int CEIL = 7;
+	public static final int ABS = 8;
+	public static final int CLAMP = 9;
+	public static final int WRAP = 10;
+	public static final int NEGATE = 11;
+
+	private ExpressionTreeNode myChain;
+	private ExpressionTreeNode myArgument;
+	private int[] myStages;
+	private boolean myMovesZero;
+
+	/**
+	 * Create a fused chain
+	 *
+	 * @param chain    the outermost function of the chain, whose bounds are
+	 *                 those of this node
+	 * @param argument the argument of the innermost function
+	 * @param stages   the functions, innermost first
+	 */
+	public FusedFunction(ExpressionTreeNode chain, ExpressionTreeNode argument, int[] stages) {
+		myChain = chain;
+		myArgument = argument;
+		myStages = stages.clone();
+		for (int stage : myStages) {
+			// log moves zero coordinates for everything inside it
+			myMovesZero |= stage == LOG;
+		}
+	}
+
+	/**
+	 * Returns the functions of the chain, innermost first
+	 */
+	public int[] getStages() {
+		return myStages.clone();
+	}
+
+	/**
+	 * Returns the argument of the innermost function
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(myArgument);
+	}
+
+	@Override
+	public int getSlotCount() {
+		return myArgument.getSlotCount();
+	}
+
+	/**
+	 * Runs values[from] to values[to - 1] through one function of the chain. Each
+	 * function gets its own loop, so the choice of function is made once per
+	 * stage rather than once per value.
+	 */
+	private static void apply(int stage, double[] values, int from, int to) {
+		switch (stage) {
+		case SIN:
+			for (int i = from; i < to; i++) {
+				values[i] = Math.sin(values[i]);
+			}
+			break;
+		case COS:
+			for (int i = from; i < to; i++) {
+				values[i] = Math.cos(values[i]);
+			}
+			break;
+		case TAN:
+			for (int i = from; i < to; i++) {
+				values[i] = Math.tan(values[i]);
+			}
+			break;
+		case ATAN:
+			for (int i = from; i < to; i++) {
+				values[i] = Math.atan(values[i]);
+			}
+			break;
+		case EXP:
+			for (int i = from; i < to; i++) {
+				values[i] = Math.exp(values[i]);
+			}
+			break;
+		case LOG:
+			for (int i = from; i < to; i++) {
+				values[i] = Log.log(values[i]);
+			}
+			break;
+		case FLOOR:
+			for (int i = from; i < to; i++) {
+				values[i] = Math.floor(values[i]);
+			}
+			break;
+		case CEIL:
+			for (int i = from; i < to; i++) {
+				values[i] = Math.ceil(values[i]);
+			}
+			break;
+		case ABS:
+			for (int i = from; i < to; i++) {
+				values[i] = Math.abs(values[i]);
+			}
+			break;
+		case CLAMP:
+			for (int i = from; i < to; i++) {
+				values[i] = Clamp.clamp(values[i]);
+			}
+			break;
+		case WRAP:
+			for (int i = from; i < to; i++) {
+				values[i] = Wrap.wrap(values[i]);
+			}
+			break;
+		default:
+			for (int i = from; i < to; i++) {
+				values[i] = -values[i];
+			}
+		}
+	}
+
+	@Override
+	public RGBColor evaluate(double x, double y) {
+		if (myMovesZero) {
+			x = Log.avoidZero(x);
+			y = Log.avoidZero(y);
+		}
+		RGBColor result = myArgument.evaluate(x, y);
+		double[] channels = { result.getRed(), result.getGreen(), result.getBlue() };
+		for (int stage : myStages) {
+			apply(stage, channels, 0, 3);
+		}
+		return new RGBColor(channels[0], channels[1], channels[2]);
+	}
+
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		if (myMovesZero) {
+			x = Log.avoidZero(x);
+			y = Log.avoidZero(y);
+		}
+		myArgument.evaluate(x, y, slots, slot);
+		for (int stage : myStages) {
+			apply(stage, slots, slot, slot + 3);
+		}
+	}
+
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		if (myMovesZero) {
+			double[] safeXs = buffers.acquire();
+			double[] safeYs = buffers.acquire();
+			for (int i = 0; i < length; i++) {
+				safeXs[i] = Log.avoidZero(xs[i]);
+				safeYs[i] = Log.avoidZero(ys[i]);
+			}
+			myArgument.evaluate(safeXs, safeYs, length, red, green, blue, buffers);
+			buffers.release(2);
+		} else {
+			myArgument.evaluate(xs, ys, length, red, green, blue, buffers);
+		}
+		for (int stage : myStages) {
+			apply(stage, red, 0, length);
+			apply(stage, green, 0, length);
+			apply(stage, blue, 0, length);
+		}
+	}
+
+	/**
+	 * Bounds the chain the node was made from.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return myChain.bounds(x, y);
+	}
+
+	@Override
+	public String toString() {
+		return "Fused [" + myChain + "]";
+	}
+}
@@ -0,0 +1,162 @@
+package picasso.parser.language;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A closed range of doubles that bounds one channel of a subexpression over a
+ * region of the image, possibly with infinite ends, together with whether the
+ * channel may also be NaN.
+ *
+ * The arithmetic here evaluates exactly the floating-point operations the
+ * nodes perform at the ends of the ranges. Rounding to nearest never reverses
+ * the order of two results, so the results at the ends bound the result at
+ * every point between them, with no need to round outwards.
+ *
+ * @author Mark Holden
+ */
+public final class Interval {
+
+	/**
+	 * A range that could hold anything, including NaN
+	 */
+	public static final Interval UNKNOWN = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, true);
+
+	private final double myMin;
+	private final double myMax;
+	private final boolean myMayBeNaN;
+
+	private Interval(double min, double max, boolean mayBeNaN) {
+		myMin = min;
+		myMax = max;
+		myMayBeNaN = mayBeNaN;
+	}
+
+	/**
+	 * Returns the range from min to max, or UNKNOWN if either end is NaN
+	 *
+	 * @param min the smallest value
+	 * @param max the largest value, not less than min
+	 */
+	public static Interval of(double min, double max) {
+		if (Double.isNaN(min) || Double.isNaN(max)) {
+			return UNKNOWN;
+		}
+		return new Interval(min, max, false);
+	}
+
+	/**
+	 * Returns the smallest range holding all the values, or UNKNOWN if any is
+	 * NaN
+	 */
+	public static Interval spanning(double... values) {
+		double min = values[0];
+		double max = values[0];
+		for (double value : values) {
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		return of(min, max);
+	}
+
+	/**
+	 * Returns the range holding just the value, or UNKNOWN if it is NaN
+	 */
+	public static Interval point(double value) {
+		return of(value, value);
+	}
+
+	public double getMin() {
+		return myMin;
+	}
+
+	public double getMax() {
+		return myMax;
+	}
+
+	/**
+	 * Returns true if the channel may be NaN as well as in the range
+	 */
+	public boolean mayBeNaN() {
+		return myMayBeNaN;
+	}
+
+	/**
+	 * Returns true if both ends are finite and the channel cannot be NaN, so
+	 * arithmetic on the range cannot produce NaN
+	 */
+	public boolean isFinite() {
+		return !myMayBeNaN && Double.isFinite(myMin) && Double.isFinite(myMax);
+	}
+
+	/**
+	 * Returns true if the range holds a single value
+	 */
+	public boolean isPoint() {
+		return !myMayBeNaN && Double.compare(myMin, myMax) == 0;
+	}
+
+	/**
+	 * Returns true if the value lies in the range
+	 */
+	public boolean contains(double value) {
+		return myMin <= value && value <= myMax;
+	}
+
+	/**
+	 * Returns the smallest range holding both ranges
+	 */
+	public Interval union(Interval other) {
+		return new Interval(Math.min(myMin, other.myMin), Math.max(myMax, other.myMax),
+				myMayBeNaN || other.myMayBeNaN);
+	}
+
+	/**
+	 * Returns the range with NaN allowed if it is allowed in the other range
+	 */
+	public Interval withNaNOf(Interval other) {
+		if (!other.myMayBeNaN || myMayBeNaN) {
+			return this;
+		}
+		return new Interval(myMin, myMax, true);
+	}
+
+	/**
+	 * Returns the bounds of a non-decreasing function applied to every value in
+	 * the range. A NaN channel stays possible, since such functions return NaN
+	 * for NaN.
+	 */
+	public Interval map(DoubleUnaryOperator increasing) {
+		return of(increasing.applyAsDouble(myMin), increasing.applyAsDouble(myMax)).withNaNOf(this);
+	}
+
+	public Interval negate() {
+		return new Interval(-myMax, -myMin, myMayBeNaN);
+	}
+
+	public Interval add(Interval other) {
+		if (!isFinite() || !other.isFinite()) {
+			return UNKNOWN;
+		}
+		return of(myMin + other.myMin, myMax + other.myMax);
+	}
+
+	public Interval subtract(Interval other) {
+		if (!isFinite() || !other.isFinite()) {
+			return UNKNOWN;
+		}
+		return of(myMin - other.myMax, myMax - other.myMin);
+	}
+
+	public Interval multiply(Interval other) {
+		if (!isFinite() || !other.isFinite()) {
+			return UNKNOWN;
+		}
+		// the extremes of a product over a box are at its corners
+		return spanning(myMin * other.myMin, myMin * other.myMax, myMax * other.myMin, myMax * other.myMax);
+	}
+
+	@Override
+	public String toString() {
+		return "[" + myMin + ", " + myMax + "]" + (myMayBeNaN ? " or NaN" : "");
+	}
+}
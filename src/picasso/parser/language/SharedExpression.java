@@ -0,0 +1,100 @@
+package picasso.parser.language;
+
+import java.util.List;
+
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * A subexpression used by several nodes of an ExpressionDag. Every use sees
+ * the same coordinates, so its value only needs computing once per point:
+ * evaluating a batch keeps the value in the BatchBuffers and the other uses
+ * in the same batch copy it, and the engines that lower expressions compute
+ * it once into a register or local of its own.
+ *
+ * Evaluating one point at a time simply evaluates the subexpression, since
+ * an expression may be evaluated by several threads at once.
+ *
+ * @author Mark Holden
+ */
+public class SharedExpression extends ExpressionTreeNode {
+
+	private ExpressionTreeNode myExpression;
+	private int myIndex;
+
+	/**
+	 * Create a shared subexpression
+	 *
+	 * @param expression the subexpression
+	 * @param index      the position of this subexpression among those shared
+	 *                   in its ExpressionDag
+	 */
+	public SharedExpression(ExpressionTreeNode expression, int index) {
+		myExpression = expression;
+		myIndex = index;
+	}
+
+	/**
+	 * Returns the position of this subexpression among those shared in its
+	 * ExpressionDag
+	 */
+	public int getIndex() {
+		return myIndex;
+	}
+
+	/**
+	 * Returns the subexpression
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(myExpression);
+	}
+
+	@Override
+	public RGBColor evaluate(double x, double y) {
+		return myExpression.evaluate(x, y);
+	}
+
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		myExpression.evaluate(x, y, slots, slot);
+	}
+
+	/**
+	 * Bounds the shared expression.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return myExpression.bounds(x, y);
+	}
+
+	@Override
+	public int getSlotCount() {
+		return myExpression.getSlotCount();
+	}
+
+	/**
+	 * Evaluates the subexpression for the batch, or copies its value if
+	 * another use has already computed it for this batch
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		if (buffers.hasShared(myIndex)) {
+			double[][] kept = buffers.getShared(myIndex);
+			System.arraycopy(kept[0], 0, red, 0, length);
+			System.arraycopy(kept[1], 0, green, 0, length);
+			System.arraycopy(kept[2], 0, blue, 0, length);
+			return;
+		}
+		myExpression.evaluate(xs, ys, length, red, green, blue, buffers);
+		double[][] kept = buffers.keepShared(myIndex);
+		System.arraycopy(red, 0, kept[0], 0, length);
+		System.arraycopy(green, 0, kept[1], 0, length);
+		System.arraycopy(blue, 0, kept[2], 0, length);
+	}
+
+	@Override
+	public String toString() {
+		return "Shared " + myIndex + " [" + myExpression + "]";
+	}
+}
@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents the abs function in the Picasso language.
@@ -35,4 +38,49 @@ public class Abs extends UnaryFunction {
 		return new RGBColor(red, green, blue);
 	}
 
+	/**
+	 * Evaluates the absolute value of the function's parameter for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		param.evaluate(xs, ys, length, red, green, blue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = Math.abs(red[i]);
+			green[i] = Math.abs(green[i]);
+			blue[i] = Math.abs(blue[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the absolute value of the function's parameter into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		param.evaluate(x, y, slots, slot);
+		slots[slot] = Math.abs(slots[slot]);
+		slots[slot + 1] = Math.abs(slots[slot + 1]);
+		slots[slot + 2] = Math.abs(slots[slot + 2]);
+	}
+
+	/**
+	 * Bounds the absolute value of the bounds of the parameter.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return param.bounds(x, y).map(Abs::absBounds);
+	}
+
+	/**
+	 * Bounds one channel of the absolute value
+	 */
+	public static Interval absBounds(Interval value) {
+		if (value.getMin() >= 0) {
+			return value;
+		} else if (value.getMax() <= 0) {
+			return value.negate();
+		}
+		return Interval.of(0, Math.max(-value.getMin(), value.getMax())).withNaNOf(value);
+	}
+
 }
\ No newline at end of file
@@ -1,6 +1,12 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+import java.util.Objects;
+
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents the plus operator in the Picasso language.
@@ -26,6 +32,14 @@ public class Addition extends ExpressionTreeNode {
 		this.right = right;
 	}
 
+	/**
+	 * Returns the operator's two arguments, left first
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(left, right);
+	}
+
 	/**
 	 * Evaluates this expression at the given x,y point by evaluating the addition of
 	 * the operator's two arguments.
@@ -43,7 +57,56 @@ public class Addition extends ExpressionTreeNode {
 
 		return new RGBColor(red, green, blue);
 	}
+
+	/**
+	 * Evaluates the addition of the operator's two arguments for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		left.evaluate(xs, ys, length, red, green, blue, buffers);
+		double[] rightRed = buffers.acquire();
+		double[] rightGreen = buffers.acquire();
+		double[] rightBlue = buffers.acquire();
+		right.evaluate(xs, ys, length, rightRed, rightGreen, rightBlue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = red[i] + rightRed[i];
+			green[i] = green[i] + rightGreen[i];
+			blue[i] = blue[i] + rightBlue[i];
+		}
+		buffers.release(3);
+	}
+
+	/**
+	 * Evaluates the addition of the operator's two arguments into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		left.evaluate(x, y, slots, slot);
+		right.evaluate(x, y, slots, slot + 3);
+		for (int i = slot; i < slot + 3; i++) {
+			slots[i] = slots[i] + slots[i + 3];
+		}
+	}
+
+	/**
+	 * Bounds the sum of the bounds of the two arguments.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return left.bounds(x, y).combine(right.bounds(x, y), Interval::add);
+	}
+
+	@Override
+	public int getSlotCount() {
+		return Math.max(left.getSlotCount(), 3 + right.getSlotCount());
+	}
 	
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), left, right);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o == this) {
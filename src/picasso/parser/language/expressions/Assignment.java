@@ -4,6 +4,9 @@ import java.util.Objects;
 
 import picasso.parser.IdentifierAnalyzer;
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /** 
  * Represents the assignment operator that takes as a parameter the given expression and a variable. 
@@ -61,8 +64,50 @@ public class Assignment extends BinaryOperators{
 	 */
 	@Override
 	public RGBColor evaluate(double x, double y) {
+		store();
+		return this.rightPara.evaluate(x, y);
+	}
+
+	/**
+	 * Evaluates the expression for a batch of points
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		store();
+		this.rightPara.evaluate(xs, ys, length, red, green, blue, buffers);
+	}
+
+	/**
+	 * Evaluates the expression into the given slots
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		store();
+		this.rightPara.evaluate(x, y, slots, slot);
+	}
+
+	/**
+	 * Stores the assignment, as evaluating does, and bounds the assigned
+	 * expression.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		store();
+		return this.rightPara.bounds(x, y);
+	}
+
+	@Override
+	public int getSlotCount() {
+		return this.rightPara.getSlotCount();
+	}
+
+	/**
+	 * Records the assigned expression under the variable's name, as every
+	 * evaluation of the assignment does
+	 */
+	public void store() {
 		String var = variable.getName();
 		IdentifierAnalyzer.storeAssignmentResult(var, this.rightPara);
-		return this.rightPara.evaluate(x, y);
 	}
 }
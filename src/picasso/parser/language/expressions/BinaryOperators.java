@@ -1,5 +1,8 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+import java.util.Objects;
+
 import picasso.parser.language.ExpressionTreeNode ; 
 
 /**
@@ -25,7 +28,26 @@ public abstract class BinaryOperators extends ExpressionTreeNode{
 		this.rightPara = rightPara;
 		
 	}
+
+	/**
+	 * Returns the left parameter followed by the right parameter
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(leftPara, rightPara);
+	}
 	
+	/**
+	 * The right parameter is evaluated first, into the node's own slots, and the
+	 * left parameter is evaluated into the slots after them.
+	 * 
+	 * @see picasso.parser.language.ExpressionTreeNode#getSlotCount()
+	 */
+	@Override
+	public int getSlotCount() {
+		return Math.max(rightPara.getSlotCount(), 3 + leftPara.getSlotCount());
+	}
+
 	/**
 	 * Returns the string representation of the function in the format "ClassName:
 	 * Left Parameter, Right Parameter"
@@ -36,6 +58,14 @@ public abstract class BinaryOperators extends ExpressionTreeNode{
 		
 	}
 	
+	/*
+	 * Binary expressions that are the same have the same hash code
+	 */
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), leftPara, rightPara);
+	}
+
 	/*
 	 * An equivalence structure that returns true if the binary expressions are the same
 	 *
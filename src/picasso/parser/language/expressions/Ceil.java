@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Mark Made add the javadocs
@@ -32,4 +35,37 @@ public class Ceil extends UnaryFunction {
 		return new RGBColor(red, green, blue);
 	}
 
+	/**
+	 * Evaluates the ceiling of the function's parameter for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		param.evaluate(xs, ys, length, red, green, blue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = Math.ceil(red[i]);
+			green[i] = Math.ceil(green[i]);
+			blue[i] = Math.ceil(blue[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the ceiling of the function's parameter into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		param.evaluate(x, y, slots, slot);
+		slots[slot] = Math.ceil(slots[slot]);
+		slots[slot + 1] = Math.ceil(slots[slot + 1]);
+		slots[slot + 2] = Math.ceil(slots[slot + 2]);
+	}
+
+	/**
+	 * Ceil never decreases, so it maps the ends of the bounds of the parameter.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return param.bounds(x, y).map(value -> value.map(Math::ceil));
+	}
+
 }
@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents the clamp function in the Picasso language.
@@ -29,26 +32,59 @@ public class Clamp extends UnaryFunction {
 	@Override
 	public RGBColor evaluate(double x, double y) {
 		RGBColor result = param.evaluate(x, y);
-		double red = result.getRed();
-		double green = result.getGreen();
-		double blue = result.getBlue();
-		if (red > 1) {
-			red = 1;
-		} else if (red < -1) {
-			red = -1;
-		}
-		if (green > 1) {
-			green = 1;
-		} else if (green < -1) {
-			green = -1;
-		}
-		if (blue > 1) {
-			blue = 1;
-		} else if (blue < -1) {
-			blue = -1;
-		}
+		double red = clamp(result.getRed());
+		double green = clamp(result.getGreen());
+		double blue = clamp(result.getBlue());
 
 		return new RGBColor(red, green, blue);
 	}
 
+	/**
+	 * Evaluates the clamp of the function's parameter for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		param.evaluate(xs, ys, length, red, green, blue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = clamp(red[i]);
+			green[i] = clamp(green[i]);
+			blue[i] = clamp(blue[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the clamp of the function's parameter into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		param.evaluate(x, y, slots, slot);
+		slots[slot] = clamp(slots[slot]);
+		slots[slot + 1] = clamp(slots[slot + 1]);
+		slots[slot + 2] = clamp(slots[slot + 2]);
+	}
+
+	/**
+	 * Clamping never decreases, so it maps the ends of the bounds of the parameter.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return param.bounds(x, y).map(value -> value.map(Clamp::clamp));
+	}
+
+	/**
+	 * Limits one channel to the range [-1, 1]
+	 * 
+	 * @param value the channel to clamp
+	 * @return the channel, clamped to [-1, 1]
+	 */
+	public static double clamp(double value) {
+		if (value > 1) {
+			return 1;
+		} else if (value < -1) {
+			return -1;
+		}
+		return value;
+	}
+
 }
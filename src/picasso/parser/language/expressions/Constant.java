@@ -1,6 +1,11 @@
 package picasso.parser.language.expressions;
 
+import java.util.Arrays;
+
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents a constant in the Picasso language.
@@ -50,6 +55,45 @@ public class Constant extends ExpressionTreeNode {
 		return new RGBColor(value, value, value);
 	}
 
+	/**
+	 * Fills the batch with the constant.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		Arrays.fill(red, 0, length, value);
+		Arrays.fill(green, 0, length, value);
+		Arrays.fill(blue, 0, length, value);
+	}
+
+	/**
+	 * Stores the constant into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		slots[slot] = value;
+		slots[slot + 1] = value;
+		slots[slot + 2] = value;
+	}
+
+	/**
+	 * A constant is the same everywhere.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return ColorInterval.grey(Interval.point(value));
+	}
+
+	/**
+	 * Constants that are equal have the same hash code
+	 * 
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return Double.hashCode(value);
+	}
+
 	/**
 	 * Determines if two Constants are equivalent (represent the same value.)
 	 * 
@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Cos evaluator class
@@ -34,4 +37,37 @@ public class Cos extends UnaryFunction {
 		return new RGBColor(red, green, blue);
 	}
 
+	/**
+	 * Evaluates the cosine of the function's parameter for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		param.evaluate(xs, ys, length, red, green, blue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = Math.cos(red[i]);
+			green[i] = Math.cos(green[i]);
+			blue[i] = Math.cos(blue[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the cosine of the function's parameter into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		param.evaluate(x, y, slots, slot);
+		slots[slot] = Math.cos(slots[slot]);
+		slots[slot + 1] = Math.cos(slots[slot + 1]);
+		slots[slot + 2] = Math.cos(slots[slot + 2]);
+	}
+
+	/**
+	 * Bounds the cosine of the bounds of the parameter.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return param.bounds(x, y).map(value -> Sine.sinusoidBounds(value, 0, Math::cos));
+	}
+
 }
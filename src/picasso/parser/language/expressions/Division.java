@@ -1,6 +1,12 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+import java.util.Objects;
+
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents the divide operator in the Picasso language.
@@ -24,6 +30,14 @@ public class Division extends ExpressionTreeNode {
 		this.right = right;
 	}
 
+	/**
+	 * Returns the operator's two arguments, left first
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(left, right);
+	}
+
 	/**
 	 * Evaluates this expression at the given x,y point by evaluating the division of
 	 * the operator's two arguments.
@@ -57,7 +71,84 @@ public class Division extends ExpressionTreeNode {
 		}
 		return new RGBColor(red, green, blue);
 	}
+
+	/**
+	 * Evaluates the division of the operator's two arguments for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		left.evaluate(xs, ys, length, red, green, blue, buffers);
+		double[] rightRed = buffers.acquire();
+		double[] rightGreen = buffers.acquire();
+		double[] rightBlue = buffers.acquire();
+		right.evaluate(xs, ys, length, rightRed, rightGreen, rightBlue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = divide(red[i], rightRed[i]);
+			green[i] = divide(green[i], rightGreen[i]);
+			blue[i] = divide(blue[i], rightBlue[i]);
+		}
+		buffers.release(3);
+	}
+
+	/**
+	 * Evaluates the division of the operator's two arguments into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		left.evaluate(x, y, slots, slot);
+		right.evaluate(x, y, slots, slot + 3);
+		for (int i = slot; i < slot + 3; i++) {
+			slots[i] = divide(slots[i], slots[i + 3]);
+		}
+	}
+
+	/**
+	 * Bounds the quotient of the bounds of the two arguments.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return left.bounds(x, y).combine(right.bounds(x, y), Division::divideBounds);
+	}
+
+	/**
+	 * Bounds one channel of the quotient
+	 */
+	public static Interval divideBounds(Interval dividend, Interval divisor) {
+		if (!dividend.isFinite() || !divisor.isFinite()) {
+			return Interval.UNKNOWN;
+		} else if (divisor.getMin() == 0 && divisor.getMax() == 0) {
+			return Interval.point(0);
+		} else if (divisor.contains(0)) {
+			// divisors close to zero give quotients of any size
+			return Interval.of(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+		}
+		// away from zero, the extremes of the quotient are at the corners
+		return Interval.spanning(dividend.getMin() / divisor.getMin(), dividend.getMin() / divisor.getMax(),
+				dividend.getMax() / divisor.getMin(), dividend.getMax() / divisor.getMax());
+	}
+
+	@Override
+	public int getSlotCount() {
+		return Math.max(left.getSlotCount(), 3 + right.getSlotCount());
+	}
 	
+	/**
+	 * Divides one channel by another, giving 0 when the divisor is 0
+	 * 
+	 * @param dividend the channel of the left argument
+	 * @param divisor  the channel of the right argument
+	 * @return the channel of the quotient
+	 */
+	public static double divide(double dividend, double divisor) {
+		return divisor == 0 ? 0 : dividend / divisor;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), left, right);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o == this) {
@@ -0,0 +1,199 @@
+package picasso.parser.language.expressions;
+
+import java.util.List;
+import java.util.Objects;
+
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.Interval;
+
+/**
+ * A fractal drawn by how long the orbit of each point under z = z * z + c
+ * takes to escape, as EscapeTime computes it. The arguments are real and
+ * imaginary parts of complex numbers, and each channel of the result is the
+ * fractal of the same channel of the arguments. Values are -1 in the set and
+ * rise towards 1 at its edge.
+ *
+ * @author Mark Holden
+ */
+public abstract class EscapeTimeFractal extends ExpressionTreeNode {
+	public static final int MAX_ITERATIONS = 1000;
+
+	private List<ExpressionTreeNode> myArguments;
+	private int myIterations;
+
+	/**
+	 * @param arguments  the real and imaginary parts of the complex arguments
+	 * @param iterations the most iterations of each orbit, from 1 to
+	 *                   MAX_ITERATIONS
+	 */
+	EscapeTimeFractal(List<ExpressionTreeNode> arguments, int iterations) {
+		if (iterations < 1 || iterations > MAX_ITERATIONS) {
+			throw new IllegalArgumentException("Iterations must be from 1 to " + MAX_ITERATIONS + ": " + iterations);
+		}
+		myArguments = List.copyOf(arguments);
+		myIterations = iterations;
+	}
+
+	/**
+	 * Returns the same fractal of other arguments
+	 */
+	public abstract EscapeTimeFractal rebuild(List<ExpressionTreeNode> arguments);
+
+	/**
+	 * Returns the value of one channel of the arguments, the first of which is
+	 * values[first] and each next one step further on
+	 */
+	protected abstract double channel(double[] values, int first, int step);
+
+	/**
+	 * Fills out with the value of one channel of a batch, whose arguments are
+	 * in planes. The output may be one of the planes.
+	 */
+	protected abstract void channel(double[][] planes, double[] out, int length);
+
+	public int getIterations() {
+		return myIterations;
+	}
+
+	/**
+	 * Returns the arguments in the order they are written
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return myArguments;
+	}
+
+	@Override
+	public RGBColor evaluate(double x, double y) {
+		int count = myArguments.size();
+		double[] values = new double[3 * count];
+		for (int i = count - 1; i >= 0; i--) {
+			RGBColor argument = myArguments.get(i).evaluate(x, y);
+			int from = 3 * (count - 1 - i);
+			values[from] = argument.getRed();
+			values[from + 1] = argument.getGreen();
+			values[from + 2] = argument.getBlue();
+		}
+		combine(values, 0);
+		return new RGBColor(values[0], values[1], values[2]);
+	}
+
+	/**
+	 * The last argument is evaluated into the node's own slots and each one
+	 * before it into the three slots after those of the argument that follows
+	 * it, as for binary operators
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		int count = myArguments.size();
+		for (int i = count - 1; i >= 0; i--) {
+			myArguments.get(i).evaluate(x, y, slots, slot + 3 * (count - 1 - i));
+		}
+		combine(slots, slot);
+	}
+
+	/**
+	 * Replaces the arguments, laid out as they are evaluated into slots, with
+	 * the three channels of the result
+	 */
+	private void combine(double[] values, int slot) {
+		int count = myArguments.size();
+		int first = slot + 3 * (count - 1);
+		boolean grey = true;
+		for (int from = slot; from <= first && grey; from += 3) {
+			grey = values[from] == values[from + 1] && values[from] == values[from + 2];
+		}
+		double red = channel(values, first, -3);
+		double green = grey ? red : channel(values, first + 1, -3);
+		double blue = grey ? red : channel(values, first + 2, -3);
+		values[slot] = red;
+		values[slot + 1] = green;
+		values[slot + 2] = blue;
+	}
+
+	@Override
+	public int getSlotCount() {
+		int count = myArguments.size();
+		int slots = 3;
+		for (int i = 0; i < count; i++) {
+			slots = Math.max(slots, 3 * (count - 1 - i) + myArguments.get(i).getSlotCount());
+		}
+		return slots;
+	}
+
+	/**
+	 * Evaluates the first argument into the output planes and the others into
+	 * planes of their own, then iterates a channel at a time
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		int count = myArguments.size();
+		double[][][] planes = new double[3][count][];
+		planes[0][0] = red;
+		planes[1][0] = green;
+		planes[2][0] = blue;
+		for (int i = 1; i < count; i++) {
+			planes[0][i] = buffers.acquire();
+			planes[1][i] = buffers.acquire();
+			planes[2][i] = buffers.acquire();
+			myArguments.get(i).evaluate(xs, ys, length, planes[0][i], planes[1][i], planes[2][i], buffers);
+		}
+		myArguments.get(0).evaluate(xs, ys, length, red, green, blue, buffers);
+		channel(planes[0], red, length);
+		channel(planes[1], green, length);
+		channel(planes[2], blue, length);
+		buffers.release(3 * (count - 1));
+	}
+
+	/**
+	 * Every value is from -1 to 1, and the value is computed if the arguments
+	 * are the same everywhere
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		int count = myArguments.size();
+		ColorInterval[] arguments = new ColorInterval[count];
+		for (int i = 0; i < count; i++) {
+			arguments[i] = myArguments.get(i).bounds(x, y);
+		}
+		return new ColorInterval(bound(arguments, 0), bound(arguments, 1), bound(arguments, 2));
+	}
+
+	private Interval bound(ColorInterval[] arguments, int channel) {
+		double[] points = new double[arguments.length];
+		for (int i = 0; i < arguments.length; i++) {
+			Interval argument = channel == 0 ? arguments[i].getRed()
+					: channel == 1 ? arguments[i].getGreen() : arguments[i].getBlue();
+			if (!argument.isPoint()) {
+				return Interval.of(-1, 1);
+			}
+			points[i] = argument.getMin();
+		}
+		return Interval.point(channel(points, 0, 1));
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass() + ": " + myArguments + ", " + myIterations;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), myArguments, myIterations);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (o == null || o.getClass() != getClass()) {
+			return false;
+		}
+		EscapeTimeFractal other = (EscapeTimeFractal) o;
+		return myArguments.equals(other.myArguments) && myIterations == other.myIterations;
+	}
+}
@@ -1,7 +1,10 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
 import java.lang.Math;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 
 /** 
@@ -38,4 +41,37 @@ public class Exp extends UnaryFunction {
 		return new RGBColor(red, green, blue);
 	}
 
+	/**
+	 * Evaluates the exponential of the function's parameter for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		param.evaluate(xs, ys, length, red, green, blue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = Math.exp(red[i]);
+			green[i] = Math.exp(green[i]);
+			blue[i] = Math.exp(blue[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the exponential of the function's parameter into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		param.evaluate(x, y, slots, slot);
+		slots[slot] = Math.exp(slots[slot]);
+		slots[slot + 1] = Math.exp(slots[slot + 1]);
+		slots[slot + 2] = Math.exp(slots[slot + 2]);
+	}
+
+	/**
+	 * Math.exp is semi-monotonic, so it maps the ends of the bounds of the parameter.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return param.bounds(x, y).map(value -> value.map(Math::exp));
+	}
+
 }
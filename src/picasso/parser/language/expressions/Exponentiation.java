@@ -1,6 +1,12 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+import java.util.Objects;
+
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents the exponentiation operator in the Picasso language.
@@ -24,6 +30,14 @@ public class Exponentiation extends ExpressionTreeNode {
 		this.right = right;
 	}
 
+	/**
+	 * Returns the operator's two arguments, left first
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(left, right);
+	}
+
 	/**
 	 * Evaluates this expression at the given x,y point by evaluating the exponentiation of
 	 * the operator's two arguments.
@@ -35,51 +49,107 @@ public class Exponentiation extends ExpressionTreeNode {
 		RGBColor result1 = left.evaluate(x, y);
 		RGBColor result2 = right.evaluate(x, y);
 		
-		// Handles following problem cases
-		// 0 ^ 0
-		// 0 ^ -#
-		// -# ^ (Pos.Fraction)
-		
-		// Result if 0 ^ 0 or 0 ^ -#
-		double red = result1.getRed();
-		double green = result1.getGreen();
-		double blue = result1.getBlue();
-		
-		// Result if -# ^ (Pos.Fraction)
-		if (red < 0 && red != -1 && 
-				result2.getRed() > 0 && result2.getRed() != 1) {
-			red = -1; // Pushes to black based on sample image in Picasso docs
+		double red = power(result1.getRed(), result2.getRed());
+		double green = power(result1.getGreen(), result2.getGreen());
+		double blue = power(result1.getBlue(), result2.getBlue());
+				
+		return new RGBColor(red, green, blue);
+	}
+
+	/**
+	 * Evaluates the exponentiation of the operator's two arguments for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		left.evaluate(xs, ys, length, red, green, blue, buffers);
+		double[] rightRed = buffers.acquire();
+		double[] rightGreen = buffers.acquire();
+		double[] rightBlue = buffers.acquire();
+		right.evaluate(xs, ys, length, rightRed, rightGreen, rightBlue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = power(red[i], rightRed[i]);
+			green[i] = power(green[i], rightGreen[i]);
+			blue[i] = power(blue[i], rightBlue[i]);
 		}
-		
-		// Result if no errors			
-		else if (!(red == 0 && result2.getRed() <= 0)) {
-			red = Math.pow(red, result2.getRed());
+		buffers.release(3);
+	}
+
+	/**
+	 * Evaluates the exponentiation of the operator's two arguments into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		left.evaluate(x, y, slots, slot);
+		right.evaluate(x, y, slots, slot + 3);
+		for (int i = slot; i < slot + 3; i++) {
+			slots[i] = power(slots[i], slots[i + 3]);
 		}
-		
-		
-		if (green < 0 && green != -1 && 
-				result2.getGreen() > 0 && result2.getGreen() != 1) {
-			green = -1;
+	}
+
+	/**
+	 * Bounds the power of the bounds of the two arguments.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return left.bounds(x, y).combine(right.bounds(x, y), Exponentiation::powerBounds);
+	}
+
+	/**
+	 * Bounds one channel of the power. Only positive bases, and a base of zero
+	 * with positive exponents, are bounded: there power is Math.pow, which is
+	 * monotonic in each argument, so its extremes are at the corners.
+	 */
+	public static Interval powerBounds(Interval base, Interval exponent) {
+		if (base.isPoint() && exponent.isPoint()) {
+			return Interval.point(power(base.getMin(), exponent.getMin()));
+		} else if (!base.isFinite() || !exponent.isFinite()
+				|| !(base.getMin() > 0 || base.getMin() == 0 && exponent.getMin() > 0)) {
+			return Interval.UNKNOWN;
 		}
-				
-		else if (!(green == 0 && result2.getGreen() <= 0)) {
-			green = Math.pow(green, result2.getGreen());
+		return Interval.spanning(power(base.getMin(), exponent.getMin()), power(base.getMin(), exponent.getMax()),
+				power(base.getMax(), exponent.getMin()), power(base.getMax(), exponent.getMax()));
+	}
+
+	@Override
+	public int getSlotCount() {
+		return Math.max(left.getSlotCount(), 3 + right.getSlotCount());
+	}
+	
+	/**
+	 * Raises one channel of the base to one channel of the exponent.
+	 * 
+	 * Handles following problem cases
+	 * 0 ^ 0
+	 * 0 ^ -#
+	 * -# ^ (Pos.Fraction)
+	 * 
+	 * @param base     the channel of the base
+	 * @param exponent the channel of the exponent
+	 * @return the channel of the result
+	 */
+	public static double power(double base, double exponent) {
+		// Result if -# ^ (Pos.Fraction)
+		if (base < 0 && base != -1 && exponent > 0 && exponent != 1) {
+			return -1; // Pushes to black based on sample image in Picasso docs
 		}
-		
-		
-		if (blue < 0 && blue != -1 && 
-				result2.getBlue() > 0 && result2.getBlue() != 1) {
-			blue = -1;
+		// Result if 0 ^ 0 or 0 ^ -#
+		if (base == 0 && exponent <= 0) {
+			return base;
 		}
-				
-		else if (!(blue == 0 && result2.getBlue() <= 0)) {
-			blue = Math.pow(blue, result2.getBlue());
+		// Math.pow(base, 2) is exactly base * base, which is far cheaper
+		if (exponent == 2) {
+			return base * base;
 		}
-				
-				
-		return new RGBColor(red, green, blue);
+		// Result if no errors
+		return Math.pow(base, exponent);
 	}
 	
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), left, right);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o == this) {
@@ -0,0 +1,42 @@
+package picasso.parser.language.expressions;
+
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Represents the fbm function in the Picasso language: fractal Brownian
+ * motion, the sum of the noise of each octave.
+ *
+ * @author Mark Holden
+ */
+public class Fbm extends FractalNoise {
+
+	/**
+	 * Create a fbm expression
+	 *
+	 * @param leftPara  the x coordinate of each channel
+	 * @param rightPara the y coordinate of each channel
+	 * @param octaves   the number of octaves, from 1 to MAX_OCTAVES
+	 */
+	public Fbm(ExpressionTreeNode leftPara, ExpressionTreeNode rightPara, int octaves) {
+		this(leftPara, rightPara, octaves, false);
+	}
+
+	private Fbm(ExpressionTreeNode leftPara, ExpressionTreeNode rightPara, int octaves, boolean quantized) {
+		super(leftPara, rightPara, octaves, quantized);
+	}
+
+	@Override
+	protected boolean isAbsolute() {
+		return false;
+	}
+
+	@Override
+	public FractalNoise rebuild(ExpressionTreeNode leftPara, ExpressionTreeNode rightPara) {
+		return new Fbm(leftPara, rightPara, getOctaves(), isQuantized());
+	}
+
+	@Override
+	public FractalNoise quantized() {
+		return new Fbm(leftPara, rightPara, getOctaves(), true);
+	}
+}
@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents the floor function in the Picasso language.
@@ -36,4 +39,37 @@ public class Floor extends UnaryFunction {
 		return new RGBColor(red, green, blue);
 	}
 
+	/**
+	 * Evaluates the floor of the function's parameter for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		param.evaluate(xs, ys, length, red, green, blue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = Math.floor(red[i]);
+			green[i] = Math.floor(green[i]);
+			blue[i] = Math.floor(blue[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the floor of the function's parameter into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		param.evaluate(x, y, slots, slot);
+		slots[slot] = Math.floor(slots[slot]);
+		slots[slot + 1] = Math.floor(slots[slot + 1]);
+		slots[slot + 2] = Math.floor(slots[slot + 2]);
+	}
+
+	/**
+	 * Floor never decreases, so it maps the ends of the bounds of the parameter.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return param.bounds(x, y).map(value -> value.map(Math::floor));
+	}
+
 }
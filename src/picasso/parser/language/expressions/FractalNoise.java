@@ -0,0 +1,357 @@
+package picasso.parser.language.expressions;
+
+import java.util.List;
+import java.util.Objects;
+
+import picasso.model.CoherentNoise;
+import picasso.model.PlanarNoise;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.Interval;
+
+/**
+ * A sum of octaves of noise on the plane z = 0, each at twice the frequency
+ * and half the amplitude of the one before, divided by the sum of the
+ * amplitudes. Each channel of the result is the sum for the same channel of
+ * the two arguments. All octaves sample the one lattice of ImprovedNoise,
+ * through PlanarNoise, and batches go through the noise sampler of their
+ * buffers an octave at a time, so that runs of points share the hashes of a
+ * cell.
+ *
+ * A node whose value goes straight to the pixels of an image may be marked
+ * quantized. Noise on the plane never leaves [-1, 1], so once the octaves
+ * left could move the sum by less than is needed to reach another 8-bit
+ * color, the sum stops there: the color is that of the full sum, but the
+ * value is not, so only the root of an expression may be quantized.
+ *
+ * @author Mark Holden
+ */
+public abstract class FractalNoise extends ExpressionTreeNode {
+	public static final int MAX_OCTAVES = 16;
+	// noise on the plane blends gradient terms of at most |x| + |y| for the
+	// offsets x and y to each corner, and with the fade curve as weights those
+	// add up to at most 1 / 2 along each axis
+	private static final double NOISE_BOUND = 1;
+	// far more than the rounding error of a sum of 16 octaves
+	private static final double MARGIN = 1e-9;
+	// the width of one 8-bit step of a channel
+	private static final double STEP = (RGBColor.COLOR_MAX - RGBColor.COLOR_MIN) / RGBColor.JAVA_COLOR_MAX;
+	// the amplitude and frequency of each octave
+	private static final double[] AMPLITUDES = new double[MAX_OCTAVES];
+	private static final double[] FREQUENCIES = new double[MAX_OCTAVES];
+	static {
+		for (int octave = 0; octave < MAX_OCTAVES; octave++) {
+			AMPLITUDES[octave] = Math.scalb(1.0, -octave);
+			FREQUENCIES[octave] = Math.scalb(1.0, octave);
+		}
+	}
+
+	ExpressionTreeNode leftPara;
+	ExpressionTreeNode rightPara;
+	private int myOctaves;
+	private boolean myQuantized;
+	private boolean myAbsolute;
+	private double myTotal;
+	// how far the octaves after each one can move the sum, divided by the total
+	private double[] myRests;
+	// the first octave after which the sum stops at about half the points, or
+	// the octave count: checking any earlier settles too few to pay
+	private int myFirstStop;
+
+	/**
+	 * @param leftPara  the x coordinate of each channel
+	 * @param rightPara the y coordinate of each channel
+	 * @param octaves   the number of octaves, from 1 to MAX_OCTAVES
+	 * @param quantized true if the value goes straight to the pixels, so that
+	 *                  the sum may stop when the color is settled
+	 */
+	FractalNoise(ExpressionTreeNode leftPara, ExpressionTreeNode rightPara, int octaves, boolean quantized) {
+		if (octaves < 1 || octaves > MAX_OCTAVES) {
+			throw new IllegalArgumentException("Octaves must be from 1 to " + MAX_OCTAVES + ": " + octaves);
+		}
+		this.leftPara = leftPara;
+		this.rightPara = rightPara;
+		myOctaves = octaves;
+		myQuantized = quantized;
+		myAbsolute = isAbsolute();
+		for (int octave = 0; octave < octaves; octave++) {
+			myTotal += amplitude(octave);
+		}
+		myRests = new double[octaves];
+		myFirstStop = octaves;
+		double rest = 0;
+		for (int octave = octaves - 1; octave >= 0; octave--) {
+			myRests[octave] = NOISE_BOUND * rest / myTotal + MARGIN;
+			if (quantized && octave < octaves - 1 && (myAbsolute ? 1 : 2) * myRests[octave] < STEP / 2) {
+				myFirstStop = octave;
+			}
+			rest += amplitude(octave);
+		}
+	}
+
+	/**
+	 * Returns the amplitude of an octave; its frequency is the inverse
+	 */
+	private static double amplitude(int octave) {
+		return AMPLITUDES[octave];
+	}
+
+	/**
+	 * Returns true if octaves add the magnitude of the noise rather than the
+	 * noise itself
+	 */
+	protected abstract boolean isAbsolute();
+
+	/**
+	 * Returns the same function of other arguments
+	 */
+	public abstract FractalNoise rebuild(ExpressionTreeNode leftPara, ExpressionTreeNode rightPara);
+
+	/**
+	 * Returns the same function, with the sum stopping once the color is
+	 * settled
+	 */
+	public abstract FractalNoise quantized();
+
+	public int getOctaves() {
+		return myOctaves;
+	}
+
+	public boolean isQuantized() {
+		return myQuantized;
+	}
+
+	/**
+	 * Returns the octave after which the sum may first stop, or the number of
+	 * octaves if it never does
+	 */
+	public int getFirstStop() {
+		return myFirstStop;
+	}
+
+	/**
+	 * Returns the x coordinate followed by the y coordinate
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(leftPara, rightPara);
+	}
+
+	/**
+	 * Sums the octaves of one channel
+	 */
+	private double channel(double x, double y) {
+		double sum = 0;
+		for (int octave = 0; octave < myOctaves; octave++) {
+			double frequency = FREQUENCIES[octave];
+			sum += term(octave, PlanarNoise.noise(x * frequency, y * frequency));
+			if (octave >= myFirstStop && isSettled(sum, octave)) {
+				break;
+			}
+		}
+		return sum / myTotal;
+	}
+
+	private double term(int octave, double noise) {
+		return amplitude(octave) * (myAbsolute ? Math.abs(noise) : noise);
+	}
+
+	/**
+	 * Returns true if every sum the octaves after this one can give has the
+	 * same 8-bit color as the sum so far
+	 */
+	private boolean isSettled(double sum, int octave) {
+		double value = sum / myTotal;
+		double low = myAbsolute ? value - MARGIN : value - myRests[octave];
+		return RGBColor.toInt(RGBColor.clamp(low)) == RGBColor.toInt(RGBColor.clamp(value + myRests[octave]));
+	}
+
+	/**
+	 * Returns true if the arguments of every channel are those of red, so that
+	 * the result is grey
+	 */
+	private static boolean isGrey(double xRed, double xGreen, double xBlue, double yRed, double yGreen,
+			double yBlue) {
+		return xRed == xGreen && xRed == xBlue && yRed == yGreen && yRed == yBlue;
+	}
+
+	@Override
+	public RGBColor evaluate(double x, double y) {
+		RGBColor right = rightPara.evaluate(x, y);
+		RGBColor left = leftPara.evaluate(x, y);
+		double red = channel(left.getRed(), right.getRed());
+		if (isGrey(left.getRed(), left.getGreen(), left.getBlue(), right.getRed(), right.getGreen(),
+				right.getBlue())) {
+			return new RGBColor(red, red, red);
+		}
+		return new RGBColor(red, channel(left.getGreen(), right.getGreen()), channel(left.getBlue(), right.getBlue()));
+	}
+
+	/**
+	 * The right parameter is evaluated into the node's own slots and the left
+	 * one into the slots after them, as for binary operators
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		rightPara.evaluate(x, y, slots, slot);
+		leftPara.evaluate(x, y, slots, slot + 3);
+		double red = channel(slots[slot + 3], slots[slot]);
+		if (isGrey(slots[slot + 3], slots[slot + 4], slots[slot + 5], slots[slot], slots[slot + 1],
+				slots[slot + 2])) {
+			slots[slot] = red;
+			slots[slot + 1] = red;
+			slots[slot + 2] = red;
+			return;
+		}
+		double green = channel(slots[slot + 4], slots[slot + 1]);
+		double blue = channel(slots[slot + 5], slots[slot + 2]);
+		slots[slot] = red;
+		slots[slot + 1] = green;
+		slots[slot + 2] = blue;
+	}
+
+	@Override
+	public int getSlotCount() {
+		return Math.max(rightPara.getSlotCount(), 3 + leftPara.getSlotCount());
+	}
+
+	/**
+	 * Sums the octaves for a batch of points a whole row at a time
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		double[] rightRed = buffers.acquire();
+		double[] rightGreen = buffers.acquire();
+		double[] rightBlue = buffers.acquire();
+		rightPara.evaluate(xs, ys, length, rightRed, rightGreen, rightBlue, buffers);
+		leftPara.evaluate(xs, ys, length, red, green, blue, buffers);
+		boolean grey = true;
+		for (int i = 0; i < length && grey; i++) {
+			grey = isGrey(red[i], green[i], blue[i], rightRed[i], rightGreen[i], rightBlue[i]);
+		}
+		if (grey) {
+			channel(red, rightRed, length, buffers);
+			System.arraycopy(red, 0, green, 0, length);
+			System.arraycopy(red, 0, blue, 0, length);
+		} else {
+			// a point may be grey in a batch that is not
+			channel(red, rightRed, length, buffers);
+			channel(green, rightGreen, length, buffers);
+			channel(blue, rightBlue, length, buffers);
+		}
+		buffers.release(3);
+	}
+
+	/**
+	 * Sums the octaves of one channel of a batch, leaving the result in xs.
+	 * Octaves after the first that may stop are only taken at the points whose
+	 * color is not yet settled, whose indices are kept in a plane.
+	 */
+	private void channel(double[] xs, double[] ys, int length, BatchBuffers buffers) {
+		CoherentNoise noise = buffers.getNoise();
+		double[] sums = buffers.acquire();
+		double[] scaledX = buffers.acquire();
+		double[] scaledY = buffers.acquire();
+		double[] active = buffers.acquire();
+		int rowOctaves = Math.min(myOctaves, myFirstStop + 1);
+		for (int octave = 0; octave < rowOctaves; octave++) {
+			double frequency = FREQUENCIES[octave];
+			for (int i = 0; i < length; i++) {
+				scaledX[i] = xs[i] * frequency;
+				scaledY[i] = ys[i] * frequency;
+			}
+			noise.noise(scaledX, scaledY, scaledX, length);
+			for (int i = 0; i < length; i++) {
+				double term = term(octave, scaledX[i]);
+				sums[i] = octave == 0 ? 0 + term : sums[i] + term;
+			}
+		}
+		int count = 0;
+		if (rowOctaves < myOctaves) {
+			for (int i = 0; i < length; i++) {
+				if (!isSettled(sums[i], myFirstStop)) {
+					active[count++] = i;
+				}
+			}
+		}
+		settle(xs, ys, sums, scaledX, scaledY, active, count, rowOctaves, noise);
+		for (int i = 0; i < length; i++) {
+			xs[i] = sums[i] / myTotal;
+		}
+		buffers.release(4);
+	}
+
+	/**
+	 * Adds octaves from the given one on to the sums of the points whose
+	 * indices are the first count entries of active, dropping each point once
+	 * its color is settled
+	 */
+	private void settle(double[] xs, double[] ys, double[] sums, double[] scaledX, double[] scaledY,
+			double[] active, int count, int firstOctave, CoherentNoise noise) {
+		for (int octave = firstOctave; count > 0; octave++) {
+			double frequency = FREQUENCIES[octave];
+			for (int j = 0; j < count; j++) {
+				int i = (int) active[j];
+				scaledX[j] = xs[i] * frequency;
+				scaledY[j] = ys[i] * frequency;
+			}
+			noise.noise(scaledX, scaledY, scaledX, count);
+			int unsettled = 0;
+			for (int j = 0; j < count; j++) {
+				int i = (int) active[j];
+				sums[i] += term(octave, scaledX[j]);
+				if (octave < myOctaves - 1 && !isSettled(sums[i], octave)) {
+					active[unsettled++] = i;
+				}
+			}
+			count = unsettled;
+		}
+	}
+
+	/**
+	 * Bounds the sum by the bounds of noise, or computes it if the arguments
+	 * are the same everywhere
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		ColorInterval right = rightPara.bounds(x, y);
+		ColorInterval left = leftPara.bounds(x, y);
+		return new ColorInterval(bound(left.getRed(), right.getRed()), bound(left.getGreen(), right.getGreen()),
+				bound(left.getBlue(), right.getBlue()));
+	}
+
+	private Interval bound(Interval x, Interval y) {
+		if (x.isPoint() && y.isPoint()) {
+			return Interval.point(channel(x.getMin(), y.getMin()));
+		} else if (!x.isFinite() || !y.isFinite()) {
+			return Interval.UNKNOWN;
+		}
+		return Interval.of(isAbsolute() ? 0 : -NOISE_BOUND - MARGIN, NOISE_BOUND + MARGIN);
+	}
+
+	@Override
+	public String toString() {
+		return this.getClass() + ": " + leftPara + ", " + rightPara + ", " + myOctaves
+				+ (myQuantized ? " quantized" : "");
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), leftPara, rightPara, myOctaves, myQuantized);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (o == null || o.getClass() != getClass()) {
+			return false;
+		}
+		FractalNoise other = (FractalNoise) o;
+		return leftPara.equals(other.leftPara) && rightPara.equals(other.rightPara) && myOctaves == other.myOctaves
+				&& myQuantized == other.myQuantized;
+	}
+}
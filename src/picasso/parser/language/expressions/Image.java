@@ -2,6 +2,7 @@ package picasso.parser.language.expressions;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Objects;
 
 import java.awt.*;
 import java.awt.image.*;
@@ -12,7 +13,10 @@ import javax.imageio.ImageIO;
 
 import picasso.parser.ParseException;
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
 import picasso.model.Pixmap;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 
 /**
@@ -28,6 +32,7 @@ public class Image extends ExpressionTreeNode {
 	BufferedImage myImage;
 	Dimension mySize;
 	File directory;
+	private ColorInterval myColors;
 	
 	/**
 	 * Create a image ETN that takes as a parameter the filename
@@ -95,7 +100,74 @@ public class Image extends ExpressionTreeNode {
 		Color origColor = this.getColor(xPixel,yPixel);
 		return new RGBColor(origColor);
 	}
+
+	/**
+	 * Returns the colors of the image at a batch of x,y coordinates
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		int width = this.mySize.width;
+		int height = this.mySize.height;
+		for (int i = 0; i < length; i++) {
+			int xPixel = coorToPixel(xs[i], width);
+			int yPixel = coorToPixel(ys[i], height);
+			int rgb = isInBounds(xPixel, yPixel) ? myImage.getRGB(xPixel, yPixel) : Color.BLUE.getRGB();
+			red[i] = RGBColor.toDouble((rgb >> 16) & 0xFF);
+			green[i] = RGBColor.toDouble((rgb >> 8) & 0xFF);
+			blue[i] = RGBColor.toDouble(rgb & 0xFF);
+		}
+	}
+
+	/**
+	 * Stores the color of the image at the given x,y coordinate into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		int xPixel = coorToPixel(x, this.mySize.width);
+		int yPixel = coorToPixel(y, this.mySize.height);
+		int rgb = isInBounds(xPixel, yPixel) ? myImage.getRGB(xPixel, yPixel) : Color.BLUE.getRGB();
+		slots[slot] = RGBColor.toDouble((rgb >> 16) & 0xFF);
+		slots[slot + 1] = RGBColor.toDouble((rgb >> 8) & 0xFF);
+		slots[slot + 2] = RGBColor.toDouble(rgb & 0xFF);
+	}
+
+	/**
+	 * Wherever it is looked up, the image gives one of its own colors or blue.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		if (myColors == null) {
+			// another thread may do the same work, but will get the same answer
+			myColors = colorBounds();
+		}
+		return myColors;
+	}
+
+	private ColorInterval colorBounds() {
+		int blue = Color.BLUE.getRGB();
+		int[] min = { (blue >> 16) & 0xFF, (blue >> 8) & 0xFF, blue & 0xFF };
+		int[] max = min.clone();
+		for (int row = 0; row < mySize.height; row++) {
+			for (int column = 0; column < mySize.width; column++) {
+				int rgb = myImage.getRGB(column, row);
+				for (int channel = 0; channel < 3; channel++) {
+					int value = (rgb >> (16 - 8 * channel)) & 0xFF;
+					min[channel] = Math.min(min[channel], value);
+					max[channel] = Math.max(max[channel], value);
+				}
+			}
+		}
+		return new ColorInterval(Interval.of(RGBColor.toDouble(min[0]), RGBColor.toDouble(max[0])),
+				Interval.of(RGBColor.toDouble(min[1]), RGBColor.toDouble(max[1])),
+				Interval.of(RGBColor.toDouble(min[2]), RGBColor.toDouble(max[2])));
+	}
 	
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), filename);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o == this) {
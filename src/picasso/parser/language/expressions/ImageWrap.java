@@ -1,9 +1,15 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+import java.util.Objects;
+
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
 import picasso.parser.language.expressions.Image;
 
 import java.awt.Color;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents the imageWrap function in the Picasso language.
@@ -31,6 +37,14 @@ public class ImageWrap extends ExpressionTreeNode {
 		this.yExpr = yExpr;
 	}
 
+	/**
+	 * Returns the image followed by the x and y expressions
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(image, xExpr, yExpr);
+	}
+
 	/**
 	 * Evaluates this expression at the given x,y point by evaluating the addition of
 	 * the operator's two arguments.
@@ -53,6 +67,55 @@ public class ImageWrap extends ExpressionTreeNode {
 		
 		return origColor;
 	}
+
+	/**
+	 * Looks up the image at the wrapped coordinates for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		double[] yRed = buffers.acquire();
+		double[] yGreen = buffers.acquire();
+		double[] yBlue = buffers.acquire();
+		xExpr.evaluate(xs, ys, length, red, green, blue, buffers);
+		yExpr.evaluate(xs, ys, length, yRed, yGreen, yBlue, buffers);
+		double[] imageXs = buffers.acquire();
+		double[] imageYs = buffers.acquire();
+		for (int i = 0; i < length; i++) {
+			imageXs[i] = wrapAround((red[i] + green[i] + blue[i])/3);
+			imageYs[i] = wrapAround((yRed[i] + yGreen[i] + yBlue[i])/3);
+		}
+		image.evaluate(imageXs, imageYs, length, red, green, blue, buffers);
+		buffers.release(5);
+	}
+
+	/**
+	 * Looks up the image at the wrapped coordinates into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		xExpr.evaluate(x, y, slots, slot);
+		yExpr.evaluate(x, y, slots, slot + 3);
+		double xEval = (slots[slot] + slots[slot + 1] + slots[slot + 2])/3;
+		double yEval = (slots[slot + 3] + slots[slot + 4] + slots[slot + 5])/3;
+		image.evaluate(wrapAround(xEval), wrapAround(yEval), slots, slot);
+	}
+
+	/**
+	 * Wherever the coordinates land, the color is one of the image's. The
+	 * coordinates are still bounded for the side effects of evaluating them.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		xExpr.bounds(x, y);
+		yExpr.bounds(x, y);
+		return image.bounds(x, y);
+	}
+
+	@Override
+	public int getSlotCount() {
+		return Math.max(xExpr.getSlotCount(), 3 + yExpr.getSlotCount());
+	}
 	
 	/**
 	 * Wraps a double around [-1, 1]
@@ -62,7 +125,7 @@ public class ImageWrap extends ExpressionTreeNode {
 	 * @param val a double to be wrapped around
 	 * @return a double that is wrapped around [-1, 1]
 	 */
-	private static double wrapAround(double val) {
+	public static double wrapAround(double val) {
 		double result = val;
 		if (val > 1) {
 			result = -1 + (val - 1)%2;
@@ -74,6 +137,11 @@ public class ImageWrap extends ExpressionTreeNode {
 	
 	
 	
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), image, xExpr, yExpr);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o == this) {
@@ -0,0 +1,51 @@
+package picasso.parser.language.expressions;
+
+import java.util.List;
+
+import picasso.model.EscapeTime;
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Represents the julia function in the Picasso language: the Julia set of the
+ * constant given by the last two arguments, at the point given by the first
+ * two.
+ *
+ * @author Mark Holden
+ */
+public class Julia extends EscapeTimeFractal {
+
+	/**
+	 * Create a julia expression
+	 *
+	 * @param real              the real part of the point
+	 * @param imaginary         the imaginary part of the point
+	 * @param constantReal      the real part of the constant of the set
+	 * @param constantImaginary the imaginary part of the constant of the set
+	 * @param iterations        the most iterations of each orbit, from 1 to
+	 *                          MAX_ITERATIONS
+	 */
+	public Julia(ExpressionTreeNode real, ExpressionTreeNode imaginary, ExpressionTreeNode constantReal,
+			ExpressionTreeNode constantImaginary, int iterations) {
+		this(List.of(real, imaginary, constantReal, constantImaginary), iterations);
+	}
+
+	private Julia(List<ExpressionTreeNode> arguments, int iterations) {
+		super(arguments, iterations);
+	}
+
+	@Override
+	public EscapeTimeFractal rebuild(List<ExpressionTreeNode> arguments) {
+		return new Julia(arguments, getIterations());
+	}
+
+	@Override
+	protected double channel(double[] values, int first, int step) {
+		return EscapeTime.julia(values[first], values[first + step], values[first + 2 * step],
+				values[first + 3 * step], getIterations());
+	}
+
+	@Override
+	protected void channel(double[][] planes, double[] out, int length) {
+		EscapeTime.julia(planes[0], planes[1], planes[2], planes[3], getIterations(), out, length);
+	}
+}
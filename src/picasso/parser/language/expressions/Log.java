@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 
 /**
@@ -55,4 +58,85 @@ public class Log extends UnaryFunction {
 
 		return new RGBColor(red, green, blue);
 	}
+
+	/**
+	 * Evaluates the log of the function's parameter for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		// same substitution for zero coordinates as the scalar evaluate
+		double[] safeXs = buffers.acquire();
+		double[] safeYs = buffers.acquire();
+		for (int i = 0; i < length; i++) {
+			safeXs[i] = avoidZero(xs[i]);
+			safeYs[i] = avoidZero(ys[i]);
+		}
+		param.evaluate(safeXs, safeYs, length, red, green, blue, buffers);
+		buffers.release(2);
+		for (int i = 0; i < length; i++) {
+			red[i] = log(red[i]);
+			green[i] = log(green[i]);
+			blue[i] = log(blue[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the log of the function's parameter into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		param.evaluate(avoidZero(x), avoidZero(y), slots, slot);
+		for (int i = slot; i < slot + 3; i++) {
+			slots[i] = log(slots[i]);
+		}
+	}
+
+	/**
+	 * Bounds the log of the bounds of the parameter, over coordinates that
+	 * include the ones zero is moved to.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return param.bounds(avoidZero(x), avoidZero(y)).map(Log::logBounds);
+	}
+
+	private static Interval avoidZero(Interval coordinate) {
+		return coordinate.contains(0) ? coordinate.union(Interval.point(avoidZero(0))) : coordinate;
+	}
+
+	/**
+	 * Bounds one channel of the log
+	 */
+	public static Interval logBounds(Interval value) {
+		Interval magnitude = Abs.absBounds(value);
+		if (magnitude.getMin() > 0) {
+			return magnitude.map(Math::log);
+		}
+		// values close to zero have logs down to that of the smallest double,
+		// and zero itself gives zero
+		return Interval.of(Math.log(Double.MIN_VALUE), Math.max(0, Math.log(magnitude.getMax())))
+				.withNaNOf(magnitude);
+	}
+
+	/**
+	 * Moves a coordinate of 0 slightly away from 0, as log does before it
+	 * evaluates its parameter
+	 * 
+	 * @param coordinate the x or y value
+	 * @return the coordinate the parameter is evaluated at
+	 */
+	public static double avoidZero(double coordinate) {
+		return coordinate == 0 ? 0.000000001 : coordinate;
+	}
+
+	/**
+	 * Takes the log of the magnitude of one channel, giving 0 for a channel of 0
+	 * 
+	 * @param value the channel of the parameter
+	 * @return the channel of the result
+	 */
+	public static double log(double value) {
+		return value != 0 ? Math.log(Math.abs(value)) : 0;
+	}
 }
@@ -0,0 +1,46 @@
+package picasso.parser.language.expressions;
+
+import java.util.List;
+
+import picasso.model.EscapeTime;
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Represents the mandelbrot function in the Picasso language: the Mandelbrot
+ * set at the point whose real and imaginary parts are the two arguments.
+ *
+ * @author Mark Holden
+ */
+public class Mandelbrot extends EscapeTimeFractal {
+
+	/**
+	 * Create a mandelbrot expression
+	 *
+	 * @param real       the real part of the point
+	 * @param imaginary  the imaginary part of the point
+	 * @param iterations the most iterations of each orbit, from 1 to
+	 *                   MAX_ITERATIONS
+	 */
+	public Mandelbrot(ExpressionTreeNode real, ExpressionTreeNode imaginary, int iterations) {
+		this(List.of(real, imaginary), iterations);
+	}
+
+	private Mandelbrot(List<ExpressionTreeNode> arguments, int iterations) {
+		super(arguments, iterations);
+	}
+
+	@Override
+	public EscapeTimeFractal rebuild(List<ExpressionTreeNode> arguments) {
+		return new Mandelbrot(arguments, getIterations());
+	}
+
+	@Override
+	protected double channel(double[] values, int first, int step) {
+		return EscapeTime.mandelbrot(values[first], values[first + step], getIterations());
+	}
+
+	@Override
+	protected void channel(double[][] planes, double[] out, int length) {
+		EscapeTime.mandelbrot(planes[0], planes[1], getIterations(), out, length);
+	}
+}
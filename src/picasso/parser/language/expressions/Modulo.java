@@ -1,6 +1,12 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+import java.util.Objects;
+
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents the modulo operator in the Picasso language.
@@ -24,6 +30,14 @@ public class Modulo extends ExpressionTreeNode {
 		this.right = right;
 	}
 
+	/**
+	 * Returns the operator's two arguments, left first
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(left, right);
+	}
+
 	/**
 	 * Evaluates this expression at the given x,y point by evaluating the modulo of
 	 * the operator's two arguments.
@@ -56,7 +70,92 @@ public class Modulo extends ExpressionTreeNode {
 		
 		return new RGBColor(red, green, blue);
 	}
+
+	/**
+	 * Evaluates the modulo of the operator's two arguments for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		left.evaluate(xs, ys, length, red, green, blue, buffers);
+		double[] rightRed = buffers.acquire();
+		double[] rightGreen = buffers.acquire();
+		double[] rightBlue = buffers.acquire();
+		right.evaluate(xs, ys, length, rightRed, rightGreen, rightBlue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = modulo(red[i], rightRed[i]);
+			green[i] = modulo(green[i], rightGreen[i]);
+			blue[i] = modulo(blue[i], rightBlue[i]);
+		}
+		buffers.release(3);
+	}
+
+	/**
+	 * Evaluates the modulo of the operator's two arguments into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		left.evaluate(x, y, slots, slot);
+		right.evaluate(x, y, slots, slot + 3);
+		for (int i = slot; i < slot + 3; i++) {
+			slots[i] = modulo(slots[i], slots[i + 3]);
+		}
+	}
+
+	/**
+	 * Bounds the remainder of the bounds of the two arguments.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return left.bounds(x, y).combine(right.bounds(x, y), Modulo::moduloBounds);
+	}
+
+	/**
+	 * Bounds one channel of the remainder. A remainder lies between zero and
+	 * the dividend and is smaller than the divisor, and a zero divisor leaves
+	 * the dividend as it is.
+	 */
+	public static Interval moduloBounds(Interval dividend, Interval divisor) {
+		if (!dividend.isFinite() || !divisor.isFinite()) {
+			return Interval.UNKNOWN;
+		}
+		double min = Math.min(dividend.getMin(), 0);
+		double max = Math.max(dividend.getMax(), 0);
+		if (!divisor.contains(0)) {
+			double largest = Math.max(-divisor.getMin(), divisor.getMax());
+			double smallest = Math.min(Math.abs(divisor.getMin()), Math.abs(divisor.getMax()));
+			if (Math.max(-dividend.getMin(), dividend.getMax()) < smallest) {
+				// every dividend is its own remainder
+				return dividend;
+			}
+			min = Math.max(min, -largest);
+			max = Math.min(max, largest);
+		}
+		return Interval.of(min, max);
+	}
+
+	@Override
+	public int getSlotCount() {
+		return Math.max(left.getSlotCount(), 3 + right.getSlotCount());
+	}
 	
+	/**
+	 * Takes the remainder of one channel by another, leaving the channel
+	 * unchanged when the divisor is 0
+	 * 
+	 * @param dividend the channel of the left argument
+	 * @param divisor  the channel of the right argument
+	 * @return the channel of the remainder
+	 */
+	public static double modulo(double dividend, double divisor) {
+		return divisor != 0 ? dividend % divisor : dividend;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), left, right);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o == this) {
@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /** 
  * Represents the not function in picasso
@@ -32,4 +35,37 @@ public class Not extends UnaryFunction {
 		return new RGBColor(-result.getRed(), -result.getGreen(), -result.getBlue());
 	}
 
+	/**
+	 * Evaluates the negation of the function's parameter for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		param.evaluate(xs, ys, length, red, green, blue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = -red[i];
+			green[i] = -green[i];
+			blue[i] = -blue[i];
+		}
+	}
+
+	/**
+	 * Evaluates the negation of the function's parameter into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		param.evaluate(x, y, slots, slot);
+		slots[slot] = -slots[slot];
+		slots[slot + 1] = -slots[slot + 1];
+		slots[slot + 2] = -slots[slot + 2];
+	}
+
+	/**
+	 * Negates the bounds of the parameter.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return param.bounds(x, y).map(Interval::negate);
+	}
+
 }
@@ -2,6 +2,9 @@ package picasso.parser.language.expressions;
 
 import picasso.model.ImprovedNoise;
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents the perlinBW function in the Picasso language.
@@ -32,4 +35,66 @@ public class PerlinBW extends BinaryOperators {
 				left.getGreen() + right.getGreen(), left.getBlue() + right.getBlue());
 		return new RGBColor(grey, grey, grey);
 	}
+
+	/**
+	 * Uses improvedNoise to create the noisy distributions for a batch of points,
+	 * through the sampler of the buffers, which keeps the lattice cell of the
+	 * last point.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		double[] rightRed = buffers.acquire();
+		double[] rightGreen = buffers.acquire();
+		double[] rightBlue = buffers.acquire();
+		rightPara.evaluate(xs, ys, length, rightRed, rightGreen, rightBlue, buffers);
+		leftPara.evaluate(xs, ys, length, red, green, blue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] += rightRed[i];
+			green[i] += rightGreen[i];
+			blue[i] += rightBlue[i];
+		}
+		buffers.getNoise().noise(red, green, blue, red, length);
+		System.arraycopy(red, 0, green, 0, length);
+		System.arraycopy(red, 0, blue, 0, length);
+		buffers.release(3);
+	}
+
+	/**
+	 * Uses improvedNoise to create the noisy distributions into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		rightPara.evaluate(x, y, slots, slot);
+		leftPara.evaluate(x, y, slots, slot + 3);
+		double grey = ImprovedNoise.noise(slots[slot + 3] + slots[slot], slots[slot + 4] + slots[slot + 1],
+				slots[slot + 5] + slots[slot + 2]);
+		slots[slot] = grey;
+		slots[slot + 1] = grey;
+		slots[slot + 2] = grey;
+	}
+
+	/**
+	 * Bounds the noise of the sum of the bounds of the two arguments.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		ColorInterval right = rightPara.bounds(x, y);
+		ColorInterval left = leftPara.bounds(x, y);
+		ColorInterval sum = left.combine(right, Interval::add);
+		return ColorInterval.grey(noiseBounds(sum.getRed(), sum.getGreen(), sum.getBlue()));
+	}
+
+	/**
+	 * Bounds ImprovedNoise.noise over a box. Noise blends gradients of at most
+	 * 2 in size, so apart from rounding it never leaves [-2, 2].
+	 */
+	public static Interval noiseBounds(Interval x, Interval y, Interval z) {
+		if (x.isPoint() && y.isPoint() && z.isPoint()) {
+			return Interval.point(ImprovedNoise.noise(x.getMin(), y.getMin(), z.getMin()));
+		} else if (!x.isFinite() || !y.isFinite() || !z.isFinite()) {
+			return Interval.UNKNOWN;
+		}
+		return Interval.of(-3, 3);
+	}
 }
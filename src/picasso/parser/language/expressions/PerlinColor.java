@@ -1,7 +1,11 @@
 package picasso.parser.language.expressions;
 
-import picasso.model.ImprovedNoise;
+import picasso.model.CoherentNoise;
+import picasso.model.PlanarNoise;
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents the perlinColor function in the Picasso language.
@@ -20,7 +24,8 @@ public class PerlinColor extends BinaryOperators {
 	}
 	
 	/**
-	 * This function uses improvedNoise to create the noisy distributions
+	 * This function uses improvedNoise on the plane z = 0 to create the noisy
+	 * distributions
 	 * 
 	 *  @return the color from PerlinColor
 	 */
@@ -28,10 +33,62 @@ public class PerlinColor extends BinaryOperators {
 	public RGBColor evaluate(double x, double y) { 
 		RGBColor right = rightPara.evaluate(x, y);
 		RGBColor left = leftPara.evaluate(x, y);
-		double red = ImprovedNoise.noise(left.getRed() + 0.3, right.getRed() + 0.3, 0);
-		double green = ImprovedNoise.noise(left.getGreen() - 0.8 , right.getGreen() - 0.8, 0);
-		double blue = ImprovedNoise.noise(left.getBlue() + 0.1, right.getBlue() + 0.1, 0);
+		double red = PlanarNoise.noise(left.getRed() + 0.3, right.getRed() + 0.3);
+		double green = PlanarNoise.noise(left.getGreen() - 0.8 , right.getGreen() - 0.8);
+		double blue = PlanarNoise.noise(left.getBlue() + 0.1, right.getBlue() + 0.1);
 		return new RGBColor(red, green, blue);
 		
 	}
+
+	/**
+	 * Uses improvedNoise to create the noisy distributions for a batch of points,
+	 * a channel at a time, so that the sampler of the buffers keeps one lattice
+	 * cell for runs of neighboring points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		double[] rightRed = buffers.acquire();
+		double[] rightGreen = buffers.acquire();
+		double[] rightBlue = buffers.acquire();
+		rightPara.evaluate(xs, ys, length, rightRed, rightGreen, rightBlue, buffers);
+		leftPara.evaluate(xs, ys, length, red, green, blue, buffers);
+		CoherentNoise noise = buffers.getNoise();
+		noise.noise(red, rightRed, 0.3, red, length);
+		noise.noise(green, rightGreen, -0.8, green, length);
+		noise.noise(blue, rightBlue, 0.1, blue, length);
+		buffers.release(3);
+	}
+
+	/**
+	 * Uses improvedNoise to create the noisy distributions into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		rightPara.evaluate(x, y, slots, slot);
+		leftPara.evaluate(x, y, slots, slot + 3);
+		double red = PlanarNoise.noise(slots[slot + 3] + 0.3, slots[slot] + 0.3);
+		double green = PlanarNoise.noise(slots[slot + 4] - 0.8, slots[slot + 1] - 0.8);
+		double blue = PlanarNoise.noise(slots[slot + 5] + 0.1, slots[slot + 2] + 0.1);
+		slots[slot] = red;
+		slots[slot + 1] = green;
+		slots[slot + 2] = blue;
+	}
+
+	/**
+	 * Bounds the noise of each channel of the two arguments.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		ColorInterval right = rightPara.bounds(x, y);
+		ColorInterval left = leftPara.bounds(x, y);
+		Interval zero = Interval.point(0);
+		return new ColorInterval(
+				PerlinBW.noiseBounds(left.getRed().add(Interval.point(0.3)), right.getRed().add(Interval.point(0.3)),
+						zero),
+				PerlinBW.noiseBounds(left.getGreen().subtract(Interval.point(0.8)),
+						right.getGreen().subtract(Interval.point(0.8)), zero),
+				PerlinBW.noiseBounds(left.getBlue().add(Interval.point(0.1)), right.getBlue().add(Interval.point(0.1)),
+						zero));
+	}
 }
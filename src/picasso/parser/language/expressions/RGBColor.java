@@ -1,8 +1,13 @@
 package picasso.parser.language.expressions;
 
 import java.awt.Color;
+import java.util.Arrays;
+import java.util.Objects;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Special color class for Picasso. Represents colors by their red, green, and
@@ -62,9 +67,37 @@ public class RGBColor extends ExpressionTreeNode {
 		myBlue = clamp(myBlue);
 	}
 
+	/**
+	 * Returns the Java color for this color, with each component clamped to
+	 * [-1, 1]. This color itself is not changed, so literal colors in an
+	 * expression tree can be converted from several threads at once.
+	 * 
+	 * @return the Java color
+	 */
 	public Color toJavaColor() {
-		clamp();
-		return new Color(toInt(myRed), toInt(myGreen), toInt(myBlue));
+		return new Color(toInt(clamp(myRed)), toInt(clamp(myGreen)), toInt(clamp(myBlue)));
+	}
+
+	/**
+	 * Returns the packed RGB value of a color with the given components. This is
+	 * the same value as toJavaColor().getRGB() but creates no objects.
+	 * 
+	 * @param red   the red component, on a scale of [-1, 1]
+	 * @param green the green component, on a scale of [-1, 1]
+	 * @param blue  the blue component, on a scale of [-1, 1]
+	 * @return the packed, opaque RGB value of the clamped color
+	 */
+	public static int toRGB(double red, double green, double blue) {
+		return 0xFF000000 | (toInt(clamp(red)) << 16) | (toInt(clamp(green)) << 8) | toInt(clamp(blue));
+	}
+
+	/**
+	 * Equal colors have the same hash code. Channels are compared with ==, so
+	 * 0.0 and -0.0 are equal and zeros are hashed without their sign.
+	 */
+	@Override
+	public int hashCode() {
+		return Objects.hash(myRed + 0.0, myGreen + 0.0, myBlue + 0.0);
 	}
 
 	public boolean equals(Object o) {
@@ -116,4 +149,33 @@ public class RGBColor extends ExpressionTreeNode {
 	public RGBColor evaluate(double x, double y) {
 		return this;
 	}
+
+	/**
+	 * Fills the batch with this color.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		Arrays.fill(red, 0, length, myRed);
+		Arrays.fill(green, 0, length, myGreen);
+		Arrays.fill(blue, 0, length, myBlue);
+	}
+
+	/**
+	 * Stores this color into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		slots[slot] = myRed;
+		slots[slot + 1] = myGreen;
+		slots[slot + 2] = myBlue;
+	}
+
+	/**
+	 * A color is the same everywhere.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return ColorInterval.point(myRed, myGreen, myBlue);
+	}
 }
@@ -1,15 +1,63 @@
 package picasso.parser.language.expressions;
 
+import java.util.Objects;
+
+import picasso.model.PixelRandom;
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 
 /**
- * Random evaluator class
+ * Random evaluator class. Each channel at each point is a hash of the seed of
+ * the render, which random() call of the expression this is and the point, so
+ * the same seed always draws the same image and threads share no generator.
  * @author Zachary Moore
  */
 public class Random extends ExpressionTreeNode {
+	public static final long DEFAULT_SEED = 0;
+
+	private long mySeed;
+	private int myStream;
+	private long myKey;
 
 	public Random() {
+		this(DEFAULT_SEED, 0);
+	}
+
+	/**
+	 * @param seed   the seed of the render
+	 * @param stream which random() call of the expression this is, counting
+	 *               from 0, so that calls give different numbers
+	 */
+	public Random(long seed, int stream) {
+		mySeed = seed;
+		myStream = stream;
+		myKey = PixelRandom.key(seed, stream);
+	}
+
+	public long getSeed() {
+		return mySeed;
+	}
+
+	public int getStream() {
+		return myStream;
+	}
+
+	/**
+	 * Returns the key that PixelRandom hashes with the points
+	 */
+	public long getKey() {
+		return myKey;
+	}
+
+	/**
+	 * Returns the call with the given seed and stream, which is this one if it
+	 * already has them
+	 */
+	public Random withSeed(long seed, int stream) {
+		return seed == mySeed && stream == myStream ? this : new Random(seed, stream);
 	}
 
 	/**
@@ -20,13 +68,65 @@ public class Random extends ExpressionTreeNode {
 	 */
 	@Override
 	public RGBColor evaluate(double x, double y) {
-		
-		double red = 2 * Math.random() - 1;
-		double green = 2 * Math.random() - 1;
-		double blue = 2 * Math.random() - 1;
-		
+
+		double red = PixelRandom.random(myKey, 0, x, y);
+		double green = PixelRandom.random(myKey, 1, x, y);
+		double blue = PixelRandom.random(myKey, 2, x, y);
+
 		return new RGBColor(red,green,blue);
 
 	}
 
+	/**
+	 * Fills the batch with randomly generated colors.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		PixelRandom.random(myKey, xs, ys, red, green, blue, length);
+	}
+
+	/**
+	 * Stores a randomly generated color into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		slots[slot] = PixelRandom.random(myKey, 0, x, y);
+		slots[slot + 1] = PixelRandom.random(myKey, 1, x, y);
+		slots[slot + 2] = PixelRandom.random(myKey, 2, x, y);
+	}
+
+	/**
+	 * Random numbers are at least -1 and less than 1.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return ColorInterval.grey(Interval.of(-1, 1));
+	}
+
+	/**
+	 * Calls with the same seed and stream draw the same numbers
+	 */
+	@Override
+	public int hashCode() {
+		return Objects.hash(Random.class, mySeed, myStream);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof Random)) {
+			return false;
+		}
+		Random other = (Random) obj;
+		return mySeed == other.mySeed && myStream == other.myStream;
+	}
+
+	@Override
+	public String toString() {
+		return "random(" + mySeed + ", " + myStream + ")";
+	}
+
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 
 /**
@@ -35,4 +38,51 @@ public class RgbToYCrCb extends UnaryFunction {
 		return new RGBColor(red, green, blue); 
 	}
 
+	/**
+	 * Evaluates the rgbToYCrCb of the function's parameter for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		param.evaluate(xs, ys, length, red, green, blue, buffers);
+		for (int i = 0; i < length; i++) {
+			double r = red[i];
+			double g = green[i];
+			double b = blue[i];
+			red[i] = r * 0.2989 + g * 0.5866 + b * 0.1145;
+			green[i] = r * -0.1687 + g * -0.3312 + b * 0.5;
+			blue[i] = r * 0.5 + g * -0.4183 + b * -0.0816;
+		}
+	}
+
+	/**
+	 * Evaluates the rgbToYCrCb of the function's parameter into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		param.evaluate(x, y, slots, slot);
+		double r = slots[slot];
+		double g = slots[slot + 1];
+		double b = slots[slot + 2];
+		slots[slot] = r * 0.2989 + g * 0.5866 + b * 0.1145;
+		slots[slot + 1] = r * -0.1687 + g * -0.3312 + b * 0.5;
+		slots[slot + 2] = r * 0.5 + g * -0.4183 + b * -0.0816;
+	}
+
+	/**
+	 * Bounds each channel of the conversion, with the same arithmetic in the
+	 * same order as evaluating.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		ColorInterval color = param.bounds(x, y);
+		return new ColorInterval(combination(color, 0.2989, 0.5866, 0.1145),
+				combination(color, -0.1687, -0.3312, 0.5), combination(color, 0.5, -0.4183, -0.0816));
+	}
+
+	private static Interval combination(ColorInterval color, double red, double green, double blue) {
+		return color.getRed().multiply(Interval.point(red)).add(color.getGreen().multiply(Interval.point(green)))
+				.add(color.getBlue().multiply(Interval.point(blue)));
+	}
+
 }
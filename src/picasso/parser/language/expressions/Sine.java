@@ -1,6 +1,11 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import java.util.function.DoubleUnaryOperator;
+
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 
 /**
@@ -36,4 +41,83 @@ public class Sine extends UnaryFunction {
 
 		return new RGBColor(red, green, blue);
 	}
+
+	/**
+	 * Evaluates the sine of the function's parameter for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		param.evaluate(xs, ys, length, red, green, blue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = Math.sin(red[i]);
+			green[i] = Math.sin(green[i]);
+			blue[i] = Math.sin(blue[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the sine of the function's parameter into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		param.evaluate(x, y, slots, slot);
+		slots[slot] = Math.sin(slots[slot]);
+		slots[slot + 1] = Math.sin(slots[slot + 1]);
+		slots[slot + 2] = Math.sin(slots[slot + 2]);
+	}
+
+	/**
+	 * Bounds the sine of the bounds of the parameter.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return param.bounds(x, y).map(value -> sinusoidBounds(value, Math.PI / 2, Math::sin));
+	}
+
+	/**
+	 * Bounds a function shaped like sine: 1 at peak + 2k pi, -1 half a period
+	 * later and monotonic in between. Math.sin and Math.cos are semi-monotonic,
+	 * so away from their turning points the ends of the range bound them.
+	 *
+	 * @param value    the range of arguments
+	 * @param peak     an argument where the function is 1
+	 * @param function the function
+	 * @return the bounds of the function over the range
+	 */
+	public static Interval sinusoidBounds(Interval value, double peak, DoubleUnaryOperator function) {
+		if (!value.isFinite()) {
+			// the sine of an infinity is NaN
+			return Interval.UNKNOWN;
+		}
+		long[] turns = multiplesOfPi(value, peak);
+		if (turns == null || turns[1] - turns[0] >= 2) {
+			return Interval.of(-1, 1);
+		}
+		double first = function.applyAsDouble(value.getMin());
+		double last = function.applyAsDouble(value.getMax());
+		double min = Math.min(first, last);
+		double max = Math.max(first, last);
+		for (long k = turns[0]; k <= turns[1]; k++) {
+			if (k % 2 == 0) {
+				max = 1;
+			} else {
+				min = -1;
+			}
+		}
+		return Interval.of(min, max);
+	}
+
+	/**
+	 * Returns the first and last k for which offset + k pi may lie in the
+	 * finite range, allowing for the rounding of pi and of the division, or
+	 * null if the range is too far from zero to tell
+	 */
+	static long[] multiplesOfPi(Interval value, double offset) {
+		if (Math.abs(value.getMin()) > 1e6 || Math.abs(value.getMax()) > 1e6) {
+			return null;
+		}
+		return new long[] { (long) Math.ceil((value.getMin() - offset) / Math.PI - 1e-6),
+				(long) Math.floor((value.getMax() - offset) / Math.PI + 1e-6) };
+	}
 }
\ No newline at end of file
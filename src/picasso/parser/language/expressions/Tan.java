@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Tan evaluator class
@@ -34,4 +37,52 @@ public class Tan extends UnaryFunction {
 		return new RGBColor(red, green, blue);
 	}
 
+	/**
+	 * Evaluates the tangent of the function's parameter for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		param.evaluate(xs, ys, length, red, green, blue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = Math.tan(red[i]);
+			green[i] = Math.tan(green[i]);
+			blue[i] = Math.tan(blue[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the tangent of the function's parameter into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		param.evaluate(x, y, slots, slot);
+		slots[slot] = Math.tan(slots[slot]);
+		slots[slot + 1] = Math.tan(slots[slot + 1]);
+		slots[slot + 2] = Math.tan(slots[slot + 2]);
+	}
+
+	/**
+	 * Bounds the tangent of the bounds of the parameter.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return param.bounds(x, y).map(Tan::tanBounds);
+	}
+
+	/**
+	 * Bounds one channel of the tangent, which increases between its poles at
+	 * pi / 2 + k pi
+	 */
+	public static Interval tanBounds(Interval value) {
+		if (!value.isFinite()) {
+			return Interval.UNKNOWN;
+		}
+		long[] poles = Sine.multiplesOfPi(value, Math.PI / 2);
+		if (poles == null || poles[0] <= poles[1]) {
+			return Interval.of(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+		}
+		return value.map(Math::tan);
+	}
+
 }
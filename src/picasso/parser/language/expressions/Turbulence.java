@@ -0,0 +1,42 @@
+package picasso.parser.language.expressions;
+
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Represents the turbulence function in the Picasso language: the sum of the
+ * magnitude of the noise of each octave.
+ *
+ * @author Mark Holden
+ */
+public class Turbulence extends FractalNoise {
+
+	/**
+	 * Create a turbulence expression
+	 *
+	 * @param leftPara  the x coordinate of each channel
+	 * @param rightPara the y coordinate of each channel
+	 * @param octaves   the number of octaves, from 1 to MAX_OCTAVES
+	 */
+	public Turbulence(ExpressionTreeNode leftPara, ExpressionTreeNode rightPara, int octaves) {
+		this(leftPara, rightPara, octaves, false);
+	}
+
+	private Turbulence(ExpressionTreeNode leftPara, ExpressionTreeNode rightPara, int octaves, boolean quantized) {
+		super(leftPara, rightPara, octaves, quantized);
+	}
+
+	@Override
+	protected boolean isAbsolute() {
+		return true;
+	}
+
+	@Override
+	public FractalNoise rebuild(ExpressionTreeNode leftPara, ExpressionTreeNode rightPara) {
+		return new Turbulence(leftPara, rightPara, getOctaves(), isQuantized());
+	}
+
+	@Override
+	public FractalNoise quantized() {
+		return new Turbulence(leftPara, rightPara, getOctaves(), true);
+	}
+}
@@ -1,5 +1,8 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+import java.util.Objects;
+
 import picasso.parser.language.ExpressionTreeNode;
 
 /**
@@ -21,6 +24,25 @@ public abstract class UnaryFunction extends ExpressionTreeNode {
 		this.param = param;
 	}
 
+	/**
+	 * Returns the function's parameter
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(param);
+	}
+
+	/**
+	 * The parameter is evaluated into the function's own slots and transformed in
+	 * place, so the function needs no more slots than its parameter.
+	 * 
+	 * @see picasso.parser.language.ExpressionTreeNode#getSlotCount()
+	 */
+	@Override
+	public int getSlotCount() {
+		return param.getSlotCount();
+	}
+
 	/**
 	 * Returns the string representation of the function in the format "<ClassName>:
 	 * <parameter>"
@@ -33,6 +55,11 @@ public abstract class UnaryFunction extends ExpressionTreeNode {
 		return classname.substring(classname.lastIndexOf(".") + 1) + "(" + param + ")";
 	}
 
+	@Override
+	public int hashCode() {
+		return Objects.hash(getClass(), param);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (o == this) {
@@ -1,6 +1,11 @@
 package picasso.parser.language.expressions;
 
+import java.util.List;
+
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents a word expression in the Picasso language.
@@ -23,6 +28,14 @@ public class Word extends ExpressionTreeNode {
 		this.word = word;
 	}
 
+	/**
+	 * Returns the expression the word names
+	 */
+	@Override
+	public List<ExpressionTreeNode> getChildren() {
+		return List.of(word);
+	}
+
 	/**
 	 * Evaluates this expression at the given x,y
 	 * 
@@ -37,6 +50,36 @@ public class Word extends ExpressionTreeNode {
 
 		return new RGBColor(red, green, blue);
 	}
+
+	/**
+	 * Evaluates the word expression for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		word.evaluate(xs, ys, length, red, green, blue, buffers);
+	}
+
+	/**
+	 * Evaluates the word expression into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		word.evaluate(x, y, slots, slot);
+	}
+
+	/**
+	 * Bounds the expression the word names.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return word.bounds(x, y);
+	}
+
+	@Override
+	public int getSlotCount() {
+		return word.getSlotCount();
+	}
 	
 	public ExpressionTreeNode getWord() {
 		return this.word;
@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents the wrap function in the Picasso language. 
@@ -32,6 +35,57 @@ public class Wrap extends UnaryFunction {
 		double blue = wrap(result.getBlue());
 		return new RGBColor(red, green, blue);
 	}
+
+	/**
+	 * Evaluates the wrap of the function's parameter for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		param.evaluate(xs, ys, length, red, green, blue, buffers);
+		for (int i = 0; i < length; i++) {
+			red[i] = wrap(red[i]);
+			green[i] = wrap(green[i]);
+			blue[i] = wrap(blue[i]);
+		}
+	}
+
+	/**
+	 * Evaluates the wrap of the function's parameter into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		param.evaluate(x, y, slots, slot);
+		slots[slot] = wrap(slots[slot]);
+		slots[slot + 1] = wrap(slots[slot + 1]);
+		slots[slot + 2] = wrap(slots[slot + 2]);
+	}
+
+	/**
+	 * Bounds the wrap of the bounds of the parameter.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return param.bounds(x, y).map(Wrap::wrapBounds);
+	}
+
+	/**
+	 * Bounds one channel of the wrap. Within a period of num % 2, and on one
+	 * side of zero, wrap increases with num.
+	 */
+	public static Interval wrapBounds(Interval value) {
+		if (!value.isFinite()) {
+			return Interval.UNKNOWN;
+		}
+		double low = value.getMin() + 3;
+		double high = value.getMax() + 3;
+		if (low >= 0 ? Math.floor(low / 2) == Math.floor(high / 2)
+				: high < 0 && Math.ceil(low / 2) == Math.ceil(high / 2)) {
+			return value.map(Wrap::wrap);
+		}
+		// a negative num % 2 takes wrap below -1
+		return Interval.of(low >= 0 ? -1 : -3, 1);
+	}
 	
 	public static double wrap(double num) { 
 		num += 3;
@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents x in a Picasso expression
@@ -19,6 +22,43 @@ public class X extends ExpressionTreeNode {
 		return new RGBColor(x, x, x);
 	}
 
+	/**
+	 * Returns the colors represented by x for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		System.arraycopy(xs, 0, red, 0, length);
+		System.arraycopy(xs, 0, green, 0, length);
+		System.arraycopy(xs, 0, blue, 0, length);
+	}
+
+	/**
+	 * Stores the color represented by x into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		slots[slot] = x;
+		slots[slot + 1] = x;
+		slots[slot + 2] = x;
+	}
+
+	/**
+	 * Every channel of x lies in the x range.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return ColorInterval.grey(x);
+	}
+
+	/**
+	 * All Xs are equal, so they share one hash code
+	 */
+	@Override
+	public int hashCode() {
+		return X.class.hashCode();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 /**
  * Represents y in a Picasso expression
@@ -19,6 +22,43 @@ public class Y extends ExpressionTreeNode {
 		return new RGBColor(y, y, y);
 	}
 
+	/**
+	 * Returns the colors represented by y for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		System.arraycopy(ys, 0, red, 0, length);
+		System.arraycopy(ys, 0, green, 0, length);
+		System.arraycopy(ys, 0, blue, 0, length);
+	}
+
+	/**
+	 * Stores the color represented by y into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		slots[slot] = y;
+		slots[slot + 1] = y;
+		slots[slot + 2] = y;
+	}
+
+	/**
+	 * Every channel of y lies in the y range.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		return ColorInterval.grey(y);
+	}
+
+	/**
+	 * All Ys are equal, so they share one hash code
+	 */
+	@Override
+	public int hashCode() {
+		return Y.class.hashCode();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -1,6 +1,9 @@
 package picasso.parser.language.expressions;
 
 import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.Interval;
 
 
 /**
@@ -35,4 +38,49 @@ public class YCrCbToRGB extends UnaryFunction {
 		return new RGBColor(red, green, blue); 
 	}
 
+	/**
+	 * Evaluates the YCrCbToRGB of the function's parameter for a batch of points.
+	 */
+	@Override
+	public void evaluate(double[] xs, double[] ys, int length, double[] red, double[] green, double[] blue,
+			BatchBuffers buffers) {
+		param.evaluate(xs, ys, length, red, green, blue, buffers);
+		for (int i = 0; i < length; i++) {
+			double y = red[i];
+			double cr = green[i];
+			double cb = blue[i];
+			red[i] = y + cb * 1.4022;
+			green[i] = y + cr * -0.3456 + cb * -0.7145;
+			blue[i] = y + cr * 1.7710;
+		}
+	}
+
+	/**
+	 * Evaluates the YCrCbToRGB of the function's parameter into the given slots.
+	 */
+	@Override
+	public void evaluate(double x, double y, double[] slots, int slot) {
+		param.evaluate(x, y, slots, slot);
+		double luma = slots[slot];
+		double cr = slots[slot + 1];
+		double cb = slots[slot + 2];
+		slots[slot] = luma + cb * 1.4022;
+		slots[slot + 1] = luma + cr * -0.3456 + cb * -0.7145;
+		slots[slot + 2] = luma + cr * 1.7710;
+	}
+
+	/**
+	 * Bounds each channel of the conversion, with the same arithmetic in the
+	 * same order as evaluating.
+	 */
+	@Override
+	public ColorInterval bounds(Interval x, Interval y) {
+		ColorInterval color = param.bounds(x, y);
+		Interval luma = color.getRed();
+		return new ColorInterval(luma.add(color.getBlue().multiply(Interval.point(1.4022))),
+				luma.add(color.getGreen().multiply(Interval.point(-0.3456)))
+						.add(color.getBlue().multiply(Interval.point(-0.7145))),
+				luma.add(color.getGreen().multiply(Interval.point(1.7710))));
+	}
+
 }
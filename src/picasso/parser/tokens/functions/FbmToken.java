@@ -0,0 +1,14 @@
+package picasso.parser.tokens.functions;
+
+/**
+ * Represents the fbm function token
+ *
+ * @author Mark Holden
+ */
+public class FbmToken extends FunctionToken {
+
+	public FbmToken() {
+		super("Fbm Function Token");
+	}
+
+}
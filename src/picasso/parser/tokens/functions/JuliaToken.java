@@ -0,0 +1,14 @@
+package picasso.parser.tokens.functions;
+
+/**
+ * Represents the julia function token
+ *
+ * @author Mark Holden
+ */
+public class JuliaToken extends FunctionToken {
+
+	public JuliaToken() {
+		super("Julia Function Token");
+	}
+
+}
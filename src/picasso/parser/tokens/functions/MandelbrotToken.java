@@ -0,0 +1,14 @@
+package picasso.parser.tokens.functions;
+
+/**
+ * Represents the mandelbrot function token
+ *
+ * @author Mark Holden
+ */
+public class MandelbrotToken extends FunctionToken {
+
+	public MandelbrotToken() {
+		super("Mandelbrot Function Token");
+	}
+
+}
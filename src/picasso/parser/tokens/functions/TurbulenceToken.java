@@ -0,0 +1,14 @@
+package picasso.parser.tokens.functions;
+
+/**
+ * Represents the turbulence function token
+ *
+ * @author Mark Holden
+ */
+public class TurbulenceToken extends FunctionToken {
+
+	public TurbulenceToken() {
+		super("Turbulence Function Token");
+	}
+
+}
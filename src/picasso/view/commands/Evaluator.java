@@ -1,9 +1,11 @@
 package picasso.view.commands;
 
-import java.awt.Color;
-import java.awt.Dimension;
 import java.util.ArrayList;
 
+import picasso.engine.RenderEngines;
+import picasso.engine.RenderPlan;
+import picasso.engine.RenderPlanner;
+import picasso.engine.TiledRenderer;
 import picasso.model.Pixmap;
 import picasso.parser.ExpressionTreeGenerator;
 import picasso.parser.language.ExpressionTreeNode;
@@ -20,6 +22,61 @@ public class Evaluator implements Command<Pixmap> {
 	public static final double DOMAIN_MIN = -1;
 	public static final double DOMAIN_MAX = 1;
 	public String s;
+	private TiledRenderer myRenderer;
+
+	/**
+	 * Create an evaluator that renders in parallel on the common pool, with the
+	 * tile size, engine and preview of each render planned from its predicted
+	 * cost
+	 */
+	public Evaluator() {
+		this(new TiledRenderer());
+		myRenderer.setPlanner(new RenderPlanner());
+	}
+
+	/**
+	 * Create an evaluator that renders with the given renderer
+	 * 
+	 * @param renderer decides the thread count and tile size of a render
+	 */
+	public Evaluator(TiledRenderer renderer) {
+		myRenderer = renderer;
+	}
+
+	public TiledRenderer getRenderer() {
+		return myRenderer;
+	}
+
+	public void setRenderer(TiledRenderer renderer) {
+		myRenderer = renderer;
+	}
+
+	/**
+	 * Choose the engine that computes the pixels, such as "batch", "compiled",
+	 * "vm" or "tiered", which interprets the first rows while it compiles
+	 * 
+	 * @param name the name of the engine
+	 * @throws IllegalArgumentException if there is no engine with that name
+	 */
+	public void setEngine(String name) {
+		myRenderer.setEngine(RenderEngines.create(name));
+		// the planner may still choose the tile size and preview
+		if (myRenderer.getPlanner() != null) {
+			myRenderer.getPlanner().setChoosingEngine(false);
+		}
+	}
+
+	/**
+	 * Predict how long the expression in the text would take to render into
+	 * the target, and how it would be rendered
+	 *
+	 * @param text   the expression
+	 * @param target the image it would be drawn into
+	 * @return the plan, with the predicted time
+	 */
+	public RenderPlan predict(String text, Pixmap target) {
+		return myRenderer.predict(createExpression(text), target.getSize());
+	}
 
 	/**
 	 * Evaluate an expression for each point in the image.
@@ -31,15 +88,7 @@ public class Evaluator implements Command<Pixmap> {
 		ExpressionTreeNode expr = createExpression(text);
 		// evaluate it for each pixel
 		if (expr != null) {
-			Dimension size = target.getSize();
-			for (int imageY = 0; imageY < size.height; imageY++) {
-				double evalY = imageToDomainScale(imageY, size.height);
-				for (int imageX = 0; imageX < size.width; imageX++) {
-					double evalX = imageToDomainScale(imageX, size.width);
-					Color pixelColor = expr.evaluate(evalX, evalY).toJavaColor();
-					target.setColor(imageX, imageY, pixelColor);
-				}
-			}
+			myRenderer.render(expr, target);
 		}
 	}
 	
@@ -49,15 +98,7 @@ public class Evaluator implements Command<Pixmap> {
 		ExpressionTreeNode expr = createExpression(text);
 		// evaluate it for each pixel
 		if (expr != null) {
-			Dimension size = target.getSize();
-			for (int imageY = 0; imageY < size.height; imageY++) {
-				double evalY = imageToDomainScale(imageY, size.height);
-				for (int imageX = 0; imageX < size.width; imageX++) {
-					double evalX = imageToDomainScale(imageX, size.width);
-					Color pixelColor = expr.evaluate(evalX, evalY).toJavaColor();
-					target.setColor(imageX, imageY, pixelColor);
-				}
-			}
+			myRenderer.render(expr, target);
 		}
 	}
 
@@ -65,8 +106,7 @@ public class Evaluator implements Command<Pixmap> {
 	 * Convert from image space to domain space.
 	 */
 	protected double imageToDomainScale(int value, int bounds) {
-		double range = DOMAIN_MAX - DOMAIN_MIN;
-		return ((double) value / bounds) * range + DOMAIN_MIN;
+		return TiledRenderer.imageToDomainScale(value, bounds);
 	}
 
 	/**
@@ -83,6 +123,8 @@ public class Evaluator implements Command<Pixmap> {
 		
 		ExpressionTreeGenerator expTreeGen = new ExpressionTreeGenerator();
 		
+		// the renderer optimizes the expression, or has its engine do it in
+		// the background
 		return expTreeGen.makeExpression(text);
 	}
 	
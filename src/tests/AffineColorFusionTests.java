@@ -0,0 +1,177 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.RenderEngines;
+import picasso.engine.TiledRenderer;
+import picasso.model.Pixmap;
+import picasso.parser.AffineColorFusion;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.RangeInference;
+import picasso.parser.language.AffineColorTransform;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that chains of affine color transforms are merged into matrices that
+ * compute the colors of the chains up to rounding
+ *
+ * @author Mark Holden
+ */
+public class AffineColorFusionTests {
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	/**
+	 * Compare the merged expression with the original one point at a time, into
+	 * slots and in batches, and check that the bounds of the merged expression
+	 * hold its colors
+	 */
+	private void assertCloseColors(ExpressionTreeNode expected, ExpressionTreeNode actual, double tolerance) {
+		int width = 9;
+		double[] xs = new double[width];
+		double[] ys = new double[width];
+		double[][] planes = new double[3][width];
+		double[] slots = new double[actual.getSlotCount()];
+		BatchBuffers buffers = new BatchBuffers(width);
+		ColorInterval range = new RangeInference().getRange(actual);
+		for (double y = -1; y <= 1; y += 0.25) {
+			for (int i = 0; i < width; i++) {
+				xs[i] = -1 + i * 0.25;
+				ys[i] = y;
+			}
+			actual.evaluate(xs, ys, width, planes[0], planes[1], planes[2], buffers);
+			for (int i = 0; i < width; i++) {
+				RGBColor want = expected.evaluate(xs[i], y);
+				RGBColor got = actual.evaluate(xs[i], y);
+				String where = expected + " at " + xs[i] + ", " + y;
+				assertEquals(want.getRed(), got.getRed(), tolerance, where);
+				assertEquals(want.getGreen(), got.getGreen(), tolerance, where);
+				assertEquals(want.getBlue(), got.getBlue(), tolerance, where);
+				actual.evaluate(xs[i], y, slots, 0);
+				assertEquals(got, new RGBColor(slots[0], slots[1], slots[2]), where);
+				assertEquals(got, new RGBColor(planes[0][i], planes[1][i], planes[2][i]), where);
+				assertTrue(range.getRed().contains(got.getRed()) && range.getGreen().contains(got.getGreen())
+						&& range.getBlue().contains(got.getBlue()), where);
+			}
+		}
+	}
+
+	@Test
+	public void testMergesChains() {
+		ExpressionTreeNode expr = parser.makeExpression("rgbToYCrCb((!(x * [0.5, 1, 0.25])) + 0.25) - y");
+		AffineColorFusion fusion = new AffineColorFusion();
+		ExpressionTreeNode fused = fusion.fuse(expr);
+		assertEquals(1, fusion.getChainCount());
+		assertEquals(Subtraction.class, fused.getClass());
+		ExpressionTreeNode matrix = fused.getChildren().get(0);
+		assertEquals(AffineColorTransform.class, matrix.getClass());
+		assertEquals(X.class, matrix.getChildren().get(0).getClass());
+		// -0.5 * 0.2989 red, then 0.25 * (0.2989 + 0.5866 + 0.1145)
+		double[][] weights = ((AffineColorTransform) matrix).getMatrix();
+		assertEquals(-0.5 * 0.2989, weights[0][0], 1e-15);
+		assertEquals(0.25, weights[0][3], 1e-15);
+		assertCloseColors(expr, fused, 1e-15);
+	}
+
+	@Test
+	public void testChainsMatchTree() {
+		String[] expressions = { "yCrCbToRGB([0.5, -1, 0.25] - sin(x) / [0.5, 0, -0.25])",
+				"!(0.5 - rgbToYCrCb(perlinColor(x, y) * 0.5))", "sin(yCrCbToRGB(rgbToYCrCb(x * y) * 0.5)) + x",
+				"rgbToYCrCb(rgbToYCrCb(rgbToYCrCb(cos(x + y))))" };
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			AffineColorFusion fusion = new AffineColorFusion();
+			ExpressionTreeNode fused = fusion.fuse(expr);
+			assertEquals(1, fusion.getChainCount(), expression);
+			assertCloseColors(expr, fused, 1e-14);
+		}
+	}
+
+	@Test
+	public void testCancelsConversionPairs() {
+		ExpressionTreeNode expr = parser.makeExpression("rgbToYCrCb(yCrCbToRGB(sin(x * y)))");
+		AffineColorFusion fusion = new AffineColorFusion();
+		ExpressionTreeNode fused = fusion.fuse(expr);
+		assertEquals(1, fusion.getCancelledCount());
+		assertEquals(Sine.class, fused.getClass());
+		assertCloseColors(expr, fused, AffineColorFusion.TOLERANCE);
+		// large colors would move too far
+		fusion = new AffineColorFusion();
+		assertEquals(AffineColorTransform.class,
+				fusion.fuse(parser.makeExpression("rgbToYCrCb(yCrCbToRGB(exp(x) * [1, 1, 0.5]))")).getClass());
+		assertEquals(0, fusion.getCancelledCount());
+	}
+
+	@Test
+	public void testLeavesSingleTransformsAndInfiniteArguments() {
+		String[] expressions = { "rgbToYCrCb(x) + y", "(!x) * y", "rgbToYCrCb(!(x / y))", "!(x / y - 0.5)" };
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			AffineColorFusion fusion = new AffineColorFusion();
+			assertSame(expr, fusion.fuse(expr), expression);
+			assertEquals(0, fusion.getChainCount() + fusion.getCancelledCount(), expression);
+		}
+	}
+
+	@Test
+	public void testEnginesReportMerging() {
+		try (TiledRenderer renderer = new TiledRenderer(1, 16)) {
+			renderer.setEngine(RenderEngines.create("affine"));
+			renderer.setBounding(false);
+			renderer.render(parser.makeExpression("yCrCbToRGB(x * y + 0.5) - sin(cos(y))"),
+					new Pixmap(new Dimension(20, 20)));
+			String report = renderer.getLastReport();
+			assertTrue(report.contains("1 color transform chain merged, 1 function chain fused"), report);
+		}
+	}
+
+	private static int[] render(ExpressionTreeNode expr, String engine, Dimension size) {
+		try (TiledRenderer renderer = new TiledRenderer(2, 64)) {
+			renderer.setEngine(RenderEngines.create(engine));
+			renderer.setBounding(false);
+			renderer.setMirroring(false);
+			Pixmap image = new Pixmap(size);
+			renderer.render(expr, image);
+			int[] rgb = new int[size.width * size.height];
+			image.getRGB(0, 0, size.width, size.height, rgb);
+			return rgb;
+		}
+	}
+
+	/**
+	 * The default engines leave the chains alone and draw the unfused image
+	 * exactly; the affine engine, which merges them, moves pixels by at most a
+	 * step
+	 */
+	@Test
+	public void testFusedRenderMatchesUnfusedRender() {
+		Dimension size = new Dimension(300, 300);
+		String[] expressions = { "rgbToYCrCb(yCrCbToRGB(x + y))", "yCrCbToRGB(rgbToYCrCb(sin(x * y)))",
+				"!(0.5 - rgbToYCrCb(perlinColor(x, y) * 0.5))" };
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			int[] unfused = render(expr, "tree", size);
+			assertArrayEquals(unfused, render(expr, "batch", size), expression);
+			assertArrayEquals(unfused, render(expr, "scalar", size), expression);
+			int[] fused = render(expr, "affine", size);
+			for (int i = 0; i < unfused.length; i++) {
+				for (int shift = 0; shift < 24; shift += 8) {
+					assertEquals(unfused[i] >> shift & 0xFF, fused[i] >> shift & 0xFF, 1, expression + " at " + i);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that evaluating a batch of points, or a point into slots, gives exactly
+ * the same colors as evaluating the points one at a time
+ *
+ * @author Mark Holden
+ */
+public class BatchEvaluationTests {
+
+	private static final int LENGTH = 41;
+
+	private double[] xs;
+	private double[] ys;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		xs = new double[LENGTH];
+		ys = new double[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			// includes 0 exactly, which log treats specially
+			xs[i] = -1 + i * 0.05;
+			ys[i] = 1 - i * 0.05;
+		}
+		xs[LENGTH / 2] = 0;
+		ys[LENGTH / 2] = 0;
+	}
+
+	private void assertBatchMatchesScalar(ExpressionTreeNode expr) {
+		double[] red = new double[LENGTH];
+		double[] green = new double[LENGTH];
+		double[] blue = new double[LENGTH];
+		expr.evaluate(xs, ys, LENGTH, red, green, blue, new BatchBuffers(LENGTH));
+		for (int i = 0; i < LENGTH; i++) {
+			RGBColor expected = expr.evaluate(xs[i], ys[i]);
+			String where = expr + " at " + xs[i] + ", " + ys[i];
+			// compares bit patterns, so NaN results must match too
+			assertEquals(expected.getRed(), red[i], where);
+			assertEquals(expected.getGreen(), green[i], where);
+			assertEquals(expected.getBlue(), blue[i], where);
+		}
+		assertSlotsMatchScalar(expr);
+	}
+
+	private void assertSlotsMatchScalar(ExpressionTreeNode expr) {
+		// start past the beginning so that nodes must honor the slot they are given
+		int first = 2;
+		double[] slots = new double[first + expr.getSlotCount()];
+		for (int i = 0; i < LENGTH; i++) {
+			expr.evaluate(xs[i], ys[i], slots, first);
+			RGBColor expected = expr.evaluate(xs[i], ys[i]);
+			String where = expr + " in slots at " + xs[i] + ", " + ys[i];
+			assertEquals(expected.getRed(), slots[first], where);
+			assertEquals(expected.getGreen(), slots[first + 1], where);
+			assertEquals(expected.getBlue(), slots[first + 2], where);
+		}
+	}
+
+	@Test
+	public void testLeafBatches() {
+		assertBatchMatchesScalar(new X());
+		assertBatchMatchesScalar(new Y());
+		assertBatchMatchesScalar(new Constant(0.3));
+		assertBatchMatchesScalar(new RGBColor(0.1, -0.4, 1));
+		assertBatchMatchesScalar(new Image("vortex.jpg"));
+	}
+
+	@Test
+	public void testUnaryFunctionBatches() {
+		ExpressionTreeNode arg = new Addition(new Multiplication(new X(), new RGBColor(2, -3, 0.5)), new Y());
+		ExpressionTreeNode[] trees = { new Sine(arg), new Cos(arg), new Tan(arg), new Atan(arg), new Exp(arg),
+				new Log(arg), new Log(new Division(new X(), new Y())), new Floor(arg), new Ceil(arg), new Abs(arg),
+				new Clamp(arg), new Wrap(arg), new Not(arg), new RgbToYCrCb(arg), new YCrCbToRGB(arg),
+				new Word(arg) };
+		for (ExpressionTreeNode tree : trees) {
+			assertBatchMatchesScalar(tree);
+		}
+	}
+
+	@Test
+	public void testBinaryOperatorBatches() {
+		ExpressionTreeNode left = new Sine(new Multiplication(new X(), new RGBColor(3, 1, -2)));
+		ExpressionTreeNode right = new Subtraction(new Y(), new Floor(new X()));
+		ExpressionTreeNode[] trees = { new Addition(left, right), new Subtraction(left, right),
+				new Multiplication(left, right), new Division(left, right), new Division(left, new Floor(right)),
+				new Modulo(left, right), new Modulo(left, new Floor(right)), new Exponentiation(left, right),
+				new Exponentiation(new Floor(left), right), new PerlinColor(left, right), new PerlinBW(left, right),
+				new Assignment(new Variable("batch"), new Addition(left, right)) };
+		for (ExpressionTreeNode tree : trees) {
+			assertBatchMatchesScalar(tree);
+		}
+	}
+
+	@Test
+	public void testImageBatches() {
+		ExpressionTreeNode xExpr = new Multiplication(new X(), new RGBColor(2.5, 1, 0.5));
+		assertBatchMatchesScalar(new ImageWrap(new Image("vortex.jpg"), xExpr, new Y()));
+		assertBatchMatchesScalar(new ImageClip(new Image("vortex.jpg"), xExpr, new Not(new Y())));
+	}
+
+	@Test
+	public void testRandomBatchInRange() {
+		double[] red = new double[LENGTH];
+		double[] green = new double[LENGTH];
+		double[] blue = new double[LENGTH];
+		new Random().evaluate(xs, ys, LENGTH, red, green, blue, new BatchBuffers(LENGTH));
+		for (int i = 0; i < LENGTH; i++) {
+			assertTrue(red[i] >= -1 && red[i] <= 1);
+			assertTrue(green[i] >= -1 && green[i] <= 1);
+			assertTrue(blue[i] >= -1 && blue[i] <= 1);
+		}
+	}
+
+	@Test
+	public void testSlotCountCoversDeepTrees() {
+		ExpressionTreeNode deep = new X();
+		for (int i = 0; i < 10; i++) {
+			deep = new Addition(new Y(), new Sine(deep));
+		}
+		assertEquals(33, deep.getSlotCount());
+		assertSlotsMatchScalar(deep);
+	}
+
+	@Test
+	public void testToJavaColorDoesNotClampColor() {
+		RGBColor color = new RGBColor(-3, 0.5, 2);
+		assertEquals(new java.awt.Color(0, 191, 255), color.toJavaColor());
+		assertEquals(-3, color.getRed());
+		assertEquals(2, color.getBlue());
+	}
+
+	@Test
+	public void testToRGBMatchesJavaColor() {
+		double[] values = { -2, -1, -0.99, -0.5, 0, 0.001, 0.5, 0.999, 1, 3, Double.NaN };
+		for (double red : values) {
+			for (double blue : values) {
+				RGBColor color = new RGBColor(red, 0.25, blue);
+				int expected = new RGBColor(red, 0.25, blue).toJavaColor().getRGB();
+				assertEquals(expected, RGBColor.toRGB(color.getRed(), color.getGreen(), color.getBlue()));
+			}
+		}
+	}
+}
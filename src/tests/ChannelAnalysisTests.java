@@ -0,0 +1,121 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.ExpressionProgram;
+import picasso.engine.RenderEngine;
+import picasso.engine.RenderEngines;
+import picasso.engine.RowEvaluator;
+import picasso.parser.ChannelAnalysis;
+import picasso.parser.CommonSubexpressions;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests finding monochrome subexpressions and the channels their consumers
+ * read, and that evaluating them one channel at a time gives the colors of
+ * the tree
+ *
+ * @author Mark Holden
+ */
+public class ChannelAnalysisTests {
+
+	private static final String[] ENGINES = { "tree", "batch", "scalar", "compiled", "vm", "simd" };
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	private boolean isMonochrome(String expression) {
+		ExpressionTreeNode expr = parser.makeExpression(expression);
+		return new ChannelAnalysis(expr).isMonochrome(expr);
+	}
+
+	/**
+	 * Render the expression a row at a time with every engine, over rows that
+	 * include x = 0 and y = 0, and compare with the tree pixel by pixel
+	 */
+	private void assertEnginesMatchTree(ExpressionTreeNode tree, ExpressionTreeNode prepared) {
+		int width = 17;
+		double[] xs = new double[width];
+		for (int i = 0; i < width; i++) {
+			xs[i] = (i - 8) / 8.0;
+		}
+		int[] rgb = new int[width];
+		for (String name : ENGINES) {
+			RenderEngine engine = RenderEngines.create(name);
+			RowEvaluator rows = engine.prepare(prepared).createRowEvaluator(width);
+			for (double y = -1; y <= 1; y += 0.25) {
+				rows.evaluateRow(xs, y, width, rgb, 0);
+				for (int i = 0; i < width; i++) {
+					RGBColor expected = tree.evaluate(xs[i], y);
+					assertEquals(RGBColor.toRGB(expected.getRed(), expected.getGreen(), expected.getBlue()), rgb[i],
+							name + " at " + xs[i] + ", " + y);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMonochrome() {
+		assertTrue(isMonochrome("x"));
+		assertTrue(isMonochrome("sin(x * y) + log(y) % 0.5"));
+		assertTrue(isMonochrome("[0.5, 0.5, 0.5] * x"));
+		assertTrue(isMonochrome("perlinBW(perlinColor(x, y), y)"));
+		assertFalse(isMonochrome("[0.5, 0.5, 1] * x"));
+		assertFalse(isMonochrome("[0, -0.0, 0]"));
+		assertFalse(isMonochrome("perlinColor(x, y)"));
+		assertFalse(isMonochrome("random()"));
+		assertFalse(isMonochrome("rgbToYCrCb(x)"));
+		assertFalse(isMonochrome("imageWrap(\"vortex.jpg\", x, y)"));
+	}
+
+	@Test
+	public void testDemand() {
+		ExpressionTreeNode expr = parser.makeExpression("sin(x) * y + perlinColor(cos(x), y)");
+		ChannelAnalysis channels = new ChannelAnalysis(expr);
+		ExpressionTreeNode product = expr.getChildren().get(0);
+		ExpressionTreeNode noise = expr.getChildren().get(1);
+		assertEquals(ChannelAnalysis.ALL, channels.getDemand(expr));
+		assertEquals(ChannelAnalysis.ALL, channels.getDemand(product));
+		// the grey product reads one channel of each factor
+		assertEquals(ChannelAnalysis.RED, channels.getDemand(product.getChildren().get(0)));
+		assertEquals(ChannelAnalysis.RED, channels.getDemand(product.getChildren().get(0).getChildren().get(0)));
+		// perlinColor reads every channel of its arguments
+		assertEquals(ChannelAnalysis.ALL, channels.getDemand(noise.getChildren().get(0)));
+		assertEquals(0, channels.getDemand(new X()));
+	}
+
+	@Test
+	public void testProgramComputesOneChannel() {
+		ExpressionProgram program = ExpressionProgram.lower(parser.makeExpression("perlinBW(sin(x), y)"));
+		// sin and noise of one channel, then splat the grey result
+		assertEquals(3, program.getInstructionCount());
+		assertTrue(program.toString().contains("perlinBW.mono"));
+		// the sine of the mixed color is computed for every channel
+		program = ExpressionProgram.lower(parser.makeExpression("sin(x + [0.5, 0.5, 1])"));
+		assertFalse(program.toString().contains(".mono"));
+	}
+
+	@Test
+	public void testEnginesMatchTree() {
+		String[] expressions = { "perlinBW(sin(x), log(y)) * [0.5, 0.5, 0.5] + perlinColor(x, cos(y))",
+				"imageWrap(\"vortex.jpg\", x * y, [0.1, 0.2, 0.3] + y) / (!x)",
+				"imageClip(\"vortex.jpg\", log(x), perlinBW(y, x))",
+				"exp(perlinBW(x, y)) ^ clamp(x - y) % (y + [-0.5, 0.25, 1])",
+				"perlinBW(x + 0.25, y) * atan(x / y)",
+				"sin(x * y) / y + sin(x * y) * rgbToYCrCb(sin(x * y))" };
+		for (String expression : expressions) {
+			ExpressionTreeNode tree = parser.makeExpression(expression);
+			assertEnginesMatchTree(tree, tree);
+			assertEnginesMatchTree(tree, new CommonSubexpressions().share(tree));
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import picasso.model.CoherentNoise;
+import picasso.model.ImprovedNoise;
+import picasso.model.PlanarNoise;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * Tests that the noise sampler that keeps its last lattice cell gives the
+ * noise of ImprovedNoise and PlanarNoise wherever the points go, and hashes
+ * the corners of a cell once per run of points inside it
+ *
+ * @author Mark Holden
+ */
+public class CoherentNoiseTests {
+
+	private static final int LENGTH = 600;
+
+	private static final double[] EDGES = { 0.0, -0.0, 0.5, -0.5, 1, -1, 255.75, -255.75, 256.25, 2147483647.5,
+			-2147483648.5, 3e9, 1e300, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN };
+
+	@Test
+	public void testRowMatchesImprovedNoise() {
+		CoherentNoise noise = new CoherentNoise();
+		for (int row = 0; row < 20; row++) {
+			double y = -1 + row * 0.1;
+			for (int i = 0; i < LENGTH; i++) {
+				double x = -1 + 2.0 * i / LENGTH;
+				assertEquals(ImprovedNoise.noise(x + y, y * 0.7, x - y), noise.noise(x + y, y * 0.7, x - y),
+						"noise at " + x + ", " + y);
+				assertEquals(PlanarNoise.noise(x * 3, y), noise.noise(x * 3, y), "planar noise at " + x + ", " + y);
+			}
+		}
+		// a row visits a handful of cells, whose corners are hashed once each
+		assertTrue(noise.getMisses() < noise.getSamples() / 20, noise.getMisses() + " misses");
+	}
+
+	@Test
+	public void testScatteredPointsMatchImprovedNoise() {
+		CoherentNoise noise = new CoherentNoise();
+		java.util.Random random = new java.util.Random(LENGTH);
+		for (int i = 0; i < LENGTH; i++) {
+			double x = random.nextDouble() * 1000 - 500;
+			double y = random.nextDouble() * 1000 - 500;
+			double z = random.nextDouble() * 1000 - 500;
+			assertEquals(ImprovedNoise.noise(x, y, z), noise.noise(x, y, z), "noise at " + x + ", " + y + ", " + z);
+			assertEquals(PlanarNoise.noise(x, y), noise.noise(x, y), "planar noise at " + x + ", " + y);
+		}
+		for (double x : EDGES) {
+			for (double y : EDGES) {
+				assertEquals(ImprovedNoise.noise(x, y, x), noise.noise(x, y, x), "noise at " + x + ", " + y);
+				assertEquals(PlanarNoise.noise(x, y), noise.noise(x, y), "planar noise at " + x + ", " + y);
+			}
+		}
+	}
+
+	@Test
+	public void testBatchesMatchTree() {
+		ExpressionTreeGenerator parser = new ExpressionTreeGenerator();
+		String[] expressions = { "perlinBW(x, y) + perlinColor(y, x)", "perlinColor(x * y, sin(x)) * perlinBW(y, x)" };
+		double[] xs = new double[LENGTH];
+		double[] ys = new double[LENGTH];
+		double[] red = new double[LENGTH];
+		double[] green = new double[LENGTH];
+		double[] blue = new double[LENGTH];
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			BatchBuffers buffers = new BatchBuffers(LENGTH);
+			for (int row = 0; row < 10; row++) {
+				for (int i = 0; i < LENGTH; i++) {
+					xs[i] = -1 + 2.0 * i / LENGTH;
+					ys[i] = -1 + row * 0.2;
+				}
+				expr.evaluate(xs, ys, LENGTH, red, green, blue, buffers);
+				for (int i = 0; i < LENGTH; i++) {
+					RGBColor expected = expr.evaluate(xs[i], ys[i]);
+					assertEquals(expected.getRed(), red[i], 1e-12, expression);
+					assertEquals(expected.getGreen(), green[i], 1e-12, expression);
+					assertEquals(expected.getBlue(), blue[i], 1e-12, expression);
+				}
+			}
+			assertTrue(buffers.getNoise().getMisses() < buffers.getNoise().getSamples() / 10, expression);
+		}
+	}
+}
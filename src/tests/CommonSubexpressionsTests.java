@@ -0,0 +1,141 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.ExpressionProgram;
+import picasso.engine.ProgramEngine;
+import picasso.engine.RenderEngine;
+import picasso.engine.RenderEngines;
+import picasso.engine.RowEvaluator;
+import picasso.engine.TiledRenderer;
+import picasso.model.Pixmap;
+import picasso.parser.CommonSubexpressions;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionDag;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that repeated subexpressions are merged into a DAG that every engine
+ * evaluates to exactly the colors of the tree
+ *
+ * @author Mark Holden
+ */
+public class CommonSubexpressionsTests {
+
+	private static final String[] ENGINES = { "tree", "batch", "scalar", "compiled", "vm", "simd" };
+
+	private ExpressionTreeGenerator parser;
+	private CommonSubexpressions sharing;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+		sharing = new CommonSubexpressions();
+	}
+
+	private String beholder() throws Exception {
+		return Files.readAllLines(Paths.get("expressions", "samples.exp")).get(1);
+	}
+
+	/**
+	 * Render the DAG a row at a time with every engine, over rows that include
+	 * x = 0 and y = 0, and compare with the tree pixel by pixel
+	 */
+	private void assertEnginesMatchTree(ExpressionTreeNode tree, ExpressionTreeNode dag) {
+		int width = 17;
+		double[] xs = new double[width];
+		for (int i = 0; i < width; i++) {
+			xs[i] = (i - 8) / 8.0;
+		}
+		int[] rgb = new int[width];
+		for (String name : ENGINES) {
+			RenderEngine engine = RenderEngines.create(name);
+			RowEvaluator rows = engine.prepare(dag).createRowEvaluator(width);
+			for (double y = -1; y <= 1; y += 0.25) {
+				rows.evaluateRow(xs, y, width, rgb, 0);
+				for (int i = 0; i < width; i++) {
+					RGBColor expected = tree.evaluate(xs[i], y);
+					assertEquals(RGBColor.toRGB(expected.getRed(), expected.getGreen(), expected.getBlue()), rgb[i],
+							name + " at " + xs[i] + ", " + y);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testHashCodeMatchesEquals() throws Exception {
+		ExpressionTreeNode first = parser.makeExpression(beholder());
+		ExpressionTreeNode second = parser.makeExpression(beholder());
+		assertEquals(first, second);
+		assertEquals(first.hashCode(), second.hashCode());
+		assertEquals(new RGBColor(0, 0, 0), new RGBColor(-0.0, 0, -0.0));
+		assertEquals(new RGBColor(0, 0, 0).hashCode(), new RGBColor(-0.0, 0, -0.0).hashCode());
+		assertEquals(new X().hashCode(), new X().hashCode());
+		assertEquals(new Constant(0.5).hashCode(), new Constant(0.5).hashCode());
+		assertEquals(new Sine(new X()).hashCode(), new Sine(new X()).hashCode());
+		assertNotEquals(new Sine(new X()).hashCode(), new Cos(new X()).hashCode());
+		assertEquals(new Image("vortex.jpg").hashCode(), new Image("vortex.jpg").hashCode());
+	}
+
+	@Test
+	public void testSharesBeholder() throws Exception {
+		ExpressionTreeNode tree = parser.makeExpression(beholder());
+		ExpressionTreeNode dag = sharing.share(tree);
+		assertEquals(ExpressionDag.class, dag.getClass());
+		// perlinBW(perlinColor(y, x), [..]) appears four times, atan([..] - x)
+		// three times, and atan([..] - x) / y - perlinBW(..) and clamp(x) twice
+		assertEquals(4, sharing.getSharedCount());
+		assertEquals(13, sharing.getDeduplicatedCount());
+		assertEnginesMatchTree(tree, dag);
+	}
+
+	@Test
+	public void testNothingRepeated() {
+		ExpressionTreeNode tree = parser.makeExpression("sin(x * y) + cos(x * x)");
+		assertSame(tree, sharing.share(tree));
+		assertEquals(0, sharing.getDeduplicatedCount());
+	}
+
+	@Test
+	public void testRandomIsNotShared() {
+		ExpressionTreeNode tree = parser.makeExpression("sin(x + random()) * sin(x + random())");
+		assertSame(tree, sharing.share(tree));
+	}
+
+	@Test
+	public void testLogSeesItsOwnCoordinates() {
+		// the floor(x) inside the log is evaluated where x = 0 is moved off zero
+		ExpressionTreeNode tree = parser.makeExpression("floor(x) + log(floor(x) + y) * floor(x)");
+		ExpressionTreeNode dag = sharing.share(tree);
+		assertEquals(1, sharing.getSharedCount());
+		assertEquals(1, sharing.getDeduplicatedCount());
+		assertEnginesMatchTree(tree, dag);
+	}
+
+	@Test
+	public void testProgramComputesSharedValueOnce() {
+		ExpressionTreeNode tree = parser.makeExpression("sin(x * y) / y + sin(x * y)");
+		ExpressionTreeNode dag = sharing.share(tree);
+		// multiply and sin once, then copy, divide, add and splat the grey sum
+		assertEquals(7, ExpressionProgram.lower(tree).getInstructionCount());
+		assertEquals(6, ExpressionProgram.lower(dag).getInstructionCount());
+		assertEnginesMatchTree(tree, dag);
+	}
+
+	@Test
+	public void testRenderReportsDeduplicatedNodes() {
+		try (TiledRenderer renderer = new TiledRenderer(1, 16)) {
+			renderer.setEngine(new ProgramEngine());
+			renderer.render(parser.makeExpression("sin(x * y) + sin(x * y)"), new Pixmap(new Dimension(20, 20)));
+			assertTrue(renderer.getLastReport().contains(" ms, 2 nodes deduplicated, "));
+		}
+	}
+}
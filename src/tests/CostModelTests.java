@@ -0,0 +1,118 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.CostModel;
+import picasso.engine.RenderPlan;
+import picasso.engine.RenderPlanner;
+import picasso.engine.TiledRenderer;
+import picasso.model.Pixmap;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests the cost model's predictions and the plans made from them
+ *
+ * @author Mark Holden
+ */
+public class CostModelTests {
+
+	private ExpressionTreeGenerator parser;
+	private CostModel model;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+		model = new CostModel(Map.of(X.class, 1.0, Y.class, 1.0, Sine.class, 20.0, PerlinColor.class, 100.0), 2);
+	}
+
+	@Test
+	public void testCostsAddUp() {
+		assertEquals(1 + 20 + 2 + 1, model.getCostPerPixel(parser.makeExpression("sin(x) + y")));
+		ExpressionTreeNode noise = parser.makeExpression("perlinColor(x, sin(y))");
+		assertEquals(1 + 1 + 20 + 100, model.getCostPerPixel(noise));
+		assertEquals(122 * 100 * 50 / 4, model.predictNanos(noise, new Dimension(100, 50), 4));
+	}
+
+	@Test
+	public void testFractalNoiseCostsPerOctave() {
+		CostModel perOctave = new CostModel(Map.of(X.class, 1.0, Y.class, 1.0, Fbm.class, 30.0, Turbulence.class,
+				40.0), 2);
+		assertEquals(1 + 1 + 30 * 16, perOctave.getCostPerPixel(parser.makeExpression("fbm(x, y, 16)")));
+		assertEquals(1 + 1 + 40 * 3, perOctave.getCostPerPixel(parser.makeExpression("turbulence(x, y, 3)")));
+		CostModel calibrated = CostModel.getCalibrated();
+		assertTrue(calibrated.getWeight(Fbm.class) > calibrated.getWeight(Addition.class));
+		assertTrue(calibrated.getWeight(Turbulence.class) > calibrated.getWeight(Addition.class));
+	}
+
+	@Test
+	public void testCalibration() {
+		CostModel calibrated = CostModel.getCalibrated();
+		assertSame(calibrated, CostModel.getCalibrated());
+		for (Class<?> type : new Class<?>[] { Sine.class, Log.class, Exp.class, PerlinBW.class, Division.class }) {
+			assertTrue(calibrated.getWeight(type) > 0, type.getSimpleName());
+		}
+		assertTrue(calibrated.getWeight(PerlinColor.class) > calibrated.getWeight(Addition.class));
+		// every image lookup is timed, and costs something
+		assertTrue(calibrated.getCostPerPixel(parser.makeExpression("imageWrap(\"vortex.jpg\", x, y)")) > 0);
+	}
+
+	@Test
+	public void testPlans() {
+		RenderPlanner planner = new RenderPlanner(model);
+		// 24 ns a pixel
+		RenderPlan cheap = planner.plan(parser.makeExpression("sin(x) + y"), new Dimension(300, 300), 4);
+		assertEquals("batch", cheap.getEngine());
+		assertFalse(cheap.isPreview());
+		assertEquals(24 * 300 * 300 / 4, cheap.getPredictedNanos());
+		// 5 microseconds a pixel
+		RenderPlanner slow = new RenderPlanner(new CostModel(Map.of(PerlinColor.class, 5000.0), 2));
+		RenderPlan costly = slow.plan(parser.makeExpression("perlinColor(x, y)"), new Dimension(600, 600), 4);
+		assertEquals("tiered", costly.getEngine());
+		assertTrue(costly.isPreview());
+		int tileSize = costly.getTileSize();
+		assertTrue(tileSize >= TiledRenderer.MIN_BOUNDED_SIZE && tileSize <= RenderPlanner.MAX_TILE_SIZE);
+		assertTrue(600 * 600 / (tileSize * tileSize) >= 4 * RenderPlanner.TILES_PER_THREAD);
+		planner.setChoosingEngine(false);
+		assertNull(planner.plan(parser.makeExpression("x"), new Dimension(300, 300), 4).getEngine());
+		// cheap tiles grow until they are worth a task
+		int cheapTiles = new RenderPlanner(model).plan(parser.makeExpression("x"), new Dimension(2000, 2000), 1)
+				.getTileSize();
+		assertTrue(cheapTiles * cheapTiles >= RenderPlanner.MIN_TILE_NANOS
+				|| cheapTiles == RenderPlanner.MAX_TILE_SIZE);
+	}
+
+	@Test
+	public void testPlannedRenderMatchesUnplanned() {
+		CostModel costly = new CostModel(Map.of(), 1000000);
+		ExpressionTreeNode expr = parser.makeExpression("sin(x * y / 0.1) + perlinColor(x, y) * [1, -0.5, 0.25]");
+		Dimension size = new Dimension(90, 70);
+		Pixmap planned = new Pixmap(size);
+		try (TiledRenderer renderer = new TiledRenderer(2, 64)) {
+			renderer.setPlanner(new RenderPlanner(costly));
+			renderer.render(expr, planned);
+			assertTrue(renderer.getLastPlan().isPreview());
+			String report = renderer.getLastReport();
+			assertTrue(report.startsWith("tiered: 90x70"), report);
+			assertTrue(report.endsWith(renderer.getLastPlan().toString()), report);
+			assertTrue(report.contains("previewed"), report);
+			Pixmap unplanned = new Pixmap(size);
+			try (TiledRenderer plain = new TiledRenderer(2, 64)) {
+				plain.render(expr, unplanned);
+				assertNull(plain.getLastPlan());
+				for (int row = 0; row < size.height; row++) {
+					for (int column = 0; column < size.width; column++) {
+						assertEquals(unplanned.getColor(column, row), planned.getColor(column, row));
+					}
+				}
+			}
+		}
+	}
+}
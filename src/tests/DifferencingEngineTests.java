@@ -0,0 +1,87 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.DifferencingEngine;
+import picasso.engine.RenderEngines;
+import picasso.engine.TiledRenderer;
+import picasso.model.Pixmap;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * Tests that advancing sines and cosines along the rows draws the same image
+ * as evaluating them at every pixel
+ *
+ * @author Mark Holden
+ */
+public class DifferencingEngineTests {
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	/**
+	 * Render the expression with the differencing engine and compare it with
+	 * the tree pixel by pixel, returning the render's report
+	 */
+	private String assertMatchesTree(String expression, Dimension size) {
+		ExpressionTreeNode expr = parser.makeExpression(expression);
+		Pixmap image = new Pixmap(size);
+		try (TiledRenderer renderer = new TiledRenderer(2, 32)) {
+			renderer.setEngine(RenderEngines.create("differencing"));
+			// every pixel goes through the engine
+			renderer.setBounding(false);
+			renderer.setMirroring(false);
+			renderer.render(expr, image);
+			for (int row = 0; row < size.height; row++) {
+				double y = TiledRenderer.imageToDomainScale(row, size.height);
+				for (int column = 0; column < size.width; column++) {
+					double x = TiledRenderer.imageToDomainScale(column, size.width);
+					RGBColor expected = expr.evaluate(x, y);
+					assertEquals(RGBColor.toRGB(expected.getRed(), expected.getGreen(), expected.getBlue()),
+							image.getColor(column, row).getRGB(), expression + " at " + x + ", " + y);
+				}
+			}
+			return renderer.getLastReport();
+		}
+	}
+
+	@Test
+	public void testDifferencedImagesMatchTree() {
+		String[] expressions = { "sin(x * y / 0.1)", "clamp(cos(x + y) * 0.5 + y) * [1, -0.5, 0.25]",
+				"floor(sin(x / 0.05 + y) * 0.9) - y", "exp(!cos(x * [0.5, 1, -0.25] / (y + 0.1)))",
+				"atan(sin(x * x * y / 0.02)) / (y - 0.5)", "(y * y) - ceil(sin(x * log(y) / 0.01))" };
+		for (String expression : expressions) {
+			String report = assertMatchesTree(expression, new Dimension(97, 61));
+			assertTrue(report.contains("differenced "), report);
+		}
+	}
+
+	@Test
+	public void testFewPixelsComputedDirectly() {
+		String report = assertMatchesTree("sin(x * y / 0.1)", new Dimension(200, 100));
+		int percent = Integer.parseInt(report.replaceAll(".*, (\\d+)% of pixels computed directly.*", "$1"));
+		// about one pixel in each resync interval, plus the few near a step
+		// in the 8 bit color
+		assertTrue(percent < 100 / DifferencingEngine.RESYNC_INTERVAL + 10, report);
+	}
+
+	@Test
+	public void testOtherExpressionsFallBack() {
+		String[] expressions = { "perlinBW(x, y)", "sin(x) * cos(y)", "y / sin(x * y)", "sin(x * y) * sin(x)" };
+		for (String expression : expressions) {
+			String report = assertMatchesTree(expression, new Dimension(40, 30));
+			assertTrue(report.contains("nothing to difference"), report);
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.PlaneKernels;
+import picasso.engine.RenderEngines;
+import picasso.engine.ScalarKernels;
+import picasso.engine.SimdEngine;
+import picasso.engine.TiledRenderer;
+import picasso.model.EscapeTime;
+import picasso.model.Pixmap;
+import picasso.parser.ExpressionOptimizer;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.ParseException;
+import picasso.parser.SymmetryAnalysis;
+import picasso.parser.SymmetryAnalysis.Parity;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that mandelbrot and julia parse, that skipping the interior and
+ * stopping at cycles gives the values of plain iteration, and that every
+ * engine and kernel draws the same fractals
+ *
+ * @author Mark Holden
+ */
+public class EscapeTimeTests {
+
+	private static final int LENGTH = 1001;
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	/**
+	 * Returns the value of the orbit of z under z * z + c, iterated without any
+	 * shortcut
+	 */
+	private static double naive(double zx, double zy, double cx, double cy, int iterations) {
+		double x = zx, y = zy;
+		for (int n = 0; n < iterations; n++) {
+			double x2 = x * x, y2 = y * y;
+			if (x2 + y2 > 4) {
+				return 2.0 * n / iterations - 1;
+			}
+			y = 2 * x * y + cy;
+			x = x2 - y2 + cx;
+		}
+		return -1;
+	}
+
+	@Test
+	public void testParse() {
+		assertEquals(new Mandelbrot(new X(), new Y(), 100), parser.makeExpression("mandelbrot(x, y, 100)"));
+		assertEquals(new Julia(new X(), new Y(), new Constant(-0.8), new Constant(0.156), 1000),
+				parser.makeExpression("julia(x, y, -0.8, 0.156, 1000)"));
+		assertEquals(new Addition(new Sine(new Mandelbrot(new Y(), new X(), 5)), new X()),
+				parser.makeExpression("sin(mandelbrot(y, x, 5)) + x"));
+	}
+
+	@Test
+	public void testBadIterations() {
+		String[] expressions = { "mandelbrot(x, y, 0)", "mandelbrot(x, y, 1001)", "mandelbrot(x, y, 2.5)",
+				"mandelbrot(x, y, x)", "julia(x, y, 0.5, 100)", "julia(x, y, 0.5, 0.5, -1)" };
+		for (String expression : expressions) {
+			assertThrows(ParseException.class, () -> parser.makeExpression(expression), expression);
+		}
+		assertThrows(IllegalArgumentException.class, () -> new Mandelbrot(new X(), new Y(), 0));
+	}
+
+	@Test
+	public void testShortcutsMatchNaiveIteration() {
+		int iterations = 300;
+		int interior = 0;
+		for (int row = 0; row <= 200; row++) {
+			for (int column = 0; column <= 200; column++) {
+				double cx = -2 + 3.0 * column / 200;
+				double cy = -1.5 + 3.0 * row / 200;
+				interior += EscapeTime.isInterior(cx, cy) ? 1 : 0;
+				assertEquals(naive(0, 0, cx, cy, iterations), EscapeTime.mandelbrot(cx, cy, iterations), 0,
+						cx + ", " + cy);
+				assertEquals(naive(cx, cy, -0.8, 0.156, iterations),
+						EscapeTime.julia(cx, cy, -0.8, 0.156, iterations), 0, cx + ", " + cy);
+			}
+		}
+		assertTrue(interior > 5000, "" + interior);
+		assertTrue(EscapeTime.isInterior(-1, 0));
+		assertFalse(EscapeTime.isInterior(-2, 0));
+		// the orbit of -2 reaches 2 and stays there, on the escape radius
+		assertEquals(1000, EscapeTime.escape(0, 0, -2, 0, 1000));
+		assertEquals(1000, EscapeTime.escape(0.5, 0, -0.25, 0, 1000));
+		assertEquals(0, EscapeTime.escape(3, 0, 0, 0, 1000));
+	}
+
+	@Test
+	public void testBatchesMatchPoints() {
+		String[] expressions = { "mandelbrot(x / 0.6 - 0.8, y / 0.8, 200)",
+				"julia([0.5, 1, -0.5] * x / 0.7, y / 0.7, -0.8, 0.156, 150)",
+				"mandelbrot(x, [0.2, 0.4, -0.3], 40)", "julia(y, x, x, y, 20)" };
+		double[] xs = new double[LENGTH];
+		double[] ys = new double[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			xs[i] = Math.sin(i * 0.37);
+			ys[i] = Math.cos(i * 0.91);
+		}
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			double[][] planes = new double[3][LENGTH];
+			double[] slots = new double[expr.getSlotCount()];
+			expr.evaluate(xs, ys, LENGTH, planes[0], planes[1], planes[2], new BatchBuffers(LENGTH));
+			for (int i = 0; i < LENGTH; i++) {
+				RGBColor color = expr.evaluate(xs[i], ys[i]);
+				expr.evaluate(xs[i], ys[i], slots, 0);
+				assertEquals(color, new RGBColor(planes[0][i], planes[1][i], planes[2][i]), expression);
+				assertEquals(color, new RGBColor(slots[0], slots[1], slots[2]), expression);
+			}
+		}
+	}
+
+	@Test
+	public void testKernelsMatchPoints() {
+		double[] cx = new double[LENGTH];
+		double[] cy = new double[LENGTH];
+		double[] out = new double[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			cx[i] = -2 + 2.5 * ((i * 0.618034) % 1);
+			cy[i] = -1.2 + 2.4 * ((i * 0.414214) % 1);
+		}
+		cx[3] = Double.NaN;
+		cy[7] = Double.POSITIVE_INFINITY;
+		cx[11] = -1;
+		cy[11] = 0;
+		PlaneKernels[] kernels = { new ScalarKernels(), SimdEngine.detectKernels() };
+		for (PlaneKernels kernel : kernels) {
+			kernel.mandelbrot(cx, cy, 500, out, LENGTH);
+			for (int i = 0; i < LENGTH; i++) {
+				assertEquals(EscapeTime.mandelbrot(cx[i], cy[i], 500), out[i], 0, kernel.getName() + " at " + i);
+			}
+			kernel.julia(cy, cx, cx, cy, 80, out, LENGTH);
+			for (int i = 0; i < LENGTH; i++) {
+				assertEquals(EscapeTime.julia(cy[i], cx[i], cx[i], cy[i], 80), out[i], 0, kernel.getName());
+			}
+			// the output may be an input
+			double[] copy = cx.clone();
+			kernel.mandelbrot(copy, cy, 500, copy, LENGTH);
+			for (int i = 0; i < LENGTH; i++) {
+				assertEquals(EscapeTime.mandelbrot(cx[i], cy[i], 500), copy[i], 0, kernel.getName());
+			}
+		}
+	}
+
+	@Test
+	public void testEnginesAgree() {
+		Dimension size = new Dimension(61, 47);
+		String[] expressions = { "mandelbrot(x / 0.6 - 0.8, y / 0.8, 200)",
+				"sin(julia(x / 0.7, y / 0.7, -0.8, 0.156, 100) / 0.3) + x",
+				"mandelbrot(x / 0.6 - 0.8, [0.2, 0.5, 1] * y, 30) * y",
+				"julia(x, y, [-0.8, -0.7, 0.3], 0.156, 60) + julia(y, x, x, y, 10)" };
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			TiledRenderer tree = new TiledRenderer();
+			tree.setEngine(RenderEngines.create("tree"));
+			int[] expected = render(expr, tree, size);
+			for (String name : RenderEngines.getNames()) {
+				if (name.equals("float")) {
+					continue;
+				}
+				TiledRenderer renderer = new TiledRenderer();
+				renderer.setEngine(RenderEngines.create(name));
+				assertArrayEquals(expected, render(expr, renderer, size), name + ": " + expression);
+			}
+		}
+	}
+
+	private static int[] render(ExpressionTreeNode expr, TiledRenderer renderer, Dimension size) {
+		Pixmap image = new Pixmap(size);
+		renderer.render(expr, image);
+		int[] rgb = new int[size.width * size.height];
+		image.getRGB(0, 0, size.width, size.height, rgb);
+		return rgb;
+	}
+
+	@Test
+	public void testComposable() {
+		ExpressionTreeNode expr = parser.makeExpression("sin(mandelbrot(x / 0.6 - 0.8, y, 100)) + x");
+		double value = EscapeTime.mandelbrot(0.3 / 0.6 - 0.8, -0.2, 100);
+		assertEquals(new RGBColor(Math.sin(value) + 0.3, Math.sin(value) + 0.3, Math.sin(value) + 0.3),
+				expr.evaluate(0.3, -0.2));
+		// constant arguments fold to a color
+		ExpressionOptimizer optimizer = new ExpressionOptimizer();
+		ExpressionTreeNode folded = optimizer.optimize(parser.makeExpression("mandelbrot(0.25, 0.5, 50) * x"));
+		double constant = EscapeTime.mandelbrot(0.25, 0.5, 50);
+		assertEquals(new Multiplication(new RGBColor(constant, constant, constant), new X()), folded);
+	}
+
+	@Test
+	public void testSymmetry() {
+		SymmetryAnalysis symmetry = new SymmetryAnalysis();
+		ExpressionTreeNode mandelbrot = parser.makeExpression("mandelbrot(x / 0.6 - 0.8, y, 100)");
+		assertEquals(Parity.EVEN, symmetry.getParityInY(mandelbrot));
+		assertEquals(Parity.NONE, symmetry.getParityInX(mandelbrot));
+		ExpressionTreeNode julia = parser.makeExpression("julia(x, y, -0.8, 0.156, 100)");
+		assertEquals(Parity.NONE, symmetry.getParityInY(julia));
+		for (double x = -1; x <= 1; x += 0.0625) {
+			for (double y = 0; y <= 1; y += 0.0625) {
+				assertEquals(mandelbrot.evaluate(x, y), mandelbrot.evaluate(x, -y));
+			}
+		}
+	}
+}
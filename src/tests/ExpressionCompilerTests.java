@@ -0,0 +1,120 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.CompiledExpression;
+import picasso.engine.ExpressionCompiler;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that compiled expressions give exactly the same colors as the trees
+ * they were compiled from
+ *
+ * @author Mark Holden
+ */
+public class ExpressionCompilerTests {
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	private void assertCompiledMatchesTree(ExpressionTreeNode expr) {
+		CompiledExpression compiled = ExpressionCompiler.compile(expr);
+		double[] slots = new double[compiled.getSlotCount()];
+		for (double x = -1; x <= 1; x += 0.125) {
+			for (double y = -1; y <= 1; y += 0.25) {
+				compiled.evaluate(x, y, slots, 0);
+				RGBColor expected = expr.evaluate(x, y);
+				String where = expr + " at " + x + ", " + y;
+				// compares bit patterns, so NaN results must match too
+				assertEquals(expected.getRed(), slots[0], where);
+				assertEquals(expected.getGreen(), slots[1], where);
+				assertEquals(expected.getBlue(), slots[2], where);
+			}
+		}
+	}
+
+	@Test
+	public void testLeaves() {
+		assertCompiledMatchesTree(new X());
+		assertCompiledMatchesTree(new Y());
+		assertCompiledMatchesTree(new Constant(-0.7));
+		assertCompiledMatchesTree(new RGBColor(0.1, -0.4, 1));
+	}
+
+	@Test
+	public void testUnaryFunctions() {
+		ExpressionTreeNode arg = new Addition(new Multiplication(new X(), new RGBColor(2, -3, 0.5)), new Y());
+		ExpressionTreeNode[] trees = { new Sine(arg), new Cos(arg), new Tan(arg), new Atan(arg), new Exp(arg),
+				new Log(arg), new Log(new Division(new X(), new Y())), new Floor(arg), new Ceil(arg), new Abs(arg),
+				new Clamp(arg), new Wrap(arg), new Not(arg), new RgbToYCrCb(arg), new YCrCbToRGB(arg),
+				new Word(arg) };
+		for (ExpressionTreeNode tree : trees) {
+			assertCompiledMatchesTree(tree);
+		}
+	}
+
+	@Test
+	public void testBinaryOperators() {
+		ExpressionTreeNode left = new Sine(new Multiplication(new X(), new RGBColor(3, 1, -2)));
+		ExpressionTreeNode right = new Subtraction(new Y(), new Floor(new X()));
+		ExpressionTreeNode[] trees = { new Addition(left, right), new Subtraction(left, right),
+				new Multiplication(left, right), new Division(left, right), new Division(left, new Floor(right)),
+				new Modulo(left, right), new Modulo(left, new Floor(right)), new Exponentiation(left, right),
+				new Exponentiation(new Floor(left), right), new PerlinColor(left, right), new PerlinBW(left, right),
+				new Assignment(new Variable("compiled"), new Addition(left, right)) };
+		for (ExpressionTreeNode tree : trees) {
+			assertCompiledMatchesTree(tree);
+		}
+	}
+
+	@Test
+	public void testImagesAreLookedUpByInterpreter() {
+		ExpressionTreeNode xExpr = new Multiplication(new X(), new RGBColor(2.5, 1, 0.5));
+		ExpressionTreeNode wrap = new ImageWrap(new Image("vortex.jpg"), xExpr, new Y());
+		ExpressionTreeNode clip = new ImageClip(new Image("vortex.jpg"), xExpr, new Not(new Y()));
+		assertCompiledMatchesTree(wrap);
+		assertCompiledMatchesTree(clip);
+		assertCompiledMatchesTree(new Image("vortex.jpg"));
+		assertEquals(1, ExpressionCompiler.compile(wrap).getInterpretedCount());
+		assertEquals(0, ExpressionCompiler.compile(xExpr).getInterpretedCount());
+	}
+
+	@Test
+	public void testParsedExpressions() {
+		String[] expressions = { "sin(x * y) + cos(abs(y) - x)",
+				"perlinBW(atan([ 0.45, -0.48, -0.04 ] - x) / y - perlinBW(perlinColor(y, x), [ -0.87, 0.02, -0.34 ]), clamp(x))",
+				"log(x + [ -0.52, -0.39, -0.05 ] / perlinBW(y - log(log(x)) / clamp([ 0.62, -0.28, -0.44 ] + y), x + abs(x) - y))",
+				"x ^ 0.5 % y + exp(!x) * tan(y)" };
+		for (String expression : expressions) {
+			assertCompiledMatchesTree(parser.makeExpression(expression));
+		}
+	}
+
+	@Test
+	public void testLargeExpressionIsSplit() {
+		ExpressionTreeNode expr = new X();
+		for (int i = 0; i < 400; i++) {
+			expr = new Addition(new Sine(expr), new Multiplication(new Y(), new Constant(i / 400.0)));
+		}
+		CompiledExpression compiled = ExpressionCompiler.compile(expr);
+		assertTrue(compiled.getMethodCount() > 1);
+		assertCompiledMatchesTree(expr);
+	}
+
+	@Test
+	public void testCompiledIsAnExpression() {
+		ExpressionTreeNode expr = parser.makeExpression("floor(x) * [0.5, -1, 0.25] + y");
+		CompiledExpression compiled = ExpressionCompiler.compile(expr);
+		assertEquals(expr.evaluate(0.3, -0.6), compiled.evaluate(0.3, -0.6));
+		assertSame(expr, compiled.getSource());
+	}
+}
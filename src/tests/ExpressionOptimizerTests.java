@@ -0,0 +1,123 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.parser.ExpressionOptimizer;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that optimized expressions are simpler and compute the same colors as
+ * the expressions they came from
+ *
+ * @author Mark Holden
+ */
+public class ExpressionOptimizerTests {
+
+	private ExpressionTreeGenerator parser;
+	private ExpressionOptimizer optimizer;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+		optimizer = new ExpressionOptimizer();
+	}
+
+	/**
+	 * Colors may only differ in the sign of a zero, which a delta of 0 allows
+	 */
+	private void assertSameColors(ExpressionTreeNode expected, ExpressionTreeNode actual) {
+		for (double x = -1; x <= 1; x += 0.125) {
+			for (double y = -1; y <= 1; y += 0.125) {
+				RGBColor want = expected.evaluate(x, y);
+				RGBColor got = actual.evaluate(x, y);
+				String where = expected + " at " + x + ", " + y;
+				assertEquals(want.getRed(), got.getRed(), 0, where);
+				assertEquals(want.getGreen(), got.getGreen(), 0, where);
+				assertEquals(want.getBlue(), got.getBlue(), 0, where);
+			}
+		}
+	}
+
+	private ExpressionTreeNode assertOptimizesSafely(String expression) {
+		ExpressionTreeNode expr = parser.makeExpression(expression);
+		ExpressionTreeNode optimized = optimizer.optimize(expr);
+		assertSameColors(expr, optimized);
+		return optimized;
+	}
+
+	@Test
+	public void testFoldsConstantSubexpressions() {
+		ExpressionTreeNode folded = assertOptimizesSafely(
+				"sin([0.1, -0.2, 0.3]) + ceil([-0.4, 0.7, -0.8]) * clamp([0.5, 0.5, 1] + perlinBW([0.2, 0.1, 0], [0.3, 0.3, 0.3]))");
+		assertEquals(RGBColor.class, folded.getClass());
+		// sin, ceil, perlinBW, the sum in clamp, clamp, the product and the sum
+		assertEquals(7, optimizer.getFoldCount());
+
+		ExpressionTreeNode partly = assertOptimizesSafely("x * cos([0.2, 0.4, 0.6])");
+		assertEquals(Multiplication.class, partly.getClass());
+		assertEquals(RGBColor.class, partly.getChildren().get(1).getClass());
+	}
+
+	@Test
+	public void testDoesNotFoldRandomOrImages() {
+		ExpressionTreeNode random = optimizer.optimize(parser.makeExpression("random() - random()"));
+		assertEquals(Subtraction.class, random.getClass());
+		ExpressionTreeNode image = new ImageWrap(new Image("vortex.jpg"), new Sine(new Constant(0.5)), new Y());
+		ExpressionTreeNode optimized = optimizer.optimize(image);
+		assertEquals(ImageWrap.class, optimized.getClass());
+		assertEquals(RGBColor.class, optimized.getChildren().get(1).getClass());
+		assertSameColors(image, optimized);
+	}
+
+	@Test
+	public void testAlgebraicRewrites() {
+		assertEquals(new RGBColor(0, 0, 0), assertOptimizesSafely("x - x"));
+		assertEquals(new Not(new Y()), assertOptimizesSafely("!(!(!y))"));
+		assertEquals(new X(), assertOptimizesSafely("x * 1"));
+		assertEquals(new X(), assertOptimizesSafely("[1, 1, 1] * x / 1"));
+		assertEquals(new Y(), assertOptimizesSafely("y + 0"));
+		assertEquals(new RGBColor(0, 0, 0), assertOptimizesSafely("sin(x * y) * 0"));
+		assertEquals(new Subtraction(new RGBColor(0, 0, 0), new X()), assertOptimizesSafely("x - x - x"));
+		assertTrue(optimizer.getRewriteCount() > 0);
+	}
+
+	@Test
+	public void testKeepsRewritesThatCouldBeInfinite() {
+		// 0 * infinity is NaN, so these must be evaluated
+		assertEquals(Multiplication.class, assertOptimizesSafely("tan(x) * 0").getClass());
+		assertEquals(Multiplication.class, assertOptimizesSafely("0 * (x / y)").getClass());
+		assertEquals(Subtraction.class, assertOptimizesSafely("exp(x / y) - exp(x / y)").getClass());
+	}
+
+	@Test
+	public void testSquaresKeepPowerSpecialCases() {
+		double[] values = { -1, -0.5, -0.0, 0, 1e-200, 0.3, 1, 7.5, 1e200, Double.NaN, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY };
+		for (double value : values) {
+			double expected = value < 0 && value != -1 ? -1 : Math.pow(value, 2);
+			assertEquals(expected, Exponentiation.power(value, 2), "power(" + value + ", 2)");
+		}
+		assertOptimizesSafely("x ^ [1, 1, 1] + y ^ 0.5");
+	}
+
+	@Test
+	public void testSampleExpressions() throws Exception {
+		String[] files = { "expressions/samples.exp", "expressions/Oil.exp" };
+		for (String file : files) {
+			for (String line : Files.readAllLines(Paths.get(file))) {
+				if (!line.isBlank() && !line.startsWith("//")) {
+					assertOptimizesSafely(line);
+				}
+			}
+		}
+		assertTrue(optimizer.getFoldCount() > 0);
+	}
+}
@@ -0,0 +1,103 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.ExpressionProgram;
+import picasso.engine.ProgramEngine;
+import picasso.engine.RenderEngines;
+import picasso.engine.TiledRenderer;
+import picasso.model.Pixmap;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that programs lowered from expressions compute exactly the colors of
+ * the trees they came from
+ *
+ * @author Mark Holden
+ */
+public class ExpressionProgramTests {
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	private void assertProgramMatchesTree(ExpressionTreeNode expr) {
+		ExpressionProgram program = ExpressionProgram.lower(expr);
+		double[] registers = program.createRegisters();
+		int result = program.getResultRegister();
+		for (double x = -1; x <= 1; x += 0.125) {
+			for (double y = -1; y <= 1; y += 0.25) {
+				program.run(x, y, registers);
+				RGBColor expected = expr.evaluate(x, y);
+				String where = expr + " at " + x + ", " + y;
+				assertEquals(expected.getRed(), registers[result], where);
+				assertEquals(expected.getGreen(), registers[result + 1], where);
+				assertEquals(expected.getBlue(), registers[result + 2], where);
+			}
+		}
+	}
+
+	@Test
+	public void testNodes() {
+		ExpressionTreeNode arg = new Addition(new Multiplication(new X(), new RGBColor(2, -3, 0.5)), new Y());
+		ExpressionTreeNode left = new Sine(new Multiplication(new X(), new RGBColor(3, 1, -2)));
+		ExpressionTreeNode right = new Subtraction(new Y(), new Floor(new X()));
+		ExpressionTreeNode[] trees = { new X(), new Constant(0.4), new RGBColor(0.1, -0.4, 1), new Sine(arg),
+				new Cos(arg), new Tan(arg), new Atan(arg), new Exp(arg), new Log(arg),
+				new Log(new Division(new X(), new Y())), new Floor(arg), new Ceil(arg), new Abs(arg), new Clamp(arg),
+				new Wrap(arg), new Not(arg), new RgbToYCrCb(arg), new YCrCbToRGB(arg), new Word(arg),
+				new Addition(left, right), new Subtraction(left, right), new Multiplication(left, right),
+				new Division(left, new Floor(right)), new Modulo(left, new Floor(right)),
+				new Exponentiation(left, right), new PerlinColor(left, right), new PerlinBW(left, right),
+				new Assignment(new Variable("program"), new Addition(left, right)),
+				new ImageWrap(new Image("vortex.jpg"), arg, new Y()),
+				new ImageClip(new Image("vortex.jpg"), new Not(new Y()), arg), new Image("vortex.jpg") };
+		for (ExpressionTreeNode tree : trees) {
+			assertProgramMatchesTree(tree);
+		}
+	}
+
+	@Test
+	public void testParsedExpressions() {
+		String[] expressions = { "sin(x * y) + cos(abs(y) - x)",
+				"perlinBW(atan([ 0.45, -0.48, -0.04 ] - x) / y - perlinBW(perlinColor(y, x), [ -0.87, 0.02, -0.34 ]), clamp(x))",
+				"log(x + [ -0.52, -0.39, -0.05 ] / perlinBW(y - log(log(x)) / clamp([ 0.62, -0.28, -0.44 ] + y), x + abs(x) - y))" };
+		for (String expression : expressions) {
+			assertProgramMatchesTree(parser.makeExpression(expression));
+		}
+	}
+
+	@Test
+	public void testInstructionCount() {
+		// constants live in the pool and need no instructions, and x + y is
+		// added in one channel and splatted
+		assertEquals(2, ExpressionProgram.lower(parser.makeExpression("x + y")).getInstructionCount());
+		assertEquals(3, ExpressionProgram.lower(parser.makeExpression("sin(x) * [0.5, 0.5, 1]")).getInstructionCount());
+	}
+
+	@Test
+	public void testRenderReportsInstructionCount() {
+		try (TiledRenderer renderer = new TiledRenderer(1, 16)) {
+			renderer.setEngine(new ProgramEngine());
+			renderer.render(parser.makeExpression("x + y"), new Pixmap(new Dimension(20, 20)));
+			assertTrue(renderer.getLastReport().startsWith("vm: 20x20 in "));
+			assertTrue(renderer.getLastReport().endsWith("2 instructions, 5 registers"));
+		}
+	}
+
+	@Test
+	public void testEngineLookup() {
+		assertEquals("vm", RenderEngines.create("vm").getName());
+		assertThrows(IllegalArgumentException.class, () -> RenderEngines.create("nonsense"));
+	}
+}
@@ -0,0 +1,135 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.FastMath;
+import picasso.engine.PrecisionCheck;
+import picasso.engine.PrecisionCheck.Difference;
+import picasso.engine.RenderEngines;
+import picasso.engine.TiledRenderer;
+import picasso.model.Pixmap;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.Log;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * Tests that the approximations of FastMath stay within their documented
+ * errors, and that the fast engine draws nearly the same images as the tree
+ *
+ * @author Mark Holden
+ */
+public class FastMathTests {
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	/**
+	 * Compare the approximation with the exact function at random points
+	 * between low and high, scaling the error by the larger of 1 and the
+	 * exact value if the error is relative
+	 */
+	private void assertWithin(double error, boolean relative, DoubleUnaryOperator fast, DoubleUnaryOperator exact,
+			double low, double high) {
+		Random random = new Random(14);
+		for (int i = 0; i < 200000; i++) {
+			double x = low + (high - low) * random.nextDouble();
+			double expected = exact.applyAsDouble(x);
+			double scale = relative ? Math.max(1, Math.abs(expected)) : 1;
+			assertEquals(expected, fast.applyAsDouble(x), error * scale, "at " + x);
+		}
+	}
+
+	@Test
+	public void testErrorsWithinDocumentedBounds() {
+		assertWithin(FastMath.SIN_ERROR, false, FastMath::sin, Math::sin, -10, 10);
+		assertWithin(FastMath.SIN_ERROR, false, FastMath::sin, Math::sin, -1e5, 1e5);
+		assertWithin(FastMath.SIN_ERROR, false, FastMath::cos, Math::cos, -10, 10);
+		assertWithin(FastMath.TAN_RELATIVE_ERROR, true, FastMath::tan, Math::tan, -10, 10);
+		assertWithin(FastMath.ATAN_ERROR, false, FastMath::atan, Math::atan, -4, 4);
+		assertWithin(FastMath.ATAN_ERROR, false, FastMath::atan, Math::atan, -1e6, 1e6);
+		assertWithin(FastMath.EXP_RELATIVE_ERROR, true, FastMath::exp, Math::exp, -20, 20);
+		assertWithin(FastMath.EXP_RELATIVE_ERROR, true, FastMath::exp, Math::exp, -700, 700);
+		assertWithin(FastMath.LOG_ERROR, false, FastMath::log, Log::log, -4, 4);
+		assertWithin(FastMath.LOG_ERROR, true, FastMath::log, Log::log, 1e-300, 1e-250);
+		// every bound is far below a step in the 8-bit color
+		assertTrue(Math.max(FastMath.SIN_ERROR, FastMath.LOG_ERROR) < 2.0 / 255);
+	}
+
+	@Test
+	public void testSpecialValues() {
+		assertEquals(0, FastMath.log(0));
+		assertEquals(Log.log(-0.5), FastMath.log(-0.5));
+		assertEquals(Log.log(Double.MIN_VALUE), FastMath.log(Double.MIN_VALUE));
+		assertEquals(Double.POSITIVE_INFINITY, FastMath.exp(1000));
+		assertEquals(0, FastMath.exp(-1000));
+		assertEquals(1, FastMath.exp(0));
+		assertEquals(0, FastMath.sin(0));
+		assertEquals(Math.sin(1e300), FastMath.sin(1e300));
+		assertTrue(Double.isNaN(FastMath.cos(Double.NaN)));
+		assertTrue(Double.isNaN(FastMath.atan(Double.NaN)));
+		assertEquals(Math.PI / 2, FastMath.atan(Double.POSITIVE_INFINITY));
+		// mirror images stay exact, so mirroring renders the same pixels
+		Random random = new Random(2);
+		for (int i = 0; i < 1000; i++) {
+			double x = random.nextDouble() * 20;
+			assertEquals(-FastMath.sin(x), FastMath.sin(-x));
+			assertEquals(FastMath.cos(x), FastMath.cos(-x));
+			assertEquals(-FastMath.tan(x), FastMath.tan(-x));
+			assertEquals(-FastMath.atan(x), FastMath.atan(-x));
+		}
+	}
+
+	@Test
+	public void testFastEngineDrawsNearlyTheSameImage() {
+		String[] expressions = { "sin(x * y / 0.1) + cos(y)", "atan(tan(x * 0.7) * exp(y)) * [0.5, -1, 0.25]",
+				"log(x * y) * 0.2 - exp(!x)", "perlinColor(sin(x), cos(y)) + atan(x / (y + 0.1))" };
+		Dimension size = new Dimension(80, 60);
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			Pixmap image = new Pixmap(size);
+			try (TiledRenderer renderer = new TiledRenderer(2, 16)) {
+				renderer.setEngine(RenderEngines.create("fast"));
+				renderer.render(expr, image);
+				assertTrue(renderer.getLastReport().contains("fast math"), renderer.getLastReport());
+				int different = 0;
+				for (int row = 0; row < size.height; row++) {
+					double y = TiledRenderer.imageToDomainScale(row, size.height);
+					for (int column = 0; column < size.width; column++) {
+						double x = TiledRenderer.imageToDomainScale(column, size.width);
+						RGBColor expected = expr.evaluate(x, y);
+						int rgb = image.getColor(column, row).getRGB();
+						if (RGBColor.toRGB(expected.getRed(), expected.getGreen(), expected.getBlue()) != rgb) {
+							different++;
+						}
+					}
+				}
+				// a pixel may land on the other side of a step in the color
+				assertTrue(different <= size.width * size.height / 1000, expression + ": " + different);
+			}
+		}
+	}
+
+	@Test
+	public void testCheckCountsDifferences() {
+		Difference difference = PrecisionCheck.compare(parser.makeExpression("sin(x / 0.01) * exp(y)"),
+				new Dimension(50, 50), "fast");
+		assertEquals(2500, difference.getPixels());
+		assertTrue(difference.getDifferentPixels() <= 2, "" + difference.getDifferentPixels());
+		assertTrue(difference.getLargestChannelDifference() <= 1);
+		// random() draws the same numbers in every render
+		assertEquals(0, PrecisionCheck.compare(parser.makeExpression("random() * x"), new Dimension(20, 20), "fast")
+				.getDifferentPixels());
+	}
+}
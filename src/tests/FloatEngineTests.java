@@ -0,0 +1,87 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.PrecisionCheck;
+import picasso.engine.PrecisionCheck.Difference;
+import picasso.engine.RenderEngines;
+import picasso.engine.TiledRenderer;
+import picasso.model.ImprovedNoise;
+import picasso.model.Pixmap;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * Tests that evaluating in single precision draws nearly the images of the
+ * double engines
+ *
+ * @author Mark Holden
+ */
+public class FloatEngineTests {
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	@Test
+	public void testFloatNoiseIsCloseToDouble() {
+		Random random = new Random(15);
+		for (int i = 0; i < 100000; i++) {
+			float x = random.nextFloat() * 8 - 4;
+			float y = random.nextFloat() * 8 - 4;
+			float z = random.nextFloat() * 2 - 1;
+			assertEquals(ImprovedNoise.noise((double) x, y, z), ImprovedNoise.noise(x, y, z), 1e-5);
+		}
+	}
+
+	@Test
+	public void testColorsWithinOneStepOfTree() {
+		String[] expressions = { "x * y + [0.5, -0.25, 1] - y / (x + 0.5)",
+				"clamp(x * 0.5 % (y * 0.25 + 1) + wrap(x * y * 0.9))",
+				"rgbToYCrCb(perlinColor(x, y * x)) - abs(ceil(x)) * (!y)", "yCrCbToRGB(sin(x) * cos(y)) + exp(log(y))",
+				"perlinBW(x, y) / (y * 0.5 + 1) + floor(x * 0.9) ^ y" };
+		Dimension size = new Dimension(70, 50);
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			Pixmap image = new Pixmap(size);
+			try (TiledRenderer renderer = new TiledRenderer(2, 16)) {
+				renderer.setEngine(RenderEngines.create("float"));
+				renderer.render(expr, image);
+				assertTrue(renderer.getLastReport().contains("float planes"), renderer.getLastReport());
+				for (int row = 0; row < size.height; row++) {
+					double y = TiledRenderer.imageToDomainScale(row, size.height);
+					for (int column = 0; column < size.width; column++) {
+						double x = TiledRenderer.imageToDomainScale(column, size.width);
+						RGBColor expected = expr.evaluate(x, y);
+						int exact = RGBColor.toRGB(expected.getRed(), expected.getGreen(), expected.getBlue());
+						int rgb = image.getColor(column, row).getRGB();
+						for (int shift = 0; shift < 24; shift += 8) {
+							assertEquals(exact >> shift & 0xFF, rgb >> shift & 0xFF, 1,
+									expression + " at " + x + ", " + y);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testPrecisionReport() {
+		Difference difference = PrecisionCheck.compare(parser.makeExpression("sin(x * y / 0.1) + perlinBW(y, x)"),
+				new Dimension(60, 60), "float");
+		assertEquals(3600, difference.getPixels());
+		// only values that round to the other side of a step change
+		assertTrue(difference.getDifferentPixels() < 3600 / 20, "" + difference.getDifferentPixels());
+		assertTrue(difference.getLargestChannelDifference() <= 1);
+	}
+}
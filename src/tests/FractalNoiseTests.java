@@ -0,0 +1,140 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.model.PlanarNoise;
+import picasso.parser.ExpressionOptimizer;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.ParseException;
+import picasso.parser.RangeInference;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that fbm and turbulence parse, sum their octaves the same way one
+ * point at a time and in batches, and that stopping the sum once the color is
+ * settled gives the colors of the full sum
+ *
+ * @author Mark Holden
+ */
+public class FractalNoiseTests {
+
+	private static final int WIDTH = 200;
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	@Test
+	public void testParse() {
+		assertEquals(new Fbm(new X(), new Y(), 6), parser.makeExpression("fbm(x, y, 6)"));
+		assertEquals(new Turbulence(new Multiplication(new X(), new Y()), new Sine(new X()), 3),
+				parser.makeExpression("turbulence(x * y, sin(x), 3)"));
+		assertEquals(new Addition(new Fbm(new Y(), new X(), 16), new X()),
+				parser.makeExpression("fbm(y, x, 16) + x"));
+	}
+
+	@Test
+	public void testBadOctaves() {
+		String[] expressions = { "fbm(x, y, 0)", "fbm(x, y, 17)", "fbm(x, y, 2.5)", "fbm(x, y, x)",
+				"turbulence(x, y)", "turbulence(x, y, -1)" };
+		for (String expression : expressions) {
+			assertThrows(ParseException.class, () -> parser.makeExpression(expression), expression);
+		}
+		assertThrows(IllegalArgumentException.class, () -> new Fbm(new X(), new Y(), 0));
+	}
+
+	@Test
+	public void testOneOctaveIsNoise() {
+		ExpressionTreeNode fbm = parser.makeExpression("fbm(x, y, 1)");
+		ExpressionTreeNode turbulence = parser.makeExpression("turbulence(x, y, 1)");
+		for (double x = -1; x <= 1; x += 0.125) {
+			for (double y = -1; y <= 1; y += 0.125) {
+				double noise = PlanarNoise.noise(x, y);
+				assertEquals(new RGBColor(noise, noise, noise), fbm.evaluate(x, y));
+				assertEquals(Math.abs(noise), turbulence.evaluate(x, y).getRed(), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testBatchesMatchPoints() {
+		String[] expressions = { "fbm(x, y, 12)", "turbulence(x * y, sin(x), 5)", "fbm([0.2, 0.3, -0.1] * x, y, 3)" };
+		for (String expression : expressions) {
+			ExpressionTreeNode plain = parser.makeExpression(expression);
+			ExpressionTreeNode quantized = new ExpressionOptimizer().optimize(plain);
+			assertColorsMatch(plain, plain, false, expression);
+			assertColorsMatch(quantized, quantized, false, expression);
+			assertColorsMatch(plain, quantized, true, expression);
+		}
+	}
+
+	/**
+	 * Compares the actual expression with the expected one one point at a
+	 * time, into slots and in batches, by value or by 8-bit color
+	 */
+	private void assertColorsMatch(ExpressionTreeNode expected, ExpressionTreeNode actual, boolean byColor,
+			String message) {
+		double[] xs = new double[WIDTH];
+		double[] ys = new double[WIDTH];
+		double[][] planes = new double[3][WIDTH];
+		double[] slots = new double[actual.getSlotCount()];
+		BatchBuffers buffers = new BatchBuffers(WIDTH);
+		for (int row = 0; row < 20; row++) {
+			for (int i = 0; i < WIDTH; i++) {
+				xs[i] = -1 + 2.0 * i / WIDTH;
+				ys[i] = -1 + row * 0.1;
+			}
+			actual.evaluate(xs, ys, WIDTH, planes[0], planes[1], planes[2], buffers);
+			for (int i = 0; i < WIDTH; i++) {
+				RGBColor want = expected.evaluate(xs[i], ys[i]);
+				RGBColor got = actual.evaluate(xs[i], ys[i]);
+				actual.evaluate(xs[i], ys[i], slots, 0);
+				String where = message + " at " + xs[i] + ", " + ys[i];
+				if (byColor) {
+					int color = RGBColor.toRGB(want.getRed(), want.getGreen(), want.getBlue());
+					assertEquals(color, RGBColor.toRGB(got.getRed(), got.getGreen(), got.getBlue()), where);
+					assertEquals(color, RGBColor.toRGB(planes[0][i], planes[1][i], planes[2][i]), where);
+					assertEquals(color, RGBColor.toRGB(slots[0], slots[1], slots[2]), where);
+				} else {
+					assertEquals(want, got, where);
+					assertEquals(want, new RGBColor(planes[0][i], planes[1][i], planes[2][i]), where);
+					assertEquals(want, new RGBColor(slots[0], slots[1], slots[2]), where);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testOnlyRootIsQuantized() {
+		ExpressionOptimizer optimizer = new ExpressionOptimizer();
+		ExpressionTreeNode root = optimizer.optimize(parser.makeExpression("fbm(x, y, 16)"));
+		assertTrue(((FractalNoise) root).isQuantized());
+		assertEquals(8, ((FractalNoise) root).getFirstStop());
+		ExpressionTreeNode nested = optimizer.optimize(parser.makeExpression("sin(turbulence(x, y, 16))"));
+		assertFalse(((FractalNoise) nested.getChildren().get(0)).isQuantized());
+		assertEquals(16, ((FractalNoise) nested.getChildren().get(0)).getFirstStop());
+		// too few octaves to ever stop
+		assertEquals(4, ((FractalNoise) optimizer.optimize(parser.makeExpression("fbm(x, y, 4)"))).getFirstStop());
+	}
+
+	@Test
+	public void testBounds() {
+		ColorInterval fbm = new RangeInference().getRange(parser.makeExpression("fbm(x / 0.01, y, 16)"));
+		assertTrue(fbm.getRed().getMin() >= -1.000001 && fbm.getRed().getMax() <= 1.000001, fbm.toString());
+		ColorInterval turbulence = new RangeInference().getRange(parser.makeExpression("turbulence(x, y, 8)"));
+		assertEquals(0, turbulence.getBlue().getMin());
+		for (double x = -1; x <= 1; x += 0.01) {
+			double value = parser.makeExpression("fbm(x / 0.01, y, 16)").evaluate(x, 0.3).getRed();
+			assertTrue(fbm.getRed().contains(value), x + ": " + value);
+		}
+	}
+}
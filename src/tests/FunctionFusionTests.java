@@ -0,0 +1,119 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.RenderEngines;
+import picasso.engine.TiledRenderer;
+import picasso.model.Pixmap;
+import picasso.parser.CommonSubexpressions;
+import picasso.parser.FunctionFusion;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.FusedFunction;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that chains of functions are fused into single nodes that compute
+ * exactly the colors of the chains
+ *
+ * @author Mark Holden
+ */
+public class FunctionFusionTests {
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	/**
+	 * Compare the fused expression with the original one point at a time, into
+	 * slots and in batches, including the zero coordinates log moves
+	 */
+	private void assertSameColors(ExpressionTreeNode expected, ExpressionTreeNode actual) {
+		int width = 9;
+		double[] xs = new double[width];
+		double[] ys = new double[width];
+		double[][] planes = new double[3][width];
+		double[] slots = new double[actual.getSlotCount()];
+		BatchBuffers buffers = new BatchBuffers(width);
+		for (double y = -1; y <= 1; y += 0.25) {
+			for (int i = 0; i < width; i++) {
+				xs[i] = -1 + i * 0.25;
+				ys[i] = y;
+			}
+			actual.evaluate(xs, ys, width, planes[0], planes[1], planes[2], buffers);
+			for (int i = 0; i < width; i++) {
+				RGBColor want = expected.evaluate(xs[i], y);
+				String where = expected + " at " + xs[i] + ", " + y;
+				assertEquals(want, actual.evaluate(xs[i], y), where);
+				actual.evaluate(xs[i], y, slots, 0);
+				assertEquals(want, new RGBColor(slots[0], slots[1], slots[2]), where);
+				assertEquals(want, new RGBColor(planes[0][i], planes[1][i], planes[2][i]), where);
+			}
+		}
+	}
+
+	@Test
+	public void testFusesChains() {
+		ExpressionTreeNode expr = parser.makeExpression("sin(log(atan(x / y))) + wrap(ceil(y * 0.5)) * cos(abs(x))");
+		FunctionFusion fusion = new FunctionFusion();
+		ExpressionTreeNode fused = fusion.fuse(expr);
+		assertEquals(3, fusion.getChainCount());
+		assertEquals(Addition.class, fused.getClass());
+		ExpressionTreeNode first = fused.getChildren().get(0);
+		assertEquals(FusedFunction.class, first.getClass());
+		assertArrayEquals(new int[] { FusedFunction.ATAN, FusedFunction.LOG, FusedFunction.SIN },
+				((FusedFunction) first).getStages());
+		assertEquals(Division.class, first.getChildren().get(0).getClass());
+		assertSameColors(expr, fused);
+	}
+
+	@Test
+	public void testSingleFunctionsAndColorConversionsStay() {
+		ExpressionTreeNode expr = parser.makeExpression("sin(x) + rgbToYCrCb(clamp(y)) - floor(yCrCbToRGB(x))");
+		FunctionFusion fusion = new FunctionFusion();
+		assertSame(expr, fusion.fuse(expr));
+		assertEquals(0, fusion.getChainCount());
+	}
+
+	@Test
+	public void testFusedChainsMatchTree() {
+		String[] expressions = { "clamp(exp(!log(x)))", "log(floor(y * x * 0.5) + x)",
+				"tan(wrap(cos(perlinBW(x, y) / 0.25))) * [0.5, -1, 0.25]", "abs(sin(log(y))) + log(log(x))",
+				"!(!(x))", "a = atan(ceil(x)) + y" };
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			assertSameColors(expr, new FunctionFusion().fuse(expr));
+		}
+	}
+
+	@Test
+	public void testSharedSubexpressionsStayShared() {
+		ExpressionTreeNode shared = new CommonSubexpressions()
+				.share(parser.makeExpression("sin(cos(x * y)) + sin(cos(x * y)) * y"));
+		ExpressionTreeNode fused = new FunctionFusion().fuse(shared);
+		assertEquals(shared.getClass(), fused.getClass());
+		assertSameColors(shared, fused);
+	}
+
+	@Test
+	public void testEnginesReportFusion() {
+		for (String name : new String[] { "scalar", "batch" }) {
+			try (TiledRenderer renderer = new TiledRenderer(1, 16)) {
+				renderer.setEngine(RenderEngines.create(name));
+				renderer.setBounding(false);
+				renderer.render(parser.makeExpression("sin(log(x * y)) - cos(abs(y + x))"),
+						new Pixmap(new Dimension(20, 20)));
+				assertTrue(renderer.getLastReport().contains("2 function chains fused"), renderer.getLastReport());
+			}
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.RenderEngines;
+import picasso.engine.TiledRenderer;
+import picasso.model.Pixmap;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ColorInterval;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.Interval;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that the interval bounds of expressions hold every color they take,
+ * and that filling tiles from bounds leaves every pixel the same
+ *
+ * @author Mark Holden
+ */
+public class IntervalBoundsTests {
+
+	private static final String[] EXPRESSIONS = { "sin(x / 0.1) + cos(y / 0.2)", "tan(x / 0.3) * atan(y)",
+			"log(x * y) % (y - 0.5)", "exp(x) ^ y", "(x + 1) ^ (y * 0.5) + (x + 0.5) ^ y",
+			"wrap(x / 0.2) - clamp(y / 0.3)", "floor(x / 0.25) + ceil(y / 0.25) + abs(x - y)", "(!x) / (y - x)",
+			"perlinBW(x, y) + perlinColor(y, x)", "imageWrap(\"vortex.jpg\", x, y) * imageClip(\"vortex.jpg\", y, x)",
+			"\"vortex.jpg\"", "random() * 0.5", "x % 0.3 + y % x", "log(0) + log(x)",
+			"clamp(floor(x / 0.5) * 0.75 + 0.5) + wrap([0.5, -1, 1])" };
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	private static void assertWithin(Interval bounds, double value, String where) {
+		if (Double.isNaN(value)) {
+			assertTrue(bounds.mayBeNaN(), where + ": NaN outside " + bounds);
+		} else {
+			assertTrue(bounds.contains(value), where + ": " + value + " outside " + bounds);
+		}
+	}
+
+	/**
+	 * Evaluate the expression at points of the rectangle, including its corners
+	 * and zeros, and check the colors are within its bounds
+	 */
+	private void assertBoundsHold(ExpressionTreeNode expr, double x0, double x1, double y0, double y1) {
+		ColorInterval bounds = expr.bounds(Interval.of(x0, x1), Interval.of(y0, y1));
+		int steps = 24;
+		for (int i = 0; i <= steps; i++) {
+			// rounding must not take the points off the rectangle
+			double x = i == steps && x0 <= 0 && 0 <= x1 ? 0 : Math.min(x1, x0 + (x1 - x0) * i / steps);
+			for (int j = 0; j <= steps; j++) {
+				double y = j == steps && y0 <= 0 && 0 <= y1 ? 0 : Math.min(y1, y0 + (y1 - y0) * j / steps);
+				RGBColor color = expr.evaluate(x, y);
+				String where = expr + " at " + x + ", " + y;
+				assertWithin(bounds.getRed(), color.getRed(), where);
+				assertWithin(bounds.getGreen(), color.getGreen(), where);
+				assertWithin(bounds.getBlue(), color.getBlue(), where);
+			}
+		}
+	}
+
+	@Test
+	public void testBoundsHoldEveryColor() {
+		java.util.Random random = new java.util.Random(11);
+		for (String expression : EXPRESSIONS) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			assertBoundsHold(expr, -1, 1, -1, 1);
+			for (int i = 0; i < 40; i++) {
+				double x0 = 2 * random.nextDouble() - 1;
+				double y0 = 2 * random.nextDouble() - 1;
+				double size = random.nextDouble() * (i % 2 == 0 ? 0.05 : 0.5);
+				assertBoundsHold(expr, x0, Math.min(1, x0 + size), y0, Math.min(1, y0 + size));
+			}
+		}
+	}
+
+	@Test
+	public void testColorSpaceBounds() {
+		ExpressionTreeNode arg = parser.makeExpression("[0.5, -0.25, 1] * x + y");
+		for (ExpressionTreeNode expr : new ExpressionTreeNode[] { new RgbToYCrCb(arg), new YCrCbToRGB(arg) }) {
+			assertBoundsHold(expr, -1, 1, -1, 1);
+			assertBoundsHold(expr, 0.2, 0.3, -0.6, -0.5);
+		}
+	}
+
+	@Test
+	public void testIntervalArithmetic() {
+		assertSame(Interval.UNKNOWN, Interval.of(0, Double.NaN));
+		assertEquals(-1, Sine.sinusoidBounds(Interval.of(4, 5), Math.PI / 2, Math::sin).getMin());
+		assertTrue(Sine.sinusoidBounds(Interval.of(0.1, 0.2), Math.PI / 2, Math::sin).getMax() < 0.2);
+		Interval quotient = Division.divideBounds(Interval.of(1, 2), Interval.of(-0.5, 0.5));
+		assertEquals(Double.POSITIVE_INFINITY, quotient.getMax());
+		assertFalse(quotient.mayBeNaN());
+		assertEquals(Interval.point(0).toString(),
+				Division.divideBounds(Interval.of(1, 2), Interval.of(-0.0, 0)).toString());
+		// smaller than the divisor, so the dividend is its own remainder
+		Interval remainder = Modulo.moduloBounds(Interval.of(-0.2, 0.3), Interval.of(0.5, 0.75));
+		assertEquals(-0.2, remainder.getMin());
+		assertEquals(0.3, remainder.getMax());
+		assertTrue(Interval.of(0, 1).add(Interval.of(Double.NEGATIVE_INFINITY, 0)).mayBeNaN());
+	}
+
+	@Test
+	public void testSingleColor() {
+		assertTrue(parser.makeExpression("clamp(x / 0.25 + 0.75)").bounds(Interval.of(0.1, 0.5), Interval.of(-1, 1))
+				.isSingleColor());
+		assertFalse(parser.makeExpression("x").bounds(Interval.of(-0.5, 0.5), Interval.of(-1, 1)).isSingleColor());
+		// 1 and 2 both draw as full intensity
+		assertTrue(ColorInterval.grey(Interval.of(1, 2)).isSingleColor());
+		assertFalse(ColorInterval.grey(Interval.UNKNOWN).isSingleColor());
+	}
+
+	@Test
+	public void testFilledTilesMatchEvaluation() {
+		String[] expressions = { "floor(x / 0.5) * clamp(y / 0.25)", "clamp(log(abs(x) + 0.5) / 0.1) + [-1, 0.5, 1]",
+				"imageWrap(\"vortex.jpg\", x, y) * floor(y)", "sin(x / 0.1) * 0.5 + wrap(y * 0.5)" };
+		Dimension size = new Dimension(70, 53);
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			for (String name : new String[] { "tree", "vm" }) {
+				Pixmap image = new Pixmap(size);
+				try (TiledRenderer renderer = new TiledRenderer(2, 32)) {
+					renderer.setEngine(RenderEngines.create(name));
+					renderer.render(expr, image);
+					if (!expression.startsWith("sin")) {
+						assertTrue(renderer.getLastReport().contains(" pixels filled from bounds"), expression);
+					}
+					for (int row = 0; row < size.height; row++) {
+						double y = TiledRenderer.imageToDomainScale(row, size.height);
+						for (int column = 0; column < size.width; column++) {
+							double x = TiledRenderer.imageToDomainScale(column, size.width);
+							RGBColor expected = expr.evaluate(x, y);
+							assertEquals(RGBColor.toRGB(expected.getRed(), expected.getGreen(), expected.getBlue()),
+									image.getColor(column, row).getRGB(), name + ": " + expression);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testBoundingCanBeTurnedOff() {
+		try (TiledRenderer renderer = new TiledRenderer(1, 16)) {
+			renderer.setBounding(false);
+			renderer.render(parser.makeExpression("floor(x)"), new Pixmap(new Dimension(40, 40)));
+			assertFalse(renderer.getLastReport().contains("filled from bounds"));
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.RenderEngines;
+import picasso.engine.TiledRenderer;
+import picasso.model.Pixmap;
+import picasso.model.PixelRandom;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.RandomSeeding;
+import picasso.parser.language.BatchBuffers;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that random() is a hash of the seed, the call and the point: the same
+ * on every engine, thread and tile, and different for other seeds and calls
+ *
+ * @author Mark Holden
+ */
+public class PixelRandomTests {
+
+	private static final int LENGTH = 1000;
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	private static int[] render(ExpressionTreeNode expr, TiledRenderer renderer, Dimension size) {
+		Pixmap image = new Pixmap(size);
+		renderer.render(expr, image);
+		int[] rgb = new int[size.width * size.height];
+		image.getRGB(0, 0, size.width, size.height, rgb);
+		return rgb;
+	}
+
+	@Test
+	public void testBatchMatchesPoints() {
+		Random random = new Random(42, 3);
+		double[] xs = new double[LENGTH];
+		double[] ys = new double[LENGTH];
+		double[][] planes = new double[3][LENGTH];
+		double[] slots = new double[3];
+		for (int i = 0; i < LENGTH; i++) {
+			xs[i] = -1 + 2.0 * i / LENGTH;
+			// rows of a few points each, and a zero of each sign
+			ys[i] = i / 7 * 0.01 - 1;
+		}
+		xs[0] = -0.0;
+		random.evaluate(xs, ys, LENGTH, planes[0], planes[1], planes[2], new BatchBuffers(LENGTH));
+		for (int i = 0; i < LENGTH; i++) {
+			RGBColor color = random.evaluate(xs[i], ys[i]);
+			random.evaluate(xs[i], ys[i], slots, 0);
+			assertEquals(color, new RGBColor(planes[0][i], planes[1][i], planes[2][i]), "point " + i);
+			assertEquals(color, new RGBColor(slots[0], slots[1], slots[2]), "point " + i);
+			assertEquals(color.getGreen(), PixelRandom.random(random.getKey(), 1, xs[i], ys[i]));
+		}
+		assertEquals(random.evaluate(0.0, 0.5), random.evaluate(-0.0, 0.5));
+	}
+
+	@Test
+	public void testNumbersAreUniform() {
+		long key = PixelRandom.key(7, 0);
+		int[] buckets = new int[10];
+		double sum = 0;
+		double product = 0;
+		int count = 0;
+		for (int row = 0; row < 100; row++) {
+			for (int column = 0; column < 100; column++) {
+				double x = TiledRenderer.imageToDomainScale(column, 100);
+				double y = TiledRenderer.imageToDomainScale(row, 100);
+				double red = PixelRandom.random(key, 0, x, y);
+				double green = PixelRandom.random(key, 1, x, y);
+				assertTrue(red >= -1 && red < 1, "" + red);
+				buckets[(int) ((red + 1) * 5)]++;
+				sum += red;
+				product += red * green;
+				count++;
+			}
+		}
+		// the buckets hold 1000 each, give or take about 30
+		for (int bucket : buckets) {
+			assertTrue(Math.abs(bucket - 1000) < 150, "bucket of " + bucket);
+		}
+		assertEquals(0, sum / count, 0.03);
+		assertEquals(0, product / count, 0.03);
+	}
+
+	@Test
+	public void testCallsDrawTheirOwnNumbers() {
+		ExpressionTreeNode difference = parser.makeExpression("random() - random()");
+		assertNotEquals(difference.getChildren().get(0), difference.getChildren().get(1));
+		assertNotEquals(0, difference.evaluate(0.25, 0.5).getRed());
+		// parsing again numbers the calls the same way
+		assertEquals(difference, parser.makeExpression("random() - random()"));
+	}
+
+	@Test
+	public void testSameSeedSameImage() {
+		Dimension size = new Dimension(67, 43);
+		ExpressionTreeNode expr = parser.makeExpression("random() * x + sin(random() + y)");
+		int[] expected = render(expr, new TiledRenderer(), size);
+		try (TiledRenderer one = new TiledRenderer(1, 8);
+				TiledRenderer four = new TiledRenderer(4, 16);
+				TiledRenderer three = new TiledRenderer(3, 200)) {
+			for (TiledRenderer renderer : new TiledRenderer[] { one, four, three }) {
+				assertArrayEquals(expected, render(expr, renderer, size));
+			}
+		}
+		for (String name : RenderEngines.getNames()) {
+			if (name.equals("float")) {
+				continue;
+			}
+			TiledRenderer renderer = new TiledRenderer();
+			renderer.setEngine(RenderEngines.create(name));
+			assertArrayEquals(expected, render(expr, renderer, size), name);
+		}
+		TiledRenderer seeded = new TiledRenderer();
+		seeded.setSeed(12345);
+		int[] other = render(expr, seeded, size);
+		assertFalse(java.util.Arrays.equals(expected, other));
+		assertArrayEquals(other, render(expr, seeded, size));
+	}
+
+	@Test
+	public void testCallsThroughVariablesDrawTheirOwnNumbers() {
+		// evaluating the assignment stores the call in a
+		parser.makeExpression("a = random()").evaluate(0, 0);
+		ExpressionTreeNode expr = parser.makeExpression("a - random()");
+		// both calls were parsed as the first of their expressions
+		assertEquals(expr.getChildren().get(0), expr.getChildren().get(1));
+		ExpressionTreeNode seeded = new RandomSeeding().seed(expr, Random.DEFAULT_SEED);
+		assertNotEquals(seeded.getChildren().get(0), seeded.getChildren().get(1));
+		Dimension size = new Dimension(40, 30);
+		int[] rgb = render(expr, new TiledRenderer(), size);
+		assertTrue(java.util.Arrays.stream(rgb).distinct().count() > 1, "a single color");
+		assertArrayEquals(rgb, render(expr, new TiledRenderer(), size));
+		// a variable used twice is one call
+		ExpressionTreeNode twice = new RandomSeeding().seed(parser.makeExpression("a - a"), 5);
+		assertEquals(new RGBColor(0, 0, 0), twice.evaluate(0.25, 0.5));
+	}
+
+	@Test
+	public void testSeeding() {
+		RandomSeeding seeding = new RandomSeeding();
+		ExpressionTreeNode plain = parser.makeExpression("sin(x) * y");
+		assertSame(plain, seeding.seed(plain, 5));
+		ExpressionTreeNode expr = parser.makeExpression("sin(random()) * random()");
+		assertSame(expr, seeding.seed(expr, Random.DEFAULT_SEED));
+		ExpressionTreeNode seeded = seeding.seed(expr, 5);
+		assertEquals(2, seeding.getSeededCount());
+		Random first = (Random) seeded.getChildren().get(0).getChildren().get(0);
+		Random second = (Random) seeded.getChildren().get(1);
+		assertEquals(5, first.getSeed());
+		assertEquals(5, second.getSeed());
+		assertNotEquals(first.getStream(), second.getStream());
+	}
+}
@@ -0,0 +1,101 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.PlaneKernels;
+import picasso.engine.ScalarKernels;
+import picasso.engine.SimdEngine;
+import picasso.model.ImprovedNoise;
+import picasso.model.PlanarNoise;
+
+/**
+ * Tests that noise on the plane z = 0, one point at a time, a row at a time
+ * and on vectors, is the noise of ImprovedNoise
+ *
+ * @author Mark Holden
+ */
+public class PlanarNoiseTests {
+
+	private static final double TOLERANCE = 1e-12;
+
+	// odd, so that rows end with elements left over after the last vector
+	private static final int LENGTH = 1001;
+
+	private static final double[] EDGES = { 0.0, -0.0, 0.5, -0.5, 1, -1, 1.5, -1.5, 255.75, -255.75, 256.25,
+			0.999999, -1e-300, 1e-300, 2147483647.5, -2147483648.5, 3e9, -3e9, 1e300, Double.POSITIVE_INFINITY,
+			Double.NEGATIVE_INFINITY, Double.NaN };
+
+	private static double[][] points() {
+		double[] x = new double[LENGTH];
+		double[] y = new double[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			x[i] = i * 0.731 - 300;
+			y[i] = Math.sin(i) * 40;
+		}
+		// some rows of edge cases, to send whole vectors to the fallback
+		for (int i = 0; i < EDGES.length * EDGES.length; i++) {
+			x[i] = EDGES[i % EDGES.length];
+			y[i] = EDGES[i / EDGES.length];
+		}
+		return new double[][] { x, y };
+	}
+
+	private static void assertNoiseEquals(double expected, double actual, String message) {
+		if (Double.isNaN(expected)) {
+			assertTrue(Double.isNaN(actual), message);
+		} else {
+			assertEquals(expected, actual, TOLERANCE, message);
+		}
+	}
+
+	@Test
+	public void testPointsMatchImprovedNoise() {
+		double[][] points = points();
+		for (int i = 0; i < LENGTH; i++) {
+			double x = points[0][i];
+			double y = points[1][i];
+			assertNoiseEquals(ImprovedNoise.noise(x, y, 0), PlanarNoise.noise(x, y), "noise at " + x + ", " + y);
+			float expected = ImprovedNoise.noise((float) x, (float) y, 0f);
+			float actual = PlanarNoise.noise((float) x, (float) y);
+			assertNoiseEquals(expected, actual, "float noise at " + x + ", " + y);
+		}
+	}
+
+	@Test
+	public void testRowsMatchImprovedNoise() {
+		double[][] points = points();
+		double[] out = new double[LENGTH];
+		PlanarNoise.noise(points[0], points[1], out, LENGTH);
+		for (int i = 0; i < LENGTH; i++) {
+			assertNoiseEquals(ImprovedNoise.noise(points[0][i], points[1][i], 0), out[i], "noise at " + i);
+		}
+		float[] x = new float[LENGTH];
+		float[] y = new float[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			x[i] = (float) points[0][i];
+			y[i] = (float) points[1][i];
+		}
+		// the output may be an input
+		PlanarNoise.noise(x, y, -0.8f, x, LENGTH);
+		for (int i = 0; i < LENGTH; i++) {
+			float expected = ImprovedNoise.noise((float) points[0][i] - 0.8f, (float) points[1][i] - 0.8f, 0f);
+			assertNoiseEquals(expected, x[i], "float noise at " + i);
+		}
+	}
+
+	@Test
+	public void testKernelsMatchImprovedNoise() {
+		PlaneKernels[] kernels = { new ScalarKernels(), SimdEngine.detectKernels() };
+		double[][] points = points();
+		for (PlaneKernels kernel : kernels) {
+			double[] out = new double[LENGTH];
+			kernel.planarNoise(points[0], points[1], 0.3, out, LENGTH);
+			for (int i = 0; i < LENGTH; i++) {
+				assertNoiseEquals(ImprovedNoise.noise(points[0][i] + 0.3, points[1][i] + 0.3, 0), out[i],
+						kernel.getName() + " noise at " + i);
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.parser.ExpressionOptimizer;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.RangeInference;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that range checks are dropped only where the ranges of their
+ * arguments prove them unnecessary, and that the colors stay the same
+ *
+ * @author Mark Holden
+ */
+public class RangeInferenceTests {
+
+	private ExpressionTreeGenerator parser;
+	private ExpressionOptimizer optimizer;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+		optimizer = new ExpressionOptimizer();
+	}
+
+	/**
+	 * Optimize the expression and compare it with the original at random points
+	 * of the image, allowing only the sign of a zero to differ
+	 */
+	private ExpressionTreeNode assertSpecializesSafely(String expression) {
+		ExpressionTreeNode expr = parser.makeExpression(expression);
+		ExpressionTreeNode optimized = optimizer.optimize(expr);
+		Random random = new Random(16);
+		for (int i = 0; i < 20000; i++) {
+			double x = random.nextDouble() * 2 - 1;
+			double y = i % 10 == 0 ? -1 : random.nextDouble() * 2 - 1;
+			RGBColor want = expr.evaluate(x, y);
+			RGBColor got = optimized.evaluate(x, y);
+			String where = expression + " at " + x + ", " + y;
+			assertEquals(want.getRed(), got.getRed(), 0, where);
+			assertEquals(want.getGreen(), got.getGreen(), 0, where);
+			assertEquals(want.getBlue(), got.getBlue(), 0, where);
+		}
+		return optimized;
+	}
+
+	@Test
+	public void testDropsClampsOfValuesInRange() {
+		assertEquals(Sine.class, assertSpecializesSafely("clamp(sin(x / 0.1))").getClass());
+		ExpressionTreeNode twice = assertSpecializesSafely("clamp(clamp(x / y))");
+		assertEquals(Clamp.class, twice.getClass());
+		assertEquals(Division.class, twice.getChildren().get(0).getClass());
+		assertEquals(Clamp.class, assertSpecializesSafely("clamp(x + y)").getClass());
+		assertEquals(2, optimizer.getSpecializationCount());
+	}
+
+	@Test
+	public void testDropsAbsOfValuesNeverNegative() {
+		assertEquals(Subtraction.class, assertSpecializesSafely("abs(exp(x) - 0.25)").getClass());
+		assertEquals(Abs.class, assertSpecializesSafely("abs(x * y)").getClass());
+	}
+
+	@Test
+	public void testWrapsWithinOnePeriodSubtract() {
+		String[] expressions = { "wrap(x * 0.5)", "wrap(sin(y) * [0.25, 0.5, -0.75])", "wrap(x * y * 0.5 + 0.25)",
+				"wrap(perlinBW(x, y) * 0.25 + 0.2)" };
+		for (String expression : expressions) {
+			ExpressionTreeNode specialized = assertSpecializesSafely(expression);
+			assertEquals(Subtraction.class, specialized.getClass(), expression);
+		}
+		// x + y runs over two periods
+		assertEquals(Wrap.class, assertSpecializesSafely("wrap(x + y)").getClass());
+		assertEquals(Wrap.class, assertSpecializesSafely("wrap(x / y)").getClass());
+	}
+
+	@Test
+	public void testDropsRemaindersOfSmallerDividends() {
+		assertEquals(Multiplication.class, assertSpecializesSafely("x * 0.25 % (y * 0.25 + 0.75)").getClass());
+		assertEquals(Modulo.class, assertSpecializesSafely("x * 0.5 % (y * 0.25 + 0.5)").getClass());
+		// random numbers are never dropped
+		assertEquals(Modulo.class, assertSpecializesSafely("x * 0.1 % (random() * 0.1 + 0.5)").getClass());
+	}
+
+	@Test
+	public void testRangesCoverTheImage() {
+		RangeInference ranges = new RangeInference();
+		assertEquals(-1, ranges.getRange(parser.makeExpression("x")).getRed().getMin());
+		assertEquals(1, ranges.getRange(parser.makeExpression("y * y")).getBlue().getMax());
+	}
+
+	@Test
+	public void testSampleExpressions() throws Exception {
+		for (String line : Files.readAllLines(Paths.get("expressions/samples.exp"))) {
+			if (!line.isBlank() && !line.startsWith("//")) {
+				assertSpecializesSafely(line);
+			}
+		}
+	}
+}
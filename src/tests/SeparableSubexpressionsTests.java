@@ -0,0 +1,114 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.RenderEngines;
+import picasso.engine.TiledRenderer;
+import picasso.model.Pixmap;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.SeparableSubexpressions;
+import picasso.parser.SeparableSubexpressions.Dependency;
+import picasso.parser.language.CoordinateTable;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests the classification of subexpressions by the coordinates they depend
+ * on, and that tabulating those of one coordinate leaves every pixel the same
+ *
+ * @author Mark Holden
+ */
+public class SeparableSubexpressionsTests {
+
+	private static final String[] ENGINES = { "tree", "batch", "scalar", "compiled", "vm", "simd" };
+
+	private ExpressionTreeGenerator parser;
+	private SeparableSubexpressions separable;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+		separable = new SeparableSubexpressions();
+	}
+
+	private Dependency classify(String expression) {
+		return separable.classify(parser.makeExpression(expression));
+	}
+
+	@Test
+	public void testClassify() {
+		assertEquals(Dependency.CONSTANT, classify("[0.1, 0.2, 0.3] * 0.5"));
+		assertEquals(Dependency.X, classify("cos(x) + exp(x) * 0.5"));
+		assertEquals(Dependency.Y, classify("abs(y)"));
+		assertEquals(Dependency.Y, classify("log(y)"));
+		assertEquals(Dependency.XY, classify("perlinBW(clamp(y), wrap(x))"));
+		assertEquals(Dependency.XY, classify("sin(x) + random()"));
+		assertEquals(Dependency.X, classify("imageWrap(\"vortex.jpg\", x, sin(x))"));
+		assertEquals(Dependency.XY, classify("\"vortex.jpg\""));
+		assertEquals(Dependency.XY, Dependency.X.and(Dependency.Y));
+		assertEquals(Dependency.X, Dependency.CONSTANT.and(Dependency.X));
+	}
+
+	@Test
+	public void testTabulatesLargestSubexpressions() {
+		double[] coordinates = TiledRenderer.domainCoordinates(8);
+		ExpressionTreeNode expr = parser.makeExpression("perlinBW(clamp(y), wrap(x) * cos(x)) + abs(y) * x");
+		ExpressionTreeNode tabulated = separable.tabulate(expr, coordinates, coordinates);
+		// clamp(y), wrap(x) * cos(x) and abs(y); x alone is not worth a table
+		assertEquals(3, separable.getTableCount());
+		ExpressionTreeNode noise = tabulated.getChildren().get(0);
+		assertEquals(CoordinateTable.class, noise.getChildren().get(0).getClass());
+		assertFalse(((CoordinateTable) noise.getChildren().get(0)).isAlongX());
+		assertTrue(((CoordinateTable) noise.getChildren().get(1)).isAlongX());
+	}
+
+	@Test
+	public void testNothingToTabulate() {
+		ExpressionTreeNode expr = parser.makeExpression("sin(x * y) + random()");
+		assertSame(expr, separable.tabulate(expr, new double[] { 0 }, new double[] { 0 }));
+		assertEquals(0, separable.getTableCount());
+	}
+
+	@Test
+	public void testTableFallsBackOffItsCoordinates() {
+		ExpressionTreeNode expr = parser.makeExpression("log(x) * cos(x)");
+		CoordinateTable table = new CoordinateTable(expr, true, TiledRenderer.domainCoordinates(4));
+		assertEquals(4, table.size());
+		for (double x : new double[] { -1, -0.5, 0, 0.5, 0.3, 1e-9, 2, Double.NaN }) {
+			assertEquals(expr.evaluate(x, 0.25).toString(), table.evaluate(x, 0.25).toString());
+		}
+	}
+
+	@Test
+	public void testEnginesRenderTheSameImage() {
+		String[] expressions = { "perlinBW(clamp(y), wrap(x)) * cos(x) + exp(x) / abs(y)",
+				"log(sin(x) * y) + floor(x * 0.75) - log(y)",
+				"imageClip(\"vortex.jpg\", sin(x), abs(y)) * tan(x) + y" };
+		Dimension size = new Dimension(30, 22);
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			for (String name : ENGINES) {
+				Pixmap image = new Pixmap(size);
+				try (TiledRenderer renderer = new TiledRenderer(2, 8)) {
+					renderer.setEngine(RenderEngines.create(name));
+					renderer.render(expr, image);
+					assertTrue(renderer.getLastReport().contains(" subexpressions tabulated"), expression);
+					for (int row = 0; row < size.height; row++) {
+						double y = TiledRenderer.imageToDomainScale(row, size.height);
+						for (int column = 0; column < size.width; column++) {
+							double x = TiledRenderer.imageToDomainScale(column, size.width);
+							RGBColor expected = expr.evaluate(x, y);
+							assertEquals(RGBColor.toRGB(expected.getRed(), expected.getGreen(), expected.getBlue()),
+									image.getColor(column, row).getRGB(), name + ": " + expression);
+						}
+					}
+				}
+			}
+		}
+	}
+}
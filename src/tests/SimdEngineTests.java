@@ -0,0 +1,179 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.ExpressionProgram;
+import picasso.engine.PlaneKernels;
+import picasso.engine.RenderEngines;
+import picasso.engine.ScalarKernels;
+import picasso.engine.SimdEngine;
+import picasso.model.ImprovedNoise;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.*;
+
+/**
+ * Tests that running programs a row at a time, with either kind of kernels,
+ * computes exactly the colors of the trees
+ *
+ * @author Mark Holden
+ */
+public class SimdEngineTests {
+
+	// odd, so that rows end with elements left over after the last vector
+	private static final int WIDTH = 37;
+
+	private static final double[] EDGES = { 0.0, -0.0, 0.5, -0.5, 1, -1, 1.5, -1.5, 2, -2, 3, -3, 0.999999, -1e-300,
+			1e-300, 4503599627370495.5, -4503599627370495.5, 0x1p52, -0x1p52, 0x1p53 + 2, 1e300, -1e300,
+			Double.MIN_VALUE, Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN,
+			255.75, -255.75, 256.25, 3e9, -3e9, 2147483647.5, -2147483648.5 };
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	private void assertRowsMatchTree(ExpressionTreeNode expr, PlaneKernels kernels) {
+		ExpressionProgram program = ExpressionProgram.lower(expr);
+		ExpressionProgram.Planes planes = program.createPlanes(WIDTH);
+		int result = program.getResultRegister();
+		double[] xs = new double[WIDTH];
+		for (int i = 0; i < WIDTH; i++) {
+			xs[i] = -1 + 2.0 * i / (WIDTH - 1);
+		}
+		for (double y = -1; y <= 1; y += 0.25) {
+			program.runRow(xs, y, WIDTH, planes, kernels);
+			for (int i = 0; i < WIDTH; i++) {
+				RGBColor expected = expr.evaluate(xs[i], y);
+				String where = expr + " with " + kernels.getName() + " at " + xs[i] + ", " + y;
+				assertEquals(expected.getRed(), planes.get(result)[i], where);
+				assertEquals(expected.getGreen(), planes.get(result + 1)[i], where);
+				assertEquals(expected.getBlue(), planes.get(result + 2)[i], where);
+			}
+		}
+	}
+
+	@Test
+	public void testNodes() {
+		ExpressionTreeNode arg = new Addition(new Multiplication(new X(), new RGBColor(2, -3, 0.5)), new Y());
+		ExpressionTreeNode left = new Sine(new Multiplication(new X(), new RGBColor(3, 1, -2)));
+		ExpressionTreeNode right = new Subtraction(new Y(), new Floor(new X()));
+		ExpressionTreeNode[] trees = { new X(), new Constant(0.4), new RGBColor(0.1, -0.4, 1), new Sine(arg),
+				new Exp(arg), new Log(arg), new Floor(arg), new Ceil(arg), new Abs(arg), new Clamp(arg),
+				new Wrap(arg), new Not(arg), new RgbToYCrCb(arg), new YCrCbToRGB(arg), new Addition(left, right),
+				new Subtraction(left, right), new Multiplication(left, right), new Division(left, new Floor(right)),
+				new Modulo(left, new Floor(right)), new Exponentiation(left, right), new PerlinColor(left, right),
+				new PerlinBW(left, right), new PerlinBW(new Multiplication(arg, new RGBColor(1e10, -3e9, 1e300)), right),
+				new Assignment(new Variable("planes"), new Addition(left, right)),
+				new ImageWrap(new Image("vortex.jpg"), arg, new Y()) };
+		PlaneKernels[] kernels = { new ScalarKernels(), SimdEngine.detectKernels() };
+		for (PlaneKernels kernel : kernels) {
+			for (ExpressionTreeNode tree : trees) {
+				assertRowsMatchTree(tree, kernel);
+			}
+		}
+	}
+
+	@Test
+	public void testParsedExpressions() {
+		String[] expressions = { "wrap(x * [0.5, -1, 1] / y) % ceil(y - x)",
+				"perlinBW(atan([ 0.45, -0.48, -0.04 ] - x) / y - perlinBW(perlinColor(y, x), [ -0.87, 0.02, -0.34 ]), clamp(x))" };
+		for (String expression : expressions) {
+			assertRowsMatchTree(parser.makeExpression(expression), SimdEngine.detectKernels());
+		}
+	}
+
+	/**
+	 * Every pair of edge values, so that each vector holds a mix of them
+	 */
+	@Test
+	public void testKernelsAgreeOnEdgeValues() {
+		int length = EDGES.length * EDGES.length;
+		double[] a = new double[length];
+		double[] b = new double[length];
+		for (int i = 0; i < length; i++) {
+			a[i] = EDGES[i / EDGES.length];
+			b[i] = EDGES[i % EDGES.length];
+		}
+		PlaneKernels scalar = new ScalarKernels();
+		PlaneKernels kernels = SimdEngine.detectKernels();
+		double[] expected = new double[length];
+		double[] actual = new double[length];
+		double[][] expectedColor = new double[3][length];
+		double[][] actualColor = new double[3][length];
+
+		scalar.add(a, b, expected, length);
+		kernels.add(a, b, actual, length);
+		assertArrayEquals(expected, actual, "add");
+		scalar.subtract(a, b, expected, length);
+		kernels.subtract(a, b, actual, length);
+		assertArrayEquals(expected, actual, "subtract");
+		scalar.multiply(a, b, expected, length);
+		kernels.multiply(a, b, actual, length);
+		assertArrayEquals(expected, actual, "multiply");
+		scalar.divide(a, b, expected, length);
+		kernels.divide(a, b, actual, length);
+		assertArrayEquals(expected, actual, "divide");
+		scalar.modulo(a, b, expected, length);
+		kernels.modulo(a, b, actual, length);
+		assertArrayEquals(expected, actual, "modulo");
+		scalar.addConstant(a, -0.8, expected, length);
+		kernels.addConstant(a, -0.8, actual, length);
+		assertArrayEquals(expected, actual, "addConstant");
+		scalar.negate(a, expected, length);
+		kernels.negate(a, actual, length);
+		assertArrayEquals(expected, actual, "negate");
+		scalar.abs(a, expected, length);
+		kernels.abs(a, actual, length);
+		assertArrayEquals(expected, actual, "abs");
+		scalar.floor(a, expected, length);
+		kernels.floor(a, actual, length);
+		assertArrayEquals(expected, actual, "floor");
+		scalar.ceil(a, expected, length);
+		kernels.ceil(a, actual, length);
+		assertArrayEquals(expected, actual, "ceil");
+		scalar.clamp(a, expected, length);
+		kernels.clamp(a, actual, length);
+		assertArrayEquals(expected, actual, "clamp");
+		scalar.wrap(a, expected, length);
+		kernels.wrap(a, actual, length);
+		assertArrayEquals(expected, actual, "wrap");
+		scalar.noise(a, b, a, expected, length);
+		kernels.noise(a, b, a, actual, length);
+		assertArrayEquals(expected, actual, "noise");
+		scalar.rgbToYCrCb(a, b, a, expectedColor[0], expectedColor[1], expectedColor[2], length);
+		kernels.rgbToYCrCb(a, b, a, actualColor[0], actualColor[1], actualColor[2], length);
+		assertArrayEquals(expectedColor, actualColor, "rgbToYCrCb");
+		scalar.yCrCbToRGB(a, b, a, expectedColor[0], expectedColor[1], expectedColor[2], length);
+		kernels.yCrCbToRGB(a, b, a, actualColor[0], actualColor[1], actualColor[2], length);
+		assertArrayEquals(expectedColor, actualColor, "yCrCbToRGB");
+	}
+
+	@Test
+	public void testNoiseMatchesImprovedNoise() {
+		int length = 1000;
+		double[] x = new double[length];
+		double[] y = new double[length];
+		double[] z = new double[length];
+		for (int i = 0; i < length; i++) {
+			x[i] = i * 0.731 - 300;
+			y[i] = Math.sin(i) * 40;
+			z[i] = i % 7 - 3.5;
+		}
+		double[] out = new double[length];
+		SimdEngine.detectKernels().noise(x, y, z, out, length);
+		for (int i = 0; i < length; i++) {
+			assertEquals(ImprovedNoise.noise(x[i], y[i], z[i]), out[i], "noise at " + i);
+		}
+	}
+
+	@Test
+	public void testEngineLookup() {
+		assertEquals("simd", RenderEngines.create("simd").getName());
+	}
+}
@@ -0,0 +1,120 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.RenderEngines;
+import picasso.engine.TiledRenderer;
+import picasso.model.Pixmap;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.SymmetryAnalysis;
+import picasso.parser.SymmetryAnalysis.Parity;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * Tests proving expressions even or odd in x and y, and that rendering the
+ * mirror images of symmetric expressions leaves every pixel the same
+ *
+ * @author Mark Holden
+ */
+public class SymmetryAnalysisTests {
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	private Parity parityInX(String expression) {
+		return new SymmetryAnalysis().getParityInX(parser.makeExpression(expression));
+	}
+
+	private Parity parityInY(String expression) {
+		return new SymmetryAnalysis().getParityInY(parser.makeExpression(expression));
+	}
+
+	@Test
+	public void testParity() {
+		assertEquals(Parity.ODD, parityInX("x"));
+		assertEquals(Parity.EVEN, parityInY("x"));
+		assertEquals(Parity.EVEN, parityInX("x * x"));
+		assertEquals(Parity.EVEN, parityInX("cos(x) + y"));
+		assertEquals(Parity.EVEN, parityInY("cos(abs(y) - x)"));
+		assertEquals(Parity.NONE, parityInX("cos(abs(y) - x)"));
+		assertEquals(Parity.ODD, parityInX("sin(x * 0.5) / cos(x) + atan(clamp(x))"));
+		assertEquals(Parity.ODD, parityInX("x % (y - 0.5)"));
+		assertEquals(Parity.EVEN, parityInX("log(x) * perlinColor(abs(x), y)"));
+		assertEquals(Parity.EVEN, parityInX("imageWrap(\"vortex.jpg\", x * x, y)"));
+		assertEquals(Parity.NONE, parityInX("x + 0.5"));
+		assertEquals(Parity.NONE, parityInX("floor(x)"));
+		assertEquals(Parity.NONE, parityInX("random() * x * x"));
+		assertEquals(Parity.NONE, parityInY("\"vortex.jpg\""));
+	}
+
+	@Test
+	public void testMirrorSources() {
+		double[] coords = TiledRenderer.domainCoordinates(8);
+		// -1 has no mirror image in the image, and 0 is its own
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 3, 2, 1 }, TiledRenderer.mirrorSources(coords, true));
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5, 6, 7 }, TiledRenderer.mirrorSources(coords, false));
+		coords = TiledRenderer.domainCoordinates(300);
+		int[] sources = TiledRenderer.mirrorSources(coords, true);
+		int mirrored = 0;
+		for (int i = 1; i < coords.length; i++) {
+			// copies are only made of exactly opposite coordinates
+			if (sources[i] == sources[coords.length - i] && coords.length - i < i) {
+				assertEquals(-coords[coords.length - i], coords[i]);
+				mirrored++;
+			}
+		}
+		assertTrue(mirrored > 0);
+		// the other coordinates are numbered in order
+		assertEquals(coords.length - mirrored, Arrays.stream(sources).max().getAsInt() + 1);
+	}
+
+	@Test
+	public void testMirroredImagesMatchEvaluation() {
+		String[] expressions = { "cos(abs(y) - x)", "sin(x * x / 0.1) + perlinColor(y, abs(x))",
+				"atan(x) * tan(y) / log(x * y) * x * y + [0.25, -0.5, 1]", "y % x + wrap(x * x + y * y)",
+				"imageClip(\"vortex.jpg\", cos(x), (!y) * y)" };
+		Dimension[] sizes = { new Dimension(64, 64), new Dimension(70, 53) };
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			for (Dimension size : sizes) {
+				for (String name : new String[] { "tree", "vm" }) {
+					Pixmap image = new Pixmap(size);
+					try (TiledRenderer renderer = new TiledRenderer(2, 16)) {
+						renderer.setEngine(RenderEngines.create(name));
+						renderer.render(expr, image);
+						assertTrue(renderer.getLastReport().contains(" pixels mirrored"), expression);
+						for (int row = 0; row < size.height; row++) {
+							double y = TiledRenderer.imageToDomainScale(row, size.height);
+							for (int column = 0; column < size.width; column++) {
+								double x = TiledRenderer.imageToDomainScale(column, size.width);
+								RGBColor expected = expr.evaluate(x, y);
+								assertEquals(RGBColor.toRGB(expected.getRed(), expected.getGreen(), expected.getBlue()),
+										image.getColor(column, row).getRGB(), name + ": " + expression);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMirroringCanBeTurnedOff() {
+		try (TiledRenderer renderer = new TiledRenderer(1, 16)) {
+			renderer.setMirroring(false);
+			renderer.render(parser.makeExpression("cos(x)"), new Pixmap(new Dimension(40, 40)));
+			assertFalse(renderer.getLastReport().contains("mirrored"));
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.PreparedExpression;
+import picasso.engine.RenderEngine;
+import picasso.engine.RenderEngines;
+import picasso.engine.RowEvaluator;
+import picasso.engine.TieredEngine;
+import picasso.engine.TieredEngine.TieredExpression;
+import picasso.engine.TiledRenderer;
+import picasso.engine.TreeEngine;
+import picasso.model.Pixmap;
+import picasso.parser.ExpressionOptimizer;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+import picasso.parser.language.expressions.RGBColor;
+
+/**
+ * Tests that the tiered engine renders with the tree until the compiled form
+ * is ready, and draws the same image whichever tier computes a pixel
+ *
+ * @author Mark Holden
+ */
+public class TieredEngineTests {
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	/**
+	 * An engine that cannot finish preparing until it is released
+	 */
+	private static class BlockedEngine implements RenderEngine {
+		private CountDownLatch released = new CountDownLatch(1);
+
+		@Override
+		public String getName() {
+			return "blocked";
+		}
+
+		@Override
+		public PreparedExpression prepare(ExpressionTreeNode expr) {
+			try {
+				released.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new TreeEngine().prepare(expr);
+		}
+	}
+
+	/**
+	 * An engine that remembers the expression it last prepared
+	 */
+	private static class RecordingEngine extends TreeEngine {
+		private volatile ExpressionTreeNode prepared;
+
+		@Override
+		public PreparedExpression prepare(ExpressionTreeNode expr) {
+			prepared = expr;
+			return super.prepare(expr);
+		}
+	}
+
+	/**
+	 * Optimizations that cannot start until they are released
+	 */
+	private static UnaryOperator<ExpressionTreeNode> blockedOptimizations(CountDownLatch released) {
+		return expr -> {
+			try {
+				released.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new ExpressionOptimizer().optimize(expr);
+		};
+	}
+
+	@Test
+	public void testOptimizesInBackground() {
+		RecordingEngine first = new RecordingEngine();
+		RecordingEngine second = new RecordingEngine();
+		TieredEngine engine = new TieredEngine(first, second, 1);
+		ExpressionTreeNode expr = parser.makeExpression("x * 1 + sin(0.5)");
+		CountDownLatch released = new CountDownLatch(1);
+		TieredExpression tiers = (TieredExpression) engine.prepare(expr, blockedOptimizations(released));
+		assertSame(expr, first.prepared);
+		assertNull(second.prepared);
+		assertTrue(tiers.describe().endsWith("tree still preparing"), tiers.describe());
+		released.countDown();
+		assertTrue(tiers.awaitSecond());
+		assertEquals(new ExpressionOptimizer().optimize(expr), second.prepared);
+	}
+
+	@Test
+	public void testFinishCancelsPreparation() {
+		RecordingEngine second = new RecordingEngine();
+		TieredEngine engine = new TieredEngine(new TreeEngine(), second, 1);
+		CountDownLatch released = new CountDownLatch(1);
+		TieredExpression tiers = (TieredExpression) engine.prepare(parser.makeExpression("x * y + sin(x)"),
+				blockedOptimizations(released));
+		tiers.finish();
+		released.countDown();
+		assertFalse(tiers.awaitSecond());
+		assertTrue(tiers.describe().endsWith("tree cancelled"), tiers.describe());
+		assertNull(second.prepared);
+	}
+
+	@Test
+	public void testTieredImagesMatchTree() {
+		String[] expressions = { "sin(x * y / 0.1) + perlinColor(x, y)", "clamp(wrap(x / 0.3) * y) - log(y)",
+				"a = cos(x + y) * [1, -0.5, 0.25]" };
+		for (String expression : expressions) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			Dimension size = new Dimension(97, 83);
+			Pixmap image = new Pixmap(size);
+			try (TiledRenderer renderer = new TiledRenderer(2, 16)) {
+				TieredEngine engine = new TieredEngine();
+				renderer.setEngine(engine);
+				// every pixel goes through the engine
+				renderer.setBounding(false);
+				renderer.setMirroring(false);
+				renderer.render(expr, image);
+				for (int row = 0; row < size.height; row++) {
+					double y = TiledRenderer.imageToDomainScale(row, size.height);
+					for (int column = 0; column < size.width; column++) {
+						double x = TiledRenderer.imageToDomainScale(column, size.width);
+						RGBColor expected = expr.evaluate(x, y);
+						assertEquals(RGBColor.toRGB(expected.getRed(), expected.getGreen(), expected.getBlue()),
+								image.getColor(column, row).getRGB(), expression + " at " + x + ", " + y);
+					}
+				}
+				TieredExpression tiers = engine.getLastPrepared();
+				assertEquals((long) size.width * size.height, tiers.getPixels(0) + tiers.getPixels(1), expression);
+				assertTrue(renderer.getLastReport().startsWith("tiered: 97x83"), renderer.getLastReport());
+				assertTrue(renderer.getLastReport().contains("tree tier "), renderer.getLastReport());
+			}
+		}
+	}
+
+	@Test
+	public void testSwitchesWhenSecondIsReady() {
+		BlockedEngine blocked = new BlockedEngine();
+		TieredEngine engine = new TieredEngine(new TreeEngine(), blocked, 1);
+		TieredExpression tiers = (TieredExpression) engine.prepare(parser.makeExpression("x * y + sin(x)"));
+		RowEvaluator rows = tiers.createRowEvaluator(4);
+		double[] xs = { -1, -0.5, 0, 0.5 };
+		int[] rgb = new int[8];
+		rows.evaluateRow(xs, 0.5, 4, rgb, 0);
+		assertEquals(4, tiers.getPixels(0));
+		assertTrue(tiers.describe().endsWith("blocked still preparing"), tiers.describe());
+		blocked.released.countDown();
+		assertTrue(tiers.awaitSecond());
+		rows.evaluateRow(xs, 0.5, 4, rgb, 4);
+		assertEquals(4, tiers.getPixels(0));
+		assertEquals(4, tiers.getPixels(1));
+		for (int i = 0; i < 4; i++) {
+			assertEquals(rgb[i], rgb[i + 4]);
+		}
+		assertTrue(tiers.getPrepareNanos() > 0);
+		assertTrue(tiers.describe().contains("blocked tier 4 pixels"), tiers.describe());
+	}
+
+	@Test
+	public void testSmallExpressionsStayOnFirstTier() {
+		TieredEngine engine = new TieredEngine();
+		assertEquals("tiered", RenderEngines.create("tiered").getName());
+		TieredExpression tiers = (TieredExpression) engine.prepare(parser.makeExpression("x + y"));
+		assertFalse(tiers.awaitSecond());
+		assertTrue(tiers.describe().endsWith("compiled skipped"), tiers.describe());
+		engine.setMinimumNodes(1);
+		assertTrue(((TieredExpression) engine.prepare(parser.makeExpression("x + y"))).awaitSecond());
+	}
+}
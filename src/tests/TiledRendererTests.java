@@ -0,0 +1,130 @@
+package tests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.awt.Dimension;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import picasso.engine.BatchEngine;
+import picasso.engine.CompiledEngine;
+import picasso.engine.ProgramEngine;
+import picasso.engine.RenderEngine;
+import picasso.engine.ScalarEngine;
+import picasso.engine.SimdEngine;
+import picasso.engine.TiledRenderer;
+import picasso.engine.TreeEngine;
+import picasso.model.Pixmap;
+import picasso.parser.ExpressionTreeGenerator;
+import picasso.parser.language.ExpressionTreeNode;
+
+/**
+ * Tests that the tiled renderer draws exactly what the serial loop draws
+ *
+ * @author Mark Holden
+ */
+public class TiledRendererTests {
+
+	private static final String[] EXPRESSIONS = { "x", "[0.5, -0.2, 1]", "sin(x * y) + cos(abs(y) - x)",
+			"sin ( x * [ -0.2893792055130451 , 0.9473939504887117 , 0.360770153559939 ] - wrap ( ceil ( [ -0.3713802812842131 , 0.738139516286271 , -0.7862471418030399 ] ) - perlinBW ( abs ( x ) * floor ( ceil ( x ) ) , x ) ) )",
+			"perlinBW(atan([ 0.45, -0.48, -0.04 ] - x) / y - perlinBW(perlinColor(y, x), [ -0.87, 0.02, -0.34 ]), clamp(x))",
+			"log(x + [ -0.52, -0.39, -0.05 ] / perlinBW(y - log(log(x)) / clamp([ 0.62, -0.28, -0.44 ] + y), x + abs(x) - y))" };
+
+	private ExpressionTreeGenerator parser;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		parser = new ExpressionTreeGenerator();
+	}
+
+	/**
+	 * Draws the expression one pixel at a time, the way Evaluator used to
+	 */
+	private Pixmap renderSerially(ExpressionTreeNode expr, Dimension size) {
+		Pixmap pixmap = new Pixmap(size);
+		for (int imageY = 0; imageY < size.height; imageY++) {
+			double evalY = TiledRenderer.imageToDomainScale(imageY, size.height);
+			for (int imageX = 0; imageX < size.width; imageX++) {
+				double evalX = TiledRenderer.imageToDomainScale(imageX, size.width);
+				pixmap.setColor(imageX, imageY, expr.evaluate(evalX, evalY).toJavaColor());
+			}
+		}
+		return pixmap;
+	}
+
+	private void assertSameImage(Pixmap expected, Pixmap actual) {
+		Dimension size = expected.getSize();
+		assertEquals(size, actual.getSize());
+		for (int y = 0; y < size.height; y++) {
+			for (int x = 0; x < size.width; x++) {
+				assertEquals(expected.getColor(x, y), actual.getColor(x, y), "pixel (" + x + ", " + y + ")");
+			}
+		}
+	}
+
+	@Test
+	public void testMatchesSerialRender() {
+		Dimension size = new Dimension(97, 61);
+		for (String expression : EXPRESSIONS) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			Pixmap expected = renderSerially(expr, size);
+			Pixmap actual = new Pixmap(size);
+			new TiledRenderer().render(expr, actual);
+			assertSameImage(expected, actual);
+			try (TiledRenderer one = new TiledRenderer(1, 8);
+					TiledRenderer four = new TiledRenderer(4, 16);
+					TiledRenderer three = new TiledRenderer(3, 200)) {
+				for (TiledRenderer renderer : new TiledRenderer[] { one, four, three }) {
+					actual = new Pixmap(size);
+					renderer.render(expr, actual);
+					assertSameImage(expected, actual);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEnginesMatchSerialRender() {
+		Dimension size = new Dimension(40, 33);
+		RenderEngine[] engines = { new TreeEngine(), new BatchEngine(), new ScalarEngine(),
+				new CompiledEngine(), new ProgramEngine(), new SimdEngine() };
+		for (String expression : EXPRESSIONS) {
+			ExpressionTreeNode expr = parser.makeExpression(expression);
+			Pixmap expected = renderSerially(expr, size);
+			for (RenderEngine engine : engines) {
+				try (TiledRenderer renderer = new TiledRenderer(2, 16)) {
+					renderer.setEngine(engine);
+					Pixmap actual = new Pixmap(size);
+					renderer.render(expr, actual);
+					assertSameImage(expected, actual);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidTileSize() {
+		assertThrows(IllegalArgumentException.class, () -> new TiledRenderer(2, 0));
+	}
+
+	@Test
+	public void testCloseShutsDownOwnPool() {
+		TiledRenderer renderer = new TiledRenderer(2, 16);
+		renderer.render(parser.makeExpression("x"), new Pixmap(new Dimension(20, 20)));
+		renderer.close();
+		assertThrows(RejectedExecutionException.class,
+				() -> renderer.render(parser.makeExpression("y"), new Pixmap(new Dimension(20, 20))));
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			new TiledRenderer(pool, 16).close();
+			assertFalse(pool.isShutdown());
+			new TiledRenderer().close();
+			assertFalse(ForkJoinPool.commonPool().isShutdown());
+		} finally {
+			pool.shutdown();
+		}
+	}
+}